@@ -16,23 +16,43 @@
  */
 package org.apache.servicemix.cxfbc.interceptors;
 
+import java.io.ByteArrayOutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
 
 import org.apache.cxf.binding.soap.SoapMessage;
 import org.apache.cxf.binding.soap.interceptor.AbstractSoapInterceptor;
 import org.apache.cxf.interceptor.Fault;
 import org.apache.cxf.service.Service;
 import org.apache.cxf.service.model.ServiceModelUtil;
-import org.apache.cxf.wsdl.EndpointReferenceUtils;
+import org.apache.servicemix.jbi.jaxp.BytesSource;
 import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 import org.apache.servicemix.soap.util.DomUtil;
+import org.apache.servicemix.soap.util.stax.StaxSource;
 import org.w3c.dom.Element;
 
 
+/**
+ * Validates messages against the schema of the service.
+ * <p>
+ * The schema is compiled once per service, and its validators are pooled.  Content
+ * available as a stream (such as the JBI wrapper built from an incoming SOAP message)
+ * is validated while being read, instead of being converted to DOM first.
+ */
 public abstract class AbstractSchemaValidationInterceptor extends
         AbstractSoapInterceptor {
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    static {
+        OUTPUT_FACTORY.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.TRUE);
+    }
+
     private boolean useJBIWrapper = true;
     private boolean useSOAPEnvelope = true;
     
@@ -45,31 +65,70 @@ public abstract class AbstractSchemaValidationInterceptor extends
     protected void validateMessage(SoapMessage message) throws Fault {
         Service service = ServiceModelUtil.getService(message.getExchange());
         if (service != null) {
-            Schema schema = EndpointReferenceUtils.getSchema(service.getServiceInfos().get(0));
-            if (schema != null) {
-                javax.xml.validation.Validator validator = schema.newValidator();
+            SchemaValidatorPool pool = SchemaValidatorPool.getInstance(service.getServiceInfos().get(0));
+            if (pool.getSchema() != null) {
+                Source source = message.getContent(Source.class);
+                XMLStreamReader reader = getStreamReader(source);
                 try {
-                    Element sourceMessage = new SourceTransformer().toDOMElement(message.getContent(Source.class));
-                    message.setContent(Source.class, new DOMSource(sourceMessage));
-                    if (!useJBIWrapper && !useSOAPEnvelope) {
-                        validator.validate(new DOMSource(sourceMessage));
+                    if (reader != null) {
+                        validateStream(message, pool, reader);
                     } else {
-                        Element partWrapper = DomUtil
-                                .getFirstChildElement(sourceMessage);
-                        while (partWrapper != null) {
-                            Element partContent = DomUtil
-                                    .getFirstChildElement(partWrapper);
-                            validator.validate(new DOMSource(partContent));
-                            partWrapper = DomUtil
-                                    .getNextSiblingElement(partWrapper);
-                        }
+                        validateDocument(message, pool, source);
                     }
-                    
                 } catch (Exception e) {
                     throw new Fault(e);
                 }
             }
         }
     }
+
+    private void validateStream(SoapMessage message, SchemaValidatorPool pool,
+                                XMLStreamReader reader) throws Exception {
+        ValidatorHandler handler = pool.borrowValidatorHandler();
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            XMLStreamWriter writer;
+            synchronized (OUTPUT_FACTORY) {
+                writer = OUTPUT_FACTORY.createXMLStreamWriter(buffer, "UTF-8");
+            }
+            new StreamingSchemaValidator(reader, writer, handler, useJBIWrapper || useSOAPEnvelope).validate();
+            writer.close();
+            message.setContent(Source.class, new BytesSource(buffer.toByteArray()));
+        } finally {
+            pool.releaseValidatorHandler(handler);
+        }
+    }
+
+    private void validateDocument(SoapMessage message, SchemaValidatorPool pool,
+                                  Source source) throws Exception {
+        Validator validator = pool.borrowValidator();
+        try {
+            Element sourceMessage = new SourceTransformer().toDOMElement(source);
+            message.setContent(Source.class, new DOMSource(sourceMessage));
+            if (!useJBIWrapper && !useSOAPEnvelope) {
+                validator.validate(new DOMSource(sourceMessage));
+            } else {
+                Element partWrapper = DomUtil
+                        .getFirstChildElement(sourceMessage);
+                while (partWrapper != null) {
+                    Element partContent = DomUtil
+                            .getFirstChildElement(partWrapper);
+                    validator.validate(new DOMSource(partContent));
+                    partWrapper = DomUtil
+                            .getNextSiblingElement(partWrapper);
+                }
+            }
+        } finally {
+            pool.releaseValidator(validator);
+        }
+    }
+
+    // javax.xml.transform.stax.StAXSource is not handled as it requires Java 6
+    private static XMLStreamReader getStreamReader(Source source) {
+        if (source instanceof StaxSource) {
+            return ((StaxSource) source).getStreamReader();
+        }
+        return null;
+    }
     
 }
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.cxfbc.interceptors;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
+
+import org.apache.cxf.service.model.ServiceInfo;
+import org.apache.cxf.wsdl.EndpointReferenceUtils;
+
+/**
+ * The compiled schema of a service, with the validators created from it, so that
+ * they are only built once per endpoint instead of once per message.
+ */
+public class SchemaValidatorPool {
+
+    public static final int MAX_IDLE = 16;
+
+    private static final String KEY = SchemaValidatorPool.class.getName();
+
+    private final Schema schema;
+
+    private final BlockingQueue<Validator> validators = new ArrayBlockingQueue<Validator>(MAX_IDLE);
+
+    private final BlockingQueue<ValidatorHandler> handlers = new ArrayBlockingQueue<ValidatorHandler>(MAX_IDLE);
+
+    public SchemaValidatorPool(Schema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Get the pool of the given service, compiling its schema the first time.
+     */
+    public static SchemaValidatorPool getInstance(ServiceInfo serviceInfo) {
+        SchemaValidatorPool pool = serviceInfo.getProperty(KEY, SchemaValidatorPool.class);
+        if (pool == null) {
+            synchronized (serviceInfo) {
+                pool = serviceInfo.getProperty(KEY, SchemaValidatorPool.class);
+                if (pool == null) {
+                    pool = new SchemaValidatorPool(EndpointReferenceUtils.getSchema(serviceInfo));
+                    serviceInfo.setProperty(KEY, pool);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @return the schema, or <code>null</code> if the service has none
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public Validator borrowValidator() {
+        Validator validator = validators.poll();
+        return validator != null ? validator : schema.newValidator();
+    }
+
+    public void releaseValidator(Validator validator) {
+        validator.reset();
+        validators.offer(validator);
+    }
+
+    public ValidatorHandler borrowValidatorHandler() {
+        ValidatorHandler handler = handlers.poll();
+        return handler != null ? handler : schema.newValidatorHandler();
+    }
+
+    public void releaseValidatorHandler(ValidatorHandler handler) {
+        handler.setContentHandler(null);
+        handlers.offer(handler);
+    }
+
+}
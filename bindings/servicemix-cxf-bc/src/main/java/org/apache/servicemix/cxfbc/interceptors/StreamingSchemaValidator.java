@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.cxfbc.interceptors;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.validation.ValidatorHandler;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Validates a message while reading it once from a {@link XMLStreamReader}, copying all
+ * its events to a {@link XMLStreamWriter}, so that the message does not need to be
+ * converted to DOM to be validated.
+ * <p>
+ * The validated elements are the same as for the DOM validation: the root element for
+ * unwrapped messages, else the first child element of each child of the root element,
+ * i.e. the content of each JBI part or of the SOAP body.
+ */
+public class StreamingSchemaValidator {
+
+    private final XMLStreamReader reader;
+
+    private final XMLStreamWriter writer;
+
+    private final ValidatorHandler handler;
+
+    private final boolean wrapped;
+
+    // prefix and namespace of all the declarations in scope, with their count per depth
+    private final List<String[]> namespaces = new ArrayList<String[]>();
+
+    private final List<Integer> declarations = new ArrayList<Integer>();
+
+    private int depth;
+
+    // depth of the element being validated, or 0
+    private int validating;
+
+    private boolean partValidated;
+
+    public StreamingSchemaValidator(XMLStreamReader reader, XMLStreamWriter writer,
+                                    ValidatorHandler handler, boolean wrapped) {
+        this.reader = reader;
+        this.writer = writer;
+        this.handler = handler;
+        this.wrapped = wrapped;
+    }
+
+    /**
+     * Read the whole content, writing it to the writer and validating the selected elements.
+     *
+     * @throws SAXException if the content is not valid
+     */
+    public void validate() throws XMLStreamException, SAXException {
+        int event = reader.getEventType();
+        while (true) {
+            switch (event) {
+            case XMLStreamConstants.START_DOCUMENT:
+                writer.writeStartDocument();
+                break;
+            case XMLStreamConstants.END_DOCUMENT:
+                writer.writeEndDocument();
+                break;
+            case XMLStreamConstants.START_ELEMENT:
+                startElement();
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                endElement();
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                if (validating > 0) {
+                    handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+                break;
+            case XMLStreamConstants.CDATA:
+                writer.writeCData(reader.getText());
+                if (validating > 0) {
+                    handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+                break;
+            case XMLStreamConstants.COMMENT:
+                writer.writeComment(reader.getText());
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                if (validating > 0) {
+                    handler.processingInstruction(reader.getPITarget(), reader.getPIData());
+                }
+                break;
+            default:
+                break;
+            }
+            if (!reader.hasNext()) {
+                break;
+            }
+            event = reader.next();
+        }
+        writer.flush();
+    }
+
+    private void startElement() throws XMLStreamException, SAXException {
+        depth++;
+        String prefix = nonNull(reader.getPrefix());
+        String uri = nonNull(reader.getNamespaceURI());
+        String localName = reader.getLocalName();
+        writer.writeStartElement(prefix, localName, uri);
+        int count = reader.getNamespaceCount();
+        for (int i = 0; i < count; i++) {
+            String p = nonNull(reader.getNamespacePrefix(i));
+            String u = nonNull(reader.getNamespaceURI(i));
+            if (p.length() == 0) {
+                writer.writeDefaultNamespace(u);
+            } else {
+                writer.writeNamespace(p, u);
+            }
+            namespaces.add(new String[] {p, u});
+        }
+        declarations.add(count);
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            writer.writeAttribute(nonNull(reader.getAttributePrefix(i)), nonNull(reader.getAttributeNamespace(i)),
+                                  reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+
+        if (wrapped && depth == 2) {
+            partValidated = false;
+        }
+        if (validating == 0 && (wrapped ? depth == 3 && !partValidated : depth == 1)) {
+            validating = depth;
+            partValidated = true;
+            handler.startDocument();
+            for (Map.Entry<String, String> e : getNamespacesInScope().entrySet()) {
+                handler.startPrefixMapping(e.getKey(), e.getValue());
+            }
+        } else if (validating > 0) {
+            for (int i = 0; i < count; i++) {
+                handler.startPrefixMapping(nonNull(reader.getNamespacePrefix(i)), nonNull(reader.getNamespaceURI(i)));
+            }
+        }
+        if (validating > 0) {
+            AttributesImpl attributes = new AttributesImpl();
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String ns = nonNull(reader.getAttributeNamespace(i));
+                String local = reader.getAttributeLocalName(i);
+                attributes.addAttribute(ns, local, qname(reader.getAttributePrefix(i), local),
+                                        reader.getAttributeType(i), reader.getAttributeValue(i));
+            }
+            handler.startElement(uri, localName, qname(prefix, localName), attributes);
+        }
+    }
+
+    private void endElement() throws XMLStreamException, SAXException {
+        writer.writeEndElement();
+        int count = declarations.remove(declarations.size() - 1);
+        if (validating > 0) {
+            handler.endElement(nonNull(reader.getNamespaceURI()), reader.getLocalName(),
+                               qname(reader.getPrefix(), reader.getLocalName()));
+            if (validating == depth) {
+                for (String prefix : getNamespacesInScope().keySet()) {
+                    handler.endPrefixMapping(prefix);
+                }
+                handler.endDocument();
+                validating = 0;
+            } else {
+                for (int i = namespaces.size() - count; i < namespaces.size(); i++) {
+                    handler.endPrefixMapping(namespaces.get(i)[0]);
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            namespaces.remove(namespaces.size() - 1);
+        }
+        depth--;
+    }
+
+    private Map<String, String> getNamespacesInScope() {
+        Map<String, String> scope = new LinkedHashMap<String, String>();
+        for (int i = namespaces.size() - 1; i >= 0; i--) {
+            String[] ns = namespaces.get(i);
+            if (!scope.containsKey(ns[0])) {
+                scope.put(ns[0], ns[1]);
+            }
+        }
+        return scope;
+    }
+
+    private static String qname(String prefix, String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+
+    private static String nonNull(String s) {
+        return s != null ? s : XMLConstants.NULL_NS_URI;
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.cxfbc.interceptors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+public class StreamingSchemaValidatorTest extends TestCase {
+
+    private static final String SCHEMA =
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:test'"
+        + " elementFormDefault='qualified'><xs:element name='greet'><xs:complexType><xs:sequence>"
+        + "<xs:element name='name' type='xs:QName'/></xs:sequence></xs:complexType></xs:element>"
+        + "</xs:schema>";
+
+    private static final String MESSAGE =
+        "<jbi:message xmlns:jbi='urn:jbi' xmlns:t='urn:test'>"
+        + "<jbi:part><greet xmlns='urn:test'><name>t:first</name></greet></jbi:part>"
+        + "<jbi:part><t:greet><t:name>t:second</t:name></t:greet></jbi:part>"
+        + "</jbi:message>";
+
+    private Schema schema;
+
+    protected void setUp() throws Exception {
+        schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+            .newSchema(new StreamSource(new StringReader(SCHEMA)));
+    }
+
+    public void testValidParts() throws Exception {
+        String out = validate(MESSAGE, true);
+        assertTrue(out.contains("<t:name>t:second</t:name>"));
+        assertTrue(out.contains("<greet xmlns=\"urn:test\">"));
+    }
+
+    public void testInvalidSecondPart() throws Exception {
+        try {
+            validate(MESSAGE.replace("<t:name>t:second</t:name>", "<t:other/>"), true);
+            fail("Second part should not be valid");
+        } catch (SAXException e) {
+            // expected
+        }
+    }
+
+    public void testRootElement() throws Exception {
+        validate("<greet xmlns='urn:test'><name>greet</name></greet>", false);
+        try {
+            validate(MESSAGE, false);
+            fail("The wrapper should be validated");
+        } catch (SAXException e) {
+            // expected
+        }
+    }
+
+    private String validate(String xml, boolean wrapped) throws Exception {
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml));
+        XMLOutputFactory factory = XMLOutputFactory.newInstance();
+        factory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.TRUE);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        XMLStreamWriter writer = factory.createXMLStreamWriter(buffer, "UTF-8");
+        new StreamingSchemaValidator(reader, writer, schema.newValidatorHandler(), wrapped).validate();
+        writer.close();
+        return buffer.toString("UTF-8");
+    }
+
+}
@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.http.endpoints;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.mortbay.jetty.client.Address;
+import org.mortbay.jetty.client.HttpClient;
+
+/**
+ * Keeps track of the exchanges sent by a {@link HttpProviderEndpoint} to a single destination
+ * (scheme, host and port).
+ * <p>
+ * An exchange is queued from the time it is sent until the Jetty client commits its request
+ * on a connection, and active from then until its response is complete.  In adaptive mode,
+ * the number of exchanges handed to the Jetty client for this destination is limited, and
+ * the limit is adjusted between <code>minConnections</code> and <code>maxConnections</code>:
+ * it grows while exchanges are waiting for a slot and the response time stays close to the
+ * best observed one, and shrinks when the response time degrades.  The exchanges waiting for
+ * a slot expire after <code>expirationTime</code>, and are failed when the pool is closed.
+ */
+public class HttpDestinationPool {
+
+    /**
+     * Ratio to the best observed response time above which the destination is considered degraded
+     */
+    static final double DEGRADED_LATENCY_RATIO = 2.0;
+
+    /**
+     * Minimum response time increase (in milliseconds) for the destination to be considered degraded
+     */
+    static final double DEGRADED_LATENCY_DELTA = 10.0;
+
+    private static final double SMOOTHING = 0.2;
+
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final String name;
+    private final boolean adaptive;
+    private final int minConnections;
+    private final int maxConnections;
+
+    // exchanges waiting for a slot, in adaptive mode
+    private final LinkedList<HttpProviderEndpoint.Exchange> pending = new LinkedList<HttpProviderEndpoint.Exchange>();
+
+    private HttpClient client;
+    private Address address;
+    private boolean ssl;
+
+    private long expirationTime;
+    private int limit;
+    private int inFlight;
+    private int queued;
+    private int active;
+    private int samples;
+    private boolean sampled;
+    private long committedCount;
+    private long completedCount;
+    private long failedCount;
+    private long totalWaitTime;
+    private long maxWaitTime;
+    private double averageLatency;
+    private double baselineLatency;
+
+    public HttpDestinationPool(String name, boolean adaptive, int minConnections, int maxConnections) {
+        this.name = name;
+        this.adaptive = adaptive;
+        this.minConnections = Math.max(1, Math.min(minConnections, maxConnections));
+        this.maxConnections = maxConnections;
+        this.limit = adaptive ? this.minConnections : maxConnections;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public synchronized long getExpirationTime() {
+        return expirationTime;
+    }
+
+    /**
+     * Set the number of milliseconds after which an exchange still waiting for a slot expires,
+     * <code>0</code> meaning never
+     */
+    public synchronized void setExpirationTime(long expirationTime) {
+        this.expirationTime = expirationTime;
+    }
+
+    /**
+     * Send an exchange to the destination, or queue it until a slot is available
+     */
+    public void send(HttpClient httpClient, HttpProviderEndpoint.Exchange exchange) throws IOException {
+        boolean sendNow;
+        List<HttpProviderEndpoint.Exchange> expired;
+        synchronized (this) {
+            expired = expire();
+            client = httpClient;
+            address = exchange.getAddress();
+            ssl = "https".equalsIgnoreCase(String.valueOf(exchange.getScheme()));
+            exchange.pool = this;
+            exchange.submitTime = System.currentTimeMillis();
+            queued++;
+            sendNow = !adaptive || inFlight < limit;
+            if (sendNow) {
+                inFlight++;
+            } else {
+                pending.add(exchange);
+            }
+        }
+        cancel(expired, new Exception("Http request expired."));
+        if (sendNow) {
+            try {
+                httpClient.send(exchange);
+            } catch (IOException e) {
+                completed(exchange, false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Called when the request of an exchange has been committed on a connection
+     */
+    void committed(HttpProviderEndpoint.Exchange exchange) {
+        synchronized (this) {
+            if (exchange.commitTime != 0 || exchange.done) {
+                return;
+            }
+            exchange.commitTime = System.currentTimeMillis();
+            long wait = exchange.commitTime - exchange.submitTime;
+            queued--;
+            active++;
+            committedCount++;
+            totalWaitTime += wait;
+            maxWaitTime = Math.max(maxWaitTime, wait);
+        }
+    }
+
+    /**
+     * Called when an exchange is complete, or has failed
+     */
+    void completed(HttpProviderEndpoint.Exchange exchange, boolean success) {
+        List<HttpProviderEndpoint.Exchange> next;
+        List<HttpProviderEndpoint.Exchange> expired;
+        HttpClient httpClient;
+        synchronized (this) {
+            if (exchange.done) {
+                return;
+            }
+            exchange.done = true;
+            if (exchange.commitTime == 0) {
+                queued--;
+            } else {
+                active--;
+            }
+            inFlight--;
+            if (success && exchange.commitTime != 0) {
+                completedCount++;
+                update(System.currentTimeMillis() - exchange.commitTime);
+            } else {
+                failedCount++;
+            }
+            expired = expire();
+            next = drain();
+            httpClient = client;
+        }
+        cancel(expired, new Exception("Http request expired."));
+        for (HttpProviderEndpoint.Exchange ex : next) {
+            try {
+                httpClient.send(ex);
+            } catch (IOException e) {
+                ex.onConnectionFailed(e);
+            }
+        }
+    }
+
+    private void update(long latency) {
+        if (!sampled) {
+            sampled = true;
+            averageLatency = latency;
+            baselineLatency = latency;
+        } else {
+            averageLatency += (latency - averageLatency) * SMOOTHING;
+            if (averageLatency < baselineLatency) {
+                baselineLatency = averageLatency;
+            } else {
+                // slowly forget the best response time, so that a lasting change is accepted
+                baselineLatency += (averageLatency - baselineLatency) * BASELINE_DRIFT;
+            }
+        }
+        // adjust the limit at most once per window of 'limit' responses
+        if (adaptive && ++samples >= limit) {
+            samples = 0;
+            double degraded = Math.max(baselineLatency * DEGRADED_LATENCY_RATIO,
+                                       baselineLatency + DEGRADED_LATENCY_DELTA);
+            if (averageLatency > degraded) {
+                limit = Math.max(minConnections, limit - Math.max(1, limit / 4));
+            } else if (!pending.isEmpty()) {
+                limit = Math.min(maxConnections, limit + 1);
+            }
+        }
+    }
+
+    /**
+     * Fail the exchanges still waiting for a slot, when the endpoint is stopped
+     */
+    public void close() {
+        List<HttpProviderEndpoint.Exchange> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<HttpProviderEndpoint.Exchange>(pending);
+            pending.clear();
+            for (HttpProviderEndpoint.Exchange ex : cancelled) {
+                removed(ex);
+            }
+        }
+        cancel(cancelled, new Exception("Http request cancelled, the endpoint has been stopped."));
+    }
+
+    /**
+     * Remove the exchanges which have been waiting for a slot for longer than the expiration time
+     */
+    private List<HttpProviderEndpoint.Exchange> expire() {
+        if (expirationTime <= 0 || pending.isEmpty()) {
+            return Collections.emptyList();
+        }
+        long deadline = System.currentTimeMillis() - expirationTime;
+        List<HttpProviderEndpoint.Exchange> expired = new ArrayList<HttpProviderEndpoint.Exchange>();
+        // the exchanges are queued in submission order
+        while (!pending.isEmpty() && pending.getFirst().submitTime <= deadline) {
+            HttpProviderEndpoint.Exchange ex = pending.removeFirst();
+            removed(ex);
+            expired.add(ex);
+        }
+        return expired;
+    }
+
+    private void removed(HttpProviderEndpoint.Exchange exchange) {
+        exchange.done = true;
+        queued--;
+        failedCount++;
+    }
+
+    private static void cancel(List<HttpProviderEndpoint.Exchange> exchanges, Throwable cause) {
+        for (HttpProviderEndpoint.Exchange ex : exchanges) {
+            ex.onCancelled(cause);
+        }
+    }
+
+    private List<HttpProviderEndpoint.Exchange> drain() {
+        if (pending.isEmpty() || inFlight >= limit) {
+            return Collections.emptyList();
+        }
+        List<HttpProviderEndpoint.Exchange> next = new ArrayList<HttpProviderEndpoint.Exchange>();
+        while (inFlight < limit && !pending.isEmpty()) {
+            inFlight++;
+            next.add(pending.removeFirst());
+        }
+        return next;
+    }
+
+    /**
+     * @return the number of exchanges whose request has been sent and which wait for their response
+     */
+    public synchronized int getActiveCount() {
+        return active;
+    }
+
+    /**
+     * @return the number of exchanges waiting for a connection
+     */
+    public synchronized int getQueuedCount() {
+        return queued;
+    }
+
+    /**
+     * @return the number of idle connections kept by the Jetty client to this destination
+     */
+    public int getIdleConnections() {
+        HttpClient c;
+        Address a;
+        boolean s;
+        synchronized (this) {
+            c = client;
+            a = address;
+            s = ssl;
+        }
+        if (c == null || a == null) {
+            return 0;
+        }
+        try {
+            return c.getDestination(a, s).getIdleConnections();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the maximum number of concurrent exchanges currently allowed to this destination
+     */
+    public synchronized int getConnectionLimit() {
+        return limit;
+    }
+
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return the average time (in milliseconds) exchanges waited for a connection
+     */
+    public synchronized double getAverageWaitTime() {
+        return committedCount == 0 ? 0 : (double) totalWaitTime / committedCount;
+    }
+
+    /**
+     * @return the longest time (in milliseconds) an exchange waited for a connection
+     */
+    public synchronized long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * @return the smoothed response time (in milliseconds), from the request being committed to
+     *         the response being complete
+     */
+    public synchronized double getAverageLatency() {
+        return averageLatency;
+    }
+
+    /**
+     * Reset the counters and wait times.  The current limit and response times are kept.
+     */
+    public synchronized void reset() {
+        committedCount = 0;
+        completedCount = 0;
+        failedCount = 0;
+        totalWaitTime = 0;
+        maxWaitTime = 0;
+    }
+
+}
@@ -20,6 +20,7 @@ import org.apache.servicemix.common.DefaultComponent;
 import org.apache.servicemix.common.JbiConstants;
 import org.apache.servicemix.common.ServiceUnit;
 import org.apache.servicemix.common.endpoints.ProviderEndpoint;
+import org.apache.servicemix.common.management.MBeanServerHelper;
 import org.apache.servicemix.common.security.KeystoreManager;
 import org.apache.servicemix.http.HttpComponent;
 import org.apache.servicemix.http.HttpConfiguration;
@@ -34,11 +35,13 @@ import org.mortbay.jetty.client.security.SimpleRealmResolver;
 import org.mortbay.resource.Resource;
 import org.mortbay.thread.QueuedThreadPool;
 
+import javax.jbi.component.ComponentContext;
 import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.NormalizedMessage;
 import javax.jbi.servicedesc.ServiceEndpoint;
+import javax.management.ObjectName;
 import javax.net.ssl.*;
 import javax.xml.namespace.QName;
 import java.io.IOException;
@@ -61,6 +64,8 @@ public class HttpProviderEndpoint extends ProviderEndpoint implements HttpEndpoi
     private int clientSoTimeout = 60000;
     private int providerExpirationTime = 300000;
     private int maxConnectionsPerAddress = 32;
+    private int minConnectionsPerAddress = 2;
+    private boolean adaptiveConnections;
     private HttpClient jettyClient;
     private boolean ownClient = false;
     private String principal;
@@ -76,6 +81,8 @@ public class HttpProviderEndpoint extends ProviderEndpoint implements HttpEndpoi
     private boolean expectGzippedResponse;
     private boolean gzipRequest;
 
+    private HttpProviderStatistics statistics;
+    private ObjectName statisticsMBeanName;
 
     public HttpProviderEndpoint() {
         super();
@@ -261,19 +268,44 @@ public class HttpProviderEndpoint extends ProviderEndpoint implements HttpEndpoi
             if (nm == null) {
                 throw new IllegalStateException("Exchange has no input message");
             }
-            SmxHttpExchange httpEx = new Exchange(exchange);
+            Exchange httpEx = new Exchange(exchange);
             marshaler.createRequest(exchange, nm, httpEx);
-            jettyClient.send(httpEx);
+            statistics.getPool(httpEx.getScheme() + "://" + httpEx.getAddress()).send(jettyClient, httpEx);
         }
     }
     
     @Override
     public synchronized void start() throws Exception {
     	getConnectionPool();
+        statistics = new HttpProviderStatistics(adaptiveConnections, minConnectionsPerAddress, maxConnectionsPerAddress,
+                                                getProviderExpirationTime());
+        ComponentContext context = getServiceUnit().getComponent().getComponentContext();
+        if (context != null && context.getMBeanServer() != null) {
+            try {
+                String name = "HttpProviderStatistics-" + getKey().replaceAll("[^\\w.-]", "_");
+                statisticsMBeanName = MBeanServerHelper.register(context.getMBeanServer(),
+                        context.getMBeanNames().createCustomComponentMBeanName(name), statistics);
+            } catch (Exception e) {
+                logger.warn("Unable to register HTTP provider statistics MBean", e);
+            }
+        }
     }
 
     @Override
     public synchronized void stop() throws Exception {
+        if (statisticsMBeanName != null) {
+            try {
+                MBeanServerHelper.unregister(getServiceUnit().getComponent().getComponentContext().getMBeanServer(),
+                                             statisticsMBeanName);
+            } catch (Exception e) {
+                logger.warn("Unable to unregister HTTP provider statistics MBean", e);
+            }
+            statisticsMBeanName = null;
+        }
+        if (statistics != null) {
+            // the exchanges still waiting for a connection would never be answered
+            statistics.close();
+        }
         if (ownClient && jettyClient != null) {
             jettyClient.stop();
             jettyClient = null;
@@ -281,6 +313,14 @@ public class HttpProviderEndpoint extends ProviderEndpoint implements HttpEndpoi
         super.stop();
     }
 
+    /**
+     * @return the statistics of the connection pools used by this endpoint, or <code>null</code>
+     *         if the endpoint has not been started
+     */
+    public HttpProviderStatistics getStatistics() {
+        return statistics;
+    }
+
     protected void handle(SmxHttpExchange httpExchange, MessageExchange exchange) throws IOException {
         try {
             marshaler.handleResponse(exchange, httpExchange);
@@ -401,6 +441,38 @@ public class HttpProviderEndpoint extends ProviderEndpoint implements HttpEndpoi
         this.maxConnectionsPerAddress = maxConnectionsPerAddress;
     }
 
+    public int getMinConnectionsPerAddress() {
+        return minConnectionsPerAddress;
+    }
+
+    /**
+     * Sets the number of concurrent exchanges per address the endpoint starts with, and never goes below,
+     * when <code>adaptiveConnections</code> is enabled.  The default value is 2.
+     *
+     * @param minConnectionsPerAddress the minConnectionsPerAddress to set
+     * @org.apache.xbean.Property description="the lowest number of concurrent exchanges per address when adaptiveConnections is enabled. The default is 2."
+     */
+    public void setMinConnectionsPerAddress(int minConnectionsPerAddress) {
+        this.minConnectionsPerAddress = minConnectionsPerAddress;
+    }
+
+    public boolean isAdaptiveConnections() {
+        return adaptiveConnections;
+    }
+
+    /**
+     * If true, the number of exchanges sent concurrently to each address is adjusted between
+     * <code>minConnectionsPerAddress</code> and <code>maxConnectionsPerAddress</code>: it grows while exchanges
+     * are queued and the response time of the address stays stable, and shrinks when the response time degrades.
+     * Exchanges above the current limit wait in the endpoint.  Defaults to false.
+     *
+     * @param adaptiveConnections if the connection limits should adapt to the response times
+     * @org.apache.xbean.Property description="if true, the number of concurrent exchanges per address adapts to the observed response times, between minConnectionsPerAddress and maxConnectionsPerAddress. The default is false."
+     */
+    public void setAdaptiveConnections(boolean adaptiveConnections) {
+        this.adaptiveConnections = adaptiveConnections;
+    }
+
     public void validate() throws DeploymentException {
         super.validate();
         if (marshaler == null) {
@@ -426,25 +498,56 @@ public class HttpProviderEndpoint extends ProviderEndpoint implements HttpEndpoi
     protected class Exchange extends SmxHttpExchange {
         MessageExchange jbiExchange;
 
+        // tracking of the exchange by the pool of its destination
+        HttpDestinationPool pool;
+        long submitTime;
+        long commitTime;
+        boolean done;
+
         public Exchange(MessageExchange jbiExchange) {
             this.jbiExchange = jbiExchange;
         }
 
+        protected void onRequestCommitted() throws IOException {
+            if (pool != null) {
+                pool.committed(this);
+            }
+        }
+
         protected void onResponseComplete() throws IOException {
+            if (pool != null) {
+                pool.completed(this, true);
+            }
             handle(this, jbiExchange);
         }
 
         protected void onConnectionFailed(Throwable throwable) {
+            if (pool != null) {
+                pool.completed(this, false);
+            }
             handleException(this, jbiExchange, throwable);
         }
 
         protected void onException(Throwable throwable) {
+            if (pool != null) {
+                pool.completed(this, false);
+            }
             handleException(this, jbiExchange, throwable);
         }
         
         protected void onExpire() {
+            if (pool != null) {
+                pool.completed(this, false);
+            }
             handleException(this, jbiExchange, new Exception("Http request expired."));
         }
+
+        /**
+         * Called when the exchange is removed from its pool before being sent
+         */
+        protected void onCancelled(Throwable throwable) {
+            handleException(this, jbiExchange, throwable);
+        }
        
     }
 
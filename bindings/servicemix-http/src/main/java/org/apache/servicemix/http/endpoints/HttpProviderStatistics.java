@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.http.endpoints;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link HttpDestinationPool}s of a HTTP provider endpoint, registered in JMX while
+ * the endpoint is started.
+ */
+public class HttpProviderStatistics implements HttpProviderStatisticsMBean {
+
+    private final ConcurrentMap<String, HttpDestinationPool> pools = new ConcurrentHashMap<String, HttpDestinationPool>();
+
+    private final boolean adaptive;
+    private final int minConnections;
+    private final int maxConnections;
+    private final long expirationTime;
+
+    public HttpProviderStatistics(boolean adaptive, int minConnections, int maxConnections) {
+        this(adaptive, minConnections, maxConnections, 0);
+    }
+
+    public HttpProviderStatistics(boolean adaptive, int minConnections, int maxConnections, long expirationTime) {
+        this.adaptive = adaptive;
+        this.minConnections = minConnections;
+        this.maxConnections = maxConnections;
+        this.expirationTime = expirationTime;
+    }
+
+    /**
+     * Get the pool of the given destination, creating it the first time
+     */
+    public HttpDestinationPool getPool(String destination) {
+        HttpDestinationPool pool = pools.get(destination);
+        if (pool == null) {
+            pool = new HttpDestinationPool(destination, adaptive, minConnections, maxConnections);
+            pool.setExpirationTime(expirationTime);
+            HttpDestinationPool existing = pools.putIfAbsent(destination, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public String[] getDestinations() {
+        return pools.keySet().toArray(new String[0]);
+    }
+
+    public Map<String, Integer> getActiveExchanges() {
+        Map<String, Integer> result = new TreeMap<String, Integer>();
+        for (HttpDestinationPool pool : pools.values()) {
+            result.put(pool.getName(), pool.getActiveCount());
+        }
+        return result;
+    }
+
+    public Map<String, Integer> getQueuedExchanges() {
+        Map<String, Integer> result = new TreeMap<String, Integer>();
+        for (HttpDestinationPool pool : pools.values()) {
+            result.put(pool.getName(), pool.getQueuedCount());
+        }
+        return result;
+    }
+
+    public Map<String, Integer> getIdleConnections() {
+        Map<String, Integer> result = new TreeMap<String, Integer>();
+        for (HttpDestinationPool pool : pools.values()) {
+            result.put(pool.getName(), pool.getIdleConnections());
+        }
+        return result;
+    }
+
+    public Map<String, Integer> getConnectionLimits() {
+        Map<String, Integer> result = new TreeMap<String, Integer>();
+        for (HttpDestinationPool pool : pools.values()) {
+            result.put(pool.getName(), pool.getConnectionLimit());
+        }
+        return result;
+    }
+
+    public Map<String, Double> getAverageWaitTimes() {
+        Map<String, Double> result = new TreeMap<String, Double>();
+        for (HttpDestinationPool pool : pools.values()) {
+            result.put(pool.getName(), pool.getAverageWaitTime());
+        }
+        return result;
+    }
+
+    public Map<String, Double> getAverageLatencies() {
+        Map<String, Double> result = new TreeMap<String, Double>();
+        for (HttpDestinationPool pool : pools.values()) {
+            result.put(pool.getName(), pool.getAverageLatency());
+        }
+        return result;
+    }
+
+    public long getMaxWaitTime(String destination) {
+        HttpDestinationPool pool = pools.get(destination);
+        return pool != null ? pool.getMaxWaitTime() : 0;
+    }
+
+    public long getCompletedExchangeCount(String destination) {
+        HttpDestinationPool pool = pools.get(destination);
+        return pool != null ? pool.getCompletedCount() : 0;
+    }
+
+    public long getFailedExchangeCount(String destination) {
+        HttpDestinationPool pool = pools.get(destination);
+        return pool != null ? pool.getFailedCount() : 0;
+    }
+
+    public void reset() {
+        for (HttpDestinationPool pool : pools.values()) {
+            pool.reset();
+        }
+    }
+
+    /**
+     * Fail the exchanges still waiting for a connection in all the pools
+     */
+    public void close() {
+        for (HttpDestinationPool pool : pools.values()) {
+            pool.close();
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.http.endpoints;
+
+import java.util.Map;
+
+/**
+ * JMX view on the connection pools used by a HTTP provider endpoint, keyed by destination
+ */
+public interface HttpProviderStatisticsMBean {
+
+    /**
+     * @return whether the connection limits are adjusted to the observed response times
+     */
+    boolean isAdaptive();
+
+    /**
+     * @return the destinations requests have been sent to
+     */
+    String[] getDestinations();
+
+    /**
+     * @return the number of exchanges waiting for their response, keyed by destination
+     */
+    Map<String, Integer> getActiveExchanges();
+
+    /**
+     * @return the number of exchanges waiting for a connection, keyed by destination
+     */
+    Map<String, Integer> getQueuedExchanges();
+
+    /**
+     * @return the number of idle connections, keyed by destination
+     */
+    Map<String, Integer> getIdleConnections();
+
+    /**
+     * @return the maximum number of concurrent exchanges, keyed by destination
+     */
+    Map<String, Integer> getConnectionLimits();
+
+    /**
+     * @return the average time (in milliseconds) exchanges waited for a connection, keyed by destination
+     */
+    Map<String, Double> getAverageWaitTimes();
+
+    /**
+     * @return the smoothed response time (in milliseconds), keyed by destination
+     */
+    Map<String, Double> getAverageLatencies();
+
+    /**
+     * @param destination the destination
+     * @return the longest time (in milliseconds) an exchange waited for a connection to the destination
+     */
+    long getMaxWaitTime(String destination);
+
+    /**
+     * @param destination the destination
+     * @return the number of exchanges completed with a response from the destination
+     */
+    long getCompletedExchangeCount(String destination);
+
+    /**
+     * @param destination the destination
+     * @return the number of exchanges to the destination which failed or expired
+     */
+    long getFailedExchangeCount(String destination);
+
+    /**
+     * Reset the counters and wait times of all destinations
+     */
+    void reset();
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.http.endpoints;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.mortbay.jetty.client.HttpClient;
+import org.mortbay.jetty.client.HttpExchange;
+
+public class HttpDestinationPoolTest extends TestCase {
+
+    private List<HttpProviderEndpoint.Exchange> sent;
+    private List<HttpProviderEndpoint.Exchange> cancelled;
+    private HttpClient client;
+    private HttpProviderEndpoint endpoint;
+
+    protected void setUp() throws Exception {
+        sent = new ArrayList<HttpProviderEndpoint.Exchange>();
+        cancelled = new ArrayList<HttpProviderEndpoint.Exchange>();
+        client = new HttpClient() {
+            public void send(HttpExchange exchange) {
+                sent.add((HttpProviderEndpoint.Exchange) exchange);
+            }
+        };
+        endpoint = new HttpProviderEndpoint();
+    }
+
+    public void testCounters() throws Exception {
+        HttpDestinationPool pool = new HttpDestinationPool("http://localhost:8192", false, 2, 32);
+        HttpProviderEndpoint.Exchange first = newExchange();
+        HttpProviderEndpoint.Exchange second = newExchange();
+        pool.send(client, first);
+        pool.send(client, second);
+        assertEquals(2, sent.size());
+        assertEquals(2, pool.getQueuedCount());
+
+        pool.committed(first);
+        assertEquals(1, pool.getActiveCount());
+        assertEquals(1, pool.getQueuedCount());
+
+        pool.completed(first, true);
+        pool.completed(second, false);
+        // a second notification for the same exchange is ignored
+        pool.completed(second, false);
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(0, pool.getQueuedCount());
+        assertEquals(1, pool.getCompletedCount());
+        assertEquals(1, pool.getFailedCount());
+        assertEquals(32, pool.getConnectionLimit());
+    }
+
+    public void testAdaptiveLimit() throws Exception {
+        HttpDestinationPool pool = new HttpDestinationPool("http://localhost:8192", true, 1, 4);
+        for (int i = 0; i < 10; i++) {
+            pool.send(client, newExchange());
+        }
+        assertEquals(1, sent.size());
+        assertEquals(10, pool.getQueuedCount());
+
+        // fast responses while exchanges are waiting let the limit grow up to the maximum
+        complete(pool, sent.get(0), 0);
+        assertEquals(2, pool.getConnectionLimit());
+        assertEquals(3, sent.size());
+        complete(pool, sent.get(1), 0);
+        complete(pool, sent.get(2), 0);
+        assertEquals(3, pool.getConnectionLimit());
+        for (int i = 3; i < 6; i++) {
+            complete(pool, sent.get(i), 0);
+        }
+        assertEquals(4, pool.getConnectionLimit());
+        assertEquals(10, sent.size());
+        assertEquals(4, pool.getActiveCount() + pool.getQueuedCount());
+
+        // slow responses make it shrink
+        for (int i = 6; i < 10; i++) {
+            complete(pool, sent.get(i), 1000);
+        }
+        assertEquals(3, pool.getConnectionLimit());
+        assertEquals(0, pool.getActiveCount() + pool.getQueuedCount());
+    }
+
+    public void testQueuedExpiration() throws Exception {
+        HttpDestinationPool pool = new HttpDestinationPool("http://localhost:8192", true, 1, 4);
+        pool.setExpirationTime(50);
+        HttpProviderEndpoint.Exchange first = newExchange();
+        HttpProviderEndpoint.Exchange second = newExchange();
+        HttpProviderEndpoint.Exchange third = newExchange();
+        pool.send(client, first);
+        pool.send(client, second);
+        pool.send(client, third);
+        assertEquals(1, sent.size());
+
+        // the exchanges waiting for longer than the expiration time are failed instead of being sent
+        second.submitTime -= 100;
+        complete(pool, first, 0);
+        assertEquals(1, cancelled.size());
+        assertSame(second, cancelled.get(0));
+        assertEquals(2, sent.size());
+        assertSame(third, sent.get(1));
+        assertEquals(1, pool.getFailedCount());
+    }
+
+    public void testClose() throws Exception {
+        HttpDestinationPool pool = new HttpDestinationPool("http://localhost:8192", true, 1, 4);
+        for (int i = 0; i < 3; i++) {
+            pool.send(client, newExchange());
+        }
+        assertEquals(1, sent.size());
+
+        // the exchanges waiting for a slot are failed, the one sent is left to the client
+        pool.close();
+        assertEquals(2, cancelled.size());
+        assertEquals(1, pool.getQueuedCount());
+        assertEquals(2, pool.getFailedCount());
+        pool.completed(sent.get(0), false);
+        assertEquals(0, pool.getQueuedCount());
+        assertEquals(1, sent.size());
+    }
+
+    private HttpProviderEndpoint.Exchange newExchange() {
+        HttpProviderEndpoint.Exchange exchange = endpoint.new Exchange(null) {
+            protected void onCancelled(Throwable throwable) {
+                cancelled.add(this);
+            }
+        };
+        exchange.setURL("http://localhost:8192/test");
+        return exchange;
+    }
+
+    private void complete(HttpDestinationPool pool, HttpProviderEndpoint.Exchange exchange, long latency) {
+        pool.committed(exchange);
+        exchange.commitTime -= latency;
+        pool.completed(exchange, true);
+    }
+
+}
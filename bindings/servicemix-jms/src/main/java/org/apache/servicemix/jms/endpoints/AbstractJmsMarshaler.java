@@ -16,13 +16,23 @@
  */
 package org.apache.servicemix.jms.endpoints;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Set;
 
 import javax.jbi.messaging.NormalizedMessage;
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.servicemix.soap.api.InterceptorChain;
+import org.apache.servicemix.soap.interceptors.xml.StaxInInterceptor;
 
 /**
  * A usefull base class for marshalers.
@@ -40,6 +50,8 @@ public abstract class AbstractJmsMarshaler {
 
     public static final String CONTENT_TYPE_PROPERTY = "SOAPJMS_contentType";
 
+    public static final String ENCODING_PROPERTY = "JBIEncoding";
+
     /**
      * Should marshaler copy properties set in messages?
      */
@@ -47,6 +59,10 @@ public abstract class AbstractJmsMarshaler {
 
     private boolean needJavaIdentifiers;
 
+    private boolean useBytesMessage;
+
+    private String encoding = "UTF-8";
+
     /**
      * a blacklist for properties which shouldn't be copied
      */
@@ -70,6 +86,103 @@ public abstract class AbstractJmsMarshaler {
         this.copyProperties = copyProperties;
     }
 
+    /**
+     * @return Returns the useBytesMessage.
+     */
+    public boolean isUseBytesMessage() {
+        return useBytesMessage;
+    }
+
+    /**
+     * Specifies whether the payload should be sent in a JMS BytesMessage, streamed
+     * directly into the message body using the configured encoding, instead of a
+     * TextMessage built from an intermediate buffer.  Incoming BytesMessages are
+     * always accepted and read lazily, whatever the value of this property.
+     *
+     * @param useBytesMessage <code>true</code> to send BytesMessages
+     */
+    public void setUseBytesMessage(boolean useBytesMessage) {
+        this.useBytesMessage = useBytesMessage;
+    }
+
+    /**
+     * @return Returns the encoding.
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * The character encoding used to write the payload of BytesMessages.
+     * It is sent along with the message in the <code>JBIEncoding</code> property.
+     * The default is <code>UTF-8</code>.
+     *
+     * @param encoding the encoding to use
+     */
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Runs the given chain to serialize the soap message and returns the resulting JMS
+     * message.  If <code>useBytesMessage</code> is set, the chain writes directly into
+     * the body of a BytesMessage, else the content is buffered to create a TextMessage.
+     *
+     * @param chain the interceptor chain writing the message content
+     * @param msg the soap message to write
+     * @param session the JMS session used to create the message
+     * @return the JMS message
+     * @throws JMSException if the message can not be created
+     */
+    protected Message writeMessage(InterceptorChain chain,
+                                   org.apache.servicemix.soap.api.Message msg,
+                                   Session session) throws JMSException {
+        Message message;
+        if (useBytesMessage) {
+            BytesMessage bytes = session.createBytesMessage();
+            msg.setContent(OutputStream.class, new BytesMessageOutputStream(bytes));
+            msg.put(StaxInInterceptor.ENCODING, encoding);
+            chain.doIntercept(msg);
+            bytes.setStringProperty(ENCODING_PROPERTY, encoding);
+            message = bytes;
+        } else {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            msg.setContent(OutputStream.class, baos);
+            chain.doIntercept(msg);
+            message = session.createTextMessage(baos.toString());
+        }
+        if (msg.get(org.apache.servicemix.soap.api.Message.CONTENT_TYPE) != null) {
+            message.setStringProperty(CONTENT_TYPE_PROPERTY,
+                                      (String) msg.get(org.apache.servicemix.soap.api.Message.CONTENT_TYPE));
+        }
+        return message;
+    }
+
+    /**
+     * Sets the body of the given JMS message as the InputStream content of the soap message.
+     * The body of a BytesMessage is not copied, but read as the content is parsed.
+     *
+     * @param message the received JMS message
+     * @param msg the soap message to populate
+     * @throws JMSException if the message can not be read
+     * @throws UnsupportedOperationException if the message is neither a TextMessage nor a BytesMessage
+     */
+    protected void readMessage(Message message, org.apache.servicemix.soap.api.Message msg) throws JMSException {
+        if (message instanceof TextMessage) {
+            msg.setContent(InputStream.class, new ByteArrayInputStream(((TextMessage) message).getText().getBytes()));
+        } else if (message instanceof BytesMessage) {
+            msg.setContent(InputStream.class, new BytesMessageInputStream((BytesMessage) message));
+            if (message.propertyExists(ENCODING_PROPERTY)) {
+                msg.put(StaxInInterceptor.ENCODING, message.getStringProperty(ENCODING_PROPERTY));
+            }
+        } else {
+            throw new UnsupportedOperationException("JMS message is not a TextMessage nor a BytesMessage");
+        }
+        if (message.propertyExists(CONTENT_TYPE_PROPERTY)) {
+            msg.put(org.apache.servicemix.soap.api.Message.CONTENT_TYPE, message.getStringProperty(CONTENT_TYPE_PROPERTY));
+        }
+    }
+
     /**
      * Copy properties from JMS message to JBI message.
      * 
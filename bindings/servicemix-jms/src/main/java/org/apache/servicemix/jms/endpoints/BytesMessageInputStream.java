@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.jms.endpoints;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+/**
+ * An InputStream reading the body of a JMS BytesMessage as it is consumed,
+ * without copying it into an intermediate buffer.
+ */
+public class BytesMessageInputStream extends InputStream {
+
+    private final BytesMessage message;
+
+    private byte[] buffer;
+
+    public BytesMessageInputStream(BytesMessage message) {
+        this.message = message;
+    }
+
+    public int read() throws IOException {
+        byte[] b = getBuffer(1);
+        return read(b, 0, 1) <= 0 ? -1 : b[0] & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        try {
+            if (off == 0) {
+                return message.readBytes(b, len);
+            }
+            // BytesMessage can only fill an array from its start
+            byte[] buf = getBuffer(len);
+            int nb = message.readBytes(buf, len);
+            if (nb > 0) {
+                System.arraycopy(buf, 0, b, off, nb);
+            }
+            return nb;
+        } catch (JMSException e) {
+            IOException ioe = new IOException("Unable to read JMS message body: " + e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    private byte[] getBuffer(int size) {
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[size];
+        }
+        return buffer;
+    }
+
+}
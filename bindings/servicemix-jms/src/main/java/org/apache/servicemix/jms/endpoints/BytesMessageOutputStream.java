@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.jms.endpoints;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+/**
+ * An OutputStream writing directly into the body of a JMS BytesMessage.
+ */
+public class BytesMessageOutputStream extends OutputStream {
+
+    private final BytesMessage message;
+
+    public BytesMessageOutputStream(BytesMessage message) {
+        this.message = message;
+    }
+
+    public void write(int b) throws IOException {
+        try {
+            message.writeByte((byte) b);
+        } catch (JMSException e) {
+            throw createIOException(e);
+        }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        try {
+            message.writeBytes(b, off, len);
+        } catch (JMSException e) {
+            throw createIOException(e);
+        }
+    }
+
+    private IOException createIOException(JMSException e) {
+        IOException ioe = new IOException("Unable to write JMS message body: " + e.getMessage());
+        ioe.initCause(e);
+        return ioe;
+    }
+
+}
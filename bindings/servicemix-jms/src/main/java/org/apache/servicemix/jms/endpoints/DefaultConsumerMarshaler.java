@@ -16,13 +16,9 @@
  */
 package org.apache.servicemix.jms.endpoints;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.URI;
 import java.util.Map;
@@ -36,11 +32,11 @@ import javax.jbi.messaging.NormalizedMessage;
 import javax.jms.Message;
 import javax.jms.ObjectMessage;
 import javax.jms.Session;
-import javax.jms.TextMessage;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.Source;
 
 import org.apache.servicemix.common.JbiConstants;
+import org.apache.servicemix.soap.api.InterceptorChain;
 import org.apache.servicemix.soap.core.MessageImpl;
 import org.apache.servicemix.soap.core.PhaseInterceptorChain;
 import org.apache.servicemix.soap.interceptors.mime.AttachmentsInInterceptor;
@@ -51,6 +47,9 @@ import org.apache.servicemix.soap.interceptors.xml.StaxOutInterceptor;
 import org.apache.servicemix.soap.util.stax.StaxSource;
 
 public class DefaultConsumerMarshaler extends AbstractJmsMarshaler implements JmsConsumerMarshaler {
+
+    private static final InterceptorChain OUT_CHAIN = createOutChain();
+    private static final InterceptorChain IN_CHAIN = createInChain();
     
     private URI mep;
     private boolean rollbackOnError;
@@ -121,52 +120,30 @@ public class DefaultConsumerMarshaler extends AbstractJmsMarshaler implements Jm
     }
 
     public Message createOut(MessageExchange exchange, NormalizedMessage outMsg, Session session, JmsContext context) throws Exception {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PhaseInterceptorChain chain = new PhaseInterceptorChain();
-        chain.add(new AttachmentsOutInterceptor());
-        chain.add(new StaxOutInterceptor());
-        chain.add(new BodyOutInterceptor());
         org.apache.servicemix.soap.api.Message msg = new MessageImpl();
         msg.setContent(Source.class, outMsg.getContent());
-        msg.setContent(OutputStream.class, baos);
         for (String attId : (Set<String>) outMsg.getAttachmentNames()) {
             msg. getAttachments().put(attId, outMsg.getAttachment(attId));
         }
-        chain.doIntercept(msg);
-        TextMessage text = session.createTextMessage(baos.toString());
-        if (msg.get(org.apache.servicemix.soap.api.Message.CONTENT_TYPE) != null) {
-            text.setStringProperty(CONTENT_TYPE_PROPERTY,
-                                   (String) msg.get(org.apache.servicemix.soap.api.Message.CONTENT_TYPE));
-        }
+        Message jmsMessage = writeMessage(OUT_CHAIN, msg, session);
         if (isCopyProperties()) {
-            copyPropertiesFromNM(outMsg, text);
+            copyPropertiesFromNM(outMsg, jmsMessage);
         }
-        return text;
+        return jmsMessage;
     }
 
     public Message createFault(MessageExchange exchange, Fault fault, Session session, JmsContext context) throws Exception {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PhaseInterceptorChain chain = new PhaseInterceptorChain();
-        chain.add(new AttachmentsOutInterceptor());
-        chain.add(new StaxOutInterceptor());
-        chain.add(new BodyOutInterceptor());
         org.apache.servicemix.soap.api.Message msg = new MessageImpl();
         msg.setContent(Source.class, fault.getContent());
-        msg.setContent(OutputStream.class, baos);
         for (String attId : (Set<String>) fault.getAttachmentNames()) {
             msg. getAttachments().put(attId, fault.getAttachment(attId));
         }
-        chain.doIntercept(msg);
-        TextMessage text = session.createTextMessage(baos.toString());
-        if (msg.get(org.apache.servicemix.soap.api.Message.CONTENT_TYPE) != null) {
-            text.setStringProperty(CONTENT_TYPE_PROPERTY,
-                                   (String) msg.get(org.apache.servicemix.soap.api.Message.CONTENT_TYPE));
-        }
-        text.setBooleanProperty(FAULT_JMS_PROPERTY, true);
+        Message jmsMessage = writeMessage(OUT_CHAIN, msg, session);
+        jmsMessage.setBooleanProperty(FAULT_JMS_PROPERTY, true);
         if (isCopyProperties()) {
-            copyPropertiesFromNM(fault, text);
+            copyPropertiesFromNM(fault, jmsMessage);
         }
-        return text;
+        return jmsMessage;
     }
 
     public Message createError(MessageExchange exchange, Exception error, Session session, JmsContext context) throws Exception {
@@ -180,23 +157,13 @@ public class DefaultConsumerMarshaler extends AbstractJmsMarshaler implements Jm
     }
 
     protected void populateMessage(Message message, NormalizedMessage normalizedMessage) throws Exception {
-        if (message instanceof TextMessage) {
-            PhaseInterceptorChain chain = new PhaseInterceptorChain();
-            chain.add(new AttachmentsInInterceptor());
-            chain.add(new StaxInInterceptor());
-            org.apache.servicemix.soap.api.Message msg = new MessageImpl();
-            msg.setContent(InputStream.class, new ByteArrayInputStream(((TextMessage) message).getText().getBytes()));
-            if (message.propertyExists(CONTENT_TYPE_PROPERTY)) {
-                msg.put(org.apache.servicemix.soap.api.Message.CONTENT_TYPE, message.getStringProperty(CONTENT_TYPE_PROPERTY));
-            }
-            chain.doIntercept(msg);
-            XMLStreamReader xmlReader = msg.getContent(XMLStreamReader.class);
-            normalizedMessage.setContent(new StaxSource(xmlReader));
-            for (Map.Entry<String, DataHandler> attachment : msg.getAttachments().entrySet()) {
-                normalizedMessage.addAttachment(attachment.getKey(), attachment.getValue());
-            }
-        } else {
-            throw new UnsupportedOperationException("JMS message is not a TextMessage");
+        org.apache.servicemix.soap.api.Message msg = new MessageImpl();
+        readMessage(message, msg);
+        IN_CHAIN.doIntercept(msg);
+        XMLStreamReader xmlReader = msg.getContent(XMLStreamReader.class);
+        normalizedMessage.setContent(new StaxSource(xmlReader));
+        for (Map.Entry<String, DataHandler> attachment : msg.getAttachments().entrySet()) {
+            normalizedMessage.addAttachment(attachment.getKey(), attachment.getValue());
         }
     }
 
@@ -216,4 +183,19 @@ public class DefaultConsumerMarshaler extends AbstractJmsMarshaler implements Jm
         }
     }
 
+    private static InterceptorChain createOutChain() {
+        PhaseInterceptorChain chain = new PhaseInterceptorChain();
+        chain.add(new AttachmentsOutInterceptor());
+        chain.add(new StaxOutInterceptor());
+        chain.add(new BodyOutInterceptor());
+        return chain.compile();
+    }
+
+    private static InterceptorChain createInChain() {
+        PhaseInterceptorChain chain = new PhaseInterceptorChain();
+        chain.add(new AttachmentsInInterceptor());
+        chain.add(new StaxInInterceptor());
+        return chain.compile();
+    }
+
 }
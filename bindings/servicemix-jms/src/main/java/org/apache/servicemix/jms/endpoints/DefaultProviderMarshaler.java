@@ -19,22 +19,18 @@ package org.apache.servicemix.jms.endpoints;
 import java.util.Map;
 import java.util.List;
 import java.util.Set;
-import java.io.InputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStream;
 
 import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.NormalizedMessage;
 import javax.jms.Message;
 import javax.jms.Session;
-import javax.jms.TextMessage;
 import javax.xml.transform.Source;
 import javax.xml.stream.XMLStreamReader;
 import javax.activation.DataHandler;
 
 import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 import org.apache.servicemix.jbi.jaxp.StringSource;
+import org.apache.servicemix.soap.api.InterceptorChain;
 import org.apache.servicemix.soap.core.PhaseInterceptorChain;
 import org.apache.servicemix.soap.core.MessageImpl;
 import org.apache.servicemix.soap.interceptors.mime.AttachmentsInInterceptor;
@@ -47,6 +43,9 @@ import org.apache.servicemix.soap.util.stax.StaxSource;
 public class DefaultProviderMarshaler extends AbstractJmsMarshaler implements
     JmsProviderMarshaler {
 
+    private static final InterceptorChain OUT_CHAIN = createOutChain();
+    private static final InterceptorChain IN_CHAIN = createInChain();
+
     private Map<String, Object> jmsProperties;
     private SourceTransformer transformer = new SourceTransformer();
 
@@ -65,58 +64,52 @@ public class DefaultProviderMarshaler extends AbstractJmsMarshaler implements
     }
 
     public Message createMessage(MessageExchange exchange, NormalizedMessage in, Session session) throws Exception {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PhaseInterceptorChain chain = new PhaseInterceptorChain();
-        chain.add(new AttachmentsOutInterceptor());
-        chain.add(new StaxOutInterceptor());
-        chain.add(new BodyOutInterceptor());
         org.apache.servicemix.soap.api.Message msg = new MessageImpl();
         msg.setContent(Source.class, in.getContent());
-        msg.setContent(OutputStream.class, baos);
         for (String attId : (Set<String>) in.getAttachmentNames()) {
             msg. getAttachments().put(attId, in.getAttachment(attId));
         }
-        chain.doIntercept(msg);
-        TextMessage text = session.createTextMessage(baos.toString());
-        if (msg.get(org.apache.servicemix.soap.api.Message.CONTENT_TYPE) != null) {
-            text.setStringProperty(CONTENT_TYPE_PROPERTY,
-                                   (String) msg.get(org.apache.servicemix.soap.api.Message.CONTENT_TYPE));
-        }
+        Message jmsMessage = writeMessage(OUT_CHAIN, msg, session);
         if (jmsProperties != null) {
             for (Map.Entry<String, Object> e : jmsProperties.entrySet()) {
-                text.setObjectProperty(e.getKey(), e.getValue());
+                jmsMessage.setObjectProperty(e.getKey(), e.getValue());
             }
         }
 
         if (isCopyProperties()) {
-            copyPropertiesFromNM(in, text);
+            copyPropertiesFromNM(in, jmsMessage);
         }
 
-        return text;
+        return jmsMessage;
     }
 
     public void populateMessage(Message message, MessageExchange exchange, NormalizedMessage normalizedMessage) throws Exception {
-        if (message instanceof TextMessage) {
-            PhaseInterceptorChain chain = new PhaseInterceptorChain();
-            chain.add(new AttachmentsInInterceptor());
-            chain.add(new StaxInInterceptor());
-            org.apache.servicemix.soap.api.Message msg = new MessageImpl();
-            msg.setContent(InputStream.class, new ByteArrayInputStream(((TextMessage) message).getText().getBytes()));
-            if (message.propertyExists(CONTENT_TYPE_PROPERTY)) {
-                msg.put(org.apache.servicemix.soap.api.Message.CONTENT_TYPE, message.getStringProperty(CONTENT_TYPE_PROPERTY));
-            }
-            chain.doIntercept(msg);
-            XMLStreamReader xmlReader = msg.getContent(XMLStreamReader.class);
-            normalizedMessage.setContent(new StaxSource(xmlReader));
-            for (Map.Entry<String, DataHandler> attachment : msg.getAttachments().entrySet()) {
-                normalizedMessage.addAttachment(attachment.getKey(), attachment.getValue());
-            }
-            if (isCopyProperties()) {
-                copyPropertiesFromJMS(message, normalizedMessage);
-            }
-        } else {
-            throw new UnsupportedOperationException("JMS message is not a TextMessage");
+        org.apache.servicemix.soap.api.Message msg = new MessageImpl();
+        readMessage(message, msg);
+        IN_CHAIN.doIntercept(msg);
+        XMLStreamReader xmlReader = msg.getContent(XMLStreamReader.class);
+        normalizedMessage.setContent(new StaxSource(xmlReader));
+        for (Map.Entry<String, DataHandler> attachment : msg.getAttachments().entrySet()) {
+            normalizedMessage.addAttachment(attachment.getKey(), attachment.getValue());
         }
+        if (isCopyProperties()) {
+            copyPropertiesFromJMS(message, normalizedMessage);
+        }
+    }
+
+    private static InterceptorChain createOutChain() {
+        PhaseInterceptorChain chain = new PhaseInterceptorChain();
+        chain.add(new AttachmentsOutInterceptor());
+        chain.add(new StaxOutInterceptor());
+        chain.add(new BodyOutInterceptor());
+        return chain.compile();
+    }
+
+    private static InterceptorChain createInChain() {
+        PhaseInterceptorChain chain = new PhaseInterceptorChain();
+        chain.add(new AttachmentsInInterceptor());
+        chain.add(new StaxInInterceptor());
+        return chain.compile();
     }
 
 }
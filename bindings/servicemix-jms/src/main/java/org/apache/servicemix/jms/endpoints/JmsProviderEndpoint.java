@@ -16,6 +16,14 @@
  */
 package org.apache.servicemix.jms.endpoints;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+
 import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.Fault;
@@ -25,6 +33,7 @@ import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.NormalizedMessage;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
+import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -53,6 +62,10 @@ import org.apache.servicemix.jms.JmsEndpointType;
 import org.apache.servicemix.store.Store;
 import org.apache.servicemix.store.StoreFactory;
 import org.apache.servicemix.store.memory.MemoryStoreFactory;
+import org.apache.servicemix.timers.Timer;
+import org.apache.servicemix.timers.TimerListener;
+import org.apache.servicemix.timers.TimerManager;
+import org.apache.servicemix.timers.impl.TimerManagerImpl;
 import org.springframework.jms.JmsException;
 import org.springframework.jms.UncategorizedJmsException;
 import org.springframework.jms.connection.JmsResourceHolder;
@@ -78,6 +91,7 @@ public class JmsProviderEndpoint extends ProviderEndpoint implements JmsEndpoint
 
     private static final String MSG_SELECTOR_START = "JMSCorrelationID='";
     private static final String MSG_SELECTOR_END = "'";
+    private static final long DEFAULT_REPLY_TIMEOUT = 60000L;
 
     private JmsProviderMarshaler marshaler;
     private DestinationChooser destinationChooser = new SimpleDestinationChooser();
@@ -109,6 +123,15 @@ public class JmsProviderEndpoint extends ProviderEndpoint implements JmsEndpoint
     
     private boolean preserveMessageQos;
 
+    private boolean sharedReplyDestination;
+    private long replyTimeout = DEFAULT_REPLY_TIMEOUT;
+    private TimerManager timerManager;
+    private ConcurrentMap<String, Timer> replyTimers = new ConcurrentHashMap<String, Timer>();
+    // the shared reply destination each pending exchange waits on, keyed by correlation ID
+    private ConcurrentMap<String, Destination> sharedReplies = new ConcurrentHashMap<String, Destination>();
+    private Connection replyConnection;
+    private Destination sharedReplyDest;
+
     /**
      * @return the destination
      */
@@ -491,6 +514,62 @@ public class JmsProviderEndpoint extends ProviderEndpoint implements JmsEndpoint
     	this.preserveMessageQos = preserveMessageQos;
     }
 
+    /**
+     * @return the sharedReplyDestination
+     */
+    public boolean isSharedReplyDestination() {
+        return sharedReplyDestination;
+    }
+
+    /**
+     * Specifies whether InOut exchanges for which no reply destination has been
+     * configured or chosen should use a temporary destination shared by all
+     * requests of this endpoint, instead of creating a temporary destination and
+     * blocking the calling thread for each request.  Replies are received by a
+     * single long-lived consumer and matched to the pending exchanges using their
+     * JMS correlation ID.  The default is <code>false</code>.
+     *
+     * @param sharedReplyDestination use a shared temporary reply destination?
+     */
+    public void setSharedReplyDestination(boolean sharedReplyDestination) {
+        this.sharedReplyDestination = sharedReplyDestination;
+    }
+
+    /**
+     * @return the replyTimeout
+     */
+    public long getReplyTimeout() {
+        return replyTimeout;
+    }
+
+    /**
+     * Specifies the number of milliseconds to wait for a reply on the shared reply
+     * destination before the exchange is failed with a <code>TimeoutException</code>.
+     * It must be greater than <code>0</code>, the default is one minute.
+     *
+     * @param replyTimeout milliseconds to wait for a reply
+     */
+    public void setReplyTimeout(long replyTimeout) {
+        this.replyTimeout = replyTimeout;
+    }
+
+    /**
+     * @return the timerManager
+     */
+    public TimerManager getTimerManager() {
+        return timerManager;
+    }
+
+    /**
+     * The timer manager used to schedule reply timeouts.  If none is explicitely
+     * configured, a default implementation will be created when needed.
+     *
+     * @param timerManager the timerManager to set
+     */
+    public void setTimerManager(TimerManager timerManager) {
+        this.timerManager = timerManager;
+    }
+
     /**
      * Process the incoming JBI exchange
      * @param exchange
@@ -645,6 +724,8 @@ public class JmsProviderEndpoint extends ProviderEndpoint implements JmsEndpoint
         boolean useSelector = true;
         // Indicate whether the replyTo destination is temporary or explicitely specified replyTo destination
         boolean isReplyDestTemporary = false;
+        // Indicate whether the reply will be received by the consumer of the shared reply destination
+        boolean shared = false;
         Destination replyDest = chooseDestination(exchange, in, session, replyDestinationChooser, null);
         if (replyDest == null) {
             useSelector = false;
@@ -652,6 +733,10 @@ public class JmsProviderEndpoint extends ProviderEndpoint implements JmsEndpoint
                                           replyDestination != null ? replyDestination : replyDestinationName);
             if (replyDest != null) {
                 asynchronous = true;
+            } else if (sharedReplyDestination) {
+                replyDest = getSharedReplyDestination();
+                asynchronous = true;
+                shared = true;
             } else {
                 if (isPubSubDomain()) {
                     replyDest = session.createTemporaryTopic();
@@ -669,19 +754,29 @@ public class JmsProviderEndpoint extends ProviderEndpoint implements JmsEndpoint
         sendJmsMsg.setJMSCorrelationID(correlationId);
 
         if (asynchronous) {
-            createAndStartListener();
+            if (!shared) {
+                createAndStartListener();
+            }
             store.store(correlationId, exchange);
         }
 
         try {
+            if (shared) {
+                waitSharedReply(correlationId, replyDest);
+            }
             send(session, dest, sendJmsMsg);
         } catch (Exception e) {
             if (asynchronous) {
-                store.load(exchange.getExchangeId());
+                sharedReplies.remove(correlationId);
+                store.load(correlationId);
             }
             throw e;
         }
 
+        if (shared) {
+            scheduleReplyTimeout(correlationId);
+        }
+
         if (!asynchronous) {
             // Create selector
             String selector = useSelector ? (MSG_SELECTOR_START + sendJmsMsg.getJMSCorrelationID() + MSG_SELECTOR_END) : null;
@@ -755,12 +850,21 @@ public class JmsProviderEndpoint extends ProviderEndpoint implements JmsEndpoint
     protected void onMessage(Message message) {
         MessageExchange exchange = null;
         try {
-            exchange = (InOut) store.load(message.getJMSCorrelationID());
+            String correlationId = message.getJMSCorrelationID();
+            Timer timer = correlationId != null ? replyTimers.remove(correlationId) : null;
+            if (timer != null) {
+                timer.cancel();
+            }
+            if (correlationId != null) {
+                sharedReplies.remove(correlationId);
+            }
+            exchange = (InOut) store.load(correlationId);
             if (exchange == null) {
-                throw new IllegalStateException("Could not find exchange " + message.getJMSCorrelationID());
+                throw new IllegalStateException("Could not find exchange " + correlationId);
             }
         } catch (Exception e) {
             logger.error("Unable to load exchange related to incoming JMS message {}", message, e);
+            return;
         }
         try {
             if (message.getBooleanProperty(AbstractJmsMarshaler.DONE_JMS_PROPERTY)) {
@@ -802,6 +906,127 @@ public class JmsProviderEndpoint extends ProviderEndpoint implements JmsEndpoint
         }
     }
 
+    /**
+     * Returns the temporary destination shared by all InOut exchanges of this endpoint,
+     * creating it along with its consumer on a dedicated connection if needed.
+     *
+     * @return the shared reply destination
+     * @throws JMSException
+     */
+    protected synchronized Destination getSharedReplyDestination() throws JMSException {
+        if (sharedReplyDest == null) {
+            Connection con = connectionFactory.createConnection();
+            Destination dest;
+            try {
+                Session session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                dest = isPubSubDomain() ? session.createTemporaryTopic() : session.createTemporaryQueue();
+                MessageConsumer consumer = session.createConsumer(dest);
+                consumer.setMessageListener(new MessageListener() {
+                    public void onMessage(Message message) {
+                        JmsProviderEndpoint.this.onMessage(message);
+                    }
+                });
+                con.setExceptionListener(new ExceptionListener() {
+                    public void onException(JMSException e) {
+                        logger.warn("Shared reply connection failed, it will be recreated for the next request", e);
+                        closeSharedReplyDestination();
+                    }
+                });
+                con.start();
+            } catch (JMSException e) {
+                con.close();
+                throw e;
+            }
+            replyConnection = con;
+            sharedReplyDest = dest;
+        }
+        return sharedReplyDest;
+    }
+
+    /**
+     * Closes the shared reply destination and fails the exchanges still waiting
+     * for a reply on it, as these replies can not be received anymore.
+     */
+    protected void closeSharedReplyDestination() {
+        List<String> pending = new ArrayList<String>();
+        synchronized (this) {
+            if (replyConnection == null) {
+                return;
+            }
+            try {
+                replyConnection.close();
+            } catch (JMSException e) {
+                logger.debug("Error closing shared reply connection", e);
+            }
+            for (Map.Entry<String, Destination> entry : sharedReplies.entrySet()) {
+                if (entry.getValue() == sharedReplyDest && sharedReplies.remove(entry.getKey(), sharedReplyDest)) {
+                    pending.add(entry.getKey());
+                }
+            }
+            replyConnection = null;
+            sharedReplyDest = null;
+        }
+        for (String correlationId : pending) {
+            Timer timer = replyTimers.remove(correlationId);
+            if (timer != null) {
+                timer.cancel();
+            }
+            try {
+                MessageExchange exchange = (MessageExchange) store.load(correlationId);
+                if (exchange != null) {
+                    fail(exchange, new JMSException("Shared reply destination closed before the reply was received"));
+                }
+            } catch (Exception e) {
+                logger.error("Unable to fail exchange waiting on the closed shared reply destination for correlation ID {}",
+                             correlationId, e);
+            }
+        }
+    }
+
+    /**
+     * Registers an exchange as waiting for its reply on the given shared reply destination,
+     * so that it is failed if this destination is closed.
+     *
+     * @param correlationId the JMS correlation ID of the request
+     * @param replyDest the shared reply destination set as <code>JMSReplyTo</code>
+     * @throws JMSException if the destination has been closed in the meantime
+     */
+    protected synchronized void waitSharedReply(String correlationId, Destination replyDest) throws JMSException {
+        if (replyDest != sharedReplyDest) {
+            throw new JMSException("Shared reply destination closed before the request was sent");
+        }
+        sharedReplies.put(correlationId, replyDest);
+    }
+
+    /**
+     * Fail the exchange waiting for the given correlation ID if no reply is
+     * received in time on the shared reply destination.
+     *
+     * @param correlationId the JMS correlation ID of the request
+     * @throws Exception
+     */
+    protected void scheduleReplyTimeout(final String correlationId) throws Exception {
+        Timer timer = timerManager.schedule(new TimerListener() {
+            public void timerExpired(Timer timer) {
+                replyTimers.remove(correlationId);
+                onReplyTimeout(correlationId);
+            }
+        }, new Date(System.currentTimeMillis() + replyTimeout));
+        replyTimers.put(correlationId, timer);
+    }
+
+    protected void onReplyTimeout(String correlationId) {
+        sharedReplies.remove(correlationId);
+        try {
+            MessageExchange exchange = (MessageExchange) store.load(correlationId);
+            if (exchange != null) {
+                fail(exchange, new TimeoutException("No reply received after " + replyTimeout + " ms"));
+            }
+        } catch (Exception e) {
+            logger.error("Unable to fail exchange after reply timeout for correlation ID {}", correlationId, e);
+        }
+    }
+
     /**
      * Retrieve the destination where the JMS message should be sent to.
      *
@@ -868,6 +1093,12 @@ public class JmsProviderEndpoint extends ProviderEndpoint implements JmsEndpoint
             }
             store = storeFactory.open(getService().toString() + getEndpoint());
         }
+        if (sharedReplyDestination) {
+            if (timerManager == null) {
+                timerManager = new TimerManagerImpl();
+            }
+            timerManager.start();
+        }
         template = createTemplate();
     }
 
@@ -890,6 +1121,15 @@ public class JmsProviderEndpoint extends ProviderEndpoint implements JmsEndpoint
             listenerContainer.shutdown();
             listenerContainer = null;
         }
+        closeSharedReplyDestination();
+        if (timerManager != null) {
+            timerManager.stop();
+        }
+        for (Timer timer : replyTimers.values()) {
+            timer.cancel();
+        }
+        replyTimers.clear();
+        sharedReplies.clear();
         if (store != null) {
             if (storeFactory != null) {
                 storeFactory.close(store);
@@ -918,6 +1158,12 @@ public class JmsProviderEndpoint extends ProviderEndpoint implements JmsEndpoint
         if (getConnectionFactory() == null) {
             throw new DeploymentException("connectionFactory is required");
         }
+        if (isSharedReplyDestination() && isJms102()) {
+            throw new DeploymentException("sharedReplyDestination is not supported with JMS 1.0.2");
+        }
+        if (isSharedReplyDestination() && getReplyTimeout() <= 0) {
+            throw new DeploymentException("replyTimeout must be greater than 0 with sharedReplyDestination");
+        }
     }
 
     /**
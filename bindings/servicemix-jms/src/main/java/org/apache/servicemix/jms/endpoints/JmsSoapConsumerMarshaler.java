@@ -21,6 +21,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.jbi.component.ComponentContext;
 import javax.jbi.messaging.Fault;
@@ -40,6 +42,7 @@ import org.apache.servicemix.soap.api.Policy;
 import org.apache.servicemix.soap.api.model.Binding;
 import org.apache.servicemix.soap.bindings.soap.SoapFault;
 import org.apache.servicemix.soap.bindings.soap.SoapVersion;
+import org.apache.servicemix.soap.core.CompiledInterceptorChain;
 import org.apache.servicemix.soap.interceptors.jbi.JbiConstants;
 
 public class JmsSoapConsumerMarshaler implements JmsConsumerMarshaler {
@@ -49,6 +52,7 @@ public class JmsSoapConsumerMarshaler implements JmsConsumerMarshaler {
     private Policy[] policies;
     private boolean rollbackOnError = true;
     private SourceTransformer sourceTransformer = new SourceTransformer();
+    private final Map<Phase, InterceptorChain> chains = new ConcurrentHashMap<Phase, InterceptorChain>();
     /**
      * @return the binding
      */
@@ -61,6 +65,7 @@ public class JmsSoapConsumerMarshaler implements JmsConsumerMarshaler {
      */
     public void setBinding(Binding<?> binding) {
         this.binding = binding;
+        this.chains.clear();
     }
 
     /**
@@ -75,6 +80,7 @@ public class JmsSoapConsumerMarshaler implements JmsConsumerMarshaler {
      */
     public void setPolicies(Policy[] policies) {
         this.policies = policies;
+        this.chains.clear();
     }
 
     /**
@@ -178,14 +184,24 @@ public class JmsSoapConsumerMarshaler implements JmsConsumerMarshaler {
         }
     }
 
+    /**
+     * Returns the interceptor chain for the given phase.  The interceptors of the
+     * binding and policies are only ordered the first time a phase is used: the
+     * resulting immutable chain is then shared by all subsequent messages.
+     */
     protected InterceptorChain getChain(Phase phase) {
-        InterceptorChain chain = binding.getInterceptorChain(phase);
-        if (policies != null) {
-            for (int i = 0; i < policies.length; i++) {
-                chain.add(policies[i].getInterceptors(phase));
+        InterceptorChain compiled = chains.get(phase);
+        if (compiled == null) {
+            InterceptorChain chain = binding.getInterceptorChain(phase);
+            if (policies != null) {
+                for (int i = 0; i < policies.length; i++) {
+                    chain.add(policies[i].getInterceptors(phase));
+                }
             }
+            compiled = new CompiledInterceptorChain(chain.getInterceptors());
+            chains.put(phase, compiled);
         }
-        return chain;
+        return compiled;
     }
 
     protected static class Context implements JmsContext, Serializable {
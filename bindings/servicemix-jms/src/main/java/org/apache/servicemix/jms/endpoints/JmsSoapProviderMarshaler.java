@@ -20,6 +20,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.NormalizedMessage;
@@ -34,6 +36,7 @@ import org.apache.servicemix.soap.api.InterceptorChain;
 import org.apache.servicemix.soap.api.InterceptorProvider.Phase;
 import org.apache.servicemix.soap.api.Policy;
 import org.apache.servicemix.soap.api.model.Binding;
+import org.apache.servicemix.soap.core.CompiledInterceptorChain;
 import org.apache.servicemix.soap.interceptors.jbi.JbiConstants;
 
 public class JmsSoapProviderMarshaler implements JmsProviderMarshaler {
@@ -43,6 +46,7 @@ public class JmsSoapProviderMarshaler implements JmsProviderMarshaler {
     private Policy[] policies;
     private String baseUrl;
     private SourceTransformer sourceTransformer = new SourceTransformer();
+    private final Map<Phase, InterceptorChain> chains = new ConcurrentHashMap<Phase, InterceptorChain>();
     
     public Binding<?> getBinding() {
         return binding;
@@ -50,6 +54,7 @@ public class JmsSoapProviderMarshaler implements JmsProviderMarshaler {
 
     public void setBinding(Binding<?> binding) {
         this.binding = binding;
+        this.chains.clear();
     }
 
     public String getBaseUrl() {
@@ -74,6 +79,7 @@ public class JmsSoapProviderMarshaler implements JmsProviderMarshaler {
 
     public void setPolicies(Policy[] policies) {
         this.policies = policies;
+        this.chains.clear();
     }
 
     public Message createMessage(MessageExchange exchange, NormalizedMessage in, Session session) throws Exception {
@@ -112,14 +118,24 @@ public class JmsSoapProviderMarshaler implements JmsProviderMarshaler {
         phaseIn.doIntercept(msg);
     }
 
+    /**
+     * Returns the interceptor chain for the given phase.  The interceptors of the
+     * binding and policies are only ordered the first time a phase is used: the
+     * resulting immutable chain is then shared by all subsequent messages.
+     */
     protected InterceptorChain getChain(Phase phase) {
-        InterceptorChain chain = binding.getInterceptorChain(phase);
-        if (policies != null) {
-            for (int i = 0; i < policies.length; i++) {
-                chain.add(policies[i].getInterceptors(phase));
+        InterceptorChain compiled = chains.get(phase);
+        if (compiled == null) {
+            InterceptorChain chain = binding.getInterceptorChain(phase);
+            if (policies != null) {
+                for (int i = 0; i < policies.length; i++) {
+                    chain.add(policies[i].getInterceptors(phase));
+                }
             }
+            compiled = new CompiledInterceptorChain(chain.getInterceptors());
+            chains.put(phase, compiled);
         }
-        return chain;
+        return compiled;
     }
 
 }
@@ -17,14 +17,18 @@
 package org.apache.servicemix.jms;
 
 import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.Calendar;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeoutException;
 
+import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.InOnly;
 import javax.jbi.messaging.InOut;
 import javax.jbi.messaging.NormalizedMessage;
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
@@ -35,6 +39,7 @@ import org.apache.servicemix.common.JbiConstants;
 import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 import org.apache.servicemix.jbi.jaxp.StringSource;
 import org.apache.servicemix.jbi.util.FileUtil;
+import org.apache.servicemix.jms.endpoints.AbstractJmsMarshaler;
 import org.apache.servicemix.jms.endpoints.DefaultProviderMarshaler;
 import org.apache.servicemix.jms.endpoints.JmsProviderEndpoint;
 import org.apache.servicemix.jms.endpoints.JmsSoapProviderEndpoint;
@@ -190,6 +195,172 @@ public class JmsProviderEndpointTest extends AbstractJmsTestSupport {
         client.done(me);
     }
 
+    public void testProviderInOutWithSharedReplyDest() throws Exception {
+        JmsComponent component = new JmsComponent();
+
+        JmsProviderEndpoint endpoint = new JmsProviderEndpoint();
+        endpoint.setService(new QName("uri:HelloWorld", "HelloService"));
+        endpoint.setEndpoint("HelloPort");
+        endpoint.setDestinationName("destination");
+        endpoint.setConnectionFactory(connectionFactory);
+        endpoint.setSharedReplyDestination(true);
+        component.setEndpoints(new JmsProviderEndpoint[] {endpoint});
+        container.activateComponent(component, "servicemix-jms");
+
+        Thread th = new Thread() {
+            public void run() {
+                try {
+                    for (int i = 0; i < 2; i++) {
+                        final Message msg = jmsTemplate.receive("destination");
+                        assertNotNull(msg);
+                        jmsTemplate.send(msg.getJMSReplyTo(), new MessageCreator() {
+                            public Message createMessage(Session session) throws JMSException {
+                                TextMessage rep = session.createTextMessage("<hello>world</hello>");
+                                rep.setJMSCorrelationID(msg.getJMSCorrelationID());
+                                return rep;
+                            }
+                        });
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        th.start();
+
+        for (int i = 0; i < 2; i++) {
+            InOut me = client.createInOutExchange();
+            me.getInMessage().setContent(new StringSource("<hello>world</hello>"));
+            me.setService(new QName("uri:HelloWorld", "HelloService"));
+            client.sendSync(me);
+            assertEquals(ExchangeStatus.ACTIVE, me.getStatus());
+            assertNotNull(me.getOutMessage());
+            assertNotNull(me.getOutMessage().getContent());
+            client.done(me);
+        }
+    }
+
+    public void testProviderInOutWithSharedReplyDestTimeout() throws Exception {
+        JmsComponent component = new JmsComponent();
+
+        JmsProviderEndpoint endpoint = new JmsProviderEndpoint();
+        endpoint.setService(new QName("uri:HelloWorld", "HelloService"));
+        endpoint.setEndpoint("HelloPort");
+        endpoint.setDestinationName("destination");
+        endpoint.setConnectionFactory(connectionFactory);
+        endpoint.setSharedReplyDestination(true);
+        endpoint.setReplyTimeout(500);
+        component.setEndpoints(new JmsProviderEndpoint[] {endpoint});
+        container.activateComponent(component, "servicemix-jms");
+
+        // nobody answers the request
+        InOut me = client.createInOutExchange();
+        me.getInMessage().setContent(new StringSource("<hello>world</hello>"));
+        me.setService(new QName("uri:HelloWorld", "HelloService"));
+        client.sendSync(me, 5000);
+        assertEquals(ExchangeStatus.ERROR, me.getStatus());
+        assertTrue(me.getError() instanceof TimeoutException);
+    }
+
+    public void testProviderInOutWithSharedReplyDestClosed() throws Exception {
+        JmsComponent component = new JmsComponent();
+
+        final ClosingProviderEndpoint endpoint = new ClosingProviderEndpoint();
+        endpoint.setService(new QName("uri:HelloWorld", "HelloService"));
+        endpoint.setEndpoint("HelloPort");
+        endpoint.setDestinationName("destination");
+        endpoint.setConnectionFactory(connectionFactory);
+        endpoint.setSharedReplyDestination(true);
+        component.setEndpoints(new JmsProviderEndpoint[] {endpoint});
+        container.activateComponent(component, "servicemix-jms");
+
+        // the shared reply connection fails once the request has been sent
+        Thread th = new Thread() {
+            public void run() {
+                assertNotNull(jmsTemplate.receive("destination"));
+                endpoint.closeReplies();
+            }
+        };
+        th.start();
+
+        InOut me = client.createInOutExchange();
+        me.getInMessage().setContent(new StringSource("<hello>world</hello>"));
+        me.setService(new QName("uri:HelloWorld", "HelloService"));
+        client.sendSync(me, 5000);
+        assertEquals(ExchangeStatus.ERROR, me.getStatus());
+        assertTrue(me.getError() instanceof JMSException);
+    }
+
+    public void testSharedReplyDestWithoutTimeout() throws Exception {
+        JmsProviderEndpoint endpoint = new JmsProviderEndpoint();
+        endpoint.setService(new QName("uri:HelloWorld", "HelloService"));
+        endpoint.setEndpoint("HelloPort");
+        endpoint.setConnectionFactory(connectionFactory);
+        endpoint.setSharedReplyDestination(true);
+        endpoint.validate();
+        endpoint.setReplyTimeout(0);
+        try {
+            endpoint.validate();
+            fail("Validate should have thrown a DeploymentException");
+        } catch (DeploymentException e) {
+            // expected
+        }
+    }
+
+    public void testProviderInOutWithBytesMessage() throws Exception {
+        JmsComponent component = new JmsComponent();
+
+        JmsProviderEndpoint endpoint = new JmsProviderEndpoint();
+        endpoint.setService(new QName("uri:HelloWorld", "HelloService"));
+        endpoint.setEndpoint("HelloPort");
+        endpoint.setDestinationName("destination");
+        endpoint.setConnectionFactory(connectionFactory);
+        DefaultProviderMarshaler marshaler = new DefaultProviderMarshaler();
+        marshaler.setUseBytesMessage(true);
+        marshaler.setEncoding("ISO-8859-1");
+        endpoint.setMarshaler(marshaler);
+        component.setEndpoints(new JmsProviderEndpoint[] {endpoint});
+        container.activateComponent(component, "servicemix-jms");
+
+        Thread th = new Thread() {
+            public void run() {
+                try {
+                    final Message msg = jmsTemplate.receive("destination");
+                    assertTrue(msg instanceof BytesMessage);
+                    assertEquals("ISO-8859-1", msg.getStringProperty(AbstractJmsMarshaler.ENCODING_PROPERTY));
+                    byte[] data = new byte[(int) ((BytesMessage) msg).getBodyLength()];
+                    ((BytesMessage) msg).readBytes(data);
+                    final String request = new String(data, "ISO-8859-1");
+                    assertTrue(request.contains("caf\u00e9"));
+                    jmsTemplate.send(msg.getJMSReplyTo(), new MessageCreator() {
+                        public Message createMessage(Session session) throws JMSException {
+                            BytesMessage rep = session.createBytesMessage();
+                            try {
+                                rep.writeBytes("<reply>caf\u00e9</reply>".getBytes("UTF-8"));
+                            } catch (UnsupportedEncodingException e) {
+                                throw new IllegalStateException(e);
+                            }
+                            rep.setStringProperty(AbstractJmsMarshaler.ENCODING_PROPERTY, "UTF-8");
+                            rep.setJMSCorrelationID(msg.getJMSCorrelationID());
+                            return rep;
+                        }
+                    });
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        th.start();
+
+        InOut me = client.createInOutExchange();
+        me.getInMessage().setContent(new StringSource("<hello>caf\u00e9</hello>"));
+        me.setService(new QName("uri:HelloWorld", "HelloService"));
+        client.sendSync(me);
+        assertEquals(ExchangeStatus.ACTIVE, me.getStatus());
+        assertTrue(new SourceTransformer().contentToString(me.getOutMessage()).contains("caf\u00e9"));
+        client.done(me);
+    }
+
     public void testSoapProviderInOnly() throws Exception {
         JmsComponent component = new JmsComponent();
         
@@ -335,4 +506,11 @@ public class JmsProviderEndpointTest extends AbstractJmsTestSupport {
         component.setEndpoints(new JmsProviderEndpoint[] {endpoint});
         return component;
     }
+
+    public static class ClosingProviderEndpoint extends JmsProviderEndpoint {
+        public void closeReplies() {
+            closeSharedReplyDestination();
+        }
+    }
+
 }
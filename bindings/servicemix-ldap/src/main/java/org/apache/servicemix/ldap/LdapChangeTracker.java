@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.ldap;
+
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.SearchResult;
+
+/**
+ * <p>
+ * Keeps the high-water mark of an incremental LDAP search: the latest value of a
+ * timestamp attribute (like <code>modifyTimestamp</code>) seen in the entries sent.
+ * The next search only fetches the entries with a greater or equal timestamp, and the
+ * entries already sent with the timestamp of the mark are skipped.
+ * </p>
+ * <p>
+ * The timestamps are compared as strings, which gives the chronological order for the
+ * LDAP generalized time values returned by a given directory.
+ * </p>
+ */
+public class LdapChangeTracker {
+
+    private final String attribute;
+
+    // the high-water mark and the entries having this timestamp, as committed
+    private String mark;
+    private Set<String> markNames = new HashSet<String>();
+
+    // the high-water mark of the search in progress
+    private String pendingMark;
+    private Set<String> pendingMarkNames = new HashSet<String>();
+
+    public LdapChangeTracker(String attribute) {
+        this.attribute = attribute;
+    }
+
+    /**
+     * <p>
+     * Get the attribute holding the entries timestamp.
+     * </p>
+     *
+     * @return the timestamp attribute.
+     */
+    public String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * <p>
+     * Get the current high-water mark.
+     * </p>
+     *
+     * @return the latest timestamp sent, null if no entry has been sent yet.
+     */
+    public synchronized String getMark() {
+        return mark;
+    }
+
+    /**
+     * <p>
+     * Restrict a search filter to the entries changed since the high-water mark,
+     * and start tracking the timestamps of a new search.
+     * </p>
+     *
+     * @param filter the search filter.
+     * @return the filter to use for the search.
+     */
+    public synchronized String begin(String filter) {
+        pendingMark = mark;
+        pendingMarkNames = new HashSet<String>(markNames);
+        if (mark == null) {
+            return filter;
+        }
+        if (!filter.startsWith("(")) {
+            filter = "(" + filter + ")";
+        }
+        return "(&" + filter + "(" + attribute + ">=" + mark + "))";
+    }
+
+    /**
+     * <p>
+     * Wrap the entries of a search page, skipping the ones already sent and
+     * tracking the timestamps of the others.
+     * </p>
+     *
+     * @param page the NamingEnumeration of the search.
+     * @return the NamingEnumeration of the changed entries.
+     */
+    public NamingEnumeration track(NamingEnumeration page) {
+        return new TrackingEnumeration(page);
+    }
+
+    /**
+     * <p>
+     * Move the high-water mark to the latest timestamp of the search, once all its
+     * entries have been sent.
+     * </p>
+     */
+    public synchronized void commit() {
+        mark = pendingMark;
+        markNames = pendingMarkNames;
+    }
+
+    /**
+     * <p>
+     * Check if an entry is new or changed since the last search, and move the
+     * pending high-water mark.
+     * </p>
+     *
+     * @param result the search result.
+     * @return true if the entry has to be sent, false if it has already been sent.
+     * @throws NamingException in case of attribute read failure.
+     */
+    private synchronized boolean changed(SearchResult result) throws NamingException {
+        Attribute timestamp = result.getAttributes() != null ? result.getAttributes().get(attribute) : null;
+        if (timestamp == null || timestamp.get() == null) {
+            // can't be tracked, always sent
+            return true;
+        }
+        String value = timestamp.get().toString();
+        String name = result.getName();
+        if (mark != null && value.equals(mark) && markNames.contains(name)) {
+            return false;
+        }
+        if (pendingMark == null || value.compareTo(pendingMark) > 0) {
+            pendingMark = value;
+            pendingMarkNames = new HashSet<String>();
+        }
+        if (value.equals(pendingMark)) {
+            pendingMarkNames.add(name);
+        }
+        return true;
+    }
+
+    /**
+     * <p>
+     * NamingEnumeration filtering the entries already sent.
+     * </p>
+     */
+    private class TrackingEnumeration implements NamingEnumeration {
+
+        private final NamingEnumeration delegate;
+        private SearchResult next;
+
+        TrackingEnumeration(NamingEnumeration delegate) {
+            this.delegate = delegate;
+        }
+
+        public boolean hasMore() throws NamingException {
+            while (next == null && delegate.hasMore()) {
+                SearchResult result = (SearchResult) delegate.next();
+                if (changed(result)) {
+                    next = result;
+                }
+            }
+            return next != null;
+        }
+
+        public Object next() throws NamingException {
+            if (!hasMore()) {
+                throw new NoSuchElementException();
+            }
+            SearchResult result = next;
+            next = null;
+            return result;
+        }
+
+        public boolean hasMoreElements() {
+            try {
+                return hasMore();
+            } catch (NamingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public Object nextElement() {
+            try {
+                return next();
+            } catch (NamingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public void close() throws NamingException {
+            delegate.close();
+        }
+
+    }
+
+}
@@ -21,9 +21,12 @@ import java.util.Hashtable;
 
 import javax.naming.Context;
 import javax.naming.NamingEnumeration;
-import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
 import javax.naming.directory.SearchControls;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -40,7 +43,7 @@ public class LdapConnection {
     private final static transient Log LOG = LogFactory.getLog(LdapConnection.class);
     
     private Hashtable<String, String> env = new Hashtable<String, String>();
-    private DirContext context;
+    private LdapContext context;
     private SearchControls searchControls;
     
     /**
@@ -54,6 +57,23 @@ public class LdapConnection {
      * @param bindPassword the LDAP bind password.
      */
     public LdapConnection(URL url, String contextFactory, String bindDn, String bindPassword) {
+        this(url, contextFactory, bindDn, bindPassword, false);
+    }
+    
+    /**
+     * <p>
+     * Create a new LDAP connection.
+     * </p>
+     * 
+     * @param url the LDAP URL.
+     * @param contextFactory the LDAP context factory.
+     * @param bindDn the LDAP bind DN (can be null).
+     * @param bindPassword the LDAP bind password.
+     * @param pooled true to take the underlying connection from the JNDI LDAP connection pool
+     *        (shared by all the connections with the same URL and credentials) instead of opening
+     *        a new one at each connect.
+     */
+    public LdapConnection(URL url, String contextFactory, String bindDn, String bindPassword, boolean pooled) {
         LOG.debug("LDAP URL " + url);
         env.put(Context.PROVIDER_URL, url.toString());
         LOG.debug("Use LDAP initial context factory " + contextFactory);
@@ -71,6 +91,10 @@ public class LdapConnection {
             env.put(Context.SECURITY_PRINCIPAL, bindDn);
             env.put(Context.SECURITY_CREDENTIALS, bindPassword);
         }
+        if (pooled) {
+            LOG.debug("Use the JNDI LDAP connection pool.");
+            env.put("com.sun.jndi.ldap.connect.pool", "true");
+        }
         
         LOG.debug("Create search controls with subtree scope.");
         searchControls = new SearchControls();
@@ -86,7 +110,7 @@ public class LdapConnection {
      */
     public void connect() throws Exception {
         if (context == null) {
-            context = new InitialDirContext(env);
+            context = new InitialLdapContext(env, null);
         }
     }
     
@@ -117,5 +141,81 @@ public class LdapConnection {
     public NamingEnumeration search(String searchBase, String filter) throws Exception {
         return context.search(searchBase, filter, searchControls);
     }
+    
+    /**
+     * <p>
+     * Search entries on the LDAP directory page by page, using the LDAP paged results
+     * control. Each page is given to the handler before the next one is requested, so
+     * that only one page is held in memory. A directory which doesn't support paging
+     * returns all entries in one page.
+     * </p>
+     * 
+     * @param searchBase the search base.
+     * @param filter the search filter.
+     * @param attributes the attributes to return, null to return all the user attributes.
+     * @param pageSize the number of entries per page, 0 to get all entries in one page.
+     * @param handler the handler of each page.
+     * @throws Exception in case of search failure.
+     */
+    public void search(String searchBase, String filter, String[] attributes, int pageSize, PageHandler handler) throws Exception {
+        SearchControls controls = searchControls;
+        if (attributes != null) {
+            controls = new SearchControls();
+            controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+            controls.setReturningAttributes(attributes);
+        }
+        
+        byte[] cookie = null;
+        try {
+            do {
+                if (pageSize > 0) {
+                    context.setRequestControls(new Control[] {new PagedResultsControl(pageSize, cookie, Control.NONCRITICAL)});
+                }
+                NamingEnumeration page = context.search(searchBase, filter, controls);
+                try {
+                    handler.handle(page);
+                } finally {
+                    page.close();
+                }
+                // the cookie is only available once the whole page has been read
+                cookie = pageSize > 0 ? getPagedResultsCookie() : null;
+            } while (cookie != null && cookie.length > 0);
+        } finally {
+            if (pageSize > 0) {
+                context.setRequestControls(null);
+            }
+        }
+    }
+    
+    private byte[] getPagedResultsCookie() throws Exception {
+        Control[] controls = context.getResponseControls();
+        if (controls != null) {
+            for (Control control : controls) {
+                if (control instanceof PagedResultsResponseControl) {
+                    return ((PagedResultsResponseControl) control).getCookie();
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * <p>
+     * Handler of the entries of a paged search.
+     * </p>
+     */
+    public interface PageHandler {
+        
+        /**
+         * <p>
+         * Handle a page of entries.
+         * </p>
+         * 
+         * @param page the NamingEnumeration containing the entries of the page.
+         * @throws Exception in case of failure, the search is stopped.
+         */
+        void handle(NamingEnumeration page) throws Exception;
+        
+    }
 
 }
@@ -57,7 +57,12 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
     private boolean newOnly = false; // fetch only new entries if true, fetch all entries if false
     private ArrayList cache = new ArrayList(); // contains the cache of latest LDAP entries
     private boolean persistent = false; // keep the LDAP connection open
+    private boolean pooled = false; // take the LDAP connections from the JNDI connection pool
+    private int pageSize = 0; // the number of entries per page, 0 to disable paging
+    private boolean incremental = false; // fetch only the entries changed since the last poll if true
+    private String timestampAttribute = "modifyTimestamp"; // the attribute used to detect the changed entries
     private LdapMarshalerSupport marshaler = new DefaultLdapMarshaler();
+    private LdapChangeTracker changeTracker;
     
     private LdapConnection ldapConnection;
     
@@ -89,12 +94,52 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
         if (!persistent) {
             ldapConnection.connect();
         }
-
-        LOG.debug("Define the search filter to " + filter + " in " + searchBase);
-        NamingEnumeration namingEnumeration = ldapConnection.search(searchBase, filter);
-        
-        // TODO compare with the cache to send the new entries
         
+        try {
+            if (pageSize <= 0 && !incremental) {
+                LOG.debug("Define the search filter to " + filter + " in " + searchBase);
+                send(ldapConnection.search(searchBase, filter));
+            } else {
+                String searchFilter = filter;
+                String[] attributes = null;
+                if (incremental) {
+                    // only fetch the entries changed since the last poll, with their timestamp
+                    searchFilter = changeTracker.begin(filter);
+                    attributes = new String[] {"*", timestampAttribute};
+                }
+                LOG.debug("Define the search filter to " + searchFilter + " in " + searchBase + " with page size " + pageSize);
+                // each page is marshaled and sent before the next one is read
+                // a marshaling failure stops the search, so the high-water mark doesn't move
+                ldapConnection.search(searchBase, searchFilter, attributes, pageSize, new LdapConnection.PageHandler() {
+                    public void handle(NamingEnumeration page) throws Exception {
+                        NamingEnumeration entries = incremental ? changeTracker.track(page) : page;
+                        if (!entries.hasMore()) {
+                            LOG.debug("No new LDAP entry in the page, no exchange sent");
+                            return;
+                        }
+                        send(entries);
+                    }
+                });
+                if (incremental) {
+                    changeTracker.commit();
+                }
+            }
+        } finally {
+            if (!persistent) {
+                ldapConnection.disconnect();
+            }
+        }
+    }
+    
+    /**
+     * <p>
+     * Marshal LDAP entries into a normalized message and send it into the NMR.
+     * </p>
+     * 
+     * @param namingEnumeration the LDAP entries.
+     * @throws Exception in case of exchange creation or marshaling failure, the exchange is not sent.
+     */
+    private void send(NamingEnumeration namingEnumeration) throws Exception {
         // create an InOnly exchange
         LOG.debug("Create the InOnly exchange.");
         InOnly exchange = getExchangeFactory().createInOnlyExchange();
@@ -109,10 +154,6 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
         // send the exchange
         LOG.debug("Send the exchange.");
         send(exchange);
-        
-        if (!persistent) {
-            ldapConnection.disconnect();
-        }
     }
     
     /*
@@ -132,9 +173,15 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
         if (contextFactory == null) {
             throw new DeploymentException("LDAP Context Factory is mandatory.");
         }
+        if (incremental && timestampAttribute == null) {
+            throw new DeploymentException("LDAP timestamp attribute is mandatory in incremental mode.");
+        }
         
         // create the LDAP connection
-        ldapConnection = new LdapConnection(url, contextFactory, bindDn, bindPassword);
+        ldapConnection = new LdapConnection(url, contextFactory, bindDn, bindPassword, pooled);
+        if (incremental) {
+            changeTracker = new LdapChangeTracker(timestampAttribute);
+        }
     }
     
     /*
@@ -261,5 +308,79 @@ public class LdapPollerEndpoint extends PollingEndpoint implements LdapEndpointT
     public void setPersistent(boolean persistent) {
         this.persistent = persistent;
     }
+    
+    public boolean isPooled() {
+        return pooled;
+    }
+    
+    /**
+     * <p>
+     * This attribute specifies if the LDAP connections are taken from the JNDI LDAP
+     * connection pool. The pooled connections are shared by all the endpoints using
+     * the same LDAP directory server URL and bind DN, and are kept open between the
+     * polls when the connection is not persistent.
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>false</b></i>
+     * 
+     * @param pooled a <code>boolean</code> value representing if the LDAP connections are pooled or not
+     */
+    public void setPooled(boolean pooled) {
+        this.pooled = pooled;
+    }
+    
+    public int getPageSize() {
+        return pageSize;
+    }
+    
+    /**
+     * <p>
+     * This attribute specifies the number of entries fetched per page, using the LDAP
+     * paged results control. Each page is sent in its own message, so that the whole
+     * search result is never held in memory. 0 disables the paging, all the entries are
+     * sent in one message.
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>0</b></i>
+     * 
+     * @param pageSize an <code>int</code> value representing the number of entries per page
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+    
+    public boolean isIncremental() {
+        return incremental;
+    }
+    
+    /**
+     * <p>
+     * This attribute specifies if each poll only fetches the entries changed since the
+     * previous poll, using the timestamp attribute. The first poll after the endpoint
+     * start fetches all entries.
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>false</b></i>
+     * 
+     * @param incremental a <code>boolean</code> value representing if the search fetch all entries (false) or only the changed ones (true)
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+    
+    public String getTimestampAttribute() {
+        return timestampAttribute;
+    }
+    
+    /**
+     * <p>
+     * This attribute specifies the LDAP attribute containing the last change time of
+     * the entries, used in incremental mode (for instance <code>whenChanged</code> for
+     * Active Directory).
+     * </p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>modifyTimestamp</b></i>
+     * 
+     * @param timestampAttribute a <code>String</code> value representing the timestamp attribute
+     */
+    public void setTimestampAttribute(String timestampAttribute) {
+        this.timestampAttribute = timestampAttribute;
+    }
 
 }
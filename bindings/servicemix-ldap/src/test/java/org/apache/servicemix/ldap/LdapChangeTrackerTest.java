@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.ldap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>
+ * Unit tests on the incremental search high-water mark.
+ * </p>
+ */
+public class LdapChangeTrackerTest extends TestCase {
+
+    private LdapChangeTracker tracker;
+
+    /*
+     * (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    public void setUp() throws Exception {
+        this.tracker = new LdapChangeTracker("modifyTimestamp");
+    }
+
+    /**
+     * <p>
+     * Test the filters and the entries sent by successive searches.
+     * </p>
+     *
+     * @throws Exception in case of tracking failure.
+     */
+    public void testIncrementalSearch() throws Exception {
+        // the first search fetches all entries
+        assertEquals("(objectclass=*)", tracker.begin("(objectclass=*)"));
+        assertEquals(Arrays.asList("cn=a", "cn=b", "cn=c"), names(tracker.track(entries(
+                entry("cn=a", "20101018100000Z"),
+                entry("cn=b", "20101018120000Z"),
+                entry("cn=c", "20101018120000Z")))));
+        tracker.commit();
+        assertEquals("20101018120000Z", tracker.getMark());
+
+        // the next one only the entries changed since the mark, without the ones already sent
+        assertEquals("(&(objectclass=*)(modifyTimestamp>=20101018120000Z))", tracker.begin("objectclass=*"));
+        assertEquals(Arrays.asList("cn=d"), names(tracker.track(entries(
+                entry("cn=b", "20101018120000Z"),
+                entry("cn=c", "20101018120000Z"),
+                entry("cn=d", "20101018120000Z")))));
+        tracker.commit();
+        assertEquals("20101018120000Z", tracker.getMark());
+
+        tracker.begin("(objectclass=*)");
+        assertEquals(Arrays.asList("cn=b"),names(tracker.track(entries(
+                entry("cn=c", "20101018120000Z"),
+                entry("cn=b", "20101018130000Z")))));
+        tracker.commit();
+        assertEquals("20101018130000Z", tracker.getMark());
+    }
+
+    /**
+     * <p>
+     * Test that the mark doesn't move when a search fails before its commit.
+     * </p>
+     *
+     * @throws Exception in case of tracking failure.
+     */
+    public void testUncommittedSearch() throws Exception {
+        tracker.begin("(objectclass=*)");
+        names(tracker.track(entries(entry("cn=a", "20101018100000Z"))));
+        tracker.commit();
+
+        tracker.begin("(objectclass=*)");
+        names(tracker.track(entries(entry("cn=b", "20101018120000Z"))));
+        // no commit, the search failed
+        assertEquals("20101018100000Z", tracker.getMark());
+        assertEquals("(&(objectclass=*)(modifyTimestamp>=20101018100000Z))", tracker.begin("(objectclass=*)"));
+    }
+
+    private static SearchResult entry(String name, String timestamp) {
+        BasicAttributes attributes = new BasicAttributes();
+        attributes.put("modifyTimestamp", timestamp);
+        return new SearchResult(name, null, attributes);
+    }
+
+    private static NamingEnumeration entries(SearchResult... results) {
+        final Iterator<SearchResult> iterator = Arrays.asList(results).iterator();
+        return new NamingEnumeration() {
+            public boolean hasMore() {
+                return iterator.hasNext();
+            }
+            public Object next() {
+                return iterator.next();
+            }
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+            public Object nextElement() {
+                return iterator.next();
+            }
+            public void close() { }
+        };
+    }
+
+    private static List<String> names(NamingEnumeration enumeration) throws Exception {
+        List<String> names = new ArrayList<String>();
+        while (enumeration.hasMore()) {
+            names.add(((SearchResult) enumeration.next()).getName());
+        }
+        return names;
+    }
+
+}
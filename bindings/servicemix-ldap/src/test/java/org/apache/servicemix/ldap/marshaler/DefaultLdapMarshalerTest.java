@@ -21,8 +21,11 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.jbi.messaging.InOnly;
 import javax.jbi.messaging.MessageExchangeFactory;
+import javax.jbi.messaging.MessagingException;
 import javax.jbi.messaging.NormalizedMessage;
 import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.SizeLimitExceededException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttribute;
@@ -79,6 +82,40 @@ public class DefaultLdapMarshalerTest extends TestCase {
         assertEquals("<entries><entry><dn>test</dn><attributes><attribute><name>second</name><values></values></attribute><attribute><name>first</name><values></values></attribute></attributes></entry></entries>",
                 new SourceTransformer().toString(in.getContent()));
     }
+    
+    /**
+     * <p>
+     * Test that a failure while reading the naming enumeration is reported to the poller.
+     * </p>
+     * 
+     * @throws Exception in case of marshaling failure.
+     */
+    public void testMarshalingFailure() throws Exception {
+        InOnly exchange = messageExchangeFactory.createInOnlyExchange();
+        NormalizedMessage in = exchange.createMessage();
+        
+        try {
+            marshaler.marshal(in, new NamingEnumeration() {
+                public boolean hasMore() throws NamingException {
+                    throw new SizeLimitExceededException();
+                }
+                public Object next() throws NamingException {
+                    throw new SizeLimitExceededException();
+                }
+                public boolean hasMoreElements() {
+                    return true;
+                }
+                public Object nextElement() {
+                    return null;
+                }
+                public void close() { }
+            });
+            fail("The LDAP read failure must be thrown");
+        } catch (MessagingException e) {
+            assertEquals("Error while reading the LDAP result", e.getMessage());
+        }
+        assertNull(in.getContent());
+    }
 
 }
 
@@ -17,21 +17,31 @@
 package org.apache.servicemix.mail;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.jbi.JBIException;
 import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.InOnly;
 import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.NormalizedMessage;
+import javax.mail.FetchProfile;
 import javax.mail.Flags;
 import javax.mail.Folder;
 import javax.mail.Message;
+import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.Store;
+import javax.mail.UIDFolder;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.ParseException;
 import javax.mail.search.FlagTerm;
@@ -56,7 +66,7 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
 
     private AbstractMailMarshaler marshaler = new DefaultMailMarshaler();
 
-    private final List<String> seenMessages = Collections.synchronizedList(new LinkedList<String>());
+    private final Set<String> seenMessages = Collections.synchronizedSet(new LinkedHashSet<String>());
 
     private String customTrustManagers;
 
@@ -74,10 +84,35 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
 
     private Map<String, String> customProperties;
 
-    private final List<String> foundMessagesInFolder = Collections.synchronizedList(new LinkedList<String>());
+    private final Set<String> foundMessagesInFolder = Collections.synchronizedSet(new HashSet<String>());
 
     private org.apache.servicemix.store.Store storage;
 
+    private boolean persistentConnection;
+
+    private int maxConcurrentMessages = 1;
+
+    private long deliveryTimeout;
+
+    // the store and folder kept open between polls, if persistentConnection is set
+    private final Object connectionLock = new Object();
+
+    private Store mailStore;
+
+    private Folder mailFolder;
+
+    // incremental synchronization state of the persistent folder
+    private long uidValidity = -1;
+
+    private long lastUid = -1;
+
+    // mails delivered asynchronously, if maxConcurrentMessages is greater than 1
+    private final ConcurrentMap<String, PendingMail> openExchanges = new ConcurrentHashMap<String, PendingMail>();
+
+    private final Object monitor = new Object();
+
+    private final AtomicLong firstFailedUid = new AtomicLong(Long.MAX_VALUE);
+
     /**
      * default constructor
      */
@@ -121,11 +156,7 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
         		return;
         	}
         		
-        	for (String uid : loadedMsg) {
-        		if (!this.seenMessages.contains(uid)) {
-        			this.seenMessages.add(uid);
-        		}
-        	}
+        	this.seenMessages.addAll(loadedMsg);
         	loadedMsg.clear();
         } catch (IOException ioex) {
         	logger.error("Error loading seen messages for: {}", id, ioex);
@@ -138,11 +169,20 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
      */
     @Override
     public synchronized void stop() throws Exception {
+        synchronized (this.connectionLock) {
+            closeFolder(this.mailFolder, this.mailStore);
+            this.mailFolder = null;
+            this.mailStore = null;
+        }
         if (this.storage != null) {
             String id = config.getUsername() + " @ " + config.getHost();
             try {
                 // save the list of seen messages
-                this.storage.store(id, this.seenMessages);
+                List<String> seen;
+                synchronized (this.seenMessages) {
+                    seen = new ArrayList<String>(this.seenMessages);
+                }
+                this.storage.store(id, seen);
             } catch (IOException ioex) {
                 logger.error("Error saving list of seen messages for: {}", id, ioex);
             }
@@ -158,8 +198,29 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
      * .MessageExchange)
      */
     public void process(MessageExchange exchange) throws Exception {
-        // Do nothing. In our case, this method should never be called
-        // as we only send synchronous InOnly exchange
+        // only the exchanges sent asynchronously (maxConcurrentMessages > 1)
+        // come back here, the other ones are sent synchronously
+        PendingMail pending = this.openExchanges.remove(exchange.getExchangeId());
+        if (pending == null) {
+            logger.debug("Received unknown exchange. Will be ignored...");
+            return;
+        }
+        try {
+            messageProcessed(exchange, pending.message, pending.popUid);
+        } catch (Exception e) {
+            logger.warn("{}: Unable to deliver mail.", getEndpoint(), e);
+            if (pending.uid >= 0) {
+                // the mail has to be fetched again by the next incremental poll
+                long failed = this.firstFailedUid.get();
+                while (pending.uid < failed && !this.firstFailedUid.compareAndSet(failed, pending.uid)) {
+                    failed = this.firstFailedUid.get();
+                }
+            }
+        } finally {
+            synchronized (this.monitor) {
+                this.monitor.notifyAll();
+            }
+        }
     }
 
     /*
@@ -176,35 +237,61 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
 
         boolean isPopProtocol = this.config.getProtocol().toLowerCase().indexOf("pop") > -1;
 
+        // POP3 folders only show new messages when reopened
+        if (isPersistentConnection() && !isPopProtocol) {
+            synchronized (this.connectionLock) {
+                poll(false, true);
+            }
+        } else {
+            poll(isPopProtocol, false);
+        }
+    }
+
+    private void poll(boolean isPopProtocol, boolean keepOpen) throws Exception {
         // clear the list each run
         this.foundMessagesInFolder.clear();
+        this.firstFailedUid.set(Long.MAX_VALUE);
 
         Store store = null;
         Folder folder = null;
-        Session session;
+        UIDFolder uidFolder = null;
+        // all the messages up to this uid are handled by this poll
+        long horizon = -1;
+        long currentUid = -1;
+        boolean succeeded = false;
         try {
-            Properties props = MailUtils.getPropertiesForProtocol(this.config, this.customTrustManagers);
-            props.put("mail.debug", isDebugMode() ? "true" : "false");
-
-            // apply the custom properties
-            applyCustomProperties(props);
-
-            // Get session
-            session = Session.getInstance(props, config.getAuthenticator());
+            if (keepOpen) {
+                folder = getPersistentFolder();
+                if (folder instanceof UIDFolder) {
+                    uidFolder = (UIDFolder) folder;
+                }
+            } else {
+                store = connect();
+                folder = openFolder(store);
+            }
 
-            // debug the session
-            session.setDebug(this.debugMode);
+            // this also lets an open folder see the messages arrived since the last poll
+            int count = folder.getMessageCount();
 
-            store = session.getStore(config.getProtocol());
-            store.connect(config.getHost(), config.getUsername(), config.getPassword());
-            folder = store.getFolder(config.getFolderName());
-            if (folder == null || !folder.exists()) {
-                throw new Exception("Folder not found or invalid: " + config.getFolderName());
+            Message[] messages;
+            if (uidFolder != null) {
+                long validity = uidFolder.getUIDValidity();
+                if (validity != this.uidValidity) {
+                    // the uids of the previous polls are meaningless now, start a full sync
+                    this.uidValidity = validity;
+                    this.lastUid = -1;
+                }
+                horizon = count > 0 ? uidFolder.getUID(folder.getMessage(count)) : Math.max(this.lastUid, 0);
             }
-            folder.open(Folder.READ_WRITE);
 
-            Message[] messages;
-            if (isProcessOnlyUnseenMessages() && !isPopProtocol) {
+            if (uidFolder != null && this.lastUid >= 0) {
+                // incremental sync: only look at the messages arrived since the last poll
+                messages = this.lastUid < horizon
+                    ? uidFolder.getMessagesByUID(this.lastUid + 1, horizon) : new Message[0];
+                if (isProcessOnlyUnseenMessages() && messages.length > 0) {
+                    messages = folder.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false), messages);
+                }
+            } else if (isProcessOnlyUnseenMessages() && !isPopProtocol) {
                 messages = folder.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false));
             } else {
                 messages = folder.getMessages();
@@ -212,20 +299,39 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
 
             int fetchSize = getMaxFetchSize() == -1 ? messages.length : Math.min(getMaxFetchSize(),
                                                                                  messages.length);
+            prefetch(folder, messages, fetchSize, isPopProtocol);
+
             int fetchedMessages = 0;
             String uid;
+            Method getUID = null;
             
             for (Message msg : messages) {
                 uid = null;
+                long messageUid = -1;
+                if (msg == null) {
+                    // expunged meanwhile
+                    continue;
+                }
                 
                 // get the message
                 MimeMessage mailMsg = (MimeMessage)msg;
 
+                if (uidFolder != null) {
+                    messageUid = uidFolder.getUID(mailMsg);
+                    if (messageUid > horizon) {
+                        // arrived during this poll, left to the next one
+                        continue;
+                    }
+                }
+
                 if (isProcessOnlyUnseenMessages() && isPopProtocol) {
                     // POP3 doesn't support flags, so we need to check manually
                     // if message is new or not
                     try {
-                        Object ouid = folder.getClass().getMethod("getUID", Message.class).invoke(folder, mailMsg);
+                        if (getUID == null) {
+                            getUID = folder.getClass().getMethod("getUID", Message.class);
+                        }
+                        Object ouid = getUID.invoke(folder, mailMsg);
                         
                         // remember each found message
                         if (ouid != null) {
@@ -247,6 +353,8 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
                 // only process a message if the max message fetch size isn't
                 // exceeded then
                 if (fetchedMessages < fetchSize) {
+                    currentUid = messageUid;
+
                     // create a inOnly exchange
                     InOnly io = getExchangeFactory().createInOnlyExchange();
 
@@ -263,50 +371,63 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
                     // then put the in message into the inOnly exchange
                     io.setInMessage(normalizedMessage);
 
-                    // and use sendSync to deliver it
-                    sendSync(io);
-
                     // increment the fetched messages counter
                     fetchedMessages++;
 
-                    // now check if delivery succeeded or went wrong
-                    if (io.getStatus() == ExchangeStatus.ERROR) {
-                        // to ensure reprocessing of the mail we set it to UNSEEN even if we
-                        // did not mark it seen before (seems there are some mail systems out there
-                        // which do set somehow automatically)
-                        mailMsg.setFlag(Flags.Flag.SEEN, false);
-
-                        Exception e = io.getError();
-                        if (e == null) {
-                            e = new JBIException("Unexpected error occured...");
+                    if (getMaxConcurrentMessages() > 1) {
+                        // wait for a free slot and deliver it asynchronously
+                        if (!waitForOpenExchanges(getMaxConcurrentMessages() - 1)) {
+                            abandonOpenExchanges();
                         }
-                        throw e;
-                    } else {
-                        // then mark the mail as processed (only if no errors)
-                        if (deleteProcessedMessages) {
-                            // processed messages have to be marked as deleted
-                            mailMsg.setFlag(Flags.Flag.DELETED, true);
-                        } else {
-                            // processed messages have to be marked as seen
-                            mailMsg.setFlag(Flags.Flag.SEEN, true);
-                        }
-                        // remember the processed mail if needed
-                        if (isProcessOnlyUnseenMessages() && isPopProtocol && uid != null) {
-                            // POP3 doesn't support flags, so we need to
-                            // remember processed mails
-                            this.seenMessages.add(uid);
+                        this.openExchanges.put(io.getExchangeId(), new PendingMail(mailMsg, uid, messageUid));
+                        try {
+                            send(io);
+                        } catch (Exception e) {
+                            this.openExchanges.remove(io.getExchangeId());
+                            throw e;
                         }
+                    } else {
+                        // and use sendSync to deliver it
+                        sendSync(io);
+                        messageProcessed(io, mailMsg, uid);
                     }
+                } else if (messageUid >= 0 && messageUid <= horizon) {
+                    // the fetch size is exceeded, the next poll has to start from here
+                    horizon = messageUid - 1;
                 }
             }
+            currentUid = -1;
+            succeeded = true;
         } finally {
-            // finally clean up and close the folder and store
+            // mails still being delivered need the folder to be open
             try {
-                if (folder != null) {
-                    folder.close(true);
+                if (!waitForOpenExchanges(0)) {
+                    abandonOpenExchanges();
                 }
-                if (store != null) {
-                    store.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandonOpenExchanges();
+            }
+            if (uidFolder != null) {
+                long synced = Math.min(horizon, this.firstFailedUid.get() - 1);
+                if (currentUid >= 0) {
+                    synced = Math.min(synced, currentUid - 1);
+                }
+                this.lastUid = Math.max(this.lastUid, synced);
+            }
+            // finally clean up and close the folder and store
+            try {
+                if (keepOpen && succeeded) {
+                    if (deleteProcessedMessages) {
+                        folder.expunge();
+                    }
+                } else if (keepOpen) {
+                    // reconnect on next poll
+                    closeFolder(this.mailFolder, this.mailStore);
+                    this.mailFolder = null;
+                    this.mailStore = null;
+                } else {
+                    closeFolder(folder, store);
                 }
                 // clean up the seen messages list because of maybe deleted
                 // messages
@@ -319,23 +440,187 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
         }
     }
 
+    /**
+     * marks the mail according to the outcome of its delivery
+     *
+     * @param io the exchange the mail was sent in
+     * @param mailMsg the mail
+     * @param uid the POP3 uid of the mail, or <code>null</code>
+     * @throws Exception the error of the exchange, if the delivery failed
+     */
+    private void messageProcessed(MessageExchange io, MimeMessage mailMsg, String uid) throws Exception {
+        // now check if delivery succeeded or went wrong
+        if (io.getStatus() == ExchangeStatus.ERROR) {
+            // to ensure reprocessing of the mail we set it to UNSEEN even if we
+            // did not mark it seen before (seems there are some mail systems out there
+            // which do set somehow automatically)
+            mailMsg.setFlag(Flags.Flag.SEEN, false);
+
+            Exception e = io.getError();
+            if (e == null) {
+                e = new JBIException("Unexpected error occured...");
+            }
+            throw e;
+        } else {
+            // then mark the mail as processed (only if no errors)
+            if (deleteProcessedMessages) {
+                // processed messages have to be marked as deleted
+                mailMsg.setFlag(Flags.Flag.DELETED, true);
+            } else {
+                // processed messages have to be marked as seen
+                mailMsg.setFlag(Flags.Flag.SEEN, true);
+            }
+            // remember the processed mail if needed
+            if (uid != null) {
+                // POP3 doesn't support flags, so we need to
+                // remember processed mails
+                this.seenMessages.add(uid);
+            }
+        }
+    }
+
+    /**
+     * fetches in a single request the parts of the messages needed to process them,
+     * instead of one request per message
+     */
+    private void prefetch(Folder folder, Message[] messages, int fetchSize, boolean isPopProtocol)
+        throws MessagingException {
+        FetchProfile profile = new FetchProfile();
+        if (isPopProtocol) {
+            if (!isProcessOnlyUnseenMessages() || messages.length == 0) {
+                return;
+            }
+            // the uids of all the messages are needed to find the new ones
+            profile.add(UIDFolder.FetchProfileItem.UID);
+            folder.fetch(messages, profile);
+        } else if (fetchSize > 0) {
+            profile.add(FetchProfile.Item.ENVELOPE);
+            profile.add(FetchProfile.Item.FLAGS);
+            if (folder instanceof UIDFolder) {
+                profile.add(UIDFolder.FetchProfileItem.UID);
+            }
+            Message[] selected = messages;
+            if (fetchSize < messages.length) {
+                selected = new Message[fetchSize];
+                System.arraycopy(messages, 0, selected, 0, fetchSize);
+            }
+            folder.fetch(selected, profile);
+        }
+    }
+
+    /**
+     * waits until at most <code>max</code> mails are being delivered
+     *
+     * @return <code>false</code> if the delivery timeout elapsed before
+     */
+    private boolean waitForOpenExchanges(int max) throws InterruptedException {
+        long timeout = getDeliveryTimeout() > 0 ? getDeliveryTimeout() : getPeriod();
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (this.monitor) {
+            while (this.openExchanges.size() > max) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                this.monitor.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * gives up the mails whose delivery didn't complete in time, they are left
+     * unseen and fetched again by the next polling cycle
+     */
+    private void abandonOpenExchanges() {
+        for (String exchangeId : this.openExchanges.keySet()) {
+            PendingMail pending = this.openExchanges.remove(exchangeId);
+            if (pending == null) {
+                // completed meanwhile
+                continue;
+            }
+            logger.warn("{}: No answer received for exchange {}, the mail will be fetched again.",
+                        getEndpoint(), exchangeId);
+            if (pending.uid >= 0) {
+                long failed = this.firstFailedUid.get();
+                while (pending.uid < failed && !this.firstFailedUid.compareAndSet(failed, pending.uid)) {
+                    failed = this.firstFailedUid.get();
+                }
+            }
+        }
+    }
+
+    /**
+     * returns the folder kept open between polls, reconnecting if needed
+     */
+    private Folder getPersistentFolder() throws Exception {
+        if (this.mailFolder != null && this.mailFolder.isOpen() && this.mailStore.isConnected()) {
+            return this.mailFolder;
+        }
+        closeFolder(this.mailFolder, this.mailStore);
+        this.mailFolder = null;
+        this.mailStore = connect();
+        this.mailFolder = openFolder(this.mailStore);
+        return this.mailFolder;
+    }
+
+    /**
+     * connects to the mail store of the configured account
+     */
+    protected Store connect() throws Exception {
+        Properties props = MailUtils.getPropertiesForProtocol(this.config, this.customTrustManagers);
+        props.put("mail.debug", isDebugMode() ? "true" : "false");
+
+        // apply the custom properties
+        applyCustomProperties(props);
+
+        // Get session
+        Session session = Session.getInstance(props, config.getAuthenticator());
+
+        // debug the session
+        session.setDebug(this.debugMode);
+
+        Store store = session.getStore(config.getProtocol());
+        store.connect(config.getHost(), config.getUsername(), config.getPassword());
+        return store;
+    }
+
+    private Folder openFolder(Store store) throws Exception {
+        Folder folder = store.getFolder(config.getFolderName());
+        if (folder == null || !folder.exists()) {
+            store.close();
+            throw new Exception("Folder not found or invalid: " + config.getFolderName());
+        }
+        folder.open(Folder.READ_WRITE);
+        return folder;
+    }
+
+    private void closeFolder(Folder folder, Store store) {
+        try {
+            if (folder != null && folder.isOpen()) {
+                folder.close(true);
+            }
+        } catch (Exception ignored) {
+            logger.debug("", ignored);
+        }
+        try {
+            if (store != null) {
+                store.close();
+            }
+        } catch (Exception ignored) {
+            logger.debug("", ignored);
+        }
+    }
+
     /**
      * this method will check if a seen message was deleted from mail folder and
      * remove this from the list of messages already seen
      */
     private synchronized void cleanUpSeenMessages() {
-        List<String> uidsToRemove = new LinkedList<String>();
-        // first collect all uid's to remove
-        for (String uid : seenMessages) {
-            if (!foundMessagesInFolder.contains(uid)) {
-                // the message was deleted from the mail folder, so delete it
-                // also from the seen messages list as well
-                uidsToRemove.add(uid);
-            }
-        }
-        // now remove them
-        for (String uid : uidsToRemove) {
-            seenMessages.remove(uid);
+        // the message was deleted from the mail folder, so delete it
+        // also from the seen messages list as well
+        synchronized (this.seenMessages) {
+            this.seenMessages.retainAll(this.foundMessagesInFolder);
         }
     }
 
@@ -569,4 +854,79 @@ public class MailPollerEndpoint extends PollingEndpoint implements MailEndpointT
     public void setStorage(org.apache.servicemix.store.Store storage) {
         this.storage = storage;
     }
+
+    public boolean isPersistentConnection() {
+        return this.persistentConnection;
+    }
+
+    /**
+     * <p>Specifies if the connection to the mail server and the mail folder are kept
+     * open between two polling cycles, instead of being opened and closed by each of
+     * them. This flag is ignored for the POP3 protocol.<br/>
+     * If the folder supports unique ids (like IMAP folders), only the messages arrived
+     * since the last polling cycle are fetched (incremental sync). The highest processed
+     * uid is remembered together with the UIDVALIDITY of the folder, and a full sync is
+     * done again whenever the UIDVALIDITY changes. In this mode, if
+     * <code>processOnlyUnseenMessages</code> is <code>false</code>, each mail is
+     * processed only once.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>false</b></i><br/><br/>
+     *
+     * @param persistentConnection
+     * 				a <code>boolean</code> value as flag
+     */
+    public void setPersistentConnection(boolean persistentConnection) {
+        this.persistentConnection = persistentConnection;
+    }
+
+    public int getMaxConcurrentMessages() {
+        return this.maxConcurrentMessages;
+    }
+
+    /**
+     * <p>Specifies the maximum number of mails of a polling cycle being delivered
+     * concurrently into the bus. With the value <b>1</b>, each mail is sent
+     * synchronously and the polling cycle stops at the first delivery error.
+     * With a greater value, mails are sent asynchronously and a delivery error only
+     * leaves the failed mail for the next polling cycle.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>1</b></i><br/><br/>
+     *
+     * @param maxConcurrentMessages
+     * 				a <code>int</code> value for maximum of mails delivered concurrently
+     */
+    public void setMaxConcurrentMessages(int maxConcurrentMessages) {
+        this.maxConcurrentMessages = maxConcurrentMessages;
+    }
+
+    public long getDeliveryTimeout() {
+        return this.deliveryTimeout;
+    }
+
+    /**
+     * <p>Specifies how long a polling cycle waits for the mails delivered
+     * asynchronously (see <code>maxConcurrentMessages</code>), in milliseconds.
+     * The mails still unanswered after this delay are considered as failed, and
+     * fetched again by the next polling cycle.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>0</b>, meaning the polling period</i><br/><br/>
+     *
+     * @param deliveryTimeout
+     * 				a <code>long</code> value for the timeout in milliseconds
+     */
+    public void setDeliveryTimeout(long deliveryTimeout) {
+        this.deliveryTimeout = deliveryTimeout;
+    }
+
+    /**
+     * a mail being delivered asynchronously
+     */
+    private static final class PendingMail {
+        private final MimeMessage message;
+        private final String popUid;
+        private final long uid;
+
+        private PendingMail(MimeMessage message, String popUid, long uid) {
+            this.message = message;
+            this.popUid = popUid;
+            this.uid = uid;
+        }
+    }
 }
@@ -17,15 +17,18 @@
 package org.apache.servicemix.mail;
 
 import org.apache.servicemix.common.endpoints.ProviderEndpoint;
+import org.apache.servicemix.common.management.MBeanServerHelper;
 import org.apache.servicemix.jbi.jaxp.StringSource;
 import org.apache.servicemix.mail.marshaler.AbstractMailMarshaler;
 import org.apache.servicemix.mail.marshaler.DefaultMailMarshaler;
 import org.apache.servicemix.mail.utils.IgnoreList;
 import org.apache.servicemix.mail.utils.MailConnectionConfiguration;
+import org.apache.servicemix.mail.utils.MailTransportPool;
 import org.apache.servicemix.mail.utils.MailUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jbi.component.ComponentContext;
 import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.MessageExchange;
@@ -35,6 +38,7 @@ import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.ParseException;
+import javax.management.ObjectName;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -58,6 +62,12 @@ public class MailSenderEndpoint extends ProviderEndpoint implements MailEndpoint
     private boolean debugMode;
     private Map<String, String> customProperties = new HashMap<String, String>();
     private IgnoreList ignoreMessageProperties = new IgnoreList();
+    private boolean pooledTransport;
+    private int maxIdleConnections = 4;
+    private long maxIdleTime = 60000;
+    private int maxMessagesPerConnection = 100;
+    private MailTransportPool transportPool;
+    private ObjectName transportPoolMBeanName;
 
     /*
      * (non-Javadoc)
@@ -71,6 +81,50 @@ public class MailSenderEndpoint extends ProviderEndpoint implements MailEndpoint
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.apache.servicemix.common.endpoints.SimpleEndpoint#start()
+     */
+    @Override
+    public synchronized void start() throws Exception {
+        super.start();
+        // without pooling, no connection is kept and each mail opens its own
+        this.transportPool = new MailTransportPool(this.pooledTransport ? this.maxIdleConnections : 0,
+                                                   this.maxIdleTime, this.maxMessagesPerConnection);
+        this.transportPool.start();
+        ComponentContext context = getServiceUnit().getComponent().getComponentContext();
+        if (context != null && context.getMBeanServer() != null) {
+            try {
+                String name = "MailTransportPool-" + getKey().replaceAll("[^\\w.-]", "_");
+                this.transportPoolMBeanName = MBeanServerHelper.register(context.getMBeanServer(),
+                        context.getMBeanNames().createCustomComponentMBeanName(name), this.transportPool);
+            } catch (Exception e) {
+                logger.warn("Unable to register mail transport pool MBean", e);
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.apache.servicemix.common.endpoints.SimpleEndpoint#stop()
+     */
+    @Override
+    public synchronized void stop() throws Exception {
+        if (this.transportPoolMBeanName != null) {
+            try {
+                MBeanServerHelper.unregister(getServiceUnit().getComponent().getComponentContext().getMBeanServer(),
+                                             this.transportPoolMBeanName);
+            } catch (Exception e) {
+                logger.warn("Unable to unregister mail transport pool MBean", e);
+            }
+            this.transportPoolMBeanName = null;
+        }
+        if (this.transportPool != null) {
+            this.transportPool.close();
+        }
+        super.stop();
+    }
+
     /*
      * (non-Javadoc)
      * @see
@@ -180,47 +234,70 @@ public class MailSenderEndpoint extends ProviderEndpoint implements MailEndpoint
     }
 
     private void sendMail(MessageExchange exchange, NormalizedMessage in) throws Exception {
-        Session session;
-        Properties props = MailUtils.getPropertiesForProtocol(this.config, this.customTrustManagers);
-        props.put("mail.debug", isDebugMode() ? "true" : "false");
-
         String user = getUsername(in);
         String passwd = getPassword(in);
         String protocol = getProtocol(in);
         String host = getHost(in);
         int port = getPort(in);
 
-        // apply the custom properties
-        applyCustomProperties(props);
+        // reuse an open connection to the same server with the same credentials if any
+        String key = MailTransportPool.createKey(protocol, host, port, user, passwd);
+        MailTransportPool.Connection connection = this.transportPool.borrow(key);
+        if (connection == null) {
+            Properties props = MailUtils.getPropertiesForProtocol(this.config, this.customTrustManagers);
+            props.put("mail.debug", isDebugMode() ? "true" : "false");
 
-        // Get session
-        session = Session.getInstance(props, config.getAuthenticator(user, passwd));
+            // apply the custom properties
+            applyCustomProperties(props);
 
-        // debug the session
-        session.setDebug(this.debugMode);
+            // Get session
+            Session session = Session.getInstance(props, config.getAuthenticator(user, passwd));
 
-        // get the transport from session
-        Transport transport = session.getTransport(protocol);
+            // debug the session
+            session.setDebug(this.debugMode);
 
-        // Connect only once here
-        // Transport.send() disconnects after each send
-        // Usually, no username and password is required for SMTP
-        transport.connect(host, port, user, passwd);
+            // get the transport from session
+            Transport transport = session.getTransport(protocol);
 
-        // Define message
-        MimeMessage msg = new MimeMessage(session);
+            // Connect only once here
+            // Transport.send() disconnects after each send
+            // Usually, no username and password is required for SMTP
+            transport.connect(host, port, user, passwd);
 
-        // handle ignore properties
-        handleIgnoreProperties(in);
+            connection = this.transportPool.create(key, session, transport);
+        }
 
-        // let the marshaler to the conversion of message to mail
-        this.marshaler.convertJBIToMail(msg, exchange, in, this.sender, this.receiver);
+        MimeMessage msg;
+        try {
+            // Define message
+            msg = new MimeMessage(connection.getSession());
+
+            // handle ignore properties
+            handleIgnoreProperties(in);
+
+            // let the marshaler to the conversion of message to mail
+            this.marshaler.convertJBIToMail(msg, exchange, in, this.sender, this.receiver);
+        } catch (Exception e) {
+            // the connection is still usable
+            this.transportPool.release(connection);
+            throw e;
+        }
 
         // Send message
-        transport.sendMessage(msg, msg.getAllRecipients());
-
-        // close transport
-        transport.close();
+        long start = System.currentTimeMillis();
+        boolean sent = false;
+        try {
+            connection.getTransport().sendMessage(msg, msg.getAllRecipients());
+            sent = true;
+        } finally {
+            if (sent) {
+                connection.sent(System.currentTimeMillis() - start);
+                // keep the transport open for the next mail, or close it
+                this.transportPool.release(connection);
+            } else {
+                this.transportPool.invalidate(connection);
+            }
+        }
     }
 
     /**
@@ -446,4 +523,78 @@ public class MailSenderEndpoint extends ProviderEndpoint implements MailEndpoint
 	public void setIgnoreMessageProperties(IgnoreList ignoreMessageProperties) {
 		this.ignoreMessageProperties = ignoreMessageProperties;
 	}
+
+    public boolean isPooledTransport() {
+        return this.pooledTransport;
+    }
+
+    /**
+     * <p>Specifies if the connections to the mail server are kept open to send
+     * the following mails, instead of connecting for each mail. Idle connections
+     * are checked before being reused and closed after <code>maxIdleTime</code>.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>false</b></i><br/><br/>
+     *
+     * @param pooledTransport
+     * 				a <code>boolean</code> value as flag
+     */
+    public void setPooledTransport(boolean pooledTransport) {
+        this.pooledTransport = pooledTransport;
+    }
+
+    public int getMaxIdleConnections() {
+        return this.maxIdleConnections;
+    }
+
+    /**
+     * <p>Specifies the maximum number of idle connections kept open when
+     * <code>pooledTransport</code> is enabled.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>4</b></i><br/><br/>
+     *
+     * @param maxIdleConnections
+     * 				a <code>int</code> value for the maximum of idle connections
+     */
+    public void setMaxIdleConnections(int maxIdleConnections) {
+        this.maxIdleConnections = maxIdleConnections;
+    }
+
+    public long getMaxIdleTime() {
+        return this.maxIdleTime;
+    }
+
+    /**
+     * <p>Specifies the number of milliseconds after which an idle pooled
+     * connection is closed.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>60000</b></i><br/><br/>
+     *
+     * @param maxIdleTime
+     * 				a <code>long</code> value in milliseconds
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public int getMaxMessagesPerConnection() {
+        return this.maxMessagesPerConnection;
+    }
+
+    /**
+     * <p>Specifies the number of mails sent over a pooled connection before it
+     * is closed and a new one is opened. Some mail servers limit the number of
+     * mails accepted per connection.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>100</b></i><br/><br/>
+     *
+     * @param maxMessagesPerConnection
+     * 				a <code>int</code> value for the maximum of mails per connection
+     */
+    public void setMaxMessagesPerConnection(int maxMessagesPerConnection) {
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+    }
+
+    /**
+     * @return the connections and send statistics of this endpoint, or
+     *         <code>null</code> if the endpoint has not been started
+     */
+    public MailTransportPool getTransportPool() {
+        return this.transportPool;
+    }
 }
@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.mail.utils;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of connected mail transports, keyed by server and credentials, so that
+ * consecutive mails do not pay for a new connection, TLS and authentication handshake
+ * each.
+ * <p>
+ * Idle connections are checked with {@link Transport#isConnected()} (a <code>NOOP</code>
+ * for SMTP) before being reused, and closed when they were not used for
+ * <code>maxIdleTime</code> milliseconds.  A connection is closed after having sent
+ * <code>maxMessagesPerConnection</code> mails.  With <code>maxIdle</code> set to 0,
+ * each connection is closed as soon as its mail is sent.
+ */
+public class MailTransportPool implements MailTransportPoolMBean {
+
+    private final Logger logger = LoggerFactory.getLogger(MailTransportPool.class);
+
+    private final int maxIdle;
+    private final long maxIdleTime;
+    private final int maxMessagesPerConnection;
+
+    // idle connections per key, the most recently used first
+    private final Map<String, LinkedList<Connection>> idle = new HashMap<String, LinkedList<Connection>>();
+    private int idleCount;
+    private boolean closed;
+    private Timer evictor;
+
+    private final AtomicLong sendCount = new AtomicLong();
+    private final AtomicLong totalSendTime = new AtomicLong();
+    private final AtomicLong maxSendTime = new AtomicLong();
+    private final AtomicLong connectionCount = new AtomicLong();
+    private final AtomicLong reuseCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    public MailTransportPool(int maxIdle, long maxIdleTime, int maxMessagesPerConnection) {
+        this.maxIdle = maxIdle;
+        this.maxIdleTime = maxIdleTime;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+    }
+
+    /**
+     * Build the key of the connections to a server with the given credentials.  The
+     * credentials are only part of the key as a hash, so that the password is not kept
+     * in memory, nor shown in logs or dumps, in clear.
+     *
+     * @return <code>protocol://user@host:port#hash</code>
+     */
+    public static String createKey(String protocol, String host, int port, String user, String password) {
+        StringBuilder key = new StringBuilder();
+        key.append(protocol).append("://").append(user).append('@').append(host).append(':').append(port).append('#');
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((user + ":" + password).getBytes("UTF-8"));
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Start closing the connections idle for too long in the background
+     */
+    public synchronized void start() {
+        if (maxIdle > 0 && maxIdleTime > 0 && evictor == null) {
+            long period = Math.max(1000, maxIdleTime / 2);
+            evictor = new Timer("MailTransportPool evictor", true);
+            evictor.schedule(new TimerTask() {
+                public void run() {
+                    evict();
+                }
+            }, period, period);
+        }
+    }
+
+    /**
+     * Get an idle connection for the given key
+     *
+     * @return a connected transport, or <code>null</code> if a new one has to be connected
+     *         and given to {@link #create(String, Session, Transport)}
+     */
+    public Connection borrow(String key) {
+        while (true) {
+            Connection connection;
+            synchronized (this) {
+                LinkedList<Connection> connections = idle.get(key);
+                if (connections == null || connections.isEmpty()) {
+                    return null;
+                }
+                connection = connections.removeFirst();
+                idleCount--;
+            }
+            if (System.currentTimeMillis() - connection.lastUsed > maxIdleTime) {
+                evictedCount.incrementAndGet();
+                close(connection);
+            } else if (!connection.transport.isConnected()) {
+                // closed by the server
+                close(connection);
+            } else {
+                reuseCount.incrementAndGet();
+                return connection;
+            }
+        }
+    }
+
+    /**
+     * Wrap a newly connected transport
+     */
+    public Connection create(String key, Session session, Transport transport) {
+        connectionCount.incrementAndGet();
+        return new Connection(key, session, transport);
+    }
+
+    /**
+     * Give back a connection after a mail has been sent, or could not be created
+     */
+    public void release(Connection connection) {
+        connection.lastUsed = System.currentTimeMillis();
+        if (connection.messages < maxMessagesPerConnection) {
+            synchronized (this) {
+                if (!closed && idleCount < maxIdle) {
+                    LinkedList<Connection> connections = idle.get(connection.key);
+                    if (connections == null) {
+                        connections = new LinkedList<Connection>();
+                        idle.put(connection.key, connections);
+                    }
+                    connections.addFirst(connection);
+                    idleCount++;
+                    return;
+                }
+            }
+        }
+        close(connection);
+    }
+
+    /**
+     * Close a connection which failed to send a mail
+     */
+    public void invalidate(Connection connection) {
+        close(connection);
+    }
+
+    /**
+     * Close the connections idle for more than <code>maxIdleTime</code>
+     */
+    public void evict() {
+        LinkedList<Connection> expired = new LinkedList<Connection>();
+        long limit = System.currentTimeMillis() - maxIdleTime;
+        synchronized (this) {
+            for (Iterator<LinkedList<Connection>> it = idle.values().iterator(); it.hasNext();) {
+                LinkedList<Connection> connections = it.next();
+                // the least recently used are last
+                while (!connections.isEmpty() && connections.getLast().lastUsed < limit) {
+                    expired.add(connections.removeLast());
+                    idleCount--;
+                }
+                if (connections.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        for (Connection connection : expired) {
+            evictedCount.incrementAndGet();
+            close(connection);
+        }
+    }
+
+    /**
+     * Close all the idle connections and stop pooling
+     */
+    public void close() {
+        LinkedList<Connection> connections = new LinkedList<Connection>();
+        synchronized (this) {
+            closed = true;
+            if (evictor != null) {
+                evictor.cancel();
+                evictor = null;
+            }
+            for (LinkedList<Connection> list : idle.values()) {
+                connections.addAll(list);
+            }
+            idle.clear();
+            idleCount = 0;
+        }
+        for (Connection connection : connections) {
+            close(connection);
+        }
+    }
+
+    private void close(Connection connection) {
+        try {
+            connection.transport.close();
+        } catch (MessagingException e) {
+            logger.debug("Error closing mail transport", e);
+        }
+    }
+
+    public long getSendCount() {
+        return sendCount.get();
+    }
+
+    public double getAverageSendTime() {
+        long count = sendCount.get();
+        return count == 0 ? 0 : (double) totalSendTime.get() / count;
+    }
+
+    public long getMaxSendTime() {
+        return maxSendTime.get();
+    }
+
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public long getConnectionReuseCount() {
+        return reuseCount.get();
+    }
+
+    public long getEvictedConnectionCount() {
+        return evictedCount.get();
+    }
+
+    public synchronized int getIdleConnectionCount() {
+        return idleCount;
+    }
+
+    public void reset() {
+        sendCount.set(0);
+        totalSendTime.set(0);
+        maxSendTime.set(0);
+        connectionCount.set(0);
+        reuseCount.set(0);
+        evictedCount.set(0);
+    }
+
+    /**
+     * A connected transport, with the session it was created from
+     */
+    public final class Connection {
+
+        private final String key;
+        private final Session session;
+        private final Transport transport;
+        private int messages;
+        private long lastUsed;
+
+        private Connection(String key, Session session, Transport transport) {
+            this.key = key;
+            this.session = session;
+            this.transport = transport;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        public Transport getTransport() {
+            return transport;
+        }
+
+        /**
+         * Record a mail sent over this connection, and the time it took
+         */
+        public void sent(long millis) {
+            messages++;
+            sendCount.incrementAndGet();
+            totalSendTime.addAndGet(millis);
+            long max = maxSendTime.get();
+            while (millis > max && !maxSendTime.compareAndSet(max, millis)) {
+                max = maxSendTime.get();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.mail.utils;
+
+/**
+ * JMX view on the mail transports used by a sender endpoint
+ */
+public interface MailTransportPoolMBean {
+
+    /**
+     * @return the number of mails sent
+     */
+    long getSendCount();
+
+    /**
+     * @return the average time (in milliseconds) taken to send a mail over an open connection
+     */
+    double getAverageSendTime();
+
+    /**
+     * @return the longest time (in milliseconds) taken to send a mail over an open connection
+     */
+    long getMaxSendTime();
+
+    /**
+     * @return the number of connections opened to the mail servers
+     */
+    long getConnectionCount();
+
+    /**
+     * @return the number of times an open connection was reused to send a mail
+     */
+    long getConnectionReuseCount();
+
+    /**
+     * @return the number of idle connections closed because they were not used for too long
+     */
+    long getEvictedConnectionCount();
+
+    /**
+     * @return the number of open connections currently idle
+     */
+    int getIdleConnectionCount();
+
+    /**
+     * Reset the counters
+     */
+    void reset();
+
+}
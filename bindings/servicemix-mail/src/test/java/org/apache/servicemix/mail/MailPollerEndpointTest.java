@@ -0,0 +1,428 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.mail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.jbi.messaging.ExchangeStatus;
+import javax.jbi.messaging.InOnly;
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessageExchangeFactory;
+import javax.jbi.messaging.MessagingException;
+import javax.jbi.messaging.NormalizedMessage;
+import javax.mail.Flags;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.UIDFolder;
+import javax.mail.URLName;
+import javax.mail.internet.MimeMessage;
+
+import junit.framework.TestCase;
+
+import org.apache.servicemix.mail.marshaler.AbstractMailMarshaler;
+import org.apache.servicemix.tck.mock.MockExchangeFactory;
+import org.apache.servicemix.tck.mock.MockMessageExchange;
+
+/**
+ * tests the incremental synchronization of a folder kept open between polls
+ */
+public class MailPollerEndpointTest extends TestCase {
+
+    private static final String UID = "uid";
+
+    private Session session;
+    private TestFolder folder;
+    private TestPoller poller;
+
+    public void setUp() throws Exception {
+        this.session = Session.getInstance(new Properties());
+        this.folder = new TestFolder(new TestStore(this.session), 1);
+        this.poller = new TestPoller();
+        this.poller.setConnection("imap://user@localhost/INBOX?password=secret");
+        this.poller.setPersistentConnection(true);
+        this.poller.setMarshaler(new UidMarshaler());
+    }
+
+    public void testFullSync() throws Exception {
+        this.folder.add(1, 2, 3);
+        this.folder.getMessage(2).setFlag(Flags.Flag.SEEN, true);
+
+        this.poller.poll();
+        assertEquals(Arrays.asList(1L, 3L), this.poller.delivered);
+        assertTrue(this.folder.isSeen(1));
+        assertTrue(this.folder.isSeen(3));
+        assertNull("The first poll must search the whole folder", this.folder.range);
+    }
+
+    public void testIncrementalSync() throws Exception {
+        this.folder.add(1, 2);
+        this.poller.poll();
+        assertEquals(Arrays.asList(1L, 2L), this.poller.delivered);
+
+        // an old mail flagged unseen again is not part of the next poll
+        this.folder.getMessage(1).setFlag(Flags.Flag.SEEN, false);
+        this.folder.add(3, 4);
+        this.poller.delivered.clear();
+        this.poller.poll();
+        assertEquals(Arrays.asList(3L, 4L), this.poller.delivered);
+        assertEquals(Arrays.asList(3L, 4L), this.folder.range);
+
+        // nothing new
+        this.poller.delivered.clear();
+        this.poller.poll();
+        assertTrue(this.poller.delivered.isEmpty());
+    }
+
+    public void testUidValidityChange() throws Exception {
+        this.folder.add(1, 2);
+        this.poller.poll();
+
+        // the uids are no longer valid, all the folder has to be searched again
+        this.folder.getMessage(1).setFlag(Flags.Flag.SEEN, false);
+        this.folder.uidValidity = 2;
+        this.folder.range = null;
+        this.poller.delivered.clear();
+        this.poller.poll();
+        assertEquals(Arrays.asList(1L), this.poller.delivered);
+        assertNull(this.folder.range);
+
+        // and the next poll is incremental again
+        this.folder.add(3);
+        this.poller.delivered.clear();
+        this.poller.poll();
+        assertEquals(Arrays.asList(3L), this.poller.delivered);
+        assertEquals(Arrays.asList(3L, 3L), this.folder.range);
+    }
+
+    public void testMaxFetchSize() throws Exception {
+        this.poller.setMaxFetchSize(2);
+        this.folder.add(1, 2, 3, 4, 5);
+
+        this.poller.poll();
+        assertEquals(Arrays.asList(1L, 2L), this.poller.delivered);
+
+        // the mails skipped by the previous poll are fetched by the next ones
+        this.poller.delivered.clear();
+        this.poller.poll();
+        assertEquals(Arrays.asList(3L, 4L), this.poller.delivered);
+        assertEquals(Arrays.asList(3L, 5L), this.folder.range);
+
+        this.poller.delivered.clear();
+        this.poller.poll();
+        assertEquals(Arrays.asList(5L), this.poller.delivered);
+    }
+
+    public void testAsyncDeliveryFailure() throws Exception {
+        this.poller.setMaxConcurrentMessages(2);
+        this.poller.failing.add(2L);
+        this.folder.add(1, 2, 3);
+
+        this.poller.poll();
+        assertEquals(Arrays.asList(1L, 2L, 3L), this.poller.delivered);
+        assertTrue(this.folder.isSeen(1));
+        assertFalse(this.folder.isSeen(2));
+        assertTrue(this.folder.isSeen(3));
+
+        // the failed mail moved the high-water mark back, so it is fetched again
+        this.poller.failing.clear();
+        this.poller.delivered.clear();
+        this.poller.poll();
+        assertEquals(Arrays.asList(2L), this.poller.delivered);
+        assertEquals(Arrays.asList(2L, 3L), this.folder.range);
+
+        this.poller.delivered.clear();
+        this.poller.poll();
+        assertTrue(this.poller.delivered.isEmpty());
+    }
+
+    public void testLostExchange() throws Exception {
+        this.poller.setMaxConcurrentMessages(2);
+        this.poller.setDeliveryTimeout(100);
+        this.poller.lost.add(2L);
+        this.folder.add(1, 2, 3);
+
+        // the poll doesn't wait forever for the answer of the lost exchange
+        this.poller.poll();
+        assertEquals(Arrays.asList(1L, 2L, 3L), this.poller.delivered);
+        assertFalse(this.folder.isSeen(2));
+        assertTrue(this.folder.isSeen(3));
+
+        // the lost mail is fetched again
+        this.poller.lost.clear();
+        this.poller.delivered.clear();
+        this.poller.poll();
+        assertEquals(Arrays.asList(2L), this.poller.delivered);
+        assertEquals(Arrays.asList(2L, 3L), this.folder.range);
+    }
+
+    /**
+     * a poller delivering the mails without any container, the asynchronous
+     * exchanges being answered as soon as they are sent
+     */
+    private class TestPoller extends MailPollerEndpoint {
+
+        private final List<Long> delivered = new ArrayList<Long>();
+        private final Set<Long> failing = new HashSet<Long>();
+        // exchanges never answered
+        private final Set<Long> lost = new HashSet<Long>();
+        private int exchanges;
+
+        private final MockExchangeFactory exchangeFactory = new MockExchangeFactory() {
+            public InOnly createInOnlyExchange() throws MessagingException {
+                InOnly io = super.createInOnlyExchange();
+                ((MockMessageExchange) io).setExchangeId("exchange-" + exchanges++);
+                return io;
+            }
+        };
+
+        protected Store connect() throws Exception {
+            return folder.getStore();
+        }
+
+        public MessageExchangeFactory getExchangeFactory() {
+            return this.exchangeFactory;
+        }
+
+        protected void configureExchangeTarget(MessageExchange exchange) {
+        }
+
+        protected void sendSync(MessageExchange exchange) throws MessagingException {
+            deliver(exchange);
+        }
+
+        protected void send(MessageExchange exchange) throws MessagingException {
+            deliver(exchange);
+            if (this.lost.contains(exchange.getProperty(UID))) {
+                return;
+            }
+            try {
+                process(exchange);
+            } catch (Exception e) {
+                throw new MessagingException(e);
+            }
+        }
+
+        private void deliver(MessageExchange exchange) {
+            Long uid = (Long) exchange.getProperty(UID);
+            this.delivered.add(uid);
+            if (this.failing.contains(uid)) {
+                exchange.setError(new Exception("Delivery of mail " + uid + " failed"));
+                exchange.setStatus(ExchangeStatus.ERROR);
+            } else {
+                exchange.setStatus(ExchangeStatus.DONE);
+            }
+        }
+    }
+
+    /**
+     * a marshaler only passing the uid of the mail
+     */
+    private static class UidMarshaler extends AbstractMailMarshaler {
+
+        public void convertMailToJBI(MessageExchange exchange, NormalizedMessage nmsg, MimeMessage mailMsg) {
+            exchange.setProperty(UID, Long.valueOf(((TestMessage) mailMsg).uid));
+        }
+
+        public void convertJBIToMail(MimeMessage mimeMessage, MessageExchange exchange, NormalizedMessage nmsg,
+                                     String configuredSender, String configuredReceiver) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class TestMessage extends MimeMessage {
+
+        private final long uid;
+
+        TestMessage(Folder folder, int msgnum, long uid) {
+            super(folder, msgnum);
+            this.uid = uid;
+        }
+    }
+
+    private static class TestStore extends Store {
+
+        private Folder folder;
+
+        TestStore(Session session) {
+            super(session, new URLName("imap://localhost"));
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+
+        public Folder getDefaultFolder() {
+            return this.folder;
+        }
+
+        public Folder getFolder(String name) {
+            return this.folder;
+        }
+
+        public Folder getFolder(URLName url) {
+            return this.folder;
+        }
+    }
+
+    /**
+     * an always open folder holding its messages in memory
+     */
+    private static class TestFolder extends Folder implements UIDFolder {
+
+        private final List<TestMessage> messages = new ArrayList<TestMessage>();
+        private long uidValidity;
+        // the uid range of the last incremental search
+        private List<Long> range;
+
+        TestFolder(TestStore store, long uidValidity) {
+            super(store);
+            store.folder = this;
+            this.uidValidity = uidValidity;
+        }
+
+        void add(long... uids) {
+            for (long uid : uids) {
+                this.messages.add(new TestMessage(this, this.messages.size() + 1, uid));
+            }
+        }
+
+        boolean isSeen(long uid) throws javax.mail.MessagingException {
+            return getMessageByUID(uid).isSet(Flags.Flag.SEEN);
+        }
+
+        public long getUIDValidity() {
+            return this.uidValidity;
+        }
+
+        public Message getMessageByUID(long uid) {
+            for (TestMessage msg : this.messages) {
+                if (msg.uid == uid) {
+                    return msg;
+                }
+            }
+            return null;
+        }
+
+        public Message[] getMessagesByUID(long start, long end) {
+            this.range = Arrays.asList(start, end);
+            List<Message> result = new ArrayList<Message>();
+            for (TestMessage msg : this.messages) {
+                if (msg.uid >= start && (end == LASTUID || msg.uid <= end)) {
+                    result.add(msg);
+                }
+            }
+            return result.toArray(new Message[result.size()]);
+        }
+
+        public Message[] getMessagesByUID(long[] uids) {
+            Message[] result = new Message[uids.length];
+            for (int i = 0; i < uids.length; i++) {
+                result[i] = getMessageByUID(uids[i]);
+            }
+            return result;
+        }
+
+        public long getUID(Message message) {
+            return ((TestMessage) message).uid;
+        }
+
+        public String getName() {
+            return "INBOX";
+        }
+
+        public String getFullName() {
+            return "INBOX";
+        }
+
+        public Folder getParent() {
+            return null;
+        }
+
+        public boolean exists() {
+            return true;
+        }
+
+        public Folder[] list(String pattern) {
+            return new Folder[0];
+        }
+
+        public char getSeparator() {
+            return '/';
+        }
+
+        public int getType() {
+            return HOLDS_MESSAGES;
+        }
+
+        public boolean create(int type) {
+            return false;
+        }
+
+        public boolean hasNewMessages() {
+            return false;
+        }
+
+        public Folder getFolder(String name) {
+            return null;
+        }
+
+        public boolean delete(boolean recurse) {
+            return false;
+        }
+
+        public boolean renameTo(Folder f) {
+            return false;
+        }
+
+        public void open(int mode) {
+        }
+
+        public void close(boolean expunge) {
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public Flags getPermanentFlags() {
+            return new Flags(Flags.Flag.SEEN);
+        }
+
+        public int getMessageCount() {
+            return this.messages.size();
+        }
+
+        public Message getMessage(int msgnum) {
+            return this.messages.get(msgnum - 1);
+        }
+
+        public void appendMessages(Message[] msgs) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Message[] expunge() {
+            return new Message[0];
+        }
+    }
+}
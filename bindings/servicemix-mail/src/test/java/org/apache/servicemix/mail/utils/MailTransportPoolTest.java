@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.mail.utils;
+
+import java.util.Properties;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.URLName;
+
+import junit.framework.TestCase;
+
+/**
+ * tests the reuse and closing of the pooled mail transports
+ */
+public class MailTransportPoolTest extends TestCase {
+
+    private static final String KEY = "smtp://user@localhost:25";
+
+    private Session session;
+
+    public void setUp() throws Exception {
+        this.session = Session.getInstance(new Properties());
+    }
+
+    public void testBorrowAndRelease() throws Exception {
+        MailTransportPool pool = new MailTransportPool(2, 60000, 10);
+        assertNull(pool.borrow(KEY));
+
+        TestTransport transport = new TestTransport(this.session);
+        MailTransportPool.Connection connection = pool.create(KEY, this.session, transport);
+        connection.sent(5);
+        pool.release(connection);
+        assertEquals(1, pool.getIdleConnectionCount());
+
+        // reused for the same key only
+        assertNull(pool.borrow("smtp://other@localhost:25"));
+        assertSame(connection, pool.borrow(KEY));
+        assertEquals(0, pool.getIdleConnectionCount());
+        assertEquals(1, pool.getConnectionCount());
+        assertEquals(1, pool.getConnectionReuseCount());
+        assertEquals(1, pool.getSendCount());
+        assertFalse(transport.closed);
+
+        // a connection closed by the server is not reused
+        pool.release(connection);
+        transport.connected = false;
+        assertNull(pool.borrow(KEY));
+        assertTrue(transport.closed);
+    }
+
+    public void testMaxIdle() throws Exception {
+        MailTransportPool pool = new MailTransportPool(1, 60000, 10);
+        TestTransport first = new TestTransport(this.session);
+        TestTransport second = new TestTransport(this.session);
+        pool.release(pool.create(KEY, this.session, first));
+        pool.release(pool.create(KEY, this.session, second));
+        assertEquals(1, pool.getIdleConnectionCount());
+        assertFalse(first.closed);
+        assertTrue(second.closed);
+
+        // without idle connections, each one is closed once released
+        pool = new MailTransportPool(0, 60000, 10);
+        TestTransport transport = new TestTransport(this.session);
+        pool.release(pool.create(KEY, this.session, transport));
+        assertTrue(transport.closed);
+    }
+
+    public void testMaxMessagesPerConnection() throws Exception {
+        MailTransportPool pool = new MailTransportPool(2, 60000, 2);
+        TestTransport transport = new TestTransport(this.session);
+        MailTransportPool.Connection connection = pool.create(KEY, this.session, transport);
+
+        connection.sent(1);
+        pool.release(connection);
+        assertSame(connection, pool.borrow(KEY));
+
+        // the connection is recycled once it has sent enough mails
+        connection.sent(1);
+        pool.release(connection);
+        assertTrue(transport.closed);
+        assertEquals(0, pool.getIdleConnectionCount());
+        assertNull(pool.borrow(KEY));
+    }
+
+    public void testEviction() throws Exception {
+        MailTransportPool pool = new MailTransportPool(2, 50, 10);
+        TestTransport expired = new TestTransport(this.session);
+        pool.release(pool.create(KEY, this.session, expired));
+        Thread.sleep(100);
+        TestTransport recent = new TestTransport(this.session);
+        pool.release(pool.create(KEY, this.session, recent));
+
+        pool.evict();
+        assertTrue(expired.closed);
+        assertFalse(recent.closed);
+        assertEquals(1, pool.getIdleConnectionCount());
+        assertEquals(1, pool.getEvictedConnectionCount());
+
+        // an expired connection is not given by borrow either
+        Thread.sleep(100);
+        assertNull(pool.borrow(KEY));
+        assertTrue(recent.closed);
+        assertEquals(2, pool.getEvictedConnectionCount());
+    }
+
+    public void testClose() throws Exception {
+        MailTransportPool pool = new MailTransportPool(2, 60000, 10);
+        TestTransport idle = new TestTransport(this.session);
+        pool.release(pool.create(KEY, this.session, idle));
+        MailTransportPool.Connection busy = pool.create(KEY, this.session, new TestTransport(this.session));
+
+        pool.close();
+        assertTrue(idle.closed);
+        assertEquals(0, pool.getIdleConnectionCount());
+
+        // the connections in use are closed when released
+        pool.release(busy);
+        assertTrue(((TestTransport) busy.getTransport()).closed);
+    }
+
+    public void testCreateKey() throws Exception {
+        String key = MailTransportPool.createKey("smtp", "localhost", 25, "user", "secret");
+        assertTrue(key.startsWith("smtp://user@localhost:25#"));
+        assertEquals(-1, key.indexOf("secret"));
+        assertEquals(key, MailTransportPool.createKey("smtp", "localhost", 25, "user", "secret"));
+        assertFalse(key.equals(MailTransportPool.createKey("smtp", "localhost", 25, "user", "other")));
+    }
+
+    /**
+     * a transport which is connected until closed
+     */
+    private static class TestTransport extends Transport {
+
+        private boolean connected = true;
+        private boolean closed;
+
+        TestTransport(Session session) {
+            super(session, new URLName("smtp://localhost"));
+        }
+
+        public void sendMessage(Message msg, Address[] addresses) {
+        }
+
+        public boolean isConnected() {
+            return this.connected && !this.closed;
+        }
+
+        public void close() {
+            this.closed = true;
+        }
+    }
+}
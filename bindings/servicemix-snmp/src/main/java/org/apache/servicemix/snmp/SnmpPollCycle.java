@@ -0,0 +1,297 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.snmp;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Target;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.SMIConstants;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * The requests sent to the targets of a polling endpoint during one polling cycle,
+ * and the variables received so far.
+ * <p>
+ * The scalar OIDs of a target are read with a single <code>GET</code>.  The table
+ * columns are walked with <code>GETBULK</code> requests for SNMP v2c and v3 targets,
+ * and <code>GETNEXT</code> requests for SNMP v1 targets, each response leading to the
+ * next request until every column has been read.  The cycle is complete once all
+ * requests have been answered or have timed out.
+ */
+public class SnmpPollCycle {
+
+    private final int maxRepetitions;
+    private final Map<Address, TargetResult> results = new LinkedHashMap<Address, TargetResult>();
+    private int pending;
+    private boolean delivered;
+
+    public SnmpPollCycle(int maxRepetitions) {
+        this.maxRepetitions = maxRepetitions;
+    }
+
+    /**
+     * creates the first requests to send to the given target
+     *
+     * @param target the target to poll
+     * @param oids the scalar OIDs to get
+     * @param columns the table columns to walk
+     * @return the requests to send, with the <code>Request</code> to use as user handle
+     */
+    public synchronized List<Request> createRequests(Target target, List<OID> oids, List<OID> columns) {
+        TargetResult result = new TargetResult(target);
+        this.results.put(target.getAddress(), result);
+
+        List<Request> requests = new ArrayList<Request>();
+        if (oids != null && !oids.isEmpty()) {
+            PDU pdu = new PDU();
+            pdu.setType(PDU.GET);
+            for (OID oid : oids) {
+                pdu.add(new VariableBinding(oid));
+            }
+            requests.add(new Request(result, pdu, null));
+        }
+        if (columns != null && !columns.isEmpty()) {
+            OID[] roots = columns.toArray(new OID[columns.size()]);
+            requests.add(new Request(result, createWalk(target, roots, roots), roots));
+        }
+        if (result.request == null && !requests.isEmpty()) {
+            result.request = requests.get(0).getPdu();
+        }
+        this.pending += requests.size();
+        return requests;
+    }
+
+    /**
+     * handles the response to a request of this cycle
+     *
+     * @param request the request
+     * @param response the response, <code>null</code> if the request timed out
+     * @return the next request to send to walk the remaining table rows, or
+     *         <code>null</code> if the request is done
+     */
+    public synchronized Request onResponse(Request request, PDU response) {
+        Request next = null;
+        if (response == null) {
+            request.result.timedOut = true;
+        } else if (request.roots == null) {
+            request.result.received = true;
+            for (int i = 0; i < response.size(); i++) {
+                request.result.add(response.get(i));
+            }
+        } else {
+            request.result.received = true;
+            next = walk(request, response);
+        }
+        if (next == null) {
+            this.pending--;
+        }
+        return next;
+    }
+
+    /**
+     * checks if all the requests of this cycle have been answered or have timed out
+     *
+     * @return <code>true</code> for the first caller once the cycle is complete, so that
+     *         its results are delivered only once
+     */
+    public synchronized boolean checkComplete() {
+        if (this.pending <= 0 && !this.delivered) {
+            this.delivered = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the requests of the targets which answered, keyed by target address
+     */
+    public synchronized Map<Address, PDU> getRequests() {
+        Map<Address, PDU> requests = new LinkedHashMap<Address, PDU>();
+        for (Map.Entry<Address, TargetResult> entry : this.results.entrySet()) {
+            if (entry.getValue().received) {
+                requests.put(entry.getKey(), entry.getValue().request);
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * @return the variables received from the targets which answered, keyed by target address
+     */
+    public synchronized Map<Address, PDU> getResponses() {
+        Map<Address, PDU> responses = new LinkedHashMap<Address, PDU>();
+        for (Map.Entry<Address, TargetResult> entry : this.results.entrySet()) {
+            if (entry.getValue().received) {
+                responses.put(entry.getKey(), entry.getValue().response);
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * @return the addresses of the targets which did not answer all requests in time
+     */
+    public synchronized List<Address> getTimedOutTargets() {
+        List<Address> addresses = new ArrayList<Address>();
+        for (Map.Entry<Address, TargetResult> entry : this.results.entrySet()) {
+            if (entry.getValue().timedOut) {
+                addresses.add(entry.getKey());
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * keeps the variables of the walked columns and prepares the next request
+     */
+    private Request walk(Request request, PDU response) {
+        OID[] roots = request.roots;
+        OID[] cursors = new OID[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            cursors[i] = request.pdu.get(i).getOid();
+        }
+
+        if (response.getErrorStatus() != PDU.noError) {
+            // a SNMP v1 agent answers noSuchName when a column has no more rows
+            int index = response.getErrorIndex() - 1;
+            if (response.getErrorStatus() == PDU.noSuchName && index >= 0 && index < roots.length) {
+                roots[index] = null;
+                return next(request, roots, cursors);
+            }
+            return null;
+        }
+        if (response.size() == 0) {
+            return null;
+        }
+
+        for (int i = 0; i < response.size(); i++) {
+            int column = i % roots.length;
+            if (roots[column] == null) {
+                continue;
+            }
+            VariableBinding binding = response.get(i);
+            OID oid = binding.getOid();
+            if (isEndOfColumn(binding) || !oid.startsWith(roots[column]) || oid.compareTo(cursors[column]) <= 0) {
+                // walked past the column, or the agent does not move forward
+                roots[column] = null;
+            } else {
+                request.result.add(binding);
+                cursors[column] = oid;
+            }
+        }
+        return next(request, roots, cursors);
+    }
+
+    /**
+     * creates the request continuing the walk of the columns not read yet
+     */
+    private Request next(Request request, OID[] roots, OID[] cursors) {
+        List<OID> remainingRoots = new ArrayList<OID>();
+        List<OID> remainingCursors = new ArrayList<OID>();
+        for (int i = 0; i < roots.length; i++) {
+            if (roots[i] != null) {
+                remainingRoots.add(roots[i]);
+                remainingCursors.add(cursors[i]);
+            }
+        }
+        if (remainingRoots.isEmpty()) {
+            return null;
+        }
+        OID[] nextRoots = remainingRoots.toArray(new OID[remainingRoots.size()]);
+        OID[] nextCursors = remainingCursors.toArray(new OID[remainingCursors.size()]);
+        return new Request(request.result, createWalk(request.result.target, nextRoots, nextCursors), nextRoots);
+    }
+
+    private PDU createWalk(Target target, OID[] roots, OID[] cursors) {
+        PDU pdu = new PDU();
+        if (target.getVersion() == SnmpConstants.version1) {
+            pdu.setType(PDU.GETNEXT);
+        } else {
+            pdu.setType(PDU.GETBULK);
+            pdu.setNonRepeaters(0);
+            pdu.setMaxRepetitions(this.maxRepetitions);
+        }
+        for (OID cursor : cursors) {
+            pdu.add(new VariableBinding(cursor));
+        }
+        return pdu;
+    }
+
+    private static boolean isEndOfColumn(VariableBinding binding) {
+        int syntax = binding.getVariable().getSyntax();
+        return syntax == SMIConstants.EXCEPTION_END_OF_MIB_VIEW
+            || syntax == SMIConstants.EXCEPTION_NO_SUCH_OBJECT
+            || syntax == SMIConstants.EXCEPTION_NO_SUCH_INSTANCE;
+    }
+
+    /**
+     * a request sent to a target, used as user handle of the asynchronous send
+     */
+    public final class Request {
+
+        private final TargetResult result;
+        private final PDU pdu;
+        // the columns still walked, null for a GET
+        private final OID[] roots;
+
+        private Request(TargetResult result, PDU pdu, OID[] roots) {
+            this.result = result;
+            this.pdu = pdu;
+            this.roots = roots;
+        }
+
+        public SnmpPollCycle getCycle() {
+            return SnmpPollCycle.this;
+        }
+
+        public Target getTarget() {
+            return this.result.target;
+        }
+
+        public PDU getPdu() {
+            return this.pdu;
+        }
+    }
+
+    /**
+     * the variables received from a target
+     */
+    private static final class TargetResult {
+
+        private final Target target;
+        private final PDU response = new PDU();
+        private PDU request;
+        private boolean received;
+        private boolean timedOut;
+
+        private TargetResult(Target target) {
+            this.target = target;
+            this.response.setType(PDU.RESPONSE);
+        }
+
+        private void add(VariableBinding binding) {
+            this.response.add(binding);
+        }
+    }
+}
@@ -16,6 +16,11 @@
  */
 package org.apache.servicemix.snmp;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import javax.jbi.management.DeploymentException;
 import javax.jbi.messaging.InOnly;
 import javax.jbi.messaging.MessageExchange;
@@ -24,6 +29,7 @@ import javax.jbi.messaging.NormalizedMessage;
 
 import org.apache.servicemix.common.endpoints.PollingEndpoint;
 import org.apache.servicemix.snmp.marshaler.DefaultSnmpMarshaler;
+import org.apache.servicemix.snmp.marshaler.SnmpBatchMarshalerSupport;
 import org.apache.servicemix.snmp.marshaler.SnmpMarshalerSupport;
 import org.apache.servicemix.snmp.util.OIDList;
 import org.slf4j.Logger;
@@ -41,13 +47,16 @@ import org.snmp4j.security.SecurityProtocols;
 import org.snmp4j.security.USM;
 import org.snmp4j.smi.Address;
 import org.snmp4j.smi.GenericAddress;
-import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
-import org.snmp4j.smi.VariableBinding;
 import org.snmp4j.transport.DefaultUdpTransportMapping;
 
 /**
  * This is the polling endpoint for the snmp component.
+ * <p>
+ * All the targets of the endpoint share one snmp session and transport. At each
+ * polling cycle, the requests are sent to all targets without waiting for the
+ * responses, and the results are delivered once every target has answered or
+ * timed out.
  * 
  * @org.apache.xbean.XBean element="poller"
  * @author lhein
@@ -60,16 +69,18 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
     public static final int DEFAULT_SNMP_VERSION = SnmpConstants.version1;
     public static final int DEFAULT_SNMP_RETRIES = 2;
     public static final int DEFAULT_SNMP_TIMEOUT = 1500;
+    public static final int DEFAULT_MAX_REPETITIONS = 10;
 
-    private Address targetAddress;
     private TransportMapping transport;
     private Snmp snmp;
     private USM usm;
-    private CommunityTarget target;
-    private PDU pdu;
+    private List<CommunityTarget> targets;
 
     private OIDList oids = new OIDList();
+    private OIDList tableOids = new OIDList();
     private String address;
+    private String[] addresses;
+    private int maxRepetitions = DEFAULT_MAX_REPETITIONS;
     private int retries = DEFAULT_SNMP_RETRIES;
     private int timeout = DEFAULT_SNMP_TIMEOUT;
     private int snmpVersion = DEFAULT_SNMP_VERSION;
@@ -85,22 +96,22 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
     public synchronized void activate() throws Exception {
         super.activate();
 
-        this.targetAddress = GenericAddress.parse(this.address);
         this.transport = new DefaultUdpTransportMapping();
         this.snmp = new Snmp(transport);
         this.usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
         SecurityModels.getInstance().addSecurityModel(usm);
 
-        // setting up target
-        target = new CommunityTarget();
-        target.setCommunity(new OctetString(this.snmpCommunity));
-        target.setAddress(targetAddress);
-        target.setRetries(this.retries);
-        target.setTimeout(this.timeout);
-        target.setVersion(this.snmpVersion);
-
-        // creating PDU
-        this.pdu = new PDU();
+        // setting up the targets
+        this.targets = new ArrayList<CommunityTarget>();
+        for (String targetAddress : getTargetAddresses()) {
+            CommunityTarget target = new CommunityTarget();
+            target.setCommunity(new OctetString(this.snmpCommunity));
+            target.setAddress(GenericAddress.parse(targetAddress));
+            target.setRetries(this.retries);
+            target.setTimeout(this.timeout);
+            target.setVersion(this.snmpVersion);
+            this.targets.add(target);
+        }
     }
 
     /*
@@ -138,23 +149,30 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
         super.validate();
 
         // check address not null
-        if (this.address == null) {
-            throw new DeploymentException("The address attribute has to be specified!");
+        List<String> targetAddresses = getTargetAddresses();
+        if (targetAddresses.isEmpty()) {
+            throw new DeploymentException("The address or addresses attribute has to be specified!");
         }
 
-        // check if address is valid
-        try {
-            if (GenericAddress.parse(this.address) == null) {
-                throw new DeploymentException("The specified address " + address + " is not valid!");
+        // check if the addresses are valid
+        for (String targetAddress : targetAddresses) {
+            try {
+                if (GenericAddress.parse(targetAddress) == null) {
+                    throw new DeploymentException("The specified address " + targetAddress + " is not valid!");
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new DeploymentException("The specified address " + targetAddress + " is not valid!");
             }
-        } catch (IllegalArgumentException ex) {
-            throw new DeploymentException("The specified address " + address + " is not valid!");
         }
         
-        // finally check if the oid vector contains values
-        if (this.oids == null || this.oids.size()<=0) {
+        // finally check if the oid vectors contain values
+        if ((this.oids == null || this.oids.size()<=0) && (this.tableOids == null || this.tableOids.size()<=0)) {
             // the poller would be unemployed
-            throw new DeploymentException("There are no OIDs defined to be polled. Check your oids attribute.");
+            throw new DeploymentException("There are no OIDs defined to be polled. Check your oids and tableOids attributes.");
+        }
+
+        if (this.maxRepetitions <= 0) {
+            throw new DeploymentException("The maxRepetitions attribute has to be greater than 0.");
         }
     }
 
@@ -164,16 +182,34 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
      */
     @Override
     public void poll() throws Exception {
-        this.pdu.clear();
-        this.pdu.setType(PDU.GET);
+        SnmpPollCycle cycle = new SnmpPollCycle(this.maxRepetitions);
 
-        // prepare the request items
-        for (OID oid : oids) {
-            this.pdu.add(new VariableBinding(oid));
+        // prepare the requests of all targets before sending any, so that the
+        // cycle can not be seen as complete while requests are still to be sent
+        List<SnmpPollCycle.Request> requests = new ArrayList<SnmpPollCycle.Request>();
+        for (CommunityTarget target : this.targets) {
+            requests.addAll(cycle.createRequests(target, this.oids, this.tableOids));
         }
 
-        // send the request
-        snmp.send(pdu, target, null, this);
+        // send the requests, the responses are received by onResponse
+        for (SnmpPollCycle.Request request : requests) {
+            send(request);
+        }
+    }
+
+    /**
+     * sends a request of a polling cycle
+     * 
+     * @param request the request to send
+     */
+    private void send(SnmpPollCycle.Request request) {
+        try {
+            snmp.send(request.getPdu(), request.getTarget(), request, this);
+        } catch (IOException ex) {
+            logger.error("Error while sending the snmp request to " + request.getTarget().getAddress(), ex);
+            // no response will come for this request
+            handleResponse(request, null);
+        }
     }
 
     /*
@@ -202,15 +238,46 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
         ((Snmp)event.getSource()).cancel(event.getRequest(), this);
 
         // check for valid response
-        if (event.getRequest() == null || event.getResponse() == null) {
-            // ignore null requests/responses
+        if (!(event.getUserObject() instanceof SnmpPollCycle.Request) || event.getRequest() == null) {
+            // ignore unknown requests
             logger.debug("Received invalid snmp event. Request: {} / Response: {}", event.getRequest(),
                       event.getResponse());
             return;
         }
+        if (event.getResponse() == null) {
+            logger.debug("No response received for snmp request {}", event.getRequest());
+        }
 
-        // now prepare the message and send it
-        sendSnmpDataMessage(event.getRequest(), event.getResponse());
+        handleResponse((SnmpPollCycle.Request) event.getUserObject(), event.getResponse());
+    }
+
+    /**
+     * hands the response over to the polling cycle, then sends the next request
+     * of a table walk or delivers the results once the cycle is complete
+     * 
+     * @param request the request
+     * @param response the response PDU, null on time out
+     */
+    private void handleResponse(SnmpPollCycle.Request request, PDU response) {
+        SnmpPollCycle cycle = request.getCycle();
+        SnmpPollCycle.Request next = cycle.onResponse(request, response);
+        if (next != null) {
+            send(next);
+        } else if (cycle.checkComplete()) {
+            Map<Address, PDU> requests = cycle.getRequests();
+            Map<Address, PDU> responses = cycle.getResponses();
+            if (responses.isEmpty()) {
+                logger.debug("No snmp target answered during the polling cycle");
+            } else if (this.targets.size() > 1 && this.marshaler instanceof SnmpBatchMarshalerSupport) {
+                // one message for all targets
+                sendSnmpDataMessage(requests, responses);
+            } else {
+                // one message per target
+                for (Map.Entry<Address, PDU> entry : responses.entrySet()) {
+                    sendSnmpDataMessage(requests.get(entry.getKey()), entry.getValue());
+                }
+            }
+        }
     }
 
     /**
@@ -244,6 +311,55 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
         }
     }
 
+    /**
+     * sends the results of all targets of a polling cycle to the bus
+     * 
+     * @param requests the first request PDU of each target
+     * @param responses the variables received from each target
+     */
+    private void sendSnmpDataMessage(Map<Address, PDU> requests, Map<Address, PDU> responses) {
+        try {
+            // create a inOnly exchange
+            InOnly io = getExchangeFactory().createInOnlyExchange();
+
+            // configure the exchange target
+            configureExchangeTarget(io);
+
+            // create the in message
+            NormalizedMessage inMsg = io.createMessage();
+
+            // let the marshaller convert the data of all targets into one
+            // normalized message
+            ((SnmpBatchMarshalerSupport) this.marshaler).convertToJBI(io, inMsg, requests, responses);
+
+            // then put the in message into the inOnly exchange
+            io.setInMessage(inMsg);
+
+            // and use send to deliver it
+            getChannel().send(io);
+        } catch (MessagingException ex) {
+            logger.error("Error while trying to send the snmp event to the jbi bus", ex);
+        }
+    }
+
+    /**
+     * @return the address and addresses of the targets to poll
+     */
+    private List<String> getTargetAddresses() {
+        List<String> result = new ArrayList<String>();
+        if (this.address != null) {
+            result.add(this.address);
+        }
+        if (this.addresses != null) {
+            for (String targetAddress : this.addresses) {
+                if (targetAddress != null && targetAddress.trim().length() > 0) {
+                    result.add(targetAddress.trim());
+                }
+            }
+        }
+        return result;
+    }
+
     public String getAddress() {
         return this.address;
     }
@@ -285,6 +401,29 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
         this.address = address;
     }
 
+    public String[] getAddresses() {
+        return this.addresses;
+    }
+
+    /**
+     * <p>Specifies the connection URIs of several snmp capable devices to poll
+     * with the same snmp session, in addition to the <code>address</code>. Each
+     * address uses the same template as the <code>address</code> attribute.
+     * When several devices are polled and the marshaler implements 
+     * <code>SnmpBatchMarshalerSupport</code>, the results of all devices are sent
+     * in one message per polling cycle.
+     * <br /><br />
+     * <b><u>Example:</u></b><br />
+     * &nbsp;&nbsp;&nbsp;<i>udp:192.168.2.122/161,udp:192.168.2.123/161</i></p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>null</b></i><br/><br/>
+     * 
+     * @param addresses 
+     * 				a <code>String</code> array containing the connection details
+     */
+    public void setAddresses(String[] addresses) {
+        this.addresses = addresses;
+    }
+
     public int getRetries() {
         return this.retries;
     }
@@ -345,6 +484,23 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
         this.snmpCommunity = snmpCommunity;
     }
 
+    public int getMaxRepetitions() {
+        return this.maxRepetitions;
+    }
+
+    /**
+     * <p>Specifies the number of table rows requested at once with a 
+     * <code>GETBULK</code> request when walking the <code>tableOids</code>. 
+     * Only used with snmp version 2c and above, version 1 reads one row per request.</p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>10</b></i><br/><br/>
+     * 
+     * @param maxRepetitions 
+     * 				a <code>int</code> value containing the number of rows
+     */
+    public void setMaxRepetitions(int maxRepetitions) {
+        this.maxRepetitions = maxRepetitions;
+    }
+
     public SnmpMarshalerSupport getMarshaler() {
         return this.marshaler;
     }
@@ -387,4 +543,24 @@ public class SnmpPollingEndpoint extends PollingEndpoint implements SnmpEndpoint
     public void setOids(OIDList oids) {
         this.oids = oids;
     }
+
+    public OIDList getTableOids() {
+        return this.tableOids;
+    }
+
+    /**
+     * <p>Specifies a reference to a list of table column OID values which will 
+     * be walked at each poll, reading all the rows of the columns. The values 
+     * are specified the same way as for the <code>oids</code> attribute.
+     * <br /><br />
+     * <b><u>Example:</u></b><br />
+     * &nbsp;&nbsp;&nbsp;<i>tableOids="1.3.6.1.2.1.2.2.1.2 , 1.3.6.1.2.1.2.2.1.10"</i></p>
+     * <i>&nbsp;&nbsp;&nbsp;The default value is <b>null</b></i><br/><br/>
+     * 
+     * @param tableOids 
+     * 				a <code>OIDList</code> containing the OID values of the table columns
+     */
+    public void setTableOids(OIDList tableOids) {
+        this.tableOids = tableOids;
+    }
 }
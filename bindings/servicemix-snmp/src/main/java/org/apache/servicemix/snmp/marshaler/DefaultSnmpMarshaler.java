@@ -16,12 +16,15 @@
  */
 package org.apache.servicemix.snmp.marshaler;
 
+import java.util.Map;
+
 import javax.jbi.messaging.MessageExchange;
 import javax.jbi.messaging.MessagingException;
 import javax.jbi.messaging.NormalizedMessage;
 
 import org.apache.servicemix.jbi.jaxp.StringSource;
 import org.snmp4j.PDU;
+import org.snmp4j.smi.Address;
 import org.snmp4j.smi.VariableBinding;
 
 /**
@@ -29,15 +32,19 @@ import org.snmp4j.smi.VariableBinding;
  * 
  * @author lhein
  */
-public class DefaultSnmpMarshaler implements SnmpMarshalerSupport {
+public class DefaultSnmpMarshaler implements SnmpBatchMarshalerSupport {
 
     public static final String SNMP_TAG = "snmp";
+    public static final String TARGET_TAG = "target";
+    public static final String ADDRESS_ATTRIBUTE = "address";
     public static final String ENTRY_TAG = "entry";
     public static final String OID_TAG = "oid";
     public static final String VALUE_TAG = "value";
     
     private static final String SNMP_TAG_OPEN  = '<' + SNMP_TAG + '>';
     private static final String SNMP_TAG_CLOSE = "</" + SNMP_TAG + '>';
+    private static final String TARGET_TAG_OPEN  = '<' + TARGET_TAG + ' ' + ADDRESS_ATTRIBUTE + "=\"";
+    private static final String TARGET_TAG_CLOSE = "</" + TARGET_TAG + '>';
     private static final String ENTRY_TAG_OPEN  = '<' + ENTRY_TAG + '>';
     private static final String ENTRY_TAG_CLOSE = "</" + ENTRY_TAG + '>';
     private static final String OID_TAG_OPEN  = '<' + OID_TAG + '>';
@@ -57,6 +64,43 @@ public class DefaultSnmpMarshaler implements SnmpMarshalerSupport {
         sb.append(SNMP_TAG_OPEN);
                 
         // now loop all variables of the response
+        appendEntries(sb, response);
+        
+        // prepare the footer
+        sb.append(SNMP_TAG_CLOSE);
+        
+        // now put the buffer to the message content
+        inMsg.setContent(new StringSource(sb.toString()));
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.servicemix.snmp.marshaler.SnmpBatchMarshalerSupport#convertToJBI(javax.jbi.messaging.MessageExchange, javax.jbi.messaging.NormalizedMessage, java.util.Map, java.util.Map)
+     */
+    public void convertToJBI(MessageExchange exchange, NormalizedMessage inMsg, Map<Address, PDU> requests,
+                             Map<Address, PDU> responses) throws MessagingException {
+        // the output buffer
+        StringBuffer sb = new StringBuffer();
+
+        // prepare the header
+        sb.append(SNMP_TAG_OPEN);
+
+        // one element per target
+        for (Map.Entry<Address, PDU> entry : responses.entrySet()) {
+            sb.append(TARGET_TAG_OPEN);
+            sb.append(entry.getKey().toString());
+            sb.append("\">");
+            appendEntries(sb, entry.getValue());
+            sb.append(TARGET_TAG_CLOSE);
+        }
+
+        // prepare the footer
+        sb.append(SNMP_TAG_CLOSE);
+
+        // now put the buffer to the message content
+        inMsg.setContent(new StringSource(sb.toString()));
+    }
+
+    private void appendEntries(StringBuffer sb, PDU response) {
         for (Object o : response.getVariableBindings()) {
             VariableBinding b = (VariableBinding)o;
 
@@ -69,11 +113,5 @@ public class DefaultSnmpMarshaler implements SnmpMarshalerSupport {
             sb.append(VALUE_TAG_CLOSE);
             sb.append(ENTRY_TAG_CLOSE);
         }
-        
-        // prepare the footer
-        sb.append(SNMP_TAG_CLOSE);
-        
-        // now put the buffer to the message content
-        inMsg.setContent(new StringSource(sb.toString()));
     }
 }
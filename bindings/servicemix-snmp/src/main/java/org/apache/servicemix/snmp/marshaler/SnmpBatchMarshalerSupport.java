@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.snmp.marshaler;
+
+import java.util.Map;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessagingException;
+import javax.jbi.messaging.NormalizedMessage;
+
+import org.snmp4j.PDU;
+import org.snmp4j.smi.Address;
+
+/**
+ * a marshaler interface for pollers with several targets, converting the
+ * responses of all targets of a polling cycle into one message
+ */
+public interface SnmpBatchMarshalerSupport extends SnmpMarshalerSupport {
+
+    /**
+     * converts the responses of a polling cycle into a jbi normalized message
+     *
+     * @param exchange                  the exchange object
+     * @param inMsg                     the normalized message to fill
+     * @param requests                  the first snmp request sent to each target, keyed by target address
+     * @param responses                 the variables received from each target, keyed by target address
+     * @throws MessagingException       on errors
+     */
+    void convertToJBI(MessageExchange exchange, NormalizedMessage inMsg, Map<Address, PDU> requests,
+                      Map<Address, PDU> responses) throws MessagingException;
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.snmp;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.GenericAddress;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.SMIConstants;
+import org.snmp4j.smi.VariableBinding;
+
+public class SnmpPollCycleTest extends TestCase {
+
+    private static final OID SYS_UP_TIME = new OID("1.3.6.1.2.1.1.3.0");
+    private static final OID IF_DESCR = new OID("1.3.6.1.2.1.2.2.1.2");
+    private static final OID IF_TYPE = new OID("1.3.6.1.2.1.2.2.1.3");
+
+    public void testGetAndBulkWalk() throws Exception {
+        SnmpPollCycle cycle = new SnmpPollCycle(3);
+        List<SnmpPollCycle.Request> requests = cycle.createRequests(target("udp:127.0.0.1/161", SnmpConstants.version2c),
+                                                                    Arrays.asList(SYS_UP_TIME),
+                                                                    Arrays.asList(IF_DESCR, IF_TYPE));
+        assertEquals(2, requests.size());
+        assertEquals(PDU.GET, requests.get(0).getPdu().getType());
+        PDU bulk = requests.get(1).getPdu();
+        assertEquals(PDU.GETBULK, bulk.getType());
+        assertEquals(3, bulk.getMaxRepetitions());
+
+        assertNull(cycle.onResponse(requests.get(0), response(SYS_UP_TIME)));
+        assertFalse(cycle.checkComplete());
+
+        // two rows, the third repetition of ifType walks past the column
+        SnmpPollCycle.Request next = cycle.onResponse(requests.get(1), response(
+            oid(IF_DESCR, 1), oid(IF_TYPE, 1),
+            oid(IF_DESCR, 2), oid(IF_TYPE, 2),
+            oid(IF_DESCR, 3), new OID("1.3.6.1.2.1.2.2.1.4.1")));
+        assertNotNull(next);
+        assertEquals(1, next.getPdu().size());
+        assertEquals(oid(IF_DESCR, 3), next.getPdu().get(0).getOid());
+
+        PDU last = new PDU();
+        last.add(new VariableBinding(oid(IF_DESCR, 3), new Null(SMIConstants.EXCEPTION_END_OF_MIB_VIEW)));
+        assertNull(cycle.onResponse(next, last));
+
+        assertTrue(cycle.checkComplete());
+        // the results are delivered only once
+        assertFalse(cycle.checkComplete());
+        PDU result = cycle.getResponses().values().iterator().next();
+        assertEquals(6, result.size());
+        assertEquals(PDU.GET, cycle.getRequests().values().iterator().next().getType());
+    }
+
+    public void testVersion1Walk() throws Exception {
+        SnmpPollCycle cycle = new SnmpPollCycle(10);
+        List<SnmpPollCycle.Request> requests = cycle.createRequests(target("udp:127.0.0.1/161", SnmpConstants.version1),
+                                                                    null, Arrays.asList(IF_DESCR, IF_TYPE));
+        assertEquals(1, requests.size());
+        assertEquals(PDU.GETNEXT, requests.get(0).getPdu().getType());
+
+        SnmpPollCycle.Request next = cycle.onResponse(requests.get(0), response(oid(IF_DESCR, 1), oid(IF_TYPE, 1)));
+        assertEquals(PDU.GETNEXT, next.getPdu().getType());
+        assertEquals(2, next.getPdu().size());
+
+        // the agent reports the end of the second column
+        PDU error = response(oid(IF_DESCR, 2), oid(IF_TYPE, 1));
+        error.setErrorStatus(PDU.noSuchName);
+        error.setErrorIndex(2);
+        next = cycle.onResponse(next, error);
+        assertEquals(1, next.getPdu().size());
+        assertEquals(oid(IF_DESCR, 1), next.getPdu().get(0).getOid());
+
+        assertNull(cycle.onResponse(next, response(IF_TYPE)));
+        assertTrue(cycle.checkComplete());
+        assertEquals(2, cycle.getResponses().values().iterator().next().size());
+    }
+
+    public void testTimeout() throws Exception {
+        SnmpPollCycle cycle = new SnmpPollCycle(10);
+        CommunityTarget first = target("udp:127.0.0.1/161", SnmpConstants.version2c);
+        CommunityTarget second = target("udp:127.0.0.2/161", SnmpConstants.version2c);
+        SnmpPollCycle.Request firstRequest = cycle.createRequests(first, Arrays.asList(SYS_UP_TIME), null).get(0);
+        SnmpPollCycle.Request secondRequest = cycle.createRequests(second, Arrays.asList(SYS_UP_TIME), null).get(0);
+
+        assertNull(cycle.onResponse(secondRequest, null));
+        assertFalse(cycle.checkComplete());
+        assertNull(cycle.onResponse(firstRequest, response(SYS_UP_TIME)));
+        assertTrue(cycle.checkComplete());
+
+        assertEquals(1, cycle.getResponses().size());
+        assertTrue(cycle.getResponses().containsKey(first.getAddress()));
+        assertEquals(Arrays.asList(second.getAddress()), cycle.getTimedOutTargets());
+    }
+
+    private static CommunityTarget target(String address, int version) {
+        CommunityTarget target = new CommunityTarget();
+        target.setAddress(GenericAddress.parse(address));
+        target.setVersion(version);
+        return target;
+    }
+
+    private static OID oid(OID column, int row) {
+        return new OID(column.toString() + "." + row);
+    }
+
+    private static PDU response(OID... oids) {
+        PDU pdu = new PDU();
+        pdu.setType(PDU.RESPONSE);
+        for (OID oid : oids) {
+            pdu.add(new VariableBinding(oid, new Integer32(1)));
+        }
+        return pdu;
+    }
+}
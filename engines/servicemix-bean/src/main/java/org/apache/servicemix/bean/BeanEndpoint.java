@@ -19,6 +19,7 @@ package org.apache.servicemix.bean;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.List;
 import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.concurrent.ConcurrentHashMap;
@@ -39,11 +40,9 @@ import javax.naming.InitialContext;
 import javax.xml.namespace.QName;
 
 import org.aopalliance.intercept.MethodInvocation;
-import org.apache.commons.jexl2.Expression;
-import org.apache.commons.jexl2.JexlContext;
-import org.apache.commons.jexl2.JexlEngine;
-import org.apache.commons.jexl2.MapContext;
 import org.apache.servicemix.bean.support.BeanInfo;
+import org.apache.servicemix.bean.support.BeanPool;
+import org.apache.servicemix.bean.support.CallbackInfo;
 import org.apache.servicemix.bean.support.DefaultMethodInvocationStrategy;
 import org.apache.servicemix.bean.support.DestinationImpl;
 import org.apache.servicemix.bean.support.Holder;
@@ -76,6 +75,17 @@ public class BeanEndpoint extends ProviderEndpoint implements ApplicationContext
      */
     public static final String CORRELATION_ID = BeanEndpoint.class.getName().replaceAll("\\.", "_") + "_correlation";
 
+    /**
+     * Default maximum number of pending requests when a bean pool is configured
+     */
+    public static final int DEFAULT_MAX_REQUESTS = 10000;
+
+    /**
+     * Default number of milliseconds after which an inactive request is considered abandoned,
+     * when a bean pool is configured
+     */
+    public static final long DEFAULT_REQUEST_TIMEOUT = 60 * 60 * 1000L;
+
     private ApplicationContext applicationContext;
     private String beanName;
     private Object bean;
@@ -84,6 +94,10 @@ public class BeanEndpoint extends ProviderEndpoint implements ApplicationContext
     private String beanClassName;
     private MethodInvocationStrategy methodInvocationStrategy;
     private org.apache.servicemix.expression.Expression correlationExpression;
+    private BeanPool beanPool;
+    private int maxRequests = -1;
+    private long requestTimeout = -1;
+    private volatile long nextRequestsPurge;
 
     private Map<String, Holder> exchanges = new ConcurrentHashMap<String, Holder>();
     private Map<Object, Request> requests = new ConcurrentHashMap<Object, Request>();
@@ -109,6 +123,18 @@ public class BeanEndpoint extends ProviderEndpoint implements ApplicationContext
             beanType = pojo.getClass();
             injectBean(pojo);
             ReflectionUtils.callLifecycleMethod(pojo, PostConstruct.class);
+        } else if (beanPool != null) {
+            beanPool.start(new BeanPool.Factory() {
+                public Object create() throws Exception {
+                    return createAndInjectBean();
+                }
+                public void destroy(Object bean) {
+                    ReflectionUtils.callLifecycleMethod(bean, PreDestroy.class);
+                }
+            });
+            Object instance = beanPool.borrow();
+            beanType = instance.getClass();
+            beanPool.release(instance);
         } else {
             beanType = createBean().getClass();
         }
@@ -123,6 +149,8 @@ public class BeanEndpoint extends ProviderEndpoint implements ApplicationContext
         Object pojo = getBean();
         if (pojo != null) {
             ReflectionUtils.callLifecycleMethod(pojo, PreDestroy.class);
+        } else if (beanPool != null) {
+            beanPool.stop();
         }
     }
 
@@ -199,6 +227,64 @@ public class BeanEndpoint extends ProviderEndpoint implements ApplicationContext
         this.beanClassName = beanClassName;
     }
 
+    public BeanPool getBeanPool() {
+        return beanPool;
+    }
+
+    /**
+     * Set a pool of bean instances, used when no singleton bean is configured.  Instances are then
+     * reused across requests instead of being created and destroyed for each one of them.  The pool
+     * also exposes the number of active and idle instances and other usage counters.
+     *
+     * @param beanPool the pool
+     */
+    public void setBeanPool(BeanPool beanPool) {
+        this.beanPool = beanPool;
+    }
+
+    public int getMaxRequests() {
+        if (maxRequests < 0) {
+            return beanPool != null ? DEFAULT_MAX_REQUESTS : 0;
+        }
+        return maxRequests;
+    }
+
+    /**
+     * Set the maximum number of pending requests, new requests being rejected once it is reached
+     * and no abandoned request can be expired.  <code>0</code> means no limit.  If not set, it
+     * defaults to <code>10000</code> when a bean pool is configured, and to no limit otherwise.
+     *
+     * @param maxRequests the maximum number of pending requests
+     */
+    public void setMaxRequests(int maxRequests) {
+        this.maxRequests = maxRequests;
+    }
+
+    public long getRequestTimeout() {
+        if (requestTimeout < 0) {
+            return beanPool != null ? DEFAULT_REQUEST_TIMEOUT : 0;
+        }
+        return requestTimeout;
+    }
+
+    /**
+     * Set the number of milliseconds after which a request without any activity is considered abandoned:
+     * it is then discarded and its bean destroyed.  <code>0</code> disables expiration.  If not set, it
+     * defaults to one hour when a bean pool is configured, and requests never expire otherwise.
+     *
+     * @param requestTimeout the timeout in milliseconds
+     */
+    public void setRequestTimeout(long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * @return the number of pending requests
+     */
+    public int getPendingRequestCount() {
+        return requests.size();
+    }
+
     public BeanInfo getBeanInfo() {
         if (beanInfo == null) {
             beanInfo = new BeanInfo(beanType, getMethodInvocationStrategy());
@@ -310,17 +396,94 @@ public class BeanEndpoint extends ProviderEndpoint implements ApplicationContext
         }
         Request req = getRequest(exchange);
         if (req == null) {
+            checkPendingRequests();
             Object pojo = getBean();
             if (pojo == null) {
-                pojo = createBean();
-                injectBean(pojo);
-                ReflectionUtils.callLifecycleMethod(pojo, PostConstruct.class);
+                pojo = acquireBean();
             }
             req = new Request(getCorrelation(exchange), pojo, exchange);
             requests.put(req.getCorrelationId(), req);
+        } else {
+            req.touch();
         }
         return req;
     }
+
+    /*
+     * Expires abandoned requests from time to time, or when the limit of pending requests is reached
+     */
+    private void checkPendingRequests() throws MessagingException {
+        int maxRequests = getMaxRequests();
+        long requestTimeout = getRequestTimeout();
+        if (maxRequests == 0 && requestTimeout == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean full = maxRequests > 0 && requests.size() >= maxRequests;
+        if (requestTimeout > 0 && (full || now >= nextRequestsPurge)) {
+            nextRequestsPurge = now + Math.max(requestTimeout / 10, 1000);
+            for (Request req : requests.values()) {
+                if (req.getLastAccess() + requestTimeout <= now) {
+                    expireRequest(req);
+                }
+            }
+            full = maxRequests > 0 && requests.size() >= maxRequests;
+        }
+        if (full) {
+            throw new MessagingException("Too many pending requests (" + maxRequests + ")");
+        }
+    }
+
+    /**
+     * Discards a request which has not been used for longer than the request timeout.
+     * The pending exchanges are forgotten and the bean instance is destroyed.
+     *
+     * @param req the abandoned request
+     */
+    protected void expireRequest(Request req) {
+        if (requests.remove(req.getCorrelationId()) == null) {
+            return;
+        }
+        logger.warn("Discarding request {} inactive for more than {} ms", req.getCorrelationId(), getRequestTimeout());
+        synchronized (req) {
+            for (MessageExchange me : req.getExchanges()) {
+                exchanges.remove(me.getExchangeId());
+            }
+        }
+        if (req.getBean() != bean) {
+            releaseBean(req.getBean(), false);
+        }
+    }
+
+    protected Object acquireBean() throws ClassNotFoundException, InstantiationException, IllegalAccessException, MessagingException {
+        if (beanPool != null) {
+            return beanPool.borrow();
+        }
+        return createAndInjectBean();
+    }
+
+    /**
+     * Releases a bean instance created for a request, giving it back to the pool or destroying it.
+     *
+     * @param pojo the bean instance
+     * @param reusable <code>false</code> if the instance must not be used by another request
+     */
+    protected void releaseBean(Object pojo, boolean reusable) {
+        if (beanPool == null) {
+            ReflectionUtils.callLifecycleMethod(pojo, PreDestroy.class);
+        } else if (reusable) {
+            beanPool.release(pojo);
+        } else {
+            beanPool.invalidate(pojo);
+        }
+    }
+
+    private Object createAndInjectBean() throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+        Object pojo = createBean();
+        injectBean(pojo);
+        ReflectionUtils.callLifecycleMethod(pojo, PostConstruct.class);
+        return pojo;
+    }
     
     protected Request getRequest(MessageExchange exchange) throws MessagingException {
         Object correlation = getCorrelation(exchange);
@@ -412,35 +575,25 @@ public class BeanEndpoint extends ProviderEndpoint implements ApplicationContext
         });
     }
     
-    protected void evaluateCallbacks(final Request req) {
-        final Object obj = req.getBean();
-        ReflectionUtils.doWithMethods(obj.getClass(), new ReflectionUtils.MethodCallback() {
-            @SuppressWarnings("unchecked")
-            public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
-                if (method.getAnnotation(Callback.class) != null) {
-                    try {
-                        JexlEngine jexl = new JexlEngine();
-                        Expression e = jexl.createExpression(
-                                method.getAnnotation(Callback.class).condition());
-                        JexlContext jc = new MapContext();
-                        jc.set("this", obj);
-                        Object r = e.evaluate(jc);
-                        if (!(r instanceof Boolean)) {
-                            throw new RuntimeException("Expression did not returned a boolean value but: " + r);
-                        }
-                        Boolean oldVal = req.getCallbacks().get(method);
-                        Boolean newVal = (Boolean) r;
-                        if ((oldVal == null || !oldVal) && newVal) {
-                            req.getCallbacks().put(method, newVal);
-                            method.invoke(obj, new Object[0]);
-                            // TODO: handle return value and sent it as the answer
-                        }
-                    } catch (Exception e) {
-                        throw new RuntimeException("Unable to invoke callback", e);
-                    }
+    protected void evaluateCallbacks(Request req) {
+        Object obj = req.getBean();
+        // callbacks are introspected and their conditions parsed once per bean type
+        List<CallbackInfo> callbacks = obj.getClass() == getBeanInfo().getType()
+                ? getBeanInfo().getCallbacks() : CallbackInfo.introspect(obj.getClass());
+        for (CallbackInfo callback : callbacks) {
+            try {
+                Method method = callback.getMethod();
+                Boolean oldVal = req.getCallbacks().get(method);
+                boolean newVal = callback.evaluate(obj);
+                if ((oldVal == null || !oldVal) && newVal) {
+                    req.getCallbacks().put(method, newVal);
+                    callback.invoke(obj);
+                    // TODO: handle return value and sent it as the answer
                 }
+            } catch (Exception e) {
+                throw new RuntimeException("Unable to invoke callback", e);
             }
-        });
+        }
     }
 
     /**
@@ -486,16 +639,16 @@ public class BeanEndpoint extends ProviderEndpoint implements ApplicationContext
      * Checks if the request has ended.  If the request has ended, 
      * <ul>
      * <li>the request object is being removed from the list of pending requests</li> 
-     * <li>if the bean was created for that request, it is now being destroyed</li>
+     * <li>if the bean was created for that request, it is now being destroyed or given back to the pool</li>
      * </ul>
      * 
      * @param req the Request instance to check
      */
     protected void checkEndOfRequest(Request req) {
-        if (req.isFinished()) {
-            requests.remove(req.getCorrelationId());
+        // the request may be checked several times, but its bean must only be released once
+        if (req.isFinished() && requests.remove(req.getCorrelationId()) != null) {
             if (req.getBean() != bean) {
-                ReflectionUtils.callLifecycleMethod(req.getBean(), PreDestroy.class);
+                releaseBean(req.getBean(), true);
             }
         }
     }
@@ -19,6 +19,7 @@ package org.apache.servicemix.bean.support;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -33,10 +34,8 @@ import org.apache.servicemix.bean.Operation;
 import org.apache.servicemix.bean.Property;
 import org.apache.servicemix.bean.XPath;
 import org.apache.servicemix.expression.Expression;
-import org.apache.servicemix.expression.JAXPStringXPathExpression;
 import org.apache.servicemix.expression.PropertyExpression;
 import org.apache.servicemix.jbi.helper.MessageHelper;
-import org.apache.servicemix.jbi.jaxp.DefaultNamespaceContext;
 import org.apache.servicemix.jbi.marshaler.PojoMarshaler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +54,7 @@ public class BeanInfo {
     private MethodInvocationStrategy strategy;
     private Map<String, MethodInfo> operations = new ConcurrentHashMap<String, MethodInfo>();
     private MethodInfo defaultExpression;
+    private volatile List<CallbackInfo> callbacks;
 
 
     public BeanInfo(Class type, MethodInvocationStrategy strategy) {
@@ -74,6 +74,17 @@ public class BeanInfo {
                 defaultExpression = methodInfo;
             }
         }
+        getCallbacks();
+    }
+
+    /**
+     * @return the {@link org.apache.servicemix.bean.Callback} methods of the bean type
+     */
+    public List<CallbackInfo> getCallbacks() {
+        if (callbacks == null) {
+            callbacks = CallbackInfo.introspect(getType());
+        }
+        return callbacks;
     }
 
     public MethodInvocation createInvocation(Object pojo, MessageExchange messageExchange) throws MessagingException {
@@ -129,14 +140,20 @@ public class BeanInfo {
     }
 
     protected Expression createMethodParametersExpression(final Expression[] parameterExpressions) {
+        // all the XPath parameters are bound together, reading the content only once
+        final XPathParameterPlan plan = new XPathParameterPlan(parameterExpressions);
         return new Expression() {
 
             public Object evaluate(MessageExchange messageExchange, 
                                    NormalizedMessage normalizedMessage) throws MessagingException {
                 Object[] answer = new Object[parameterExpressions.length];
+                if (!plan.isEmpty()) {
+                    plan.bind(messageExchange, normalizedMessage, answer);
+                }
                 for (int i = 0; i < parameterExpressions.length; i++) {
-                    Expression parameterExpression = parameterExpressions[i];
-                    answer[i] = parameterExpression.evaluate(messageExchange, normalizedMessage);
+                    if (!plan.binds(i)) {
+                        answer[i] = parameterExpressions[i].evaluate(messageExchange, normalizedMessage);
+                    }
                 }
                 return answer;
             }
@@ -171,14 +188,7 @@ public class BeanInfo {
             final PojoMarshaler marshaller = newInstance(content);
             return createContentExpression(marshaller);
         } else if (annotation instanceof XPath) {
-            XPath xpathAnnotation = (XPath) annotation;
-            JAXPStringXPathExpression expr = new JAXPStringXPathExpression(xpathAnnotation.xpath());
-            if (!xpathAnnotation.prefix().equals("") && !xpathAnnotation.uri().equals("")) {
-                DefaultNamespaceContext ctx = new DefaultNamespaceContext();
-                ctx.add(xpathAnnotation.prefix(), xpathAnnotation.uri());
-                expr.setNamespaceContext(ctx);
-            }
-            return expr; 
+            return new XPathParameterExpression((XPath) annotation);
         }
         return null;
     }
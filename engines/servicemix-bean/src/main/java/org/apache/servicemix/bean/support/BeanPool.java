@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.bean.support;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jbi.messaging.MessagingException;
+
+/**
+ * A bounded pool of bean instances, used by a {@link org.apache.servicemix.bean.BeanEndpoint}
+ * which has no singleton bean, so that instances are reused across requests instead of being
+ * created, injected and destroyed for each one of them.
+ * <p>
+ * At most <code>maxActive</code> instances can be in use at the same time: when the limit is
+ * reached, requests wait up to <code>borrowTimeout</code> milliseconds for an instance to be
+ * released.  Released instances are kept for reuse, up to <code>maxIdle</code> of them, and
+ * <code>minIdle</code> instances are created when the pool is started.
+ *
+ * @version $Revision: $
+ * @org.apache.xbean.XBean element="beanPool"
+ *      description="A pool of bean instances reused across requests"
+ */
+public class BeanPool {
+
+    /**
+     * Creates and destroys the pooled instances.
+     */
+    public interface Factory {
+
+        Object create() throws Exception;
+
+        void destroy(Object bean);
+
+    }
+
+    private int minIdle;
+    private int maxIdle = 8;
+    private int maxActive = 8;
+    private long borrowTimeout = 30000;
+
+    private Factory factory;
+    private BlockingQueue<Object> idle;
+    private Semaphore permits;
+    private volatile boolean started;
+
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong borrowedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * Set the number of instances created when the pool is started.  Defaults to <code>0</code>.
+     *
+     * @param minIdle the number of instances to create upfront
+     */
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Set the maximum number of unused instances kept in the pool, any other released
+     * instance being destroyed.  Defaults to <code>8</code>.
+     *
+     * @param maxIdle the maximum number of idle instances
+     */
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    /**
+     * Set the maximum number of instances used at the same time, or <code>0</code> for no limit.
+     * Defaults to <code>8</code>.
+     *
+     * @param maxActive the maximum number of active instances
+     */
+    public void setMaxActive(int maxActive) {
+        this.maxActive = maxActive;
+    }
+
+    public long getBorrowTimeout() {
+        return borrowTimeout;
+    }
+
+    /**
+     * Set the number of milliseconds to wait for an instance when <code>maxActive</code>
+     * instances are already in use.  Defaults to <code>30000</code>.
+     *
+     * @param borrowTimeout the timeout in milliseconds
+     */
+    public void setBorrowTimeout(long borrowTimeout) {
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    /**
+     * @return the number of instances currently in use
+     */
+    public int getNumActive() {
+        return permits == null || maxActive <= 0 ? 0 : maxActive - permits.availablePermits();
+    }
+
+    /**
+     * @return the number of instances waiting in the pool
+     */
+    public int getNumIdle() {
+        return idle == null ? 0 : idle.size();
+    }
+
+    /**
+     * @return the number of instances created since the pool was started
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return the number of instances destroyed since the pool was started
+     */
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    /**
+     * @return the number of instances handed out since the pool was started
+     */
+    public long getBorrowedCount() {
+        return borrowedCount.get();
+    }
+
+    /**
+     * @return the number of requests which could not get an instance in time
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public void start(Factory beanFactory) throws Exception {
+        if (minIdle > maxIdle || (maxActive > 0 && minIdle > maxActive)) {
+            throw new IllegalArgumentException("minIdle must not be greater than maxIdle or maxActive");
+        }
+        this.factory = beanFactory;
+        this.idle = new LinkedBlockingQueue<Object>();
+        this.permits = maxActive > 0 ? new Semaphore(maxActive, true) : null;
+        this.started = true;
+        for (int i = 0; i < minIdle; i++) {
+            idle.add(create());
+        }
+    }
+
+    public void stop() {
+        started = false;
+        if (idle != null) {
+            for (Object bean = idle.poll(); bean != null; bean = idle.poll()) {
+                destroy(bean);
+            }
+        }
+    }
+
+    /**
+     * Takes an instance from the pool, creating it if none is available.
+     *
+     * @return the instance, which must be given back with {@link #release(Object)} or {@link #invalidate(Object)}
+     * @throws MessagingException if no instance became available in time or if it could not be created
+     */
+    public Object borrow() throws MessagingException {
+        if (!started) {
+            throw new MessagingException("Bean pool is not started");
+        }
+        if (permits != null) {
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MessagingException("Interrupted while waiting for a bean instance", e);
+            }
+            if (!acquired) {
+                timeoutCount.incrementAndGet();
+                throw new MessagingException("No bean instance available after " + borrowTimeout + " ms ("
+                        + maxActive + " instances in use)");
+            }
+        }
+        try {
+            Object bean = idle.poll();
+            if (bean == null) {
+                bean = create();
+            }
+            borrowedCount.incrementAndGet();
+            return bean;
+        } catch (Exception e) {
+            if (permits != null) {
+                permits.release();
+            }
+            if (e instanceof MessagingException) {
+                throw (MessagingException) e;
+            }
+            throw new MessagingException("Unable to create bean instance", e);
+        }
+    }
+
+    /**
+     * Gives back an instance to the pool, so that it can be used by another request.
+     */
+    public void release(Object bean) {
+        try {
+            if (!started || idle.size() >= maxIdle || !idle.offer(bean)) {
+                destroy(bean);
+            }
+        } finally {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Destroys an instance which should not be reused, for example because its request was abandoned.
+     */
+    public void invalidate(Object bean) {
+        try {
+            destroy(bean);
+        } finally {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    private Object create() throws Exception {
+        Object bean = factory.create();
+        createdCount.incrementAndGet();
+        return bean;
+    }
+
+    private void destroy(Object bean) {
+        destroyedCount.incrementAndGet();
+        factory.destroy(bean);
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.bean.support;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.servicemix.bean.Callback;
+
+/**
+ * Represents a {@link Callback} annotated method, with its condition parsed once
+ * so that it can be evaluated each time an exchange comes back to the bean.
+ *
+ * @version $Revision: $
+ */
+public class CallbackInfo {
+
+    private static final JexlEngine JEXL = new JexlEngine();
+
+    // contexts are reused by the evaluations on the same thread instead of being created each time
+    private static final ThreadLocal<BeanContext> CONTEXTS = new ThreadLocal<BeanContext>() {
+        @Override
+        protected BeanContext initialValue() {
+            return new BeanContext();
+        }
+    };
+
+    private final Method method;
+    private final Expression condition;
+    private final RuntimeException error;
+
+    public CallbackInfo(Method method) {
+        this.method = ReflectionUtils.link(method);
+        Expression expression = null;
+        RuntimeException exception = null;
+        try {
+            expression = JEXL.createExpression(method.getAnnotation(Callback.class).condition());
+        } catch (RuntimeException e) {
+            // reported when the callback is evaluated, as it would have been without caching
+            exception = e;
+        }
+        this.condition = expression;
+        this.error = exception;
+    }
+
+    /**
+     * Finds all the callback methods of the given class and its superclasses.
+     *
+     * @param type the bean class
+     * @return the callbacks, in the order they should be evaluated
+     */
+    public static List<CallbackInfo> introspect(Class type) {
+        final List<CallbackInfo> callbacks = new ArrayList<CallbackInfo>();
+        ReflectionUtils.doWithMethods(type, new ReflectionUtils.MethodCallback() {
+            public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
+                if (method.getAnnotation(Callback.class) != null) {
+                    callbacks.add(new CallbackInfo(method));
+                }
+            }
+        });
+        return Collections.unmodifiableList(callbacks);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Evaluates the condition of this callback on the given bean.
+     */
+    public boolean evaluate(Object bean) {
+        if (error != null) {
+            throw error;
+        }
+        BeanContext jc = CONTEXTS.get();
+        jc.bean = bean;
+        Object r;
+        try {
+            r = condition.evaluate(jc);
+        } finally {
+            // do not keep the bean, nor the variables of this evaluation, reachable from the thread
+            jc.clear();
+        }
+        if (!(r instanceof Boolean)) {
+            throw new RuntimeException("Expression did not returned a boolean value but: " + r);
+        }
+        return (Boolean) r;
+    }
+
+    /**
+     * Invokes the callback method on the given bean.
+     */
+    public Object invoke(Object bean) throws Exception {
+        return method.invoke(bean, new Object[0]);
+    }
+
+    /**
+     * {@link JexlContext} exposing the bean as <code>this</code>, the map holding the other
+     * variables being only created if the condition sets one.
+     */
+    private static final class BeanContext implements JexlContext {
+
+        private Object bean;
+        private Map<String, Object> variables;
+
+        public Object get(String name) {
+            if ("this".equals(name)) {
+                return bean;
+            }
+            return variables != null ? variables.get(name) : null;
+        }
+
+        public void set(String name, Object value) {
+            if ("this".equals(name)) {
+                bean = value;
+            } else {
+                if (variables == null) {
+                    variables = new HashMap<String, Object>();
+                }
+                variables.put(name, value);
+            }
+        }
+
+        public boolean has(String name) {
+            return "this".equals(name) || (variables != null && variables.containsKey(name));
+        }
+
+        void clear() {
+            bean = null;
+            variables = null;
+        }
+    }
+
+}
@@ -35,7 +35,8 @@ public class MethodInfo {
     private final Expression parametersExpression;
 
     public MethodInfo(Method method, Expression parametersExpression) {
-        this.method = method;
+        // link the method once, rather than checking its accessibility on each invocation
+        this.method = ReflectionUtils.link(method);
         this.parametersExpression = parametersExpression;
     }
 
@@ -48,6 +48,27 @@ public final class ReflectionUtils extends org.springframework.util.ReflectionUt
         });
     }
     
+    /**
+     * Links a method for repeated invocations: public methods of public classes are made
+     * accessible so that the access checks are not performed again on each call.  Other
+     * methods are left untouched, so that invoking them still fails as it would otherwise.
+     *
+     * @param method the method to link
+     * @return the same method
+     */
+    public static Method link(Method method) {
+        if (Modifier.isPublic(method.getModifiers())
+                && Modifier.isPublic(method.getDeclaringClass().getModifiers())
+                && !method.isAccessible()) {
+            try {
+                method.setAccessible(true);
+            } catch (SecurityException e) {
+                // keep the checked invocation
+            }
+        }
+        return method;
+    }
+
     public static void setField(Field f, Object instance, Object value) {
         try {
             boolean oldAccessible = f.isAccessible();
@@ -35,6 +35,7 @@ public class Request {
     private Map<Method, Boolean> callbacks;
     private final Object correlationId;
     private final Set<MessageExchange> exchanges = new HashSet<MessageExchange>();
+    private volatile long lastAccess = System.currentTimeMillis();
     
     public Request(Object correlationId, Object bean, MessageExchange exchange) {
         this.correlationId = correlationId;
@@ -53,6 +54,20 @@ public class Request {
         return correlationId;
     }
 
+    /**
+     * @return the time at which this request was last used
+     */
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Records that this request is still in use, so that it does not expire.
+     */
+    public void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
     /**
      * @return the callbacks
      */
@@ -84,6 +99,7 @@ public class Request {
     public void addExchange(MessageExchange exchange) {
         exchanges.add(exchange);
         exchange.setProperty(BeanEndpoint.CORRELATION_ID, correlationId);
+        touch();
     }
     
     /**
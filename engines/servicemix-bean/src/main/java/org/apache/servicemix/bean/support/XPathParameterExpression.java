@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.bean.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessagingException;
+import javax.jbi.messaging.NormalizedMessage;
+import javax.xml.namespace.QName;
+
+import org.apache.servicemix.bean.XPath;
+import org.apache.servicemix.expression.Expression;
+import org.apache.servicemix.expression.JAXPStringXPathExpression;
+import org.apache.servicemix.jbi.jaxp.DefaultNamespaceContext;
+
+/**
+ * The expression bound to an {@link XPath} annotated parameter.
+ * <p>
+ * On its own, it simply evaluates the XPath on the message content.  When a method
+ * has several such parameters, they are evaluated together by a {@link XPathParameterPlan}
+ * which reads the content only once: to this end, simple absolute paths made of child
+ * element steps, optionally ending with an attribute step, are decomposed so that they
+ * can be evaluated while streaming the content.
+ *
+ * @version $Revision: $
+ */
+public class XPathParameterExpression implements Expression {
+
+    private final String xpath;
+    private final JAXPStringXPathExpression expression;
+    private List<QName> steps;
+    private QName attribute;
+
+    public XPathParameterExpression(XPath annotation) {
+        this.xpath = annotation.xpath();
+        this.expression = new JAXPStringXPathExpression(xpath);
+        String prefix = annotation.prefix();
+        String uri = annotation.uri();
+        if (!prefix.equals("") && !uri.equals("")) {
+            DefaultNamespaceContext ctx = new DefaultNamespaceContext();
+            ctx.add(prefix, uri);
+            expression.setNamespaceContext(ctx);
+        } else {
+            prefix = null;
+        }
+        parse(prefix, uri);
+    }
+
+    public String getXPath() {
+        return xpath;
+    }
+
+    /**
+     * @return <code>true</code> if this path can be evaluated while streaming the content
+     */
+    public boolean isSimple() {
+        return steps != null;
+    }
+
+    /**
+     * @return the names of the elements selected from the root down, or <code>null</code>
+     *         if this path is not simple
+     */
+    public List<QName> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return the name of the attribute selected on the last element, or <code>null</code>
+     */
+    public QName getAttribute() {
+        return attribute;
+    }
+
+    public Object evaluate(MessageExchange exchange, NormalizedMessage message) throws MessagingException {
+        return expression.evaluate(exchange, message);
+    }
+
+    private void parse(String prefix, String uri) {
+        if (!xpath.startsWith("/") || xpath.length() == 1 || xpath.indexOf("//") >= 0) {
+            return;
+        }
+        String[] parts = xpath.substring(1).split("/");
+        List<QName> names = new ArrayList<QName>(parts.length);
+        QName attr = null;
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            boolean isAttribute = part.startsWith("@");
+            if (isAttribute) {
+                if (i != parts.length - 1 || i == 0) {
+                    return;
+                }
+                part = part.substring(1);
+            }
+            QName name = toQName(part, prefix, uri);
+            if (name == null) {
+                return;
+            }
+            if (isAttribute) {
+                attr = name;
+            } else {
+                names.add(name);
+            }
+        }
+        this.steps = Collections.unmodifiableList(names);
+        this.attribute = attr;
+    }
+
+    private static QName toQName(String step, String prefix, String uri) {
+        int idx = step.indexOf(':');
+        if (idx < 0) {
+            return isNCName(step) ? new QName(step) : null;
+        }
+        String stepPrefix = step.substring(0, idx);
+        String localName = step.substring(idx + 1);
+        if (!stepPrefix.equals(prefix) || !isNCName(localName)) {
+            return null;
+        }
+        return new QName(uri, localName);
+    }
+
+    private static boolean isNCName(String name) {
+        if (name.length() == 0 || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_')) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
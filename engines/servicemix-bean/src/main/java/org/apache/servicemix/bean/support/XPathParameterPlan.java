@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.bean.support;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessagingException;
+import javax.jbi.messaging.NormalizedMessage;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.servicemix.common.util.MessageUtil;
+import org.apache.servicemix.expression.Expression;
+import org.apache.servicemix.jbi.jaxp.SourceTransformer;
+
+/**
+ * Binds all the {@link XPathParameterExpression}s of a method from a single read of the
+ * message content.
+ * <p>
+ * If all the paths are simple, the content is made re-readable and the values are collected
+ * in one streaming pass, which stops as soon as every path has been resolved.  Otherwise,
+ * the content is parsed once into a DOM tree, which is set back on the message, and all
+ * the expressions are evaluated against it.
+ *
+ * @version $Revision: $
+ */
+public class XPathParameterPlan {
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private final int[] indexes;
+    private final XPathParameterExpression[] expressions;
+    private final boolean streaming;
+    private final SourceTransformer transformer = new SourceTransformer();
+
+    public XPathParameterPlan(Expression[] parameterExpressions) {
+        List<Integer> idx = new ArrayList<Integer>();
+        for (int i = 0; i < parameterExpressions.length; i++) {
+            if (parameterExpressions[i] instanceof XPathParameterExpression) {
+                idx.add(i);
+            }
+        }
+        indexes = new int[idx.size()];
+        expressions = new XPathParameterExpression[idx.size()];
+        boolean simple = true;
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = idx.get(i);
+            expressions[i] = (XPathParameterExpression) parameterExpressions[indexes[i]];
+            simple &= expressions[i].isSimple();
+        }
+        streaming = simple;
+    }
+
+    /**
+     * @return <code>true</code> if the method has no XPath parameter
+     */
+    public boolean isEmpty() {
+        return indexes.length == 0;
+    }
+
+    /**
+     * @return <code>true</code> if the parameters can be bound while streaming the content
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * @param index the index of a method parameter
+     * @return <code>true</code> if the parameter is bound by this plan
+     */
+    public boolean binds(int index) {
+        for (int i : indexes) {
+            if (i == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates all the XPath parameters and sets their values in the given arguments array.
+     */
+    public void bind(MessageExchange exchange, NormalizedMessage message, Object[] arguments) throws MessagingException {
+        if (message != null && message.getContent() != null) {
+            try {
+                Source content = message.getContent();
+                if (streaming && !(content instanceof DOMSource)) {
+                    MessageUtil.enableContentRereadability(message);
+                    content = message.getContent();
+                    if (content instanceof StreamSource) {
+                        String[] values = stream((StreamSource) content);
+                        for (int i = 0; i < indexes.length; i++) {
+                            arguments[indexes[i]] = values[i];
+                        }
+                        return;
+                    }
+                }
+                if (!(content instanceof DOMSource)) {
+                    message.setContent(new DOMSource(transformer.toDOMNode(content)));
+                }
+            } catch (MessagingException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new MessagingException(e);
+            }
+        }
+        for (int i = 0; i < indexes.length; i++) {
+            arguments[indexes[i]] = expressions[i].evaluate(exchange, message);
+        }
+    }
+
+    /**
+     * Reads the content once, computing the string value of each path as XPath would: the
+     * text of the first matching element, including its descendants, or the value of the
+     * first matching attribute, or an empty string if nothing matches.
+     */
+    protected String[] stream(StreamSource source) throws XMLStreamException {
+        int count = expressions.length;
+        String[] values = new String[count];
+        int[] matched = new int[count];
+        StringBuilder[] texts = new StringBuilder[count];
+        int remaining = count;
+        int depth = 0;
+        InputStream is = source.getInputStream();
+        Reader reader = is == null ? source.getReader() : null;
+        XMLStreamReader xml;
+        if (is != null) {
+            xml = INPUT_FACTORY.createXMLStreamReader(is);
+        } else if (reader != null) {
+            xml = INPUT_FACTORY.createXMLStreamReader(reader);
+        } else {
+            xml = INPUT_FACTORY.createXMLStreamReader(source);
+        }
+        try {
+            while (remaining > 0 && xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    QName name = xml.getName();
+                    for (int i = 0; i < count; i++) {
+                        List<QName> steps = expressions[i].getSteps();
+                        if (values[i] != null || matched[i] != depth - 1 || depth > steps.size()
+                                || !steps.get(depth - 1).equals(name)) {
+                            continue;
+                        }
+                        matched[i] = depth;
+                        if (depth < steps.size()) {
+                            continue;
+                        }
+                        QName attribute = expressions[i].getAttribute();
+                        if (attribute == null) {
+                            if (texts[i] == null) {
+                                texts[i] = new StringBuilder();
+                            }
+                        } else {
+                            String value = xml.getAttributeValue(attribute.getNamespaceURI(), attribute.getLocalPart());
+                            if (value != null) {
+                                values[i] = value;
+                                remaining--;
+                            }
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    for (int i = 0; i < count; i++) {
+                        if (matched[i] == depth) {
+                            matched[i] = depth - 1;
+                            if (texts[i] != null && values[i] == null) {
+                                values[i] = texts[i].toString();
+                                remaining--;
+                            }
+                        }
+                    }
+                    depth--;
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                        || event == XMLStreamConstants.SPACE) {
+                    for (int i = 0; i < count; i++) {
+                        if (texts[i] != null && values[i] == null) {
+                            texts[i].append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                        }
+                    }
+                }
+            }
+        } finally {
+            xml.close();
+            closeQuietly(is, reader);
+        }
+        for (int i = 0; i < count; i++) {
+            if (values[i] == null) {
+                values[i] = "";
+            }
+        }
+        return values;
+    }
+
+    private static void closeQuietly(InputStream is, Reader reader) {
+        try {
+            if (is != null) {
+                is.close();
+            }
+            if (reader != null) {
+                reader.close();
+            }
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
+}
@@ -16,11 +16,17 @@
  */
 package org.apache.servicemix.bean;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.InOnly;
+import javax.jbi.messaging.MessageExchange;
 import javax.xml.namespace.QName;
 
 import org.apache.servicemix.bean.beans.AnnotatedBean;
+import org.apache.servicemix.bean.support.BeanPool;
 import org.springframework.beans.BeansException;
 import org.springframework.context.support.StaticApplicationContext;
 
@@ -81,6 +87,55 @@ public class BeanEndpointTest extends AbstractBeanComponentTest {
         assertEquals("Endpoint should have found the correct bean type", AnnotatedBean.class, endpoint.getBeanType());
     }
     
+    public void testPooledBeanType() throws Exception {
+        PooledBean.CREATED.set(0);
+        PooledBean.DESTROYED.set(0);
+        BeanPool pool = new BeanPool();
+        pool.setMinIdle(1);
+        pool.setMaxIdle(1);
+        pool.setMaxActive(2);
+        BeanEndpoint endpoint = new BeanEndpoint();
+        endpoint.setBeanType(PooledBean.class);
+        endpoint.setBeanPool(pool);
+        endpoint.setService(SERVICE);
+        endpoint.setEndpoint("endpoint");
+        component.addEndpoint(endpoint);
+
+        for (int i = 0; i < 5; i++) {
+            InOnly exchange = client.createInOnlyExchange();
+            exchange.setService(SERVICE);
+            exchange.setOperation(new QName("process"));
+            client.sendSync(exchange);
+            assertEquals(ExchangeStatus.DONE, exchange.getStatus());
+        }
+
+        assertBeanEndpointRequestsMapEmpty(endpoint);
+        assertEquals("Instances should be reused across requests", 1, PooledBean.CREATED.get());
+        assertEquals(0, PooledBean.DESTROYED.get());
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(6, pool.getBorrowedCount());
+        assertEquals(0, pool.getNumActive());
+        assertEquals(1, pool.getNumIdle());
+
+        component.removeEndpoint(endpoint);
+        assertEquals(1, PooledBean.DESTROYED.get());
+    }
+
+    public void testPendingRequestsLimits() throws Exception {
+        BeanEndpoint endpoint = new BeanEndpoint();
+        assertEquals("Requests should not be bounded without a pool", 0, endpoint.getMaxRequests());
+        assertEquals(0, endpoint.getRequestTimeout());
+
+        endpoint.setBeanPool(new BeanPool());
+        assertEquals(BeanEndpoint.DEFAULT_MAX_REQUESTS, endpoint.getMaxRequests());
+        assertEquals(BeanEndpoint.DEFAULT_REQUEST_TIMEOUT, endpoint.getRequestTimeout());
+
+        endpoint.setMaxRequests(0);
+        endpoint.setRequestTimeout(1000);
+        assertEquals(0, endpoint.getMaxRequests());
+        assertEquals(1000, endpoint.getRequestTimeout());
+    }
+
     public void testExceptionOnInvalidOperationName() throws Exception {
         BeanEndpoint endpoint = new BeanEndpoint();
         endpoint.setBean(new Object());
@@ -99,4 +154,24 @@ public class BeanEndpointTest extends AbstractBeanComponentTest {
         assertEquals(endpoint, umete.getEndpoint());
         assertEquals(exchange.getExchangeId(), umete.getMessageExchange().getExchangeId());
     }
+
+    public static class PooledBean {
+
+        static final AtomicInteger CREATED = new AtomicInteger();
+        static final AtomicInteger DESTROYED = new AtomicInteger();
+
+        @PostConstruct
+        public void init() {
+            CREATED.incrementAndGet();
+        }
+
+        @PreDestroy
+        public void destroy() {
+            DESTROYED.incrementAndGet();
+        }
+
+        public void process(MessageExchange exchange) {
+            //just an operation
+        }
+    }
 }
@@ -23,6 +23,7 @@ import javax.xml.namespace.QName;
 import junit.framework.TestCase;
 
 import org.aopalliance.intercept.MethodInvocation;
+import org.apache.servicemix.bean.Callback;
 import org.apache.servicemix.bean.Operation;
 import org.apache.servicemix.tck.mock.MockMessageExchange;
 
@@ -43,6 +44,20 @@ public class BeanInfoTest extends TestCase {
                    createInvocation(info, "doSomething"));
     }
 
+    public void testCallbacks() throws Exception {
+        BeanInfo info = new BeanInfo(Pojo.class, new DefaultMethodInvocationStrategy());
+        info.introspect();
+
+        assertEquals(1, info.getCallbacks().size());
+        CallbackInfo callback = info.getCallbacks().get(0);
+        assertEquals("onDone", callback.getMethod().getName());
+        Pojo pojo = new Pojo();
+        assertFalse(callback.evaluate(pojo));
+        pojo.done = true;
+        assertTrue(callback.evaluate(pojo));
+        assertSame("Callbacks should be introspected only once", callback, info.getCallbacks().get(0));
+    }
+
     private MethodInvocation createInvocation(BeanInfo info, String name) throws MessagingException {
         MessageExchange exchange = new MockMessageExchange();
         exchange.setOperation(new QName(name));
@@ -50,6 +65,17 @@ public class BeanInfoTest extends TestCase {
     }
 
     public static final class Pojo extends AbstractPojo {
+        private boolean done;
+
+        public boolean isDone() {
+            return done;
+        }
+
+        @Callback(condition = "this.done")
+        public void onDone() {
+            //just a callback
+        }
+
         @Operation(name = "doSomethingMoreSophisticated")
         public void doSomething() {
             //just an operation
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.bean.support;
+
+import java.lang.reflect.Method;
+
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
+import org.apache.servicemix.bean.Callback;
+
+/**
+ * Compares the per-call cost of the ways a bean method can be invoked: a direct call,
+ * a reflective call checking accessibility each time and a call through a method linked
+ * by {@link ReflectionUtils#link(Method)}, as done by {@link MethodInfo}.  It also compares
+ * evaluating a {@link Callback} condition by parsing it on each call, as was done before,
+ * with evaluating the condition cached by {@link CallbackInfo}.
+ * This is not run as part of the build: launch it with the test classpath.
+ */
+public final class MethodInvocationBenchmark {
+
+    private static final int CALLS = 1000000;
+
+    private static final int ROUNDS = 5;
+
+    private MethodInvocationBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Pojo pojo = new Pojo();
+        Method checked = Pojo.class.getMethod("transform", String.class);
+        Method linked = ReflectionUtils.link(Pojo.class.getMethod("transform", String.class));
+        CallbackInfo callback = CallbackInfo.introspect(Pojo.class).get(0);
+        // warm up
+        runDirect(pojo);
+        runReflective(pojo, checked);
+        runReflective(pojo, linked);
+        runParsedCallback(pojo, CALLS / 100);
+        runCachedCallback(pojo, callback, CALLS / 100);
+        long direct = 0;
+        long reflective = 0;
+        long prelinked = 0;
+        long parsed = 0;
+        long cached = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            direct += runDirect(pojo);
+            reflective += runReflective(pojo, checked);
+            prelinked += runReflective(pojo, linked);
+            parsed += runParsedCallback(pojo, CALLS / 100);
+            cached += runCachedCallback(pojo, callback, CALLS / 100);
+        }
+        System.out.println(String.format("direct call           %8.1f ns/call", (double) direct / (ROUNDS * CALLS)));
+        System.out.println(String.format("Method.invoke         %8.1f ns/call", (double) reflective / (ROUNDS * CALLS)));
+        System.out.println(String.format("linked Method.invoke  %8.1f ns/call", (double) prelinked / (ROUNDS * CALLS)));
+        System.out.println(String.format("callback, parsed      %8.1f ns/call", (double) parsed * 100 / (ROUNDS * CALLS)));
+        System.out.println(String.format("callback, cached      %8.1f ns/call", (double) cached * 100 / (ROUNDS * CALLS)));
+    }
+
+    private static long runDirect(Pojo pojo) {
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            pojo.transform("message");
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runReflective(Pojo pojo, Method method) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            method.invoke(pojo, new Object[] {"message"});
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runParsedCallback(Pojo pojo, int calls) throws Exception {
+        Method method = Pojo.class.getMethod("onDone");
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            JexlEngine jexl = new JexlEngine();
+            Expression e = jexl.createExpression(method.getAnnotation(Callback.class).condition());
+            JexlContext jc = new MapContext();
+            jc.set("this", pojo);
+            e.evaluate(jc);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runCachedCallback(Pojo pojo, CallbackInfo callback, int calls) {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            callback.evaluate(pojo);
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static class Pojo {
+
+        private int count;
+
+        public String transform(String message) {
+            count++;
+            return message;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        @Callback(condition = "this.count < 0")
+        public void onDone() {
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.bean.support;
+
+import java.io.StringReader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+
+import junit.framework.TestCase;
+
+import org.apache.servicemix.bean.XPath;
+import org.apache.servicemix.expression.Expression;
+
+/**
+ * Test cases for {@link XPathParameterPlan}
+ */
+public class XPathParameterPlanTest extends TestCase {
+
+    private static final String CONTENT = "<ns:order xmlns:ns='urn:test' id='42'>"
+        + "<ns:customer name='acme'>Acme <b>Corp</b></ns:customer>"
+        + "<ns:item sku='a'/><ns:item sku='b' qty='3'/>"
+        + "<item>plain</item>"
+        + "</ns:order>";
+
+    public void testSimplePaths() throws Exception {
+        XPathParameterExpression[] expressions = expressions("simple");
+        assertTrue(expressions[0].isSimple());
+        assertEquals(2, expressions[0].getSteps().size());
+        assertEquals(new QName("urn:test", "customer"), expressions[0].getSteps().get(1));
+        assertNull(expressions[0].getAttribute());
+        assertTrue(expressions[1].isSimple());
+        assertEquals(new QName("qty"), expressions[1].getAttribute());
+        assertTrue(expressions[2].isSimple());
+        assertEquals(new QName("item"), expressions[2].getSteps().get(1));
+    }
+
+    public void testComplexPaths() throws Exception {
+        XPathParameterExpression[] expressions = expressions("complex");
+        for (XPathParameterExpression expression : expressions) {
+            assertFalse(expression.getXPath(), expression.isSimple());
+        }
+        assertFalse(new XPathParameterPlan(expressions).isStreaming());
+    }
+
+    public void testStreaming() throws Exception {
+        XPathParameterExpression[] expressions = expressions("simple");
+        XPathParameterPlan plan = new XPathParameterPlan(new Expression[] {
+            null, expressions[0], expressions[1], expressions[2], expressions[3], expressions[4]
+        });
+        assertTrue(plan.isStreaming());
+        assertFalse(plan.binds(0));
+        assertTrue(plan.binds(1));
+
+        String[] values = plan.stream(new StreamSource(new StringReader(CONTENT)));
+        assertEquals("Acme Corp", values[0]);
+        assertEquals("3", values[1]);
+        assertEquals("", values[2]);
+        assertEquals("42", values[3]);
+        assertEquals("", values[4]);
+    }
+
+    private XPathParameterExpression[] expressions(String name) throws Exception {
+        for (Method method : Pojo.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                Annotation[][] annotations = method.getParameterAnnotations();
+                XPathParameterExpression[] expressions = new XPathParameterExpression[annotations.length];
+                for (int i = 0; i < annotations.length; i++) {
+                    expressions[i] = new XPathParameterExpression((XPath) annotations[i][0]);
+                }
+                return expressions;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    public static class Pojo {
+
+        public void simple(@XPath(prefix = "ns", uri = "urn:test", xpath = "/ns:order/ns:customer") String customer,
+                           @XPath(prefix = "ns", uri = "urn:test", xpath = "/ns:order/ns:item/@qty") String qty,
+                           @XPath(xpath = "/order/item") String item,
+                           @XPath(prefix = "ns", uri = "urn:test", xpath = "/ns:order/@id") String id,
+                           @XPath(prefix = "ns", uri = "urn:test", xpath = "/ns:order/ns:missing") String missing) {
+        }
+
+        public void complex(@XPath(xpath = "//item") String any,
+                            @XPath(xpath = "/order/item[2]") String second,
+                            @XPath(xpath = "count(/order/item)") String count,
+                            @XPath(xpath = "/order/$name") String variable,
+                            @XPath(xpath = "/other:order") String unknownPrefix,
+                            @XPath(xpath = "order/item") String relative) {
+        }
+    }
+
+}
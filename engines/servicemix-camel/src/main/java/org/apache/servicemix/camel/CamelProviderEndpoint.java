@@ -68,6 +68,15 @@ public class CamelProviderEndpoint extends ProviderEndpoint implements Synchroni
         this.camelEndpoint = camelEndpoint;
     }
 
+    /**
+     * Access the binding used to hand the exchanges over to Camel
+     *
+     * @return the binding
+     */
+    public JbiBinding getBinding() {
+        return binding;
+    }
+
     @Override
     public void process(MessageExchange exchange) throws Exception {
         // The component acts as a provider, this means that another component has requested our service
@@ -16,6 +16,8 @@
  */
 package org.apache.servicemix.camel;
 
+import java.io.InputStream;
+import java.io.Reader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Map;
@@ -31,14 +33,17 @@ import javax.jbi.messaging.RobustInOnly;
 import javax.security.auth.Subject;
 import javax.xml.namespace.QName;
 import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
 
 import org.apache.camel.CamelContext;
 import org.apache.camel.Exchange;
 import org.apache.camel.ExchangePattern;
 import org.apache.camel.Message;
+import org.apache.camel.StreamCache;
 import org.apache.camel.impl.DefaultExchange;
 import org.apache.camel.spi.HeaderFilterStrategy;
 import org.apache.servicemix.camel.util.BasicSerializationHeaderFilterStrategy;
+import org.apache.servicemix.camel.util.CachingSerializationHeaderFilterStrategy;
 import org.apache.servicemix.camel.util.HeaderFilterStrategies;
 import org.apache.servicemix.camel.util.HeaderFilterStrategyConstants;
 import org.apache.servicemix.camel.util.NoCheckSerializationHeaderFilterStrategy;
@@ -63,7 +68,9 @@ public class JbiBinding {
     private final CamelContext context;
 
     private HeaderFilterStrategies strategies = new HeaderFilterStrategies();
+    private final HeaderFilterStrategy serializationStrategy;
     private boolean convertExceptions;
+    private boolean streaming;
 
     /**
      * Create the binding instance for a given CamelContext
@@ -77,16 +84,29 @@ public class JbiBinding {
     public JbiBinding(CamelContext context, String serialization) {
         this.context = context;
         if (serialization == null) {
-            strategies.add(new BasicSerializationHeaderFilterStrategy());
+            serializationStrategy = new BasicSerializationHeaderFilterStrategy();
         } else {
             if (serialization.equalsIgnoreCase(HeaderFilterStrategyConstants.STRICT)) {
-                strategies.add(new StrictSerializationHeaderFilterStrategy());
+                serializationStrategy = new StrictSerializationHeaderFilterStrategy();
+            } else if (serialization.equalsIgnoreCase(HeaderFilterStrategyConstants.CACHED)) {
+                serializationStrategy = new CachingSerializationHeaderFilterStrategy();
             } else if (serialization.equalsIgnoreCase(HeaderFilterStrategyConstants.NOCHECK)) {
-                strategies.add(new NoCheckSerializationHeaderFilterStrategy());
+                serializationStrategy = new NoCheckSerializationHeaderFilterStrategy();
             } else {
-                strategies.add(new BasicSerializationHeaderFilterStrategy());
+                serializationStrategy = new BasicSerializationHeaderFilterStrategy();
             }
         }
+        strategies.add(serializationStrategy);
+    }
+
+    /**
+     * Access the {@link HeaderFilterStrategy} selected by the serialization option, e.g. to read the hit and
+     * miss counts of a {@link CachingSerializationHeaderFilterStrategy}
+     *
+     * @return the serialization header filter strategy
+     */
+    public HeaderFilterStrategy getSerializationStrategy() {
+        return serializationStrategy;
     }
 
     public void addHeaderFilterStrategy(HeaderFilterStrategy strategy) {
@@ -97,6 +117,22 @@ public class JbiBinding {
         this.convertExceptions = convertExceptions;
     }
 
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Hand stream and XML bodies over to JBI as they are, instead of converting them into a {@link Source}
+     * with the Camel type converters.  {@link InputStream}s and {@link Reader}s are wrapped in a
+     * {@link StreamSource}, which is only read when the JBI side needs the content, and {@link StreamCache}
+     * bodies are reset first so that their whole content is handed over.
+     *
+     * @param streaming <code>true</code> to enable the streaming hand-off
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
     /**
      * Run a block of code with the {@link CamelContext#getApplicationContextClassLoader()} set as the thread context classloader.
      * 
@@ -239,7 +275,7 @@ public class JbiBinding {
 
     public void copyFromCamelToJbi(Message message, NormalizedMessage normalizedMessage) throws MessagingException {
         if (message != null && message.getBody() != null) {
-            Source body = message.getBody(Source.class);
+            Source body = getBodyAsSource(message);
             if (body == null) {
                 logger.warn("Unable to convert message body of type {} into an XML Source", message.getBody().getClass());
             } else {
@@ -266,6 +302,26 @@ public class JbiBinding {
         }
     }
 
+    /*
+     * Get the message body as a Source, without conversion if possible when streaming is enabled
+     */
+    private Source getBodyAsSource(Message message) {
+        if (streaming) {
+            Object body = message.getBody();
+            if (body instanceof StreamCache) {
+                ((StreamCache) body).reset();
+            }
+            if (body instanceof Source) {
+                return (Source) body;
+            } else if (body instanceof InputStream) {
+                return new StreamSource((InputStream) body);
+            } else if (body instanceof Reader) {
+                return new StreamSource((Reader) body);
+            }
+        }
+        return message.getBody(Source.class);
+    }
+
     public void copyFromCamelToJbi(Exchange exchange, MessageExchange messageExchange) throws MessagingException {
         // add Exchange properties to the MessageExchange without overwriting any existing properties
         copyPropertiesFromCamelToJbi(exchange, messageExchange);
@@ -52,6 +52,8 @@ public class JbiEndpoint extends DefaultEndpoint implements HeaderFilterStrategy
 
     private String serialization;
 
+    private boolean streaming;
+
     private HeaderFilterStrategy headerFilterStrategy;
 
     private final JbiComponent jbiComponent;
@@ -70,10 +72,20 @@ public class JbiEndpoint extends DefaultEndpoint implements HeaderFilterStrategy
     public JbiBinding createBinding() {
         JbiBinding result = new JbiBinding(this.getCamelContext(), serialization);
         result.setConvertExceptions(convertExceptions);
+        result.setStreaming(streaming);
         result.addHeaderFilterStrategy(headerFilterStrategy);
         return result;
     }
 
+    /**
+     * Access the binding used by the consumer endpoints created for this endpoint
+     *
+     * @return the binding
+     */
+    public JbiBinding getBinding() {
+        return binding;
+    }
+
     public Producer createProducer() throws Exception {
         return new JbiProducer(this);
     }
@@ -173,6 +185,11 @@ public class JbiEndpoint extends DefaultEndpoint implements HeaderFilterStrategy
                     this.setConvertExceptions(Boolean.valueOf(convert));
                     params.remove("convertExceptions");
                 }
+                String stream = (String) params.get("streaming");
+                if (StringUtils.hasLength(stream)) {
+                    this.setStreaming(Boolean.valueOf(stream));
+                    params.remove("streaming");
+                }
                 String serialization = (String) params.get("serialization");
                 if (StringUtils.hasLength(serialization)) {
                     this.setSerialization(serialization);
@@ -251,6 +268,14 @@ public class JbiEndpoint extends DefaultEndpoint implements HeaderFilterStrategy
         return convertExceptions;
     }
 
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
     public void setSerialization(String serialization) {
         this.serialization = serialization;
     }
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.camel.util;
+
+import java.io.Externalizable;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.namespace.QName;
+
+/**
+ * {@link org.apache.camel.spi.HeaderFilterStrategy} that filters out non-serializable values,
+ * like {@link StrictSerializationHeaderFilterStrategy}, but avoids serializing the same kind
+ * of values over and over:
+ * <ul>
+ * <li>immutable JDK types and enums are always serializable and never checked</li>
+ * <li>for final classes whose serialized fields all are primitives, immutable JDK types or enums,
+ * the result of the check is cached per class</li>
+ * <li>instances of other classes are serialized each time, as their subclasses or their state may differ:
+ * a field holding an <code>Object</code>, an array or a collection may be serializable for one instance
+ * and not for the next</li>
+ * </ul>
+ * The cache holds its classes weakly, so that it does not prevent them from being unloaded along with
+ * their class loader, and it is cleared when it grows over its maximum size.
+ */
+public class CachingSerializationHeaderFilterStrategy extends StrictSerializationHeaderFilterStrategy {
+
+    public static final int DEFAULT_MAX_CACHE_SIZE = 1000;
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+        String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+        Float.class, Double.class, BigInteger.class, BigDecimal.class, Date.class, Locale.class, UUID.class,
+        URI.class, QName.class));
+
+    // whether instances of a class are filtered, or UNCACHEABLE if they have to be checked each time
+    private static final Boolean UNCACHEABLE = new Boolean(false);
+
+    private final Map<Class<?>, Boolean> verdicts = new WeakHashMap<Class<?>, Boolean>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private int maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * Set the maximum number of classes for which the result of the check is kept
+     *
+     * @param maxCacheSize the maximum number of cached classes
+     */
+    public void setMaxCacheSize(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    /**
+     * @return the number of values which did not need to be serialized
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of values which had to be serialized
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of classes currently cached
+     */
+    public int getCacheSize() {
+        synchronized (verdicts) {
+            return verdicts.size();
+        }
+    }
+
+    @Override
+    protected boolean doApplyFilter(String s, Object o) {
+        if (!(o instanceof Serializable)) {
+            return true;
+        }
+        Class<?> type = o.getClass();
+        if (IMMUTABLE_TYPES.contains(type) || o instanceof Enum) {
+            hits.incrementAndGet();
+            return false;
+        }
+        if (!Modifier.isFinal(type.getModifiers())) {
+            misses.incrementAndGet();
+            return super.doApplyFilter(s, o);
+        }
+        Boolean verdict;
+        synchronized (verdicts) {
+            verdict = verdicts.get(type);
+        }
+        if (verdict != null && verdict != UNCACHEABLE) {
+            hits.incrementAndGet();
+            return verdict;
+        }
+        misses.incrementAndGet();
+        boolean filtered = super.doApplyFilter(s, o);
+        if (verdict == null) {
+            synchronized (verdicts) {
+                if (verdicts.size() >= maxCacheSize) {
+                    verdicts.clear();
+                }
+                verdicts.put(type, isCacheable(type) ? Boolean.valueOf(filtered) : UNCACHEABLE);
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Check if all the instances of a final class are serializable as soon as one of them is:
+     * the class does not customize its serialization and all its serialized fields, including
+     * the inherited ones, hold primitives, immutable JDK types or enums
+     */
+    private static boolean isCacheable(Class<?> type) {
+        if (Externalizable.class.isAssignableFrom(type)) {
+            return false;
+        }
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            if (declaresMethod(c, "writeObject") || declaresMethod(c, "writeReplace")) {
+                return false;
+            }
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                    continue;
+                }
+                Class<?> fieldType = field.getType();
+                if (!fieldType.isPrimitive() && !IMMUTABLE_TYPES.contains(fieldType) && !fieldType.isEnum()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean declaresMethod(Class<?> type, String name) {
+        try {
+            for (Method method : type.getDeclaredMethods()) {
+                if (method.getName().equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (SecurityException e) {
+            return true;
+        }
+    }
+
+}
@@ -29,5 +29,6 @@ public class HeaderFilterStrategyConstants {
     public static final String STRICT = "strict";
     public static final String BASIC = "basic";
     public static final String NOCHECK = "nocheck";
+    public static final String CACHED = "cached";
 
 }
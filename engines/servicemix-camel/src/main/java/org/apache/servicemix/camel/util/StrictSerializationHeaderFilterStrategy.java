@@ -44,7 +44,12 @@ public class StrictSerializationHeaderFilterStrategy implements HeaderFilterStra
         return doApplyFilter(s, o);
     }
 
-    private boolean doApplyFilter(String s, Object o) {
+    /**
+     * @param s the header name
+     * @param o the header value
+     * @return <code>true</code> if the header should be filtered out
+     */
+    protected boolean doApplyFilter(String s, Object o) {
         if (o instanceof Serializable) {
             ObjectOutputStream oos = null;
             try {
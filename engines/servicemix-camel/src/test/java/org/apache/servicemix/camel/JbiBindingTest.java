@@ -16,6 +16,8 @@
  */
 package org.apache.servicemix.camel;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.HashMap;
 
 import javax.activation.DataHandler;
@@ -25,6 +27,7 @@ import javax.jbi.messaging.NormalizedMessage;
 import javax.security.auth.Subject;
 import javax.xml.namespace.QName;
 import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
 
 import junit.framework.TestCase;
 
@@ -178,6 +181,23 @@ public class JbiBindingTest extends TestCase {
                      1, to.getPropertyNames().size());
     }
 
+    public void testCopyCamelToJbiStreaming() throws Exception {
+        binding.setStreaming(true);
+        NormalizedMessage to = new MockNormalizedMessage();
+
+        Message from = new DefaultMessage();
+        InputStream stream = new ByteArrayInputStream("<my>content</my>".getBytes());
+        from.setBody(stream);
+
+        binding.copyFromCamelToJbi(from, to);
+        assertTrue("Stream body should be handed over in a StreamSource", to.getContent() instanceof StreamSource);
+        assertSame("Stream body should not be read", stream, ((StreamSource) to.getContent()).getInputStream());
+
+        from.setBody(CONTENT);
+        binding.copyFromCamelToJbi(from, to);
+        assertSame("Source body should be handed over as is", CONTENT, to.getContent());
+    }
+
     public void testCopyCamelMessageToJbiPreserveKeyCase() throws Exception {
         NormalizedMessage to = new MockNormalizedMessage();
 
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.camel.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+
+import junit.framework.TestCase;
+import org.apache.servicemix.camel.test.InvalidSerializableObject;
+
+/**
+ * Test cases for {@link org.apache.servicemix.camel.util.CachingSerializationHeaderFilterStrategy}
+ */
+public class CachingSerializationHeaderFilterStrategyTest extends TestCase {
+
+    private CachingSerializationHeaderFilterStrategy strategy = new CachingSerializationHeaderFilterStrategy();
+
+    public void testApplyFilterToCamelHeaders() {
+        assertTrue("Strategy should filter ByteArrayInputStream - is not Serializable",
+                   strategy.applyFilterToCamelHeaders("key", new ByteArrayOutputStream(), null));
+        assertTrue("Strategy should filter Serializable implementations that can not be serialized",
+                   strategy.applyFilterToCamelHeaders("key", new InvalidSerializableObject(), null));
+        assertFalse("Strategy should not filter String - is Serializable",
+                    strategy.applyFilterToCamelHeaders("key", "value", null));
+    }
+
+    public void testImmutableTypesAreNotSerialized() {
+        assertFalse(strategy.applyFilterToCamelHeaders("key", "value", null));
+        assertFalse(strategy.applyFilterToCamelHeaders("key", 42, null));
+        assertFalse(strategy.applyFilterToExternalHeaders("key", Thread.State.NEW, null));
+        assertEquals(3, strategy.getHitCount());
+        assertEquals(0, strategy.getMissCount());
+    }
+
+    public void testFinalClassesAreCached() {
+        assertFalse(strategy.applyFilterToCamelHeaders("key", new FinalValue(), null));
+        assertFalse(strategy.applyFilterToCamelHeaders("key", new FinalValue(), null));
+        assertEquals(1, strategy.getHitCount());
+        assertEquals(1, strategy.getMissCount());
+        assertEquals(1, strategy.getCacheSize());
+    }
+
+    public void testOtherClassesAreAlwaysSerialized() {
+        assertTrue(strategy.applyFilterToCamelHeaders("key", new InvalidSerializableObject(), null));
+        assertTrue(strategy.applyFilterToCamelHeaders("key", new InvalidSerializableObject(), null));
+        assertEquals(0, strategy.getHitCount());
+        assertEquals(2, strategy.getMissCount());
+        assertEquals(0, strategy.getCacheSize());
+    }
+
+    public void testFinalClassesWithMutableStateAreAlwaysSerialized() {
+        assertFalse(strategy.applyFilterToCamelHeaders("key", new FinalHolder("value"), null));
+        assertTrue(strategy.applyFilterToCamelHeaders("key", new FinalHolder(new Object()), null));
+        assertFalse(strategy.applyFilterToCamelHeaders("key", new FinalHolder("value"), null));
+        assertEquals(0, strategy.getHitCount());
+        assertEquals(3, strategy.getMissCount());
+    }
+
+    public void testCacheIsBounded() {
+        strategy.setMaxCacheSize(1);
+        strategy.applyFilterToCamelHeaders("key", new FinalValue(), null);
+        strategy.applyFilterToCamelHeaders("key", new OtherFinalValue(), null);
+        assertEquals(1, strategy.getCacheSize());
+    }
+
+    private static final class FinalValue implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private int value = 1;
+    }
+
+    private static final class OtherFinalValue implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private String value = "other";
+    }
+
+    private static final class FinalHolder implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private Object value;
+
+        private FinalHolder(Object value) {
+            this.value = value;
+        }
+    }
+}
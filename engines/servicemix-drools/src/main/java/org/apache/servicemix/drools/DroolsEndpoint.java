@@ -19,10 +19,16 @@ package org.apache.servicemix.drools;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jbi.JBIException;
 import javax.jbi.management.DeploymentException;
@@ -45,7 +51,12 @@ import org.apache.servicemix.common.ServiceUnit;
 import org.apache.servicemix.common.endpoints.ProviderEndpoint;
 import org.apache.servicemix.common.util.MessageUtil;
 import org.apache.servicemix.drools.model.Exchange;
+import org.apache.servicemix.drools.model.XPathCache;
+import org.drools.FactHandle;
+import org.drools.InitialFact;
 import org.drools.RuleBase;
+import org.drools.StatefulSession;
+import org.drools.base.MapGlobalResolver;
 import org.drools.compiler.RuleBaseLoader;
 import org.springframework.core.io.Resource;
 
@@ -61,11 +72,19 @@ public class DroolsEndpoint extends ProviderEndpoint {
     private Resource ruleBaseResource;
     private URL ruleBaseURL;
     private NamespaceContext namespaceContext;
+    private volatile XPathCache xpathCache;
     private QName defaultTargetService;
     private String defaultTargetURI;
     private Map<String, Object> globals;
     private List<Object> assertedObjects;
     private boolean autoReply;
+    private int sessionPoolSize;
+    private boolean stateless;
+    private volatile BlockingQueue<StatefulSession> sessions;
+
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong rulesFiredCount = new AtomicLong();
+    private final AtomicLong fireAllRulesTime = new AtomicLong();
     
     @SuppressWarnings("serial")
     private ConcurrentMap<String, DroolsExecutionContext> pending = new ConcurrentHashMap<String, DroolsExecutionContext>() {
@@ -154,6 +173,19 @@ public class DroolsEndpoint extends ProviderEndpoint {
      */
     public void setNamespaceContext(NamespaceContext namespaceContext) {
         this.namespaceContext = namespaceContext;
+        this.xpathCache = null;
+    }
+
+    /**
+     * @return the compiled XPath expressions shared by all the exchanges handled by this endpoint
+     */
+    public XPathCache getXPathCache() {
+        XPathCache cache = xpathCache;
+        if (cache == null) {
+            cache = new XPathCache(namespaceContext);
+            xpathCache = cache;
+        }
+        return cache;
     }
 
     /**
@@ -193,6 +225,118 @@ public class DroolsEndpoint extends ProviderEndpoint {
         this.autoReply = autoReply;
     }
 
+    public int getSessionPoolSize() {
+        return sessionPoolSize;
+    }
+
+    /**
+     * Set the number of sessions kept for reuse across exchanges.  When a session is no longer
+     * used by an exchange, all its facts are retracted and its agenda is cleared, so that it can
+     * be used by the next exchange instead of creating a new session from the rule base.
+     *
+     * Defaults to <code>0</code>, which creates a new session for each exchange.
+     *
+     * @param sessionPoolSize the maximum number of idle sessions
+     */
+    public void setSessionPoolSize(int sessionPoolSize) {
+        this.sessionPoolSize = sessionPoolSize;
+    }
+
+    public boolean isStateless() {
+        return stateless;
+    }
+
+    /**
+     * Set stateless to <code>true</code> if the rules do not need the working memory once they have been
+     * fired for an exchange, i.e. if no rule reacts to the answer of an exchange routed by the rules.
+     * The session is then released as soon as the rules have been fired, instead of being kept until the
+     * exchange is complete, which allows a small pool of sessions to serve many concurrent exchanges.
+     *
+     * Defaults to <code>false</code>
+     *
+     * @param stateless <code>true</code> to release the sessions right after firing the rules
+     */
+    public void setStateless(boolean stateless) {
+        this.stateless = stateless;
+    }
+
+    /**
+     * @return the number of exchanges the rules have been fired for
+     */
+    public long getExecutionCount() {
+        return executionCount.get();
+    }
+
+    /**
+     * @return the total number of rules fired
+     */
+    public long getRulesFiredCount() {
+        return rulesFiredCount.get();
+    }
+
+    /**
+     * @return the total time spent firing rules, in milliseconds
+     */
+    public long getFireAllRulesTime() {
+        return TimeUnit.NANOSECONDS.toMillis(fireAllRulesTime.get());
+    }
+
+    /**
+     * Records the statistics of a single execution of the rules
+     *
+     * @param rulesFired the number of rules fired
+     * @param time the time spent firing rules, in nanoseconds
+     */
+    protected void recordExecution(int rulesFired, long time) {
+        executionCount.incrementAndGet();
+        rulesFiredCount.addAndGet(rulesFired);
+        fireAllRulesTime.addAndGet(time);
+    }
+
+    /**
+     * Get a session to fire the rules for an exchange, either from the pool or newly created
+     */
+    protected StatefulSession acquireSession() {
+        BlockingQueue<StatefulSession> pool = sessions;
+        StatefulSession session = pool != null ? pool.poll() : null;
+        return session != null ? session : getRuleBase().newStatefulSession();
+    }
+
+    /**
+     * Give back a session which is no longer used, either by resetting it into the pool
+     * or by disposing of it
+     */
+    protected void releaseSession(StatefulSession session) {
+        BlockingQueue<StatefulSession> pool = sessions;
+        if (pool != null && pool.remainingCapacity() > 0) {
+            try {
+                reset(session);
+                if (pool.offer(session)) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                logger.debug("Unable to reset drools session, disposing of it", e);
+            }
+        }
+        session.dispose();
+    }
+
+    private void reset(StatefulSession session) {
+        // drop the jbi helper and the exchange related globals, set again for the next exchange
+        session.setGlobalResolver(new MapGlobalResolver());
+        session.getAgenda().clearAgenda();
+        List<FactHandle> handles = new ArrayList<FactHandle>();
+        for (Iterator it = session.iterateFactHandles(); it.hasNext();) {
+            FactHandle handle = (FactHandle) it.next();
+            if (!(session.getObject(handle) instanceof InitialFact)) {
+                handles.add(handle);
+            }
+        }
+        for (FactHandle handle : handles) {
+            session.retract(handle);
+        }
+    }
+
     public void validate() throws DeploymentException {
         super.validate();
         if (ruleBase == null && ruleBaseResource == null && ruleBaseURL == null) {
@@ -223,6 +367,20 @@ public class DroolsEndpoint extends ProviderEndpoint {
                 }
             }
         }
+        if (sessionPoolSize > 0) {
+            sessions = new ArrayBlockingQueue<StatefulSession>(sessionPoolSize);
+        }
+    }
+
+    public void stop() throws Exception {
+        BlockingQueue<StatefulSession> pool = sessions;
+        sessions = null;
+        if (pool != null) {
+            for (StatefulSession session = pool.poll(); session != null; session = pool.poll()) {
+                session.dispose();
+            }
+        }
+        super.stop();
     }
 
     /* (non-Javadoc)
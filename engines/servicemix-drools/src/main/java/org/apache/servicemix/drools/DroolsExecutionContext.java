@@ -24,6 +24,7 @@ import org.apache.servicemix.drools.model.JbiHelper;
 import org.drools.StatefulSession;
 import org.drools.WorkingMemory;
 import org.drools.event.ActivationCreatedEvent;
+import org.drools.event.AfterActivationFiredEvent;
 import org.drools.event.DefaultAgendaEventListener;
 
 /**
@@ -31,9 +32,14 @@ import org.drools.event.DefaultAgendaEventListener;
  */
 public class DroolsExecutionContext extends DefaultAgendaEventListener {
     
+    private final DroolsEndpoint endpoint;
     private final StatefulSession memory;
     private final JbiHelper helper;
     private int rulesFired;
+    private int activationsFired;
+    private boolean released;
+    private boolean firing;
+    private boolean releaseRequested;
     private MessageExchange exchange;
     
     public static final String JBI_HELPER_KEY = "jbi";
@@ -48,7 +54,8 @@ public class DroolsExecutionContext extends DefaultAgendaEventListener {
      */
     public DroolsExecutionContext(DroolsEndpoint endpoint, MessageExchange exchange) {
         super();
-        this.memory = endpoint.getRuleBase().newStatefulSession();
+        this.endpoint = endpoint;
+        this.memory = endpoint.acquireSession();
         this.memory.addEventListener(this);
         this.exchange = exchange;
         this.helper = new JbiHelper(endpoint, exchange, memory);
@@ -72,9 +79,28 @@ public class DroolsExecutionContext extends DefaultAgendaEventListener {
     /**
      * Start the execution context.
      * This will fire all rules in the rule base.
+     * 
+     * If the endpoint is stateless, the working memory is released once the rules have been fired.
+     * Otherwise, it is released when the context is stopped, but not before the rules have been fired.
      */
     public void start() {
-        memory.fireAllRules();
+        synchronized (this) {
+            firing = true;
+        }
+        long start = System.nanoTime();
+        try {
+            memory.fireAllRules();
+        } finally {
+            endpoint.recordExecution(activationsFired, System.nanoTime() - start);
+            boolean release;
+            synchronized (this) {
+                firing = false;
+                release = releaseRequested || endpoint.isStateless();
+            }
+            if (release) {
+                release();
+            }
+        }
     }
     
     /**
@@ -88,8 +114,19 @@ public class DroolsExecutionContext extends DefaultAgendaEventListener {
      * Stop the context, disposing of all event listeners and working memory contents
      */
     public void stop() {
-        memory.removeEventListener(this);
-        memory.dispose();
+        release();
+    }
+
+    private synchronized void release() {
+        if (firing) {
+            // the exchange has been completed by the rules being fired: hand off the release to start()
+            releaseRequested = true;
+        } else if (!released) {
+            released = true;
+            helper.detach();
+            memory.removeEventListener(this);
+            endpoint.releaseSession(memory);
+        }
     }
     
     /**
@@ -119,6 +156,11 @@ public class DroolsExecutionContext extends DefaultAgendaEventListener {
     public void activationCreated(ActivationCreatedEvent event, WorkingMemory workingMemory) {
         rulesFired++;
     }
+
+    @Override
+    public void afterActivationFired(AfterActivationFiredEvent event, WorkingMemory workingMemory) {
+        activationsFired++;
+    }
     
     /**
      * Access the JbiHelper object that is being exposed to the .drl file
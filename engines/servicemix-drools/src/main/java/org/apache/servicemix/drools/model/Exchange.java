@@ -43,22 +43,26 @@ public class Exchange {
     private Message in;
     private Message out;
     private Message fault;
-    private NamespaceContext namespaceContext;
+    private XPathCache xpathCache;
     
     public Exchange(MessageExchange exchange, NamespaceContext namespaceContext) {
+        this(exchange, new XPathCache(namespaceContext));
+    }
+    
+    public Exchange(MessageExchange exchange, XPathCache xpathCache) {
         this.exchange = exchange;
-        this.namespaceContext = namespaceContext;
+        this.xpathCache = xpathCache;
         if (in == null) {
             NormalizedMessage msg = exchange.getMessage("in");
-            in = msg != null ? new Message(msg, this.namespaceContext) : null;
+            in = msg != null ? new Message(msg, this.xpathCache) : null;
         }
         if (out == null) {
             NormalizedMessage msg = exchange.getMessage("out");
-            out = msg != null ? new Message(msg, this.namespaceContext) : null;
+            out = msg != null ? new Message(msg, this.xpathCache) : null;
         }
         if (fault == null) {
             javax.jbi.messaging.Fault msg = exchange.getFault();
-            fault = msg != null ? new Fault(msg, this.namespaceContext) : null;
+            fault = msg != null ? new Fault(msg, this.xpathCache) : null;
         }
     }
     
@@ -118,7 +122,7 @@ public class Exchange {
     
     protected Message getMessage(String name) {
         NormalizedMessage msg = exchange.getMessage(name);
-        return msg != null ? new Message(msg, this.namespaceContext) : null;
+        return msg != null ? new Message(msg, this.xpathCache) : null;
     }
     
 }
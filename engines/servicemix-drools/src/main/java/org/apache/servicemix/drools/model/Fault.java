@@ -24,4 +24,8 @@ public class Fault extends Message {
         super(message, namespaceContext);
     }
 
+    public Fault(javax.jbi.messaging.Fault message, XPathCache xpathCache) {
+        super(message, xpathCache);
+    }
+
 }
@@ -53,7 +53,7 @@ public class JbiHelper {
 
     public JbiHelper(DroolsEndpoint endpoint, MessageExchange exchange, WorkingMemory memory) {
         this.endpoint = endpoint;
-        this.exchange = new Exchange(exchange, endpoint.getNamespaceContext());
+        this.exchange = new Exchange(exchange, endpoint.getXPathCache());
         this.memory = memory;
         this.exchangeFactHandle = this.memory.insert(this.exchange);
     }
@@ -75,7 +75,7 @@ public class JbiHelper {
     }
 
     public Logger getLogger() {
-        return LoggerFactory.getLogger(memory.getRuleBase().getPackages()[0].getName());
+        return LoggerFactory.getLogger(endpoint.getRuleBase().getPackages()[0].getName());
     }
 
     /**
@@ -207,8 +207,18 @@ public class JbiHelper {
     /**
      * Update the {@link MessageExchange} information in the rule engine's {@link WorkingMemory}
      */
-    public void update() {
-        this.memory.update(this.exchangeFactHandle, this.exchange);
+    public synchronized void update() {
+        if (this.memory != null) {
+            this.memory.update(this.exchangeFactHandle, this.exchange);
+        }
+    }
+
+    /**
+     * Detach this helper from its {@link WorkingMemory}, which is about to be disposed of or reused
+     * for another exchange, so that any later update is ignored
+     */
+    public synchronized void detach() {
+        this.memory = null;
     }
     
     /**
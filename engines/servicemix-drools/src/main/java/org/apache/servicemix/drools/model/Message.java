@@ -20,17 +20,13 @@ import javax.jbi.messaging.NormalizedMessage;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
-import org.apache.servicemix.expression.JAXPBooleanXPathExpression;
-import org.apache.servicemix.expression.JAXPStringXPathExpression;
 import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 
 public class Message {
@@ -38,22 +34,18 @@ public class Message {
     private static final SourceTransformer TRANFORMER = new SourceTransformer();
     
     private final NormalizedMessage message;
-    private final NamespaceContext namespaceContext;
+    private final XPathCache xpathCache;
+    private DOMSource content;
     
     public Message(NormalizedMessage message, NamespaceContext namespaceContext) {
+        this(message, new XPathCache(namespaceContext));
+    }
+    
+    public Message(NormalizedMessage message, XPathCache xpathCache) {
         this.message = message;
+        this.xpathCache = xpathCache;
         // Make sure message is re-readable
-        this.namespaceContext = namespaceContext;
-        Source content = message.getContent();
-        if (content != null) {
-            try {
-                content = new DOMSource(TRANFORMER.toDOMElement(content));
-                message.setContent(content);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        }
-        
+        getContent();
     }
     
     public NormalizedMessage getInternalMessage() {
@@ -61,20 +53,12 @@ public class Message {
     }
     
     public boolean xpath(String xpath) throws Exception {
-        JAXPBooleanXPathExpression expression = new JAXPBooleanXPathExpression(xpath);
-        if (this.namespaceContext != null) {
-            expression.setNamespaceContext(this.namespaceContext);
-        }
-        Boolean b = (Boolean) expression.evaluate(null, message);
+        Boolean b = (Boolean) xpathCache.evaluate(xpath, getContent(), message, XPathConstants.BOOLEAN);
         return b.booleanValue();
     }
     
     public String valueOf(String xpath) throws Exception {
-        JAXPStringXPathExpression expression = new JAXPStringXPathExpression(xpath);
-        if (this.namespaceContext != null) {
-            expression.setNamespaceContext(this.namespaceContext);
-        }
-        return (String)expression.evaluate(null, message);
+        return (String) xpathCache.evaluate(xpath, getContent(), message, XPathConstants.STRING);
     }
     
     
@@ -86,15 +70,34 @@ public class Message {
         message.setProperty(name, value);
     }
     
+    /**
+     * Get the content of the message as a DOM element.  The content is only parsed the first
+     * time, or if it has been replaced since, so that all the rule conditions share the same tree.
+     */
     public Element getContent() {
-        return (Element) ((DOMSource) message.getContent()).getNode();
+        Source source = message.getContent();
+        if (source == null) {
+            return null;
+        }
+        if (source != content) {
+            if (source instanceof DOMSource && ((DOMSource) source).getNode() instanceof Element) {
+                content = (DOMSource) source;
+            } else {
+                try {
+                    content = new DOMSource(TRANFORMER.toDOMElement(source));
+                    message.setContent(content);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return (Element) content.getNode();
     }
         
     public Object getXPath(String path) throws XPathExpressionException {
         Element msgXML = getContent();
         if(msgXML!=null) {
-            XPath xpath = XPathFactory.newInstance().newXPath();
-            Node value = (Node) xpath.evaluate(path, getContent(), XPathConstants.NODE);
+            Node value = (Node) xpathCache.evaluate(path, msgXML, message, XPathConstants.NODE);
             if(value == null || value.getNodeType() != Node.ATTRIBUTE_NODE) {
                 throw new DOMException(DOMException.NOT_FOUND_ERR, "Attribute not found in message with XPath: " + path);
             }
@@ -107,8 +110,7 @@ public class Message {
     public void setXPath(String path, Object value) throws XPathExpressionException {
         Element msgXML = getContent();
         if(msgXML!=null) {
-            XPath xpath = XPathFactory.newInstance().newXPath();
-            Node node = (Node) xpath.evaluate(path, getContent(), XPathConstants.NODE);
+            Node node = (Node) xpathCache.evaluate(path, msgXML, message, XPathConstants.NODE);
             if (node == null || node.getNodeType() != Node.ATTRIBUTE_NODE) {
                 throw new DOMException(DOMException.NOT_FOUND_ERR, "Attribute not found in message with xpath: "+ path);
             } else {
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.drools.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.jbi.messaging.NormalizedMessage;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathVariableResolver;
+
+import org.w3c.dom.Node;
+
+/**
+ * Compiled XPath expressions for a given {@link NamespaceContext}, shared by all the
+ * {@link Message}s evaluated by an endpoint, so that the expressions used in the rule
+ * conditions are only compiled once instead of each time a rule is evaluated.
+ * <p>
+ * Compiled expressions are not thread-safe: each thread evaluating expressions keeps its own
+ * compiled copies, so that concurrent exchanges testing the same condition never wait for
+ * each other.  Variables in the expressions are resolved against the properties of the message
+ * being evaluated.  The least recently used expressions of a thread are discarded when more
+ * than <code>maxSize</code> different expressions have been compiled by it.
+ */
+public class XPathCache {
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private final NamespaceContext namespaceContext;
+    private final ThreadLocal<Map<String, CompiledXPath>> expressions;
+    // XPath factories are not thread-safe either
+    private final ThreadLocal<XPathFactory> factories = new ThreadLocal<XPathFactory>() {
+        protected XPathFactory initialValue() {
+            return XPathFactory.newInstance();
+        }
+    };
+
+    public XPathCache(NamespaceContext namespaceContext) {
+        this(namespaceContext, DEFAULT_MAX_SIZE);
+    }
+
+    public XPathCache(NamespaceContext namespaceContext, final int maxSize) {
+        this.namespaceContext = namespaceContext;
+        this.expressions = new ThreadLocal<Map<String, CompiledXPath>>() {
+            @SuppressWarnings("serial")
+            protected Map<String, CompiledXPath> initialValue() {
+                return new LinkedHashMap<String, CompiledXPath>(16, 0.75f, true) {
+                    protected boolean removeEldestEntry(Map.Entry<String, CompiledXPath> eldest) {
+                        return size() > maxSize;
+                    }
+                };
+            }
+        };
+    }
+
+    public NamespaceContext getNamespaceContext() {
+        return namespaceContext;
+    }
+
+    /**
+     * @return the number of compiled expressions currently cached for the calling thread
+     */
+    public int getSize() {
+        return expressions.get().size();
+    }
+
+    /**
+     * Evaluate an expression
+     *
+     * @param path the XPath expression
+     * @param node the context node, or <code>null</code> to evaluate against an empty document
+     * @param message the message whose properties are used to resolve variables, may be <code>null</code>
+     * @param returnType the expected result type, one of the {@link javax.xml.xpath.XPathConstants}
+     * @return the result of the evaluation
+     * @throws XPathExpressionException if the expression can not be compiled or evaluated
+     */
+    public Object evaluate(String path, Node node, NormalizedMessage message, QName returnType)
+        throws XPathExpressionException {
+        CompiledXPath compiled = getExpression(path);
+        compiled.message = message;
+        try {
+            return compiled.expression.evaluate(node, returnType);
+        } finally {
+            compiled.message = null;
+        }
+    }
+
+    private CompiledXPath getExpression(String path) throws XPathExpressionException {
+        Map<String, CompiledXPath> compiledExpressions = expressions.get();
+        CompiledXPath compiled = compiledExpressions.get(path);
+        if (compiled == null) {
+            compiled = new CompiledXPath(path);
+            compiledExpressions.put(path, compiled);
+        }
+        return compiled;
+    }
+
+    private final class CompiledXPath implements XPathVariableResolver {
+
+        private final XPathExpression expression;
+        private NormalizedMessage message;
+
+        private CompiledXPath(String path) throws XPathExpressionException {
+            XPath xpath = factories.get().newXPath();
+            if (namespaceContext != null) {
+                xpath.setNamespaceContext(namespaceContext);
+            }
+            xpath.setXPathVariableResolver(this);
+            this.expression = xpath.compile(path);
+        }
+
+        public Object resolveVariable(QName name) {
+            return message != null ? message.getProperty(name.getLocalPart()) : null;
+        }
+    }
+
+}
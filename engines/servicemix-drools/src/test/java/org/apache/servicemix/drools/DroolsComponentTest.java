@@ -139,6 +139,51 @@ public class DroolsComponentTest extends TestCase {
         Thread.sleep(50);
     }
     
+    public void testRouteInOnlyWithSessionPool() throws Exception {
+        drools = new DroolsComponent();
+        DroolsEndpoint endpoint = new DroolsEndpoint(drools.getServiceUnit(),
+                                                     new QName("drools"), "endpoint");
+        endpoint.setRuleBaseResource(new ClassPathResource("router.drl"));
+        endpoint.setSessionPoolSize(2);
+        endpoint.setStateless(true);
+        drools.setEndpoints(new DroolsEndpoint[] {endpoint });
+        jbi.activateComponent(drools, "servicemix-drools");
+        
+        ReceiverComponent r1 = new ReceiverComponent(new QName("target1"), "endpoint");
+        ReceiverComponent r2 = new ReceiverComponent(new QName("target2"), "endpoint");
+        jbi.activateComponent(r1, "receiver1");
+        jbi.activateComponent(r2, "receiver2");
+        
+        jbi.start();
+        
+        InOnly me = client.createInOnlyExchange();
+        me.setService(new QName("drools"));
+        me.getInMessage().setContent(new StringSource("<test id='0' />"));
+        client.sendSync(me);
+        assertEquals(ExchangeStatus.ERROR, me.getStatus());
+        
+        for (int i = 0; i < 3; i++) {
+            me = client.createInOnlyExchange();
+            me.setService(new QName("drools"));
+            me.getInMessage().setContent(new StringSource("<test id='1' />"));
+            client.sendSync(me);
+            assertEquals(ExchangeStatus.DONE, me.getStatus());
+        }
+        
+        me = client.createInOnlyExchange();
+        me.setService(new QName("drools"));
+        me.getInMessage().setContent(new StringSource("<test id='2' />"));
+        client.sendSync(me);
+        assertEquals(ExchangeStatus.DONE, me.getStatus());
+        
+        r1.getMessageList().assertMessagesReceived(3);
+        r2.getMessageList().assertMessagesReceived(1);
+        assertEquals(5, endpoint.getExecutionCount());
+        assertEquals(5, endpoint.getRulesFiredCount());
+        
+        Thread.sleep(50);
+    }
+    
     public void testRouteInOut() throws Exception {
         drools = new DroolsComponent();
         DroolsEndpoint endpoint = new DroolsEndpoint(drools.getServiceUnit(),
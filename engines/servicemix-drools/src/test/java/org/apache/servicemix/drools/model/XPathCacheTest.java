@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.drools.model;
+
+import java.util.Collections;
+
+import javax.jbi.messaging.NormalizedMessage;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.xpath.XPathConstants;
+
+import junit.framework.TestCase;
+
+import org.apache.servicemix.drools.support.NamespaceContextImpl;
+import org.apache.servicemix.jbi.jaxp.StringSource;
+import org.apache.servicemix.jbi.messaging.NormalizedMessageImpl;
+import org.w3c.dom.Element;
+
+/**
+ * Test cases for {@link XPathCache} and its use by {@link Message}
+ */
+public class XPathCacheTest extends TestCase {
+
+    private XPathCache cache;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        NamespaceContextImpl namespaceContext = new NamespaceContextImpl();
+        namespaceContext.setNamespaces(Collections.singletonMap("t", "urn:test"));
+        cache = new XPathCache(namespaceContext);
+    }
+
+    public void testContentParsedOnce() throws Exception {
+        NormalizedMessage msg = new NormalizedMessageImpl();
+        msg.setContent(new StringSource("<test id='1'/>"));
+        Message message = new Message(msg, cache);
+        assertTrue(msg.getContent() instanceof DOMSource);
+        Element content = message.getContent();
+        assertSame(content, message.getContent());
+        assertTrue(message.xpath("/test/@id = 1"));
+        assertSame(content, message.getContent());
+
+        msg.setContent(new StringSource("<test id='2'/>"));
+        assertNotSame(content, message.getContent());
+        assertEquals("2", message.valueOf("/test/@id"));
+    }
+
+    public void testExpressionsCompiledOnce() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            NormalizedMessage msg = new NormalizedMessageImpl();
+            msg.setContent(new StringSource("<t:test xmlns:t='urn:test' id='" + i + "'/>"));
+            Message message = new Message(msg, cache);
+            assertEquals(String.valueOf(i), message.valueOf("/t:test/@id"));
+            assertEquals(i == 1, message.xpath("/t:test/@id = 1"));
+        }
+        assertEquals(2, cache.getSize());
+    }
+
+    public void testVariablesResolvedFromMessage() throws Exception {
+        NormalizedMessage msg = new NormalizedMessageImpl();
+        msg.setContent(new StringSource("<test id='1'/>"));
+        msg.setProperty("id", "1");
+        assertTrue(new Message(msg, cache).xpath("/test/@id = $id"));
+        msg.setProperty("id", "2");
+        assertFalse(new Message(msg, cache).xpath("/test/@id = $id"));
+    }
+
+    public void testMaxSize() throws Exception {
+        XPathCache small = new XPathCache(null, 2);
+        small.evaluate("1 = 1", null, null, XPathConstants.BOOLEAN);
+        small.evaluate("2 = 2", null, null, XPathConstants.BOOLEAN);
+        small.evaluate("3 = 3", null, null, XPathConstants.BOOLEAN);
+        assertEquals(2, small.getSize());
+    }
+
+}
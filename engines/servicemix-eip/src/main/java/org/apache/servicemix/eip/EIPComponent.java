@@ -18,7 +18,11 @@ package org.apache.servicemix.eip;
 
 import java.util.List;
 
+import javax.jbi.messaging.MessageExchange;
+
 import org.apache.servicemix.common.DefaultComponent;
+import org.apache.servicemix.eip.support.HashedWheelTimerManager;
+import org.apache.servicemix.timers.TimerManager;
 
 /**
  * @author gnodet
@@ -30,8 +34,55 @@ public class EIPComponent extends DefaultComponent {
 
     private EIPEndpoint[] endpoints;
 
+    private TimerManager timerManager;
+
     public EIPComponent() {
     }
+
+    /**
+     * @return the timer manager shared by the endpoints of this component
+     */
+    public synchronized TimerManager getTimerManager() {
+        if (timerManager == null) {
+            timerManager = new HashedWheelTimerManager("EIP Timer " + getComponentName());
+        }
+        return timerManager;
+    }
+
+    /**
+     * The timer manager shared by all endpoints of this component that do not
+     * have their own timer manager configured.  Resequencer and aggregator timeouts
+     * are scheduled with this timer manager.  If none is explicitely configured,
+     * a hashed wheel timer with a single thread will be used, its expired timers
+     * being run by the component executor.  The shared timer manager is started
+     * and stopped with the component, not by its endpoints.
+     *
+     * @param timerManager the timerManager to set
+     */
+    public void setTimerManager(TimerManager timerManager) {
+        this.timerManager = timerManager;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        TimerManager manager = getTimerManager();
+        if (manager instanceof HashedWheelTimerManager
+                && ((HashedWheelTimerManager) manager).getExecutor() == null) {
+            ((HashedWheelTimerManager) manager).setExecutor(getExecutor(MessageExchange.Role.CONSUMER));
+        }
+        // started before the endpoints, which may schedule timers as soon as they are started
+        manager.start();
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        try {
+            super.doStop();
+        } finally {
+            getTimerManager().stop();
+        }
+    }
     
     /**
      * @return Returns the endpoints.
@@ -75,6 +75,10 @@ public abstract class EIPEndpoint extends ProviderEndpoint {
      * The timer manager.
      */
     protected TimerManager timerManager;
+    /**
+     * Whether the timer manager is the one shared by the component, which starts and stops it.
+     */
+    private boolean sharedTimerManager;
     
     /**
      * The ExchangeTarget to use to get the WSDL
@@ -140,7 +144,7 @@ public abstract class EIPEndpoint extends ProviderEndpoint {
     }
     /**
      * The timer manager to use for this endpoint.  If none is explicitely configured,
-     * a default implementation will be provided.
+     * the timer manager shared by all endpoints of the component will be used.
      *
      * @param timerManager the timerManager to set
      * @org.apache.xbean.Property
@@ -162,13 +166,20 @@ public abstract class EIPEndpoint extends ProviderEndpoint {
             lockManager = new SimpleLockManager();
         }
         if (timerManager == null) {
-            timerManager = new TimerManagerImpl();
+            if (getServiceUnit().getComponent() instanceof EIPComponent) {
+                timerManager = ((EIPComponent) getServiceUnit().getComponent()).getTimerManager();
+                sharedTimerManager = true;
+            } else {
+                timerManager = new TimerManagerImpl();
+            }
+        }
+        if (!sharedTimerManager) {
+            timerManager.start();
         }
-        timerManager.start();
     }
     
     public void stop() throws Exception {
-        if (timerManager != null) {
+        if (timerManager != null && !sharedTimerManager) {
             timerManager.stop();
         }
         super.stop();
@@ -90,7 +90,7 @@ public class Resequencer extends ResequencerBase implements SequenceSender {
             executor = getServiceUnit().getComponent().getExecutor(MessageExchange.Role.CONSUMER);
         }
         BlockingQueue<MessageExchange> queue = new LinkedBlockingQueue<MessageExchange>();
-        reseq = new ResequencerEngine<MessageExchange>(comparator, capacity);
+        reseq = new ResequencerEngine<MessageExchange>(comparator, capacity, getTimerManager());
         reseq.setTimeout(timeout);
         reseq.setOutQueue(queue);
         reader.setQueue(queue);
@@ -264,6 +264,16 @@ public abstract class AbstractAggregator extends EIPEndpoint {
         }
     }
 
+    @Override
+    public void stop() throws Exception {
+        // the timer manager may be shared with other endpoints, so cancel our own timers
+        for (Timer timer : timers.values()) {
+            timer.cancel();
+        }
+        timers.clear();
+        super.stop();
+    }
+
     /* (non-Javadoc)
      * @see org.apache.servicemix.common.ExchangeProcessor#process(javax.jbi.messaging.MessageExchange)
      */
@@ -349,7 +359,10 @@ public abstract class AbstractAggregator extends EIPEndpoint {
                                 AbstractAggregator.this.onTimeout(processCorrelationId, correlationId, timer);
                             }
                         }, timeout);
-                        timers.put(correlationId, t);
+                        Timer old = timers.put(correlationId, t);
+                        if (old != null) {
+                            old.cancel();
+                        }
                     }
                     removeLock = false;
                 }
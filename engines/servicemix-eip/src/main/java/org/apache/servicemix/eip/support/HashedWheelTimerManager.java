@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.eip.support;
+
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.servicemix.executors.Executor;
+import org.apache.servicemix.timers.Timer;
+import org.apache.servicemix.timers.TimerListener;
+import org.apache.servicemix.timers.TimerManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A {@link TimerManager} based on a hashed timing wheel, designed to be shared by all
+ * the endpoints of a component.  Scheduling and cancelling a timer are O(1) operations
+ * which never block: new timers are handed to a single worker thread that places them
+ * in the wheel, and cancelled timers are simply discarded when their bucket is reached.
+ * </p>
+ * <p>
+ * Timers expire with a precision of one tick.  When an executor is configured, the expired
+ * listeners are run by this executor so that a slow listener doesn't delay the other timers;
+ * otherwise they are run on the worker thread and should not perform long blocking operations.
+ * The worker thread is started when the first user calls {@link #start()} and stopped when
+ * the last user calls {@link #stop()}.  Timers can't be scheduled while the manager is stopped.
+ * </p>
+ */
+public class HashedWheelTimerManager implements TimerManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimerManager.class);
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final String name;
+    private final long tickDuration;
+    private final WheelTimer[] wheel;
+    private final int mask;
+    private final Queue<WheelTimer> scheduled = new ConcurrentLinkedQueue<WheelTimer>();
+    private final AtomicInteger users = new AtomicInteger();
+
+    private volatile boolean running;
+    private Executor executor;
+    private Thread worker;
+    private long startTime;
+    private long tick;
+
+    /**
+     * Creates a timer manager with a tick of 100 milliseconds and 512 buckets.
+     *
+     * @param name the name of the worker thread
+     */
+    public HashedWheelTimerManager(String name) {
+        this(name, 100, 512);
+    }
+
+    /**
+     * @param name the name of the worker thread
+     * @param tickDuration the duration of a tick, in milliseconds
+     * @param wheelSize the number of buckets in the wheel, rounded up to a power of two
+     */
+    public HashedWheelTimerManager(String name, long tickDuration, int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0");
+        }
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("wheelSize must be greater than 0");
+        }
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.name = name;
+        this.tickDuration = tickDuration;
+        this.wheel = new WheelTimer[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return the executor running the expired listeners
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * The executor running the expired listeners.  If none is configured, the listeners
+     * are run on the worker thread.
+     *
+     * @param executor the executor to set
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public Timer schedule(TimerListener listener, Date date) {
+        if (!running) {
+            throw new IllegalStateException("Timer manager " + name + " is stopped");
+        }
+        WheelTimer timer = new WheelTimer(listener, date.getTime());
+        scheduled.add(timer);
+        // the manager may have been stopped meanwhile, and its queue cleared
+        if (!running && scheduled.remove(timer)) {
+            throw new IllegalStateException("Timer manager " + name + " is stopped");
+        }
+        return timer;
+    }
+
+    public synchronized void start() {
+        if (users.getAndIncrement() == 0) {
+            startTime = System.currentTimeMillis();
+            tick = 0;
+            worker = new Thread(new Worker(), name);
+            worker.setDaemon(true);
+            running = true;
+            worker.start();
+        }
+    }
+
+    public synchronized void stop() {
+        if (users.get() > 0 && users.decrementAndGet() == 0) {
+            running = false;
+            worker.interrupt();
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+            scheduled.clear();
+            for (int i = 0; i < wheel.length; i++) {
+                wheel[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Moves the newly scheduled timers into their bucket.  Only called by the worker thread.
+     */
+    private void transferScheduled() {
+        WheelTimer timer;
+        while ((timer = scheduled.poll()) != null) {
+            if (timer.state.get() != PENDING) {
+                continue;
+            }
+            long ticks = Math.max((timer.deadline - startTime + tickDuration - 1) / tickDuration, tick);
+            timer.remainingRounds = (ticks - tick) / wheel.length;
+            int index = (int) (ticks & mask);
+            timer.next = wheel[index];
+            wheel[index] = timer;
+        }
+    }
+
+    /**
+     * Expires the timers of the current bucket.  Only called by the worker thread.
+     */
+    private void expireTimers() {
+        int index = (int) (tick & mask);
+        WheelTimer timer = wheel[index];
+        WheelTimer previous = null;
+        while (timer != null) {
+            WheelTimer next = timer.next;
+            boolean remove = timer.state.get() != PENDING;
+            if (!remove && timer.remainingRounds <= 0) {
+                remove = true;
+                expire(timer);
+            } else if (!remove) {
+                timer.remainingRounds--;
+            }
+            if (remove) {
+                if (previous == null) {
+                    wheel[index] = next;
+                } else {
+                    previous.next = next;
+                }
+                timer.next = null;
+            } else {
+                previous = timer;
+            }
+            timer = next;
+        }
+    }
+
+    /**
+     * Notifies the listener of an expired timer, on the executor if there is one.
+     */
+    private void expire(final WheelTimer timer) {
+        if (!timer.state.compareAndSet(PENDING, EXPIRED)) {
+            return;
+        }
+        Executor exec = executor;
+        if (exec != null) {
+            try {
+                exec.execute(new Runnable() {
+                    public void run() {
+                        timer.notifyListener();
+                    }
+                });
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to hand the expired timer to the executor, notifying it on the timer thread", e);
+            }
+        }
+        timer.notifyListener();
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                long deadline = startTime + (tick + 1) * tickDuration;
+                long sleep = deadline - System.currentTimeMillis();
+                if (sleep > 0) {
+                    try {
+                        Thread.sleep(sleep);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                transferScheduled();
+                expireTimers();
+                tick++;
+            }
+        }
+    }
+
+    private static class WheelTimer implements Timer {
+
+        private final TimerListener listener;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long remainingRounds;
+        private WheelTimer next;
+
+        WheelTimer(TimerListener listener, long deadline) {
+            this.listener = listener;
+            this.deadline = deadline;
+        }
+
+        public TimerListener getTimerListener() {
+            return listener;
+        }
+
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+        void notifyListener() {
+            try {
+                listener.timerExpired(this);
+            } catch (Throwable t) {
+                LOGGER.warn("Error notifying timer listener " + listener, t);
+            }
+        }
+    }
+
+}
@@ -16,11 +16,12 @@
  */
 package org.apache.servicemix.eip.support.resequence;
 
+import org.apache.servicemix.eip.support.HashedWheelTimerManager;
+import org.apache.servicemix.timers.TimerManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Queue;
-import java.util.Timer;
 
 /**
  * Resequences elements based on a given {@link SequenceElementComparator}.
@@ -79,9 +80,14 @@ public class ResequencerEngine<E> implements TimeoutHandler {
     private Sequence<Element<E>> sequence;
     
     /**
-     * A timer for scheduling timeout notifications.
+     * A timer manager for scheduling timeout notifications.
      */
-    private Timer timer;
+    private TimerManager timerManager;
+
+    /**
+     * <code>true</code> if the timer manager has been created by this resequencer.
+     */
+    private boolean ownTimerManager;
     
     /**
      * Creates a new resequencer instance with a default timeout of 2000
@@ -101,7 +107,28 @@ public class ResequencerEngine<E> implements TimeoutHandler {
      * @param capacity the capacity of this resequencer.
      */
     public ResequencerEngine(SequenceElementComparator<E> comparator, int capacity) {
-        this.timer = new Timer("Resequencer Timer");
+        this(comparator, capacity, null);
+    }
+
+    /**
+     * Creates a new resequencer instance with a default timeout of 2000
+     * milliseconds, scheduling timeouts with the given {@link TimerManager}.
+     * The timer manager is expected to be started and stopped by its owner.
+     * If <code>null</code>, a dedicated timer manager is created.
+     * 
+     * @param comparator a sequence element comparator.
+     * @param capacity the capacity of this resequencer.
+     * @param timerManager a shared timer manager or <code>null</code>.
+     */
+    public ResequencerEngine(SequenceElementComparator<E> comparator, int capacity, TimerManager timerManager) {
+        if (timerManager == null) {
+            HashedWheelTimerManager manager = new HashedWheelTimerManager("Resequencer Timer", 10, 512);
+            manager.start();
+            this.timerManager = manager;
+            this.ownTimerManager = true;
+        } else {
+            this.timerManager = timerManager;
+        }
         this.sequence = createSequence(comparator);
         this.capacity = capacity;
         this.timeout = 2000L;
@@ -109,10 +136,20 @@ public class ResequencerEngine<E> implements TimeoutHandler {
     }
     
     /**
-     * Stops this resequencer (i.e. this resequencer's {@link Timer} instance).
+     * Stops this resequencer by cancelling pending timeouts (and stopping
+     * the timer manager if it has been created by this resequencer).
      */
-    public void stop() {
-        this.timer.cancel();
+    public synchronized void stop() {
+        for (Element<E> element : sequence) {
+            element.cancel();
+        }
+        if (ownTimerManager) {
+            try {
+                timerManager.stop();
+            } catch (Exception e) {
+                logger.warn("Error stopping timer manager", e);
+            }
+        }
     }
     
     /**
@@ -315,7 +352,7 @@ public class ResequencerEngine<E> implements TimeoutHandler {
      * @return a new timeout task.
      */
     private Timeout defineTimeout() {
-        Timeout result = new Timeout(timer, timeout);
+        Timeout result = new Timeout(timerManager, timeout);
         result.addTimeoutHandler(this);
         return result;
     }
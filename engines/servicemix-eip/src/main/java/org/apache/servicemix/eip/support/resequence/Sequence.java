@@ -16,6 +16,8 @@
  */
 package org.apache.servicemix.eip.support.resequence;
 
+import java.util.Iterator;
+import java.util.SortedSet;
 import java.util.TreeSet;
 
 /**
@@ -88,49 +90,42 @@ public class Sequence<E> extends TreeSet<E> {
     }
 
     /**
-     * Returns the next higher element in the sequence to the given element. If
-     * the given element doesn't exist or if it is the last element in the
-     * sequence <code>null</code> is returned. <strong>Please note that this
-     * method is provided for compatibility with Java 5 SE. On a Java 6 SE
-     * platform the same method implemented by the {@link TreeSet}
-     * class should be used for better performance.</strong>
+     * Returns the next higher element in the sequence to the given element or
+     * <code>null</code> if there is no such element. The lookup is done on the
+     * {@link #tailSet(Object)} view and therefore takes O(log n) time. This
+     * method is provided for compatibility with Java 5 SE and behaves like
+     * the one defined by Java 6 SE's <code>NavigableSet</code>.
      * 
      * @param e an element which is compared to elements of this sequence.
      * @return an element of this sequence or <code>null</code>.
      */
     public E higher(E e) {
-        boolean found = false;
-        for (E current : this) {
-            if (found) {
+        Iterator<E> tail = tailSet(e).iterator();
+        while (tail.hasNext()) {
+            E current = tail.next();
+            if (comparator.compare(e, current) != 0) {
                 return current;
             }
-            if (comparator.compare(e, current) == 0) {
-                found = true;
-            }
         }
         return null;
     }
 
     /**
-     * Returns the next lower element in the sequence to the given element. If
-     * the given element doesn't exist or if it is the first element in the
-     * sequence <code>null</code> is returned. <strong>Please note that this
-     * method is provided for compatibility with Java 5 SE. On a Java 6 SE
-     * platform the same method implemented by the {@link TreeSet}
-     * class should be used for better performance.</strong>
+     * Returns the next lower element in the sequence to the given element or
+     * <code>null</code> if there is no such element. The lookup is done on the
+     * {@link #headSet(Object)} view and therefore takes O(log n) time. This
+     * method is provided for compatibility with Java 5 SE and behaves like
+     * the one defined by Java 6 SE's <code>NavigableSet</code>.
      * 
      * @param e an element which is compared to elements of this sequence.
      * @return an element of this sequence or <code>null</code>.
      */
     public E lower(E e) {
-        E last = null;
-        for (E current : this) {
-            if (comparator.compare(e, current) == 0) {
-                return last;
-            }
-            last = current;
+        SortedSet<E> head = headSet(e);
+        if (head.isEmpty()) {
+            return null;
         }
-        return last;
+        return head.last();
     }
     
 }
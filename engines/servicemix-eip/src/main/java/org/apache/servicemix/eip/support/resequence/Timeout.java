@@ -16,39 +16,43 @@
  */
 package org.apache.servicemix.eip.support.resequence;
 
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+
+import org.apache.servicemix.timers.Timer;
+import org.apache.servicemix.timers.TimerListener;
+import org.apache.servicemix.timers.TimerManager;
 
 /**
- * A timer task that notifies handlers about scheduled timeouts.
+ * A timer listener that notifies handlers about scheduled timeouts.
  * 
- * @see Timer
- * @see TimerTask
+ * @see TimerManager
  * 
  * @author Martin Krasser
  */
-public class Timeout extends TimerTask {
+public class Timeout implements TimerListener {
     
     private List<TimeoutHandler> timeoutHandlers;
     
-    private Timer timer;
+    private TimerManager timerManager;
+    
+    private volatile Timer timer;
     
     private long timeout;
     
     /**
-     * Creates a new timeout task using the given {@link Timer} instance a timeout value. The
+     * Creates a new timeout task using the given {@link TimerManager} instance a timeout value. The
      * task is not scheduled immediately. It will be scheduled by calling this
      * task's {@link #schedule()} method.
      * 
-     * @param timer
+     * @param timerManager
      * @param timeout
      */
-    public Timeout(Timer timer, long timeout) {
+    public Timeout(TimerManager timerManager, long timeout) {
         this.timeoutHandlers = new LinkedList<TimeoutHandler>();
         this.timeout = timeout;
-        this.timer = timer;
+        this.timerManager = timerManager;
     }
 
     /**
@@ -91,14 +95,27 @@ public class Timeout extends TimerTask {
      * Schedules this timeout task.
      */
     public void schedule() {
-        timer.schedule(this, timeout);
+        try {
+            timer = timerManager.schedule(this, new Date(System.currentTimeMillis() + timeout));
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to schedule timeout", e);
+        }
+    }
+
+    /**
+     * Cancels this timeout task if it has been scheduled.
+     * 
+     * @return <code>true</code> if the timeout has been prevented from expiring.
+     */
+    public boolean cancel() {
+        Timer t = timer;
+        return t != null && t.cancel();
     }
 
     /**
      * Notifies all timeout handlers about the scheduled timeout.
      */
-    @Override
-    public void run() {
+    public void timerExpired(Timer t) {
         for (TimeoutHandler observer : timeoutHandlers) {
             observer.timeout(this);
         }
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.eip.support;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.servicemix.executors.Executor;
+import org.apache.servicemix.timers.Timer;
+import org.apache.servicemix.timers.TimerListener;
+
+public class HashedWheelTimerManagerTest extends TestCase {
+
+    private HashedWheelTimerManager timerManager;
+
+    protected void setUp() throws Exception {
+        // use a small wheel so that timers span several rounds
+        timerManager = new HashedWheelTimerManager("Test Timer", 10, 8);
+        timerManager.start();
+    }
+
+    protected void tearDown() throws Exception {
+        timerManager.stop();
+    }
+
+    public void testExpiry() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.currentTimeMillis();
+        timerManager.schedule(new LatchListener(latch), new Date(start + 200));
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+
+    public void testPastDate() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        timerManager.schedule(new LatchListener(latch), new Date(System.currentTimeMillis() - 1000));
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    public void testCancel() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        Timer timer = timerManager.schedule(new LatchListener(latch), new Date(System.currentTimeMillis() + 100));
+        assertTrue(timer.cancel());
+        assertFalse(timer.cancel());
+        assertFalse(latch.await(300, TimeUnit.MILLISECONDS));
+    }
+
+    public void testSharedByReferenceCount() throws Exception {
+        timerManager.start();
+        timerManager.stop();
+        // still started once
+        CountDownLatch latch = new CountDownLatch(1);
+        timerManager.schedule(new LatchListener(latch), new Date(System.currentTimeMillis() + 50));
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    public void testSlowListenerOnExecutor() throws Exception {
+        ExecutorService service = Executors.newCachedThreadPool();
+        timerManager.setExecutor(new ServiceExecutor(service));
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            long now = System.currentTimeMillis();
+            timerManager.schedule(new TimerListener() {
+                public void timerExpired(Timer timer) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, new Date(now));
+            // a blocked listener doesn't delay the next timers
+            CountDownLatch latch = new CountDownLatch(1);
+            timerManager.schedule(new LatchListener(latch), new Date(now + 50));
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+            release.countDown();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    public void testScheduleAfterStop() throws Exception {
+        timerManager.stop();
+        try {
+            timerManager.schedule(new LatchListener(new CountDownLatch(1)), new Date());
+            fail("A stopped timer manager must not accept timers");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            timerManager.start();
+        }
+    }
+
+    private static class LatchListener implements TimerListener {
+        private final CountDownLatch latch;
+
+        public LatchListener(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        public void timerExpired(Timer timer) {
+            latch.countDown();
+        }
+    }
+
+    private static class ServiceExecutor implements Executor {
+        private final ExecutorService service;
+
+        public ServiceExecutor(ExecutorService service) {
+            this.service = service;
+        }
+
+        public void execute(Runnable command) {
+            service.execute(command);
+        }
+
+        public void shutdown() {
+            service.shutdown();
+        }
+
+        public int capacity() {
+            return 0;
+        }
+
+        public int size() {
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.eip.support.resequence;
+
+import java.util.Random;
+
+/**
+ * Compares the predecessor / successor lookup cost of {@link Sequence} with the
+ * linear walk it used to perform, for 1k, 10k and 100k buffered elements.
+ * This is not run as part of the build: launch it with the test classpath.
+ */
+public final class SequenceBenchmark {
+
+    private static final int[] SIZES = {1000, 10000, 100000};
+
+    private static final int LOOKUPS = 2000;
+
+    private static final int ROUNDS = 5;
+
+    private SequenceBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        for (int size : SIZES) {
+            Sequence<TestObject> linear = fill(new LinearSequence<TestObject>(new TestComparator()), size);
+            Sequence<TestObject> sorted = fill(new Sequence<TestObject>(new TestComparator()), size);
+            TestObject[] probes = probes(size);
+            // warm up
+            run(linear, probes);
+            run(sorted, probes);
+            long linearTime = 0;
+            long sortedTime = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                linearTime += run(linear, probes);
+                sortedTime += run(sorted, probes);
+            }
+            System.out.println(String.format("%7d elements: linear %10.1f ns/op, sorted %8.1f ns/op",
+                    size, (double) linearTime / (ROUNDS * LOOKUPS), (double) sortedTime / (ROUNDS * LOOKUPS)));
+        }
+    }
+
+    private static Sequence<TestObject> fill(Sequence<TestObject> sequence, int size) {
+        // leave gaps so that both successful and failed lookups are measured
+        for (int i = 0; i < size; i++) {
+            sequence.add(new TestObject(i * 2 + (i % 3 == 0 ? 1 : 0)));
+        }
+        return sequence;
+    }
+
+    private static TestObject[] probes(int size) {
+        Random random = new Random(size);
+        TestObject[] probes = new TestObject[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            int index = random.nextInt(size);
+            probes[i] = new TestObject(index * 2 + (index % 3 == 0 ? 1 : 0));
+        }
+        return probes;
+    }
+
+    private static long run(Sequence<TestObject> sequence, TestObject[] probes) {
+        int found = 0;
+        long start = System.nanoTime();
+        for (TestObject probe : probes) {
+            if (sequence.predecessor(probe) != null) {
+                found++;
+            }
+            if (sequence.successor(probe) != null) {
+                found++;
+            }
+        }
+        long time = System.nanoTime() - start;
+        if (found < 0) {
+            throw new IllegalStateException();
+        }
+        return time;
+    }
+
+    /**
+     * The previous {@link Sequence} implementation, walking the whole set on each lookup.
+     */
+    private static class LinearSequence<E> extends Sequence<E> {
+
+        private static final long serialVersionUID = 1L;
+
+        public LinearSequence(SequenceElementComparator<E> comparator) {
+            super(comparator);
+        }
+
+        public E higher(E e) {
+            boolean found = false;
+            for (E current : this) {
+                if (found) {
+                    return current;
+                }
+                if (comparator().compare(e, current) == 0) {
+                    found = true;
+                }
+            }
+            return null;
+        }
+
+        public E lower(E e) {
+            E last = null;
+            for (E current : this) {
+                if (comparator().compare(e, current) == 0) {
+                    return last;
+                }
+                last = current;
+            }
+            return last;
+        }
+    }
+
+}
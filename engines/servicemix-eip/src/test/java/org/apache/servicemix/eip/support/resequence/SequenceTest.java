@@ -51,4 +51,22 @@ public class SequenceTest extends TestCase {
         assertEquals(null, set.successor(e3));
     }
 
+    public void testHigher() {
+        assertEquals(e2, set.higher(e1));
+        assertEquals(e3, set.higher(e2));
+        assertEquals(null, set.higher(e3));
+        assertEquals(e2, set.higher(new TestObject(3)));
+        assertEquals(e3, set.higher(new TestObject(5)));
+        assertEquals(e1, set.higher(new TestObject(1)));
+    }
+
+    public void testLower() {
+        assertEquals(null, set.lower(e1));
+        assertEquals(e1, set.lower(e2));
+        assertEquals(e2, set.lower(e3));
+        assertEquals(e2, set.lower(new TestObject(5)));
+        assertEquals(e3, set.lower(new TestObject(9)));
+        assertEquals(null, set.lower(new TestObject(1)));
+    }
+
 }
@@ -16,7 +16,12 @@
  */
 package org.apache.servicemix.validation;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import javax.jbi.JBIException;
 import javax.jbi.messaging.Fault;
@@ -28,13 +33,16 @@ import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 
 import org.apache.servicemix.common.endpoints.ProviderEndpoint;
+import org.apache.servicemix.common.util.ContentBuffer;
 import org.apache.servicemix.common.util.MessageUtil;
+import org.apache.servicemix.common.util.RereadableSource;
 import org.apache.servicemix.jbi.exception.FaultException;
 import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 import org.apache.servicemix.jbi.jaxp.StringSource;
@@ -43,6 +51,7 @@ import org.apache.servicemix.validation.handler.MessageAwareErrorHandler;
 import org.apache.servicemix.validation.handler.MessageAwareErrorHandlerFactory;
 import org.springframework.core.io.Resource;
 
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
@@ -72,6 +81,8 @@ public class ValidationEndpoint extends ProviderEndpoint implements
 
     public static final String TAG_FATAL_END = "</fatalError>";
 
+    public static final int DEFAULT_VALIDATOR_POOL_SIZE = 16;
+
     private String handlingErrorMethod = FAULT_JBI;
 
     private Schema schema;
@@ -88,6 +99,12 @@ public class ValidationEndpoint extends ProviderEndpoint implements
 
     private SourceTransformer sourceTransformer = new SourceTransformer();
 
+    private boolean streaming;
+
+    private int validatorPoolSize = DEFAULT_VALIDATOR_POOL_SIZE;
+
+    private volatile BlockingQueue<Validator> validators;
+
     /*
      * (non-Javadoc)
      * 
@@ -124,6 +141,9 @@ public class ValidationEndpoint extends ProviderEndpoint implements
         } catch (SAXException e) {
             throw new JBIException("Failed to load schema: " + e, e);
         }
+        if (validatorPoolSize > 0) {
+            validators = new ArrayBlockingQueue<Validator>(validatorPoolSize);
+        }
     }
 
     /*
@@ -134,6 +154,7 @@ public class ValidationEndpoint extends ProviderEndpoint implements
     @Override
     public void stop() throws Exception {
         super.stop();
+        validators = null;
     }
 
     /*
@@ -182,34 +203,33 @@ public class ValidationEndpoint extends ProviderEndpoint implements
      */
     public void startValidation(MessageExchange exchange, NormalizedMessage in,
             NormalizedMessage out, Fault fault) throws Exception {
-        Validator validator = schema.newValidator();
-        
-        if (noNamespaceSchemaResource != null) {
-            logger.info("Enabling validation for noNamespace-XML documents.");
-            validator.setFeature("http://xml.org/sax/features/validation", true);
-            validator.setFeature("http://apache.org/xml/features/validation/schema", true);
-            validator.setProperty("http://apache.org/xml/properties/schema/external-noNamespaceSchemaLocation", noNamespaceSchemaResource.getURL().toExternalForm());
-        }
-        
+        Validator validator = borrowValidator();
+
         // create a new errorHandler and set it on the validator
         MessageAwareErrorHandler errorHandler = errorHandlerFactory
                 .createMessageAwareErrorHandler();
         validator.setErrorHandler(errorHandler);
         DOMResult result = new DOMResult();
+        Source original = in.getContent();
+        Source validated = null;
 
         fault.setContent(null);
 
         try {
-            // Only DOMSource and SAXSource are allowed for validating
-            // See
-            // http://java.sun.com/j2se/1.5.0/docs/api/javax/xml/validation/
-            // Validator.html#validate(javax.xml.transform.Source,%20javax.xml.transform.Result)
-            // As we expect a DOMResult as output, we must ensure that the input
-            // is a DOMSource
-            DOMSource src = sourceTransformer.toDOMSource(in.getContent());
-
-            // call the validation method
-            doValidation(validator, src, result);
+            if (streaming) {
+                validated = doStreamingValidation(validator, original);
+            } else {
+                // Only DOMSource and SAXSource are allowed for validating
+                // See
+                // http://java.sun.com/j2se/1.5.0/docs/api/javax/xml/validation/
+                // Validator.html#validate(javax.xml.transform.Source,%20javax.xml.transform.Result)
+                // As we expect a DOMResult as output, we must ensure that the input
+                // is a DOMSource
+                DOMSource src = sourceTransformer.toDOMSource(in.getContent());
+
+                // call the validation method
+                doValidation(validator, src, result);
+            }
 
             // check if there were errors while validating
             if (errorHandler.hasErrors()) {
@@ -273,6 +293,10 @@ public class ValidationEndpoint extends ProviderEndpoint implements
                 } else {
                     MessageUtil.transfer(fault, out);
                 }
+            } else if (streaming) {
+                // The content is passed through as it has been received
+                out.setContent(validated);
+                validated = null;
             } else {
                 // Retrieve the ouput of the validation
                 // as it may have been changed by the validator
@@ -287,6 +311,123 @@ public class ValidationEndpoint extends ProviderEndpoint implements
             throw new MessagingException(e);
         } catch (TransformerException e) {
             throw new MessagingException(e);
+        } finally {
+            returnValidator(validator);
+            // the content buffered for the validation has not been passed on
+            if (validated != original && validated instanceof RereadableSource) {
+                ((RereadableSource) validated).getBuffer().release();
+            }
+        }
+    }
+
+    /**
+     * Validates the given content in a single pass, without building a DOM.
+     * DOM and re-readable sources are validated as is, streams are copied into
+     * a buffer while they are validated, and any other source is buffered first.
+     *
+     * @param validator the validator to use
+     * @param content the content to validate
+     * @return a source holding the validated content, to be sent in place of the original one
+     * @throws SAXException
+     * @throws IOException
+     * @throws MessagingException
+     */
+    protected Source doStreamingValidation(Validator validator, Source content)
+        throws SAXException, IOException, MessagingException {
+        if (content instanceof DOMSource) {
+            validator.validate(content);
+            return content;
+        }
+        if (content instanceof StreamSource && !MessageUtil.isRereadable(content)
+                && ((StreamSource) content).getInputStream() != null) {
+            ContentBuffer buffer = new ContentBuffer();
+            TeeInputStream tee = new TeeInputStream(((StreamSource) content).getInputStream(), buffer);
+            boolean validated = false;
+            try {
+                InputSource input = new InputSource(tee);
+                input.setSystemId(content.getSystemId());
+                validator.validate(new SAXSource(input));
+                // copy what the parser did not read, if it stopped early
+                tee.drain();
+                validated = true;
+            } finally {
+                tee.release();
+                if (!validated) {
+                    buffer.release();
+                }
+            }
+            return new RereadableSource(buffer);
+        }
+        if (MessageUtil.isRereadable(content)) {
+            validator.validate(new SAXSource(SAXSource.sourceToInputSource(content)));
+            return content;
+        }
+        RereadableSource buffered = MessageUtil.createRereadableSource(content);
+        boolean validated = false;
+        try {
+            validator.validate(new SAXSource(SAXSource.sourceToInputSource(buffered)));
+            validated = true;
+        } finally {
+            if (!validated) {
+                buffered.getBuffer().release();
+            }
+        }
+        return buffered;
+    }
+
+    /**
+     * Takes a validator from the pool, or creates a new one if the pool is empty.
+     *
+     * @return a configured validator
+     * @throws Exception
+     */
+    protected Validator borrowValidator() throws Exception {
+        BlockingQueue<Validator> pool = validators;
+        Validator validator = pool != null ? pool.poll() : null;
+        if (validator == null) {
+            validator = schema.newValidator();
+            if (noNamespaceSchemaResource != null) {
+                logger.info("Enabling validation for noNamespace-XML documents.");
+            }
+            configureValidator(validator);
+        }
+        return validator;
+    }
+
+    /**
+     * Gives back a validator to the pool.  The validator is reset first, so that no
+     * state of the last validation leaks into the next one.  It is discarded if the
+     * pool is full or if it can not be reset.
+     *
+     * @param validator the validator to release
+     */
+    protected void returnValidator(Validator validator) {
+        validator.setErrorHandler(null);
+        BlockingQueue<Validator> pool = validators;
+        if (pool != null) {
+            try {
+                // reset() also restores the features set at creation time
+                validator.reset();
+                configureValidator(validator);
+            } catch (Exception e) {
+                logger.debug("Discarding validator which could not be reset", e);
+                return;
+            }
+            pool.offer(validator);
+        }
+    }
+
+    /**
+     * Applies the endpoint configuration to a new or reset validator.
+     *
+     * @param validator the validator to configure
+     * @throws Exception
+     */
+    protected void configureValidator(Validator validator) throws Exception {
+        if (noNamespaceSchemaResource != null) {
+            validator.setFeature("http://xml.org/sax/features/validation", true);
+            validator.setFeature("http://apache.org/xml/features/validation/schema", true);
+            validator.setProperty("http://apache.org/xml/properties/schema/external-noNamespaceSchemaLocation", noNamespaceSchemaResource.getURL().toExternalForm());
         }
     }
 
@@ -442,4 +583,105 @@ public class ValidationEndpoint extends ProviderEndpoint implements
             MessageAwareErrorHandlerFactory errorHandlerFactory) {
         this.errorHandlerFactory = errorHandlerFactory;
     }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Validate the content in a single pass without building a DOM.  The content is then
+     * sent as it has been received, instead of the DOM produced by the validator.
+     * Defaults to <code>false</code>.
+     *
+     * @param streaming
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public int getValidatorPoolSize() {
+        return validatorPoolSize;
+    }
+
+    /**
+     * Set the maximum number of idle validators kept for reuse.  Set it to <code>0</code>
+     * to create a new validator for each exchange.  Defaults to <code>16</code>.
+     *
+     * @param validatorPoolSize
+     */
+    public void setValidatorPoolSize(int validatorPoolSize) {
+        this.validatorPoolSize = validatorPoolSize;
+    }
+
+    /**
+     * An InputStream copying the data read from the underlying stream into a buffer.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream copy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int nb = super.read(b, off, len);
+            if (nb > 0) {
+                copy.write(b, off, nb);
+            }
+            return nb;
+        }
+
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            return Math.max(read(buffer, 0, buffer.length), 0);
+        }
+
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * The parser closes its input once done, but the remaining data still
+         * has to be copied: the real stream is only closed by {@link #release()}.
+         */
+        public void close() {
+        }
+
+        /**
+         * Copies the remaining data, then completes the copy.
+         */
+        void drain() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) >= 0) {
+                // copy the data
+            }
+            copy.close();
+        }
+
+        /**
+         * Closes both streams, without hiding the outcome of the validation.
+         */
+        void release() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            try {
+                copy.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
 }
@@ -16,14 +16,17 @@
  */
 package org.apache.servicemix.validation;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 
 import javax.activation.FileDataSource;
 import javax.jbi.messaging.ExchangeStatus;
 import javax.jbi.messaging.InOut;
 import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
 
 import org.apache.servicemix.client.DefaultServiceMixClient;
 import org.apache.servicemix.jbi.jaxp.SourceTransformer;
@@ -159,6 +162,71 @@ public class ValidationComponentTest extends SpringTestSupport {
         client.done(me);
     }
     
+    public void testStreamingValidationOK() throws Exception {
+        DefaultServiceMixClient client = new DefaultServiceMixClient(jbi);
+        String content = getFileContent(VALID_FILE);
+
+        // several exchanges to reuse the pooled validators
+        for (int i = 0; i < 3; i++) {
+            InOut me = client.createInOutExchange();
+            me.setService(new QName("urn:test", "service4"));
+            me.getInMessage().setContent(new StreamSource(new ByteArrayInputStream(content.getBytes())));
+            client.sendSync(me);
+            if (me.getStatus() == ExchangeStatus.ERROR) {
+                if (me.getError() != null) {
+                    throw me.getError();
+                } else {
+                    fail("Received ERROR status");
+                }
+            } else if (me.getFault() != null) {
+                fail("Received fault: " + new SourceTransformer().toString(me.getFault().getContent()));
+            }
+            assertEquals(new SourceTransformer().toString(new StringSource(content)),
+                         new SourceTransformer().toString(me.getOutMessage().getContent()));
+            client.done(me);
+        }
+    }
+
+    public void testStreamingValidationNotOK() throws Exception {
+        DefaultServiceMixClient client = new DefaultServiceMixClient(jbi);
+        InOut me = client.createInOutExchange();
+        me.setService(new QName("urn:test", "service4"));
+
+        String content = getFileContent(INVALID_FILE);
+
+        me.getInMessage().setContent(new StreamSource(new ByteArrayInputStream(content.getBytes())));
+        client.sendSync(me);
+
+        assertNotNull("Expected a fault", me.getFault());
+        client.done(me);
+    }
+
+    public void testStreamingValidationClosedStream() throws Exception {
+        DefaultServiceMixClient client = new DefaultServiceMixClient(jbi);
+        String content = getFileContent(VALID_FILE);
+
+        // the parser closes its input, which must not break the copy of the content
+        InOut me = client.createInOutExchange();
+        me.setService(new QName("urn:test", "service4"));
+        me.getInMessage().setContent(new StreamSource(new ClosingInputStream(content.getBytes())));
+        client.sendSync(me);
+        if (me.getStatus() == ExchangeStatus.ERROR) {
+            throw me.getError() != null ? me.getError() : new Exception("Received ERROR status");
+        }
+        assertNull(me.getFault());
+        assertEquals(new SourceTransformer().toString(new StringSource(content)),
+                     new SourceTransformer().toString(me.getOutMessage().getContent()));
+        client.done(me);
+
+        // and the validation error must not be hidden by the closed stream
+        me = client.createInOutExchange();
+        me.setService(new QName("urn:test", "service4"));
+        me.getInMessage().setContent(new StreamSource(new ClosingInputStream(getFileContent(INVALID_FILE).getBytes())));
+        client.sendSync(me);
+        assertNotNull("Expected a fault", me.getFault());
+        client.done(me);
+    }
+
     /**
      * reads the file contents to string
      * 
@@ -185,5 +253,37 @@ public class ValidationComponentTest extends SpringTestSupport {
         context.refresh();
         return context;
     }
-    
+
+    /**
+     * an input stream which can not be read once closed, like most real streams
+     */
+    private static class ClosingInputStream extends FilterInputStream {
+
+        private boolean closed;
+
+        ClosingInputStream(byte[] buf) {
+            super(new ByteArrayInputStream(buf));
+        }
+
+        public int read() throws IOException {
+            checkOpen();
+            return super.read();
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkOpen();
+            return super.read(b, off, len);
+        }
+
+        public void close() {
+            closed = true;
+        }
+
+        private void checkOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+    }
+
 }
@@ -16,6 +16,8 @@
  */
 package org.apache.servicemix.wsn;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -126,13 +128,24 @@ public abstract class AbstractNotificationBroker extends AbstractEndpoint implem
     }
 
     protected void handleNotify(Notify notify) {
+        // consecutive messages from the same publisher are handed to it in a single batch
+        AbstractPublisher current = null;
+        List<NotificationMessageHolderType> batch = new ArrayList<NotificationMessageHolderType>();
         for (NotificationMessageHolderType messageHolder : notify.getNotificationMessage()) {
             W3CEndpointReference producerReference = messageHolder.getProducerReference();
             AbstractPublisher publisher = getPublisher(producerReference);
+            if (publisher != current && !batch.isEmpty()) {
+                current.notify(batch);
+                batch = new ArrayList<NotificationMessageHolderType>();
+            }
+            current = publisher;
             if (publisher != null) {
-                publisher.notify(messageHolder);
+                batch.add(messageHolder);
             }
         }
+        if (!batch.isEmpty()) {
+            current.notify(batch);
+        }
     }
 
     protected AbstractPublisher getPublisher(W3CEndpointReference producerReference) {
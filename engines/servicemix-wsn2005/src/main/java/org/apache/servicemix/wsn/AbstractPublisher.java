@@ -76,6 +76,18 @@ public abstract class AbstractPublisher extends AbstractEndpoint implements Publ
 
     public abstract void notify(NotificationMessageHolderType messageHolder);
 
+    /**
+     * Publish several notifications at once, so that implementations can share the
+     * resources needed to send them.
+     *
+     * @param messageHolders the notifications to publish, in order
+     */
+    public void notify(List<NotificationMessageHolderType> messageHolders) {
+        for (NotificationMessageHolderType messageHolder : messageHolders) {
+            notify(messageHolder);
+        }
+    }
+
     protected void destroy() throws ResourceNotDestroyedFault {
         try {
             unregister();
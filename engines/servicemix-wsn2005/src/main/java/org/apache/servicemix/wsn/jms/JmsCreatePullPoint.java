@@ -18,11 +18,13 @@ package org.apache.servicemix.wsn.jms;
 
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
+import javax.xml.bind.JAXBContext;
 import javax.xml.namespace.QName;
 
 import org.apache.servicemix.wsn.AbstractCreatePullPoint;
 import org.apache.servicemix.wsn.AbstractPullPoint;
 import org.oasis_open.docs.wsn.b_2.CreatePullPoint;
+import org.oasis_open.docs.wsn.b_2.Notify;
 
 public class JmsCreatePullPoint extends AbstractCreatePullPoint {
 
@@ -30,6 +32,8 @@ public class JmsCreatePullPoint extends AbstractCreatePullPoint {
 
     private Connection connection;
 
+    private JmsProducerPool producers;
+
     public JmsCreatePullPoint(String name) {
         super(name);
     }
@@ -39,10 +43,14 @@ public class JmsCreatePullPoint extends AbstractCreatePullPoint {
             connection = connectionFactory.createConnection();
             connection.start();
         }
+        producers = new JmsProducerPool(connection, JAXBContext.newInstance(Notify.class));
         super.init();
     }
 
     public void destroy() throws Exception {
+        if (producers != null) {
+            producers.close();
+        }
         if (connection != null) {
             connection.close();
         }
@@ -63,6 +71,7 @@ public class JmsCreatePullPoint extends AbstractCreatePullPoint {
         JmsPullPoint pullPoint = new JmsPullPoint(name);
         pullPoint.setManager(getManager());
         pullPoint.setConnection(connection);
+        pullPoint.setProducers(producers);
         return pullPoint;
     }
 
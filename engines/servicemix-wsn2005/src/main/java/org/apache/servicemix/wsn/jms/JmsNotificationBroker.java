@@ -21,12 +21,14 @@ import java.net.URI;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.xml.namespace.QName;
+import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.datatype.DatatypeFactory;
 
 import org.apache.servicemix.wsn.AbstractNotificationBroker;
 import org.apache.servicemix.wsn.AbstractPublisher;
 import org.apache.servicemix.wsn.AbstractSubscription;
+import org.oasis_open.docs.wsn.b_2.Notify;
 import org.oasis_open.docs.wsrf.rp_2.GetResourcePropertyResponse;
 import org.oasis_open.docs.wsrf.rp_2.InvalidResourcePropertyQNameFaultType;
 import org.oasis_open.docs.wsrf.rw_2.ResourceUnavailableFault;
@@ -39,6 +41,10 @@ public abstract class JmsNotificationBroker extends AbstractNotificationBroker {
 
     private Connection connection;
 
+    private JmsNotificationDispatcher dispatcher;
+
+    private JmsProducerPool producers;
+
     public JmsNotificationBroker(String name) {
         super(name);
     }
@@ -48,10 +54,18 @@ public abstract class JmsNotificationBroker extends AbstractNotificationBroker {
             connection = connectionFactory.createConnection();
             connection.start();
         }
+        dispatcher = new JmsNotificationDispatcher(connection);
+        producers = new JmsProducerPool(connection, JAXBContext.newInstance(Notify.class));
         super.init();
     }
 
     public void destroy() throws Exception {
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+        if (producers != null) {
+            producers.close();
+        }
         if (connection != null) {
             connection.close();
         }
@@ -63,6 +77,7 @@ public abstract class JmsNotificationBroker extends AbstractNotificationBroker {
         JmsPublisher publisher = createJmsPublisher(name);
         publisher.setManager(getManager());
         publisher.setConnection(connection);
+        publisher.setProducers(producers);
         return publisher;
     }
 
@@ -71,6 +86,7 @@ public abstract class JmsNotificationBroker extends AbstractNotificationBroker {
         JmsSubscription subscription = createJmsSubscription(name);
         subscription.setManager(getManager());
         subscription.setConnection(connection);
+        subscription.setDispatcher(dispatcher);
         return subscription;
     }
 
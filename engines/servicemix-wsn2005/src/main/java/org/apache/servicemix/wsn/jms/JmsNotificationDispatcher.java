@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.wsn.jms;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import javax.jms.Topic;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import org.apache.servicemix.wsn.AbstractSubscription;
+
+/**
+ * Dispatches the notifications published on JMS topics to the {@link JmsSubscription}s of a broker.
+ * <p>
+ * A single JMS consumer is created for each topic having running subscriptions, so that each
+ * notification is parsed only once, whatever the number of subscribers.  Subscriptions are grouped
+ * by content filter: each filter is compiled once, when its first subscription is registered, and
+ * evaluated once per notification, its result being passed to
+ * {@link JmsSubscription#doFilter(Element, boolean)}.  A DOM can't safely be read by several threads,
+ * and the subscribers hand the notification to consumers running on other threads: each subscriber
+ * is therefore delivered its own copy of the parsed notification.
+ */
+public class JmsNotificationDispatcher {
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+
+    static {
+        DOCUMENT_BUILDER_FACTORY.setNamespaceAware(true);
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(JmsNotificationDispatcher.class);
+
+    private final Connection connection;
+
+    private final Map<String, TopicListener> listeners = new HashMap<String, TopicListener>();
+
+    public JmsNotificationDispatcher(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Start delivering the notifications published on the topic of the given subscription to it
+     */
+    public synchronized void register(JmsSubscription subscription) throws JMSException {
+        Topic topic = subscription.getJmsTopic();
+        TopicListener listener = listeners.get(topic.getTopicName());
+        if (listener == null) {
+            listener = new TopicListener(topic);
+            listener.start();
+            listeners.put(topic.getTopicName(), listener);
+        }
+        listener.add(subscription);
+    }
+
+    /**
+     * Stop delivering notifications to the given subscription
+     */
+    public synchronized void unregister(JmsSubscription subscription) throws JMSException {
+        String name = subscription.getJmsTopic().getTopicName();
+        TopicListener listener = listeners.get(name);
+        if (listener != null && listener.remove(subscription) && listener.isEmpty()) {
+            listeners.remove(name);
+            listener.stop();
+        }
+    }
+
+    /**
+     * Stop all the JMS consumers
+     */
+    public synchronized void close() {
+        for (TopicListener listener : listeners.values()) {
+            try {
+                listener.stop();
+            } catch (JMSException e) {
+                logger.debug("Error closing session", e);
+            }
+        }
+        listeners.clear();
+    }
+
+    /**
+     * @return the number of topics currently consumed
+     */
+    public synchronized int getTopicCount() {
+        return listeners.size();
+    }
+
+    static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        synchronized (DOCUMENT_BUILDER_FACTORY) {
+            return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+        }
+    }
+
+    /**
+     * Parse the notification carried by the given JMS message
+     *
+     * @return the root element of the notification
+     */
+    static Element parse(Message jmsMessage, DocumentBuilder builder) throws Exception {
+        TextMessage text = (TextMessage) jmsMessage;
+        return builder.parse(new InputSource(new StringReader(text.getText()))).getDocumentElement();
+    }
+
+    /**
+     * Get the payload of the first notification message, which content filters are evaluated on
+     * and which is delivered to subscribers asking for raw notifications
+     */
+    static Element getMessageContent(Element root) {
+        Element holder = (Element) root.getElementsByTagNameNS(AbstractSubscription.WSN_URI,
+                "NotificationMessage").item(0);
+        Element message = (Element) holder.getElementsByTagNameNS(AbstractSubscription.WSN_URI, "Message").item(0);
+        for (Node child = message.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                return (Element) child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Receives the notifications published on a single topic
+     */
+    private final class TopicListener implements MessageListener {
+
+        private final Topic topic;
+        private final Map<String, FilterGroup> groups = new ConcurrentHashMap<String, FilterGroup>();
+        private Session session;
+        private DocumentBuilder builder;
+
+        private TopicListener(Topic topic) {
+            this.topic = topic;
+        }
+
+        private void start() throws JMSException {
+            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(topic);
+            consumer.setMessageListener(this);
+        }
+
+        private void stop() throws JMSException {
+            session.close();
+        }
+
+        private void add(JmsSubscription subscription) {
+            String filter = subscription.getContentFilterExpression();
+            String key = filter != null ? filter : "";
+            FilterGroup group = groups.get(key);
+            if (group == null) {
+                group = new FilterGroup(filter);
+                groups.put(key, group);
+            }
+            group.subscriptions.add(subscription);
+        }
+
+        private boolean remove(JmsSubscription subscription) {
+            String filter = subscription.getContentFilterExpression();
+            String key = filter != null ? filter : "";
+            FilterGroup group = groups.get(key);
+            if (group == null || !group.subscriptions.remove(subscription)) {
+                return false;
+            }
+            if (group.subscriptions.isEmpty()) {
+                groups.remove(key);
+            }
+            return true;
+        }
+
+        private boolean isEmpty() {
+            return groups.isEmpty();
+        }
+
+        public void onMessage(Message jmsMessage) {
+            Element root;
+            Element content;
+            try {
+                if (builder == null) {
+                    builder = newDocumentBuilder();
+                }
+                root = parse(jmsMessage, builder);
+                content = getMessageContent(root);
+            } catch (Exception e) {
+                logger.warn("Error parsing notification", e);
+                return;
+            }
+            List<JmsSubscription> matching = new ArrayList<JmsSubscription>();
+            for (FilterGroup group : groups.values()) {
+                boolean matched = group.matches(content);
+                for (JmsSubscription subscription : group.subscriptions) {
+                    if (subscription.doFilter(content, matched)) {
+                        matching.add(subscription);
+                    }
+                }
+            }
+            // the last subscription gets the parsed notification, once no more copy is made from it
+            int last = matching.size() - 1;
+            for (int i = 0; i < last; i++) {
+                Element copy = ((Document) root.getOwnerDocument().cloneNode(true)).getDocumentElement();
+                matching.get(i).dispatch(copy, getMessageContent(copy));
+            }
+            if (last >= 0) {
+                matching.get(last).dispatch(root, content);
+            }
+        }
+    }
+
+    /**
+     * The subscriptions sharing the same content filter
+     */
+    private final class FilterGroup {
+
+        private final String filter;
+        private final XPathExpression expression;
+        private final List<JmsSubscription> subscriptions = new CopyOnWriteArrayList<JmsSubscription>();
+
+        private FilterGroup(String filter) {
+            this.filter = filter;
+            XPathExpression exp = null;
+            if (filter != null) {
+                try {
+                    exp = XPathFactory.newInstance().newXPath().compile(filter);
+                } catch (XPathExpressionException e) {
+                    logger.warn("Could not compile content filter " + filter
+                            + ", no notification will be delivered to its subscriptions", e);
+                }
+            }
+            this.expression = exp;
+        }
+
+        // only called from the session thread of the topic listener
+        private boolean matches(Element content) {
+            if (filter == null) {
+                return true;
+            }
+            if (expression == null) {
+                return false;
+            }
+            try {
+                Boolean ret = (Boolean) expression.evaluate(content, XPathConstants.BOOLEAN);
+                return ret.booleanValue();
+            } catch (XPathExpressionException e) {
+                logger.warn("Could not filter notification", e);
+            }
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.wsn.jms;
+
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of JMS sessions used to send notifications.  Each session keeps its producers,
+ * one per destination, and its own JAXB marshaller, so that sending a notification does
+ * not create any of them, and concurrent senders do not have to wait for each other.
+ * <p>
+ * A single pool is shared by all the publishers of a {@link JmsNotificationBroker}, and by
+ * all the pull points of a {@link JmsCreatePullPoint}.
+ */
+public class JmsProducerPool {
+
+    public static final int DEFAULT_MAX_IDLE = 8;
+
+    public static final int MAX_PRODUCERS = 64;
+
+    private final Logger logger = LoggerFactory.getLogger(JmsProducerPool.class);
+
+    private final Connection connection;
+
+    private final JAXBContext jaxbContext;
+
+    private final BlockingQueue<Sender> idle;
+
+    private volatile boolean closed;
+
+    public JmsProducerPool(Connection connection, JAXBContext jaxbContext) {
+        this(connection, jaxbContext, DEFAULT_MAX_IDLE);
+    }
+
+    public JmsProducerPool(Connection connection, JAXBContext jaxbContext, int maxIdle) {
+        this.connection = connection;
+        this.jaxbContext = jaxbContext;
+        this.idle = new ArrayBlockingQueue<Sender>(maxIdle);
+    }
+
+    /**
+     * Get a sender for the exclusive use of the calling thread, which must give it back with
+     * {@link #release(Sender)}, or with {@link #invalidate(Sender)} if it failed.
+     */
+    public Sender borrow() throws JMSException, JAXBException {
+        Sender sender = idle.poll();
+        if (sender == null) {
+            sender = new Sender(connection.createSession(false, Session.AUTO_ACKNOWLEDGE),
+                                jaxbContext.createMarshaller());
+        }
+        return sender;
+    }
+
+    public void release(Sender sender) {
+        if (closed || !idle.offer(sender)) {
+            sender.close();
+        }
+    }
+
+    public void invalidate(Sender sender) {
+        sender.close();
+    }
+
+    public void close() {
+        closed = true;
+        for (Sender sender = idle.poll(); sender != null; sender = idle.poll()) {
+            sender.close();
+        }
+    }
+
+    /**
+     * A session with its producers and marshaller
+     */
+    public final class Sender {
+
+        private final Session session;
+
+        private final Marshaller marshaller;
+
+        private final Map<Destination, MessageProducer> producers;
+
+        @SuppressWarnings("serial")
+        private Sender(Session session, Marshaller marshaller) {
+            this.session = session;
+            this.marshaller = marshaller;
+            this.producers = new LinkedHashMap<Destination, MessageProducer>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Destination, MessageProducer> eldest) {
+                    if (size() > MAX_PRODUCERS) {
+                        closeProducer(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        /**
+         * Marshal the given object and send it as a text message to the destination
+         */
+        public void send(Destination destination, Object jaxbElement) throws JMSException, JAXBException {
+            StringWriter writer = new StringWriter();
+            marshaller.marshal(jaxbElement, writer);
+            MessageProducer producer = producers.get(destination);
+            if (producer == null) {
+                producer = session.createProducer(destination);
+                producers.put(destination, producer);
+            }
+            producer.send(session.createTextMessage(writer.toString()));
+        }
+
+        private void closeProducer(MessageProducer producer) {
+            try {
+                producer.close();
+            } catch (JMSException e) {
+                logger.debug("Error closing producer", e);
+            }
+        }
+
+        private void close() {
+            try {
+                session.close();
+            } catch (JMSException e) {
+                logger.debug("Error closing session", e);
+            }
+        }
+    }
+
+}
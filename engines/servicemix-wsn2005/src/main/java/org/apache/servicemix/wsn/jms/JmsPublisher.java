@@ -16,13 +16,11 @@
  */
 package org.apache.servicemix.wsn.jms;
 
-import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
 
 import javax.jms.Connection;
 import javax.jms.JMSException;
-import javax.jms.Message;
-import javax.jms.MessageProducer;
-import javax.jms.Session;
 import javax.jms.Topic;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -62,6 +60,10 @@ public abstract class JmsPublisher extends AbstractPublisher implements Consumer
 
     private Object subscription;
 
+    private JmsProducerPool producers;
+
+    private boolean ownProducers;
+
     public JmsPublisher(String name) {
         super(name);
         topicConverter = new JmsTopicExpressionConverter();
@@ -80,31 +82,67 @@ public abstract class JmsPublisher extends AbstractPublisher implements Consumer
         this.connection = connection;
     }
 
+    /**
+     * Get the pool of sessions used to send the notifications.  If none has been set, a pool
+     * dedicated to this publisher is created on its connection.
+     */
+    protected synchronized JmsProducerPool getProducers() {
+        if (producers == null) {
+            producers = new JmsProducerPool(connection, jaxbContext);
+            ownProducers = true;
+        }
+        return producers;
+    }
+
+    public synchronized void setProducers(JmsProducerPool producers) {
+        this.producers = producers;
+        this.ownProducers = false;
+    }
+
     @Override
     public void notify(NotificationMessageHolderType messageHolder) {
-        Session session = null;
+        notify(Collections.singletonList(messageHolder));
+    }
+
+    /**
+     * Publish the notifications using a single pooled session, each of them being sent
+     * in its own JMS message to the topic it has been published on.
+     */
+    @Override
+    public void notify(List<NotificationMessageHolderType> messageHolders) {
+        JmsProducerPool pool = getProducers();
+        JmsProducerPool.Sender sender = null;
+        boolean completed = false;
         try {
-            Topic topic = topicConverter.toActiveMQTopic(messageHolder.getTopic());
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            MessageProducer producer = session.createProducer(topic);
-            Notify notify = new Notify();
-            notify.getNotificationMessage().add(messageHolder);
-            StringWriter writer = new StringWriter();
-            jaxbContext.createMarshaller().marshal(notify, writer);
-            Message message = session.createTextMessage(writer.toString());
-            producer.send(message);
-        } catch (JMSException e) {
-            logger.warn("Error dispatching message", e);
-        } catch (JAXBException e) {
-            logger.warn("Error dispatching message", e);
-        } catch (InvalidTopicException e) {
-            logger.warn("Error dispatching message", e);
-        } finally {
-            if (session != null) {
+            for (NotificationMessageHolderType messageHolder : messageHolders) {
                 try {
-                    session.close();
+                    Topic topic = topicConverter.toActiveMQTopic(messageHolder.getTopic());
+                    Notify notify = new Notify();
+                    notify.getNotificationMessage().add(messageHolder);
+                    if (sender == null) {
+                        sender = pool.borrow();
+                    }
+                    sender.send(topic, notify);
                 } catch (JMSException e) {
-                    logger.debug("Error closing session", e);
+                    logger.warn("Error dispatching message", e);
+                    if (sender != null) {
+                        pool.invalidate(sender);
+                        sender = null;
+                    }
+                } catch (JAXBException e) {
+                    logger.warn("Error dispatching message", e);
+                } catch (InvalidTopicException e) {
+                    logger.warn("Error dispatching message", e);
+                }
+            }
+            completed = true;
+        } finally {
+            if (sender != null) {
+                // the session is in an unknown state if anything else went wrong
+                if (completed) {
+                    pool.release(sender);
+                } else {
+                    pool.invalidate(sender);
                 }
             }
         }
@@ -139,6 +177,11 @@ public abstract class JmsPublisher extends AbstractPublisher implements Consumer
 
     protected void destroy() throws ResourceNotDestroyedFault {
         try {
+            synchronized (this) {
+                if (producers != null && ownProducers) {
+                    producers.close();
+                }
+            }
             if (advisory != null) {
                 advisory.stop();
             }
@@ -17,7 +17,6 @@
 package org.apache.servicemix.wsn.jms;
 
 import java.io.StringReader;
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,17 +24,18 @@ import javax.jms.Connection;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
-import javax.jms.MessageProducer;
 import javax.jms.Queue;
 import javax.jms.Session;
 import javax.jms.TextMessage;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
 
 import org.apache.servicemix.wsn.AbstractPullPoint;
 import org.oasis_open.docs.wsn.b_2.NotificationMessageHolderType;
 import org.oasis_open.docs.wsn.b_2.Notify;
 import org.oasis_open.docs.wsn.b_2.UnableToGetMessagesFaultType;
+import org.oasis_open.docs.wsn.bw_2.UnableToDestroyPullPointFault;
 import org.oasis_open.docs.wsn.bw_2.UnableToGetMessagesFault;
 import org.oasis_open.docs.wsrf.rw_2.ResourceUnknownFault;
 import org.slf4j.Logger;
@@ -51,12 +51,16 @@ public class JmsPullPoint extends AbstractPullPoint {
 
     private Session session;
 
-    private Queue queue;
-
-    private MessageProducer producer;
+    private volatile Queue queue;
 
     private MessageConsumer consumer;
 
+    private Unmarshaller unmarshaller;
+
+    private JmsProducerPool producers;
+
+    private boolean ownProducers;
+
     public JmsPullPoint(String name) {
         super(name);
         try {
@@ -66,38 +70,66 @@ public class JmsPullPoint extends AbstractPullPoint {
         }
     }
 
-    protected void initSession() throws JMSException {
+    /**
+     * Create the session used to retrieve the stored messages
+     */
+    protected synchronized void initSession() throws JMSException {
         if (session == null) {
             session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
             queue = session.createQueue(getName());
-            producer = session.createProducer(queue);
             consumer = session.createConsumer(queue);
         }
     }
 
+    /**
+     * Get the pool of sessions used to send the notifications.  If none has been set, a pool
+     * dedicated to this pull point is created on its connection.
+     */
+    protected synchronized JmsProducerPool getProducers() {
+        if (producers == null) {
+            producers = new JmsProducerPool(connection, jaxbContext);
+            ownProducers = true;
+        }
+        return producers;
+    }
+
+    public synchronized void setProducers(JmsProducerPool producers) {
+        this.producers = producers;
+        this.ownProducers = false;
+    }
+
+    /**
+     * Store the message using a pooled session, so that concurrent notifications are not
+     * serialized, nor blocked while messages are being retrieved.
+     */
     @Override
-    protected synchronized void store(NotificationMessageHolderType messageHolder) {
+    protected void store(NotificationMessageHolderType messageHolder) {
+        JmsProducerPool pool = getProducers();
+        JmsProducerPool.Sender sender = null;
+        boolean reusable = false;
         try {
-            initSession();
+            if (queue == null) {
+                initSession();
+            }
             Notify notify = new Notify();
             notify.getNotificationMessage().add(messageHolder);
-            StringWriter writer = new StringWriter();
-            jaxbContext.createMarshaller().marshal(notify, writer);
-            Message message = session.createTextMessage(writer.toString());
-            producer.send(message);
+            sender = pool.borrow();
+            sender.send(queue, notify);
+            reusable = true;
         } catch (JMSException e) {
             logger.warn("Error storing message", e);
-            if (session != null) {
-                try {
-                    session.close();
-                } catch (JMSException inner) {
-                    logger.debug("Error closing session", inner);
-                } finally {
-                    session = null;
-                }
-            }
         } catch (JAXBException e) {
             logger.warn("Error storing message", e);
+            // the message could not be marshalled, but the session is still usable
+            reusable = true;
+        } finally {
+            if (sender != null) {
+                if (reusable) {
+                    pool.release(sender);
+                } else {
+                    pool.invalidate(sender);
+                }
+            }
         }
     }
 
@@ -109,6 +141,9 @@ public class JmsPullPoint extends AbstractPullPoint {
                 max = 256;
             }
             initSession();
+            if (unmarshaller == null) {
+                unmarshaller = jaxbContext.createUnmarshaller();
+            }
             List<NotificationMessageHolderType> messages = new ArrayList<NotificationMessageHolderType>();
             for (int i = 0; i < max; i++) {
                 Message msg = consumer.receiveNoWait();
@@ -117,7 +152,7 @@ public class JmsPullPoint extends AbstractPullPoint {
                 }
                 TextMessage txtMsg = (TextMessage) msg;
                 StringReader reader = new StringReader(txtMsg.getText());
-                Notify notify = (Notify) jaxbContext.createUnmarshaller().unmarshal(reader);
+                Notify notify = (Notify) unmarshaller.unmarshal(reader);
                 messages.addAll(notify.getNotificationMessage());
             }
             return messages;
@@ -141,6 +176,28 @@ public class JmsPullPoint extends AbstractPullPoint {
         }
     }
 
+    @Override
+    protected void destroy() throws UnableToDestroyPullPointFault {
+        try {
+            super.destroy();
+        } finally {
+            synchronized (this) {
+                if (producers != null && ownProducers) {
+                    producers.close();
+                }
+                if (session != null) {
+                    try {
+                        session.close();
+                    } catch (JMSException e) {
+                        logger.debug("Error closing session", e);
+                    } finally {
+                        session = null;
+                    }
+                }
+            }
+        }
+    }
+
     public Connection getConnection() {
         return connection;
     }
@@ -16,19 +16,12 @@
  */
 package org.apache.servicemix.wsn.jms;
 
-import java.io.StringReader;
-
 import javax.jms.Connection;
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
-import javax.jms.Session;
-import javax.jms.TextMessage;
 import javax.jms.Topic;
 import javax.xml.datatype.XMLGregorianCalendar;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
@@ -36,9 +29,7 @@ import javax.xml.xpath.XPathFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.xml.sax.InputSource;
 
 import org.apache.servicemix.wsn.AbstractSubscription;
 import org.oasis_open.docs.wsn.b_2.InvalidTopicExpressionFaultType;
@@ -69,12 +60,16 @@ public abstract class JmsSubscription extends AbstractSubscription implements Me
 
     private Connection connection;
 
-    private Session session;
+    private JmsNotificationDispatcher dispatcher;
+
+    private boolean running;
 
     private JmsTopicExpressionConverter topicConverter;
 
     private Topic jmsTopic;
 
+    private XPathExpression filter;
+
     public JmsSubscription(String name) {
         super(name);
         topicConverter = new JmsTopicExpressionConverter();
@@ -82,9 +77,8 @@ public abstract class JmsSubscription extends AbstractSubscription implements Me
 
     protected void start() throws SubscribeCreationFailedFault {
         try {
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            MessageConsumer consumer = session.createConsumer(jmsTopic);
-            consumer.setMessageListener(this);
+            getDispatcher().register(this);
+            running = true;
         } catch (JMSException e) {
             SubscribeCreationFailedFaultType fault = new SubscribeCreationFailedFaultType();
             throw new SubscribeCreationFailedFault("Error starting subscription", fault, e);
@@ -108,31 +102,30 @@ public abstract class JmsSubscription extends AbstractSubscription implements Me
 
     @Override
     protected void pause() throws PauseFailedFault {
-        if (session == null) {
+        if (!running) {
             PauseFailedFaultType fault = new PauseFailedFaultType();
             throw new PauseFailedFault("Subscription is already paused", fault);
         } else {
             try {
-                session.close();
+                getDispatcher().unregister(this);
             } catch (JMSException e) {
                 PauseFailedFaultType fault = new PauseFailedFaultType();
                 throw new PauseFailedFault("Error pausing subscription", fault, e);
             } finally {
-                session = null;
+                running = false;
             }
         }
     }
 
     @Override
     protected void resume() throws ResumeFailedFault {
-        if (session != null) {
+        if (running) {
             ResumeFailedFaultType fault = new ResumeFailedFaultType();
             throw new ResumeFailedFault("Subscription is already running", fault);
         } else {
             try {
-                session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-                MessageConsumer consumer = session.createConsumer(jmsTopic);
-                consumer.setMessageListener(this);
+                getDispatcher().register(this);
+                running = true;
             } catch (JMSException e) {
                 ResumeFailedFaultType fault = new ResumeFailedFaultType();
                 throw new ResumeFailedFault("Error resuming subscription", fault, e);
@@ -149,14 +142,14 @@ public abstract class JmsSubscription extends AbstractSubscription implements Me
     @Override
     protected void unsubscribe() throws UnableToDestroySubscriptionFault {
         super.unsubscribe();
-        if (session != null) {
+        if (running) {
             try {
-                session.close();
+                getDispatcher().unregister(this);
             } catch (JMSException e) {
                 UnableToDestroySubscriptionFaultType fault = new UnableToDestroySubscriptionFaultType();
                 throw new UnableToDestroySubscriptionFault("Unable to unsubscribe", fault, e);
             } finally {
-                session = null;
+                running = false;
             }
         }
     }
@@ -169,45 +162,75 @@ public abstract class JmsSubscription extends AbstractSubscription implements Me
         this.connection = connection;
     }
 
-    public void onMessage(Message jmsMessage) {
+    /**
+     * Get the dispatcher delivering the notifications to this subscription.  If none has
+     * been set, a dispatcher dedicated to this subscription is created on its connection.
+     */
+    public JmsNotificationDispatcher getDispatcher() {
+        if (dispatcher == null) {
+            dispatcher = new JmsNotificationDispatcher(connection);
+        }
+        return dispatcher;
+    }
+
+    public void setDispatcher(JmsNotificationDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    Topic getJmsTopic() {
+        return jmsTopic;
+    }
+
+    String getContentFilterExpression() {
+        return contentFilter != null ? contentFilter.getContent().get(0).toString() : null;
+    }
+
+    /**
+     * Deliver a notification which has been parsed and has matched the content filter
+     * of this subscription.  The notification is not shared with other subscriptions.
+     */
+    void dispatch(Element root, Element content) {
         try {
-            TextMessage text = (TextMessage) jmsMessage;
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            Document doc = factory.newDocumentBuilder().parse(new InputSource(new StringReader(text.getText())));
-            Element root = doc.getDocumentElement();
-            Element holder = (Element) root.getElementsByTagNameNS(WSN_URI, "NotificationMessage").item(0);
-            Element message = (Element) holder.getElementsByTagNameNS(WSN_URI, "Message").item(0);
-            Element content = null;
-            for (int i = 0; i < message.getChildNodes().getLength(); i++) {
-                if (message.getChildNodes().item(i) instanceof Element) {
-                    content = (Element) message.getChildNodes().item(i);
-                    break;
-                }
+            if (useRaw) {
+                doNotify(content);
+            } else {
+                doNotify(root);
             }
-            boolean match = doFilter(content);
-            if (match) {
-                if (useRaw) {
-                    doNotify(content);
-                } else {
-                    doNotify(root);
-                }
+        } catch (Exception e) {
+            logger.warn("Error notifying consumer", e);
+        }
+    }
+
+    /**
+     * Handle a notification received outside of the {@link JmsNotificationDispatcher}
+     */
+    public void onMessage(Message jmsMessage) {
+        try {
+            Element root = JmsNotificationDispatcher.parse(jmsMessage, JmsNotificationDispatcher.newDocumentBuilder());
+            Element content = JmsNotificationDispatcher.getMessageContent(root);
+            if (doFilter(content)) {
+                dispatch(root, content);
             }
         } catch (Exception e) {
             logger.warn("Error notifying consumer", e);
         }
     }
 
-    protected boolean doFilter(Element content) {
+    /**
+     * Evaluate the content filter of this subscription on a notification received outside of
+     * the {@link JmsNotificationDispatcher}.  Subclasses changing the filtering should also
+     * override {@link #doFilter(Element, boolean)}.
+     */
+    protected synchronized boolean doFilter(Element content) {
         if (contentFilter != null) {
             if (!contentFilter.getDialect().equals(XPATH1_URI)) {
                 throw new IllegalStateException("Unsupported dialect: " + contentFilter.getDialect());
             }
             try {
-                XPathFactory xpfactory = XPathFactory.newInstance();
-                XPath xpath = xpfactory.newXPath();
-                XPathExpression exp = xpath.compile(contentFilter.getContent().get(0).toString());
-                Boolean ret = (Boolean) exp.evaluate(content, XPathConstants.BOOLEAN);
+                if (filter == null) {
+                    filter = XPathFactory.newInstance().newXPath().compile(getContentFilterExpression());
+                }
+                Boolean ret = (Boolean) filter.evaluate(content, XPathConstants.BOOLEAN);
                 return ret.booleanValue();
             } catch (XPathExpressionException e) {
                 logger.warn("Could not filter notification", e);
@@ -217,6 +240,23 @@ public abstract class JmsSubscription extends AbstractSubscription implements Me
         return true;
     }
 
+    /**
+     * Decide if a notification received through the {@link JmsNotificationDispatcher} is delivered
+     * to this subscription.  The dispatcher evaluates the content filter once for all the subscriptions
+     * sharing it, and this method returns its result by default.
+     *
+     * @param content the notification payload, which is shared with the other subscriptions and must not be modified
+     * @param matched whether the notification matched the content filter of this subscription
+     */
+    protected boolean doFilter(Element content, boolean matched) {
+        return matched;
+    }
+
+    /**
+     * Send a notification to the consumer of this subscription.
+     *
+     * @param content the notification, owned by this subscription
+     */
     protected abstract void doNotify(Element content);
 
 }
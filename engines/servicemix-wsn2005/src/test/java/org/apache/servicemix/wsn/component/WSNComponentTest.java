@@ -21,6 +21,9 @@ import java.io.StringReader;
 import java.net.URI;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.jbi.JBIException;
 import javax.jbi.messaging.NormalizedMessage;
@@ -51,6 +54,7 @@ import org.apache.servicemix.tck.mock.MockMessageExchange;
 import org.apache.servicemix.wsn.client.AbstractWSAClient;
 import org.apache.servicemix.wsn.client.CreatePullPoint;
 import org.apache.servicemix.wsn.client.NotificationBroker;
+import org.apache.servicemix.wsn.client.Publisher;
 import org.apache.servicemix.wsn.client.PullPoint;
 import org.apache.servicemix.wsn.client.Subscription;
 import org.apache.servicemix.wsn.spring.PublisherComponent;
@@ -60,6 +64,7 @@ import org.apache.servicemix.client.ServiceMixClient;
 import org.apache.servicemix.client.DefaultServiceMixClient;
 import org.oasis_open.docs.wsn.b_2.NotificationMessageHolderType;
 import org.oasis_open.docs.wsn.b_2.Notify;
+import org.oasis_open.docs.wsn.b_2.TopicExpressionType;
 import org.oasis_open.docs.wsrf.rp_2.ObjectFactory;
 
 public class WSNComponentTest extends TestCase {
@@ -289,6 +294,94 @@ public class WSNComponentTest extends TestCase {
         assertEquals(0, pullPoint2.getMessages(0).size());
     }
 
+    public void testFanOutWithSharedFilter() throws Exception {
+        PullPoint pullPoint1 = wsnCreatePullPoint.createPullPoint();
+        PullPoint pullPoint2 = wsnCreatePullPoint.createPullPoint();
+        PullPoint pullPoint3 = wsnCreatePullPoint.createPullPoint();
+        wsnBroker.subscribe(pullPoint1.getEndpoint(), "myTopic", "@type = 'a'");
+        wsnBroker.subscribe(pullPoint2.getEndpoint(), "myTopic", "@type = 'a'");
+        wsnBroker.subscribe(pullPoint3.getEndpoint(), "myTopic", null);
+
+        wsnBroker.notify("myTopic", parse("<msg type='a'/>"));
+        wsnBroker.notify("myTopic", parse("<msg type='b'/>"));
+        // Wait for notification
+        Thread.sleep(2000);
+
+        assertEquals(1, pullPoint1.getMessages(0).size());
+        assertEquals(1, pullPoint2.getMessages(0).size());
+        assertEquals(2, pullPoint3.getMessages(0).size());
+
+        // Wait for acks to be processed
+        Thread.sleep(5000);
+    }
+
+    public void testNotifyWithMixedPublishers() throws Exception {
+        ReceiverComponent receiver = new ReceiverComponent();
+        jbi.activateComponent(receiver, "receiver");
+        Publisher publisher = wsnBroker.registerPublisher(
+                createEPR(ReceiverComponent.SERVICE, ReceiverComponent.ENDPOINT), "myTopic", false);
+
+        PullPoint pullPoint = wsnCreatePullPoint.createPullPoint();
+        wsnBroker.subscribe(pullPoint.getEndpoint(), "myTopic", null);
+
+        // the messages of the registered publisher are sent in a batch between anonymous ones
+        Notify notify = new Notify();
+        notify.getNotificationMessage().add(createHolder("<msg id='1'/>", null));
+        notify.getNotificationMessage().add(createHolder("<msg id='2'/>", publisher.getEndpoint()));
+        notify.getNotificationMessage().add(createHolder("<msg id='3'/>", publisher.getEndpoint()));
+        notify.getNotificationMessage().add(createHolder("<msg id='4'/>", null));
+        wsnComponent.getNotificationBroker().notify(notify);
+        // Wait for notification
+        Thread.sleep(2000);
+
+        List<NotificationMessageHolderType> msgs = pullPoint.getMessages(0);
+        assertEquals(4, msgs.size());
+        for (int i = 0; i < msgs.size(); i++) {
+            Element msg = (Element) msgs.get(i).getMessage().getAny();
+            assertEquals(Integer.toString(i + 1), msg.getAttribute("id"));
+        }
+
+        // Wait for acks to be processed
+        Thread.sleep(5000);
+    }
+
+    public void testConcurrentStoreAndGetMessages() throws Exception {
+        final PullPoint pullPoint = wsnCreatePullPoint.createPullPoint();
+        wsnBroker.subscribe(pullPoint.getEndpoint(), "myTopic", null);
+
+        final int threads = 4;
+        final int count = 25;
+        final List<Exception> errors = new CopyOnWriteArrayList<Exception>();
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < count; i++) {
+                            wsnBroker.notify("myTopic", parse("<msg/>"));
+                        }
+                    } catch (Exception e) {
+                        errors.add(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        // retrieve the messages while they are being stored
+        int received = 0;
+        long timeout = System.currentTimeMillis() + 20000;
+        while (received < threads * count && System.currentTimeMillis() < timeout) {
+            received += pullPoint.getMessages(0).size();
+            Thread.sleep(50);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(threads * count, received);
+        assertEquals(0, pullPoint.getMessages(0).size());
+    }
+
     public void testDemandBasedPublisher() throws Exception {
         PublisherComponent publisherComponent = new PublisherComponent();
         publisherComponent.setService(new QName("http://servicemix.org/example", "publisher"));
@@ -388,6 +481,17 @@ public class WSNComponentTest extends TestCase {
         return doc.getDocumentElement();
     }
 
+    protected NotificationMessageHolderType createHolder(String txt, W3CEndpointReference producer) throws Exception {
+        NotificationMessageHolderType holder = new NotificationMessageHolderType();
+        TopicExpressionType topic = new TopicExpressionType();
+        topic.getContent().add("myTopic");
+        holder.setTopic(topic);
+        holder.setProducerReference(producer);
+        holder.setMessage(new NotificationMessageHolderType.Message());
+        holder.getMessage().setAny(parse(txt));
+        return holder;
+    }
+
     protected W3CEndpointReference createEPR(QName service, String endpoint) {
         return AbstractWSAClient.createWSA(service.getNamespaceURI() + "/" + service.getLocalPart() + "/" + endpoint);
     }
@@ -17,10 +17,12 @@
 package org.apache.servicemix.common;
 
 import java.lang.reflect.Method;
-import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.jbi.JBIException;
 import javax.jbi.component.ComponentContext;
@@ -41,6 +43,7 @@ import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 import javax.xml.namespace.QName;
 
+import org.apache.servicemix.common.management.ComponentStatistics;
 import org.apache.servicemix.common.management.MBeanServerHelper;
 import org.apache.servicemix.executors.Executor;
 import org.apache.servicemix.executors.ExecutorFactory;
@@ -61,6 +64,16 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
 
     public static final String INITIALIZED = "Initialized";
 
+    /**
+     * Time (in milliseconds) a poller waits for additional exchanges once it has been woken up
+     */
+    private static final long DRAIN_TIMEOUT = 1L;
+
+    /**
+     * Time (in milliseconds) to wait for the polling threads to be started
+     */
+    private static final long POLLERS_START_TIMEOUT = 30000L;
+
     protected transient Logger logger;
 
     protected ServiceMixComponent component;
@@ -79,9 +92,17 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
 
     protected DeliveryChannel channel;
 
-    protected Thread poller;
+    protected Set<Thread> pollers;
+
+    protected CountDownLatch pollersStopped;
+
+    protected int pollerCount = 1;
+
+    protected int pollerBatchSize = 1;
+
+    protected ComponentStatistics statistics;
 
-    protected AtomicBoolean polling;
+    protected ObjectName statisticsMBeanName;
 
     protected TransactionManager transactionManager;
 
@@ -93,13 +114,15 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
 
     protected Container container;
 
-    protected Map<String, Set<String>> knownExchanges;
+    protected ConcurrentMap<String, InFlightExchanges> knownExchanges;
 
     public AsyncBaseLifeCycle() {
         this.running = new AtomicBoolean(false);
-        this.polling = new AtomicBoolean(false);
+        this.pollers = new CopyOnWriteArraySet<Thread>();
+        this.statistics = new ComponentStatistics();
         this.correlationId = new ThreadLocal<String>();
-        this.knownExchanges = new ConcurrentHashMap<String, Set<String>>();
+        this.knownExchanges = new ConcurrentHashMap<String, InFlightExchanges>();
+        this.statistics.setInFlightExchanges(knownExchanges);
     }
 
     public AsyncBaseLifeCycle(ServiceMixComponent component) {
@@ -137,6 +160,10 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
         return this.context.getMBeanNames().createCustomComponentMBeanName("Configuration");
     }
 
+    protected ObjectName createStatisticsMBeanName() throws Exception {
+        return this.context.getMBeanNames().createCustomComponentMBeanName("Statistics");
+    }
+
     public QName getEPRServiceName() {
         return null;
     }
@@ -222,6 +249,13 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
         if (server != null && mbean != null) {
             MBeanServerHelper.register(server, createExtensionMBeanName(), mbean);
         }
+        if (server != null) {
+            try {
+                this.statisticsMBeanName = MBeanServerHelper.register(server, createStatisticsMBeanName(), statistics);
+            } catch (Exception e) {
+                logger.warn("Unable to register component statistics MBean", e);
+            }
+        }
 
         // Obtain or create the work manager
         // When using the WorkManager from ServiceMix,
@@ -273,6 +307,10 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
                 server.unregisterMBean(this.mbeanName);
             }
         }
+        if (this.statisticsMBeanName != null) {
+            MBeanServerHelper.unregister(this.context.getMBeanServer(), this.statisticsMBeanName);
+            this.statisticsMBeanName = null;
+        }
         // Destroy excutor
         consumerExecutor.shutdown();
         providerExecutor.shutdown();
@@ -318,43 +356,53 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
         }
 
         if (doPoll) {
-            synchronized (this.polling) {
-                consumerExecutor.execute(new Runnable() {
+            int count = Math.max(1, pollerCount);
+            statistics.setPollerCount(count);
+            statistics.setPollerBatchSize(Math.max(1, pollerBatchSize));
+            final CountDownLatch started = new CountDownLatch(count);
+            pollersStopped = new CountDownLatch(count);
+            final CountDownLatch stopped = pollersStopped;
+            // pollers never end while the component is running, so they get their own threads
+            // instead of holding the threads (or queue slots) of the consumer executor
+            String name = "component." + (context != null ? context.getComponentName() : "unknown") + ".poller.";
+            for (int i = 0; i < count; i++) {
+                Thread poller = new Thread(new Runnable() {
                     public void run() {
-                        poller = Thread.currentThread();
-                        pollDeliveryChannel();
+                        pollers.add(Thread.currentThread());
+                        started.countDown();
+                        try {
+                            pollDeliveryChannel();
+                        } finally {
+                            pollers.remove(Thread.currentThread());
+                            stopped.countDown();
+                        }
                     }
-                });
-                polling.wait();
+                }, name + i);
+                poller.setDaemon(true);
+                poller.start();
+            }
+            if (!started.await(POLLERS_START_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                logger.warn("Only {} of {} polling threads started within {} ms",
+                            new Object[] {count - started.getCount(), count, POLLERS_START_TIMEOUT});
             }
         }
     }
 
     protected void pollDeliveryChannel() {
-        synchronized (polling) {
-            polling.set(true);
-            polling.notify();
-        }
-        Executor executor = null;
+        int batchSize = Math.max(1, pollerBatchSize);
         while (running.get()) {
             try {
-                final MessageExchange exchange = channel.accept(1000L);
-                if (exchange != null) {
-                    executor = exchange.getRole().equals(Role.CONSUMER) ? consumerExecutor : providerExecutor;
-                    final Transaction tx = (Transaction) exchange
-                            .getProperty(MessageExchange.JTA_TRANSACTION_PROPERTY_NAME);
-                    if (tx != null && container.handleTransactions()) {
-                        if (transactionManager == null) {
-                            throw new IllegalStateException(
-                                    "Exchange is enlisted in a transaction, but no transaction manager is available");
-                        }
-                        transactionManager.suspend();
+                MessageExchange exchange = channel.accept(1000L);
+                int drained = 0;
+                while (exchange != null) {
+                    dispatch(exchange);
+                    if (++drained >= batchSize || !running.get()) {
+                        break;
                     }
-                    executor.execute(new Runnable() {
-                        public void run() {
-                            processExchangeInTx(exchange, tx);
-                        }
-                    });
+                    exchange = channel.accept(DRAIN_TIMEOUT);
+                }
+                if (drained > 0) {
+                    statistics.batchDrained(drained);
                 }
             } catch (Throwable t) {
                 if (running.get() == false) {
@@ -365,9 +413,31 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
                 }
             }
         }
-        synchronized (polling) {
-            polling.set(false);
-            polling.notify();
+    }
+
+    /**
+     * Hand an exchange accepted from the delivery channel to the executor matching its role.
+     * The transaction associated with the exchange, if any, is suspended from the polling
+     * thread and will be resumed by the executor thread.
+     */
+    protected void dispatch(MessageExchange exchange) throws Exception {
+        Role role = exchange.getRole();
+        Executor executor = Role.CONSUMER.equals(role) ? consumerExecutor : providerExecutor;
+        Transaction tx = (Transaction) exchange.getProperty(MessageExchange.JTA_TRANSACTION_PROPERTY_NAME);
+        if (tx != null && container.handleTransactions()) {
+            if (transactionManager == null) {
+                throw new IllegalStateException(
+                        "Exchange is enlisted in a transaction, but no transaction manager is available");
+            }
+            transactionManager.suspend();
+        }
+        statistics.exchangeQueued(role);
+        try {
+            executor.execute(new ExchangeTask(exchange, tx));
+        } catch (RuntimeException e) {
+            // the task will never run and decrement the queue depth
+            statistics.exchangeRejected(role);
+            throw e;
         }
     }
 
@@ -394,16 +464,13 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
     }
 
     protected void doStop() throws Exception {
-        // Interrupt the polling thread and await termination
-        try {
-            synchronized (polling) {
-                if (polling.get()) {
-                    poller.interrupt();
-                    polling.wait();
-                }
-            }
-        } finally {
-            poller = null;
+        // Interrupt the polling threads and await termination
+        for (Thread poller : pollers) {
+            poller.interrupt();
+        }
+        if (pollersStopped != null) {
+            pollersStopped.await();
+            pollersStopped = null;
         }
     }
 
@@ -438,6 +505,44 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
         }
     }
 
+    public int getPollerCount() {
+        return pollerCount;
+    }
+
+    /**
+     * The number of threads polling the delivery channel for incoming exchanges.
+     * Polling threads are dedicated threads, not taken from the consumer executor.
+     * Defaults to <code>1</code>.
+     * Changes will only be taken into account when the component is restarted.
+     *
+     * @param pollerCount
+     */
+    public void setPollerCount(int pollerCount) {
+        this.pollerCount = pollerCount;
+    }
+
+    public int getPollerBatchSize() {
+        return pollerBatchSize;
+    }
+
+    /**
+     * The maximum number of exchanges a polling thread will hand to the executors
+     * each time it wakes up, before checking the component state again.
+     * Defaults to <code>1</code>.
+     *
+     * @param pollerBatchSize
+     */
+    public void setPollerBatchSize(int pollerBatchSize) {
+        this.pollerBatchSize = pollerBatchSize;
+    }
+
+    /**
+     * @return the runtime statistics of this component
+     */
+    public ComponentStatistics getStatistics() {
+        return statistics;
+    }
+
     public ExecutorFactory getExecutorFactory() {
         return executorFactory;
     }
@@ -565,8 +670,7 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
         if (exchange.getRole() == Role.PROVIDER) {
             boolean dynamic = false;
             ServiceEndpoint endpoint = exchange.getEndpoint();
-            String key = EndpointSupport.getKey(exchange.getEndpoint());
-            Endpoint ep = this.component.getRegistry().getEndpoint(key);
+            Endpoint ep = this.component.getRegistry().getEndpoint(endpoint);
             if (ep == null) {
                 if (endpoint.getServiceName().equals(getEPRServiceName())) {
                     ep = getResolvedEPR(exchange.getEndpoint());
@@ -575,7 +679,7 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
                     dynamic = true;
                 }
                 if (ep == null) {
-                    throw new IllegalStateException("Endpoint not found: " + key);
+                    throw new IllegalStateException("Endpoint not found: " + EndpointSupport.getKey(endpoint));
                 }
             }
             try {
@@ -589,9 +693,9 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
             }
         } else {
             Endpoint ep = null;
-            if (exchange.getProperty(JbiConstants.SENDER_ENDPOINT) != null) {
-                String key = exchange.getProperty(JbiConstants.SENDER_ENDPOINT).toString();
-                ep = this.component.getRegistry().getEndpoint(key);
+            Object key = exchange.getProperty(JbiConstants.SENDER_ENDPOINT);
+            if (key != null) {
+                ep = this.component.getRegistry().getEndpoint(key.toString());
             }
             if (ep == null) {
                 throw new IllegalStateException("Endpoint not found for: " + exchange.getExchangeId());
@@ -690,51 +794,41 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
      * @throws InterruptedException
      */
     public void prepareShutdown(Endpoint endpoint, long timeout) throws InterruptedException {
-        Set<String> exchanges = getKnownExchanges(endpoint);
-        long start = System.currentTimeMillis();
-        long interval = timeout / 3;         // if a timeout has been set, we'll check 3 times within the timeout period
-
-        synchronized (exchanges) {
-            while (!exchanges.isEmpty()) {
-                for (String id : exchanges) {
-                    logger.debug("Waiting for exchange {} in {}", id, endpoint);
-                }
-                exchanges.wait(interval);
-
-                // if a timeout has been set, this would be a good time to check that
-                long delta = System.currentTimeMillis() - start;
-                if (timeout != 0 && delta >= timeout) {
-                    logger.debug(String.format("Gave up waiting for %s exchanges in %s after %s ms",
-                                               exchanges.size(), endpoint, delta));
-                    break;
-                }
+        InFlightExchanges exchanges = getKnownExchanges(endpoint);
+        if (exchanges.isEmpty()) {
+            return;
+        }
+        if (logger.isDebugEnabled()) {
+            for (String id : exchanges.getExchangeIds()) {
+                logger.debug("Waiting for exchange {} in {}", id, endpoint);
             }
         }
+        long start = System.currentTimeMillis();
+        if (!exchanges.awaitEmpty(timeout)) {
+            logger.debug(String.format("Gave up waiting for %s exchanges in %s after %s ms",
+                                       exchanges.size(), endpoint, System.currentTimeMillis() - start));
+        }
     }
 
-    protected Set<String> getKnownExchanges(Endpoint endpoint) {
-        Set<String> exchanges = knownExchanges.get(endpoint.getKey());
+    protected InFlightExchanges getKnownExchanges(Endpoint endpoint) {
+        String key = endpoint.getKey();
+        InFlightExchanges exchanges = knownExchanges.get(key);
         if (exchanges == null) {
-            synchronized (knownExchanges) {
-                exchanges = knownExchanges.get(endpoint.getKey());
-                if (exchanges == null) {
-                    exchanges = new HashSet<String>();
-                    knownExchanges.put(endpoint.getKey(), exchanges);
-                }
+            exchanges = new InFlightExchanges();
+            InFlightExchanges existing = knownExchanges.putIfAbsent(key, exchanges);
+            if (existing != null) {
+                exchanges = existing;
             }
         }
         return exchanges;
     }
 
     public void handleExchange(Endpoint endpoint, MessageExchange exchange, boolean add) {
-        Set<String> exchanges = getKnownExchanges(endpoint);
-        synchronized (exchanges) {
-            if (add) {
-                exchanges.add(exchange.getExchangeId());
-            } else {
-                exchanges.remove(exchange.getExchangeId());
-            }
-            exchanges.notifyAll();
+        InFlightExchanges exchanges = getKnownExchanges(endpoint);
+        if (add) {
+            exchanges.add(exchange.getExchangeId());
+        } else {
+            exchanges.remove(exchange.getExchangeId());
         }
     }
 
@@ -749,4 +843,27 @@ public class AsyncBaseLifeCycle implements ComponentLifeCycle {
         throw new UnsupportedOperationException("Component does not handle EPR exchanges");
     }
 
+    /**
+     * Task processing an exchange accepted by a polling thread
+     */
+    private class ExchangeTask implements Runnable {
+
+        private final MessageExchange exchange;
+        private final Transaction tx;
+        private final Role role;
+        private final long queuedAt;
+
+        public ExchangeTask(MessageExchange exchange, Transaction tx) {
+            this.exchange = exchange;
+            this.tx = tx;
+            this.role = exchange.getRole();
+            this.queuedAt = System.nanoTime();
+        }
+
+        public void run() {
+            statistics.exchangeDispatched(role, queuedAt);
+            processExchangeInTx(exchange, tx);
+        }
+    }
+
 }
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.common;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * Keeps track of the exchanges being processed by a single endpoint.
+ * </p>
+ * <p>
+ * Adding and removing exchanges never blocks nor wakes up other threads, unless the
+ * last exchange is removed while a thread is waiting in {@link #awaitEmpty(long)}.
+ * </p>
+ */
+public class InFlightExchanges {
+
+    private final ConcurrentMap<String, Boolean> exchanges = new ConcurrentHashMap<String, Boolean>();
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final AtomicReference<CountDownLatch> empty = new AtomicReference<CountDownLatch>();
+
+    /**
+     * Register an exchange.  Registering the same exchange twice has no effect.
+     *
+     * @param exchangeId the id of the exchange
+     */
+    public void add(String exchangeId) {
+        if (exchanges.putIfAbsent(exchangeId, Boolean.TRUE) == null) {
+            count.incrementAndGet();
+        }
+    }
+
+    /**
+     * Unregister an exchange, signaling waiting threads if this was the last one.
+     *
+     * @param exchangeId the id of the exchange
+     */
+    public void remove(String exchangeId) {
+        if (exchanges.remove(exchangeId) != null && count.decrementAndGet() == 0) {
+            CountDownLatch latch = empty.getAndSet(null);
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+    }
+
+    /**
+     * @return the number of exchanges currently in flight
+     */
+    public int size() {
+        return count.get();
+    }
+
+    public boolean isEmpty() {
+        return count.get() == 0;
+    }
+
+    /**
+     * @return the ids of the exchanges currently in flight
+     */
+    public Set<String> getExchangeIds() {
+        return exchanges.keySet();
+    }
+
+    /**
+     * Wait until no exchanges are in flight anymore.
+     *
+     * @param timeout the maximum amount of time (in milliseconds) to wait, or <code>0</code> to wait forever
+     * @return <code>true</code> if all exchanges have been processed, <code>false</code> if the timeout elapsed
+     * @throws InterruptedException
+     */
+    public boolean awaitEmpty(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (count.get() > 0) {
+            CountDownLatch latch = empty.get();
+            if (latch == null) {
+                empty.compareAndSet(null, new CountDownLatch(1));
+                continue;
+            }
+            // the last exchange may have been removed before the latch was published
+            if (count.get() == 0) {
+                break;
+            }
+            if (timeout == 0) {
+                latch.await();
+            } else {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !latch.await(remaining, TimeUnit.MILLISECONDS)) {
+                    return count.get() == 0;
+                }
+            }
+        }
+        return true;
+    }
+
+}
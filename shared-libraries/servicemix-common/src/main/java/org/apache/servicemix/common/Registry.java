@@ -17,24 +17,50 @@
 package org.apache.servicemix.common;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.jbi.servicedesc.ServiceEndpoint;
+import javax.xml.namespace.QName;
+
+/**
+ * Keeps track of the service units and endpoints deployed on a component.
+ * Lookups are performed on concurrent maps and can be safely done while
+ * service units are being deployed or undeployed.
+ */
 public class Registry {
 
     protected ServiceMixComponent component;
-    protected Map<String, Endpoint> endpoints;
-    protected Map<String, ServiceUnit> serviceUnits;
+    protected ConcurrentMap<String, Endpoint> endpoints;
+    protected ConcurrentMap<String, ServiceUnit> serviceUnits;
+    /**
+     * Endpoints indexed by service and endpoint name, so that endpoints targeted
+     * by an exchange can be found without building their key.
+     */
+    protected ConcurrentMap<QName, ConcurrentMap<String, Endpoint>> endpointsByService;
     
     public Registry(ServiceMixComponent component) {
         this.component = component;
-        this.endpoints = new HashMap<String, Endpoint>();
-        this.serviceUnits = new HashMap<String, ServiceUnit>();
+        this.endpoints = new ConcurrentHashMap<String, Endpoint>();
+        this.serviceUnits = new ConcurrentHashMap<String, ServiceUnit>();
+        this.endpointsByService = new ConcurrentHashMap<QName, ConcurrentMap<String, Endpoint>>();
     }
 
     public Endpoint getEndpoint(String key) {
         return this.endpoints.get(key);
     }
+
+    public Endpoint getEndpoint(QName service, String endpoint) {
+        if (service == null || endpoint == null) {
+            return null;
+        }
+        ConcurrentMap<String, Endpoint> eps = this.endpointsByService.get(service);
+        return eps != null ? eps.get(endpoint) : null;
+    }
+
+    public Endpoint getEndpoint(ServiceEndpoint endpoint) {
+        return getEndpoint(endpoint.getServiceName(), endpoint.getEndpointName());
+    }
     
     public boolean isRegistered(ServiceUnit su) {
         return isServiceUnitRegistered(su.getName());
@@ -50,13 +76,29 @@ public class Registry {
     
     public void registerEndpoint(Endpoint ep) {
         String key = ep.getKey();
-        if (this.endpoints.put(key, ep) != null) {
+        if (this.endpoints.putIfAbsent(key, ep) != null) {
             throw new IllegalStateException("An endpoint is already registered for key: " + key);
         }
+        if (ep.getService() != null && ep.getEndpoint() != null) {
+            ConcurrentMap<String, Endpoint> eps = this.endpointsByService.get(ep.getService());
+            if (eps == null) {
+                eps = new ConcurrentHashMap<String, Endpoint>();
+                ConcurrentMap<String, Endpoint> existing = this.endpointsByService.putIfAbsent(ep.getService(), eps);
+                if (existing != null) {
+                    eps = existing;
+                }
+            }
+            eps.put(ep.getEndpoint(), ep);
+        }
     }
     
     public void unregisterEndpoint(Endpoint ep) {
-        this.endpoints.remove(ep.getKey());
+        if (this.endpoints.remove(ep.getKey(), ep) && ep.getService() != null && ep.getEndpoint() != null) {
+            ConcurrentMap<String, Endpoint> eps = this.endpointsByService.get(ep.getService());
+            if (eps != null) {
+                eps.remove(ep.getEndpoint(), ep);
+            }
+        }
     }
     
     public void registerServiceUnit(ServiceUnit su) {
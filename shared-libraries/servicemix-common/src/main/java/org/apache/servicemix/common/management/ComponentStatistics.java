@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.common.management;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jbi.messaging.MessageExchange.Role;
+
+import org.apache.servicemix.common.InFlightExchanges;
+
+/**
+ * Runtime statistics of a component, registered in JMX next to the component extension MBean.
+ * All counters are updated without locking so that they can be used on the exchange hot path.
+ */
+public class ComponentStatistics implements ComponentStatisticsMBean {
+
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    private final DispatchCounter consumer = new DispatchCounter();
+    private final DispatchCounter provider = new DispatchCounter();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedExchanges = new AtomicLong();
+
+    private Map<String, InFlightExchanges> inFlightExchanges = Collections.emptyMap();
+
+    private volatile int pollerCount;
+    private volatile int pollerBatchSize;
+
+    public int getPollerCount() {
+        return pollerCount;
+    }
+
+    public void setPollerCount(int pollerCount) {
+        this.pollerCount = pollerCount;
+    }
+
+    public int getPollerBatchSize() {
+        return pollerBatchSize;
+    }
+
+    public void setPollerBatchSize(int pollerBatchSize) {
+        this.pollerBatchSize = pollerBatchSize;
+    }
+
+    public double getAverageBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0 : (double) batchedExchanges.get() / count;
+    }
+
+    public int getConsumerQueueDepth() {
+        return consumer.queueDepth.get();
+    }
+
+    public int getProviderQueueDepth() {
+        return provider.queueDepth.get();
+    }
+
+    public long getConsumerDispatchCount() {
+        return consumer.dispatched.get();
+    }
+
+    public long getProviderDispatchCount() {
+        return provider.dispatched.get();
+    }
+
+    public double getConsumerAverageDispatchLatency() {
+        return consumer.getAverageLatency();
+    }
+
+    public double getProviderAverageDispatchLatency() {
+        return provider.getAverageLatency();
+    }
+
+    public double getConsumerMaxDispatchLatency() {
+        return consumer.maxLatency.get() / NANOS_PER_MILLI;
+    }
+
+    public double getProviderMaxDispatchLatency() {
+        return provider.maxLatency.get() / NANOS_PER_MILLI;
+    }
+
+    public Map<String, Integer> getInFlightExchanges() {
+        Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (Map.Entry<String, InFlightExchanges> entry : inFlightExchanges.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().size());
+        }
+        return counts;
+    }
+
+    public int getInFlightExchangeCount(String endpointKey) {
+        InFlightExchanges exchanges = inFlightExchanges.get(endpointKey);
+        return exchanges != null ? exchanges.size() : 0;
+    }
+
+    /**
+     * @param inFlightExchanges the live registry of in-flight exchanges, keyed by endpoint
+     */
+    public void setInFlightExchanges(Map<String, InFlightExchanges> inFlightExchanges) {
+        this.inFlightExchanges = inFlightExchanges;
+    }
+
+    public void reset() {
+        consumer.reset();
+        provider.reset();
+        batches.set(0);
+        batchedExchanges.set(0);
+    }
+
+    /**
+     * Record an exchange that has been handed to the executor for the given role
+     */
+    public void exchangeQueued(Role role) {
+        getCounter(role).queueDepth.incrementAndGet();
+    }
+
+    /**
+     * Record an exchange which was counted as queued but could not be handed to the executor
+     */
+    public void exchangeRejected(Role role) {
+        getCounter(role).queueDepth.decrementAndGet();
+    }
+
+    /**
+     * Record an exchange that has been picked up by an executor thread
+     *
+     * @param role the role of the exchange
+     * @param queuedAt the {@link System#nanoTime()} at which the exchange was queued
+     */
+    public void exchangeDispatched(Role role, long queuedAt) {
+        getCounter(role).dispatched(System.nanoTime() - queuedAt);
+    }
+
+    /**
+     * Record the number of exchanges drained by a poller in a single wake-up
+     */
+    public void batchDrained(int size) {
+        batches.incrementAndGet();
+        batchedExchanges.addAndGet(size);
+    }
+
+    private DispatchCounter getCounter(Role role) {
+        return Role.CONSUMER.equals(role) ? consumer : provider;
+    }
+
+    private static class DispatchCounter {
+
+        private final AtomicInteger queueDepth = new AtomicInteger();
+        private final AtomicLong dispatched = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+
+        void dispatched(long latency) {
+            queueDepth.decrementAndGet();
+            dispatched.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            long max = maxLatency.get();
+            while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+                max = maxLatency.get();
+            }
+        }
+
+        double getAverageLatency() {
+            long count = dispatched.get();
+            return count == 0 ? 0 : totalLatency.get() / NANOS_PER_MILLI / count;
+        }
+
+        void reset() {
+            dispatched.set(0);
+            totalLatency.set(0);
+            maxLatency.set(0);
+        }
+    }
+
+}
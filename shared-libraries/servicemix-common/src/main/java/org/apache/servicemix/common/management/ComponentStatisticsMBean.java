@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.common.management;
+
+import java.util.Map;
+
+/**
+ * JMX view on the runtime statistics of a component
+ */
+public interface ComponentStatisticsMBean {
+
+    /**
+     * @return the number of threads polling the delivery channel
+     */
+    int getPollerCount();
+
+    /**
+     * @return the maximum number of exchanges drained by a poller per wake-up
+     */
+    int getPollerBatchSize();
+
+    /**
+     * @return the average number of exchanges drained by a poller per wake-up
+     */
+    double getAverageBatchSize();
+
+    /**
+     * @return the number of consumer exchanges waiting for an executor thread
+     */
+    int getConsumerQueueDepth();
+
+    /**
+     * @return the number of provider exchanges waiting for an executor thread
+     */
+    int getProviderQueueDepth();
+
+    /**
+     * @return the number of consumer exchanges handed to the consumer executor
+     */
+    long getConsumerDispatchCount();
+
+    /**
+     * @return the number of provider exchanges handed to the provider executor
+     */
+    long getProviderDispatchCount();
+
+    /**
+     * @return the average time (in milliseconds) a consumer exchange waited for an executor thread
+     */
+    double getConsumerAverageDispatchLatency();
+
+    /**
+     * @return the average time (in milliseconds) a provider exchange waited for an executor thread
+     */
+    double getProviderAverageDispatchLatency();
+
+    /**
+     * @return the longest time (in milliseconds) a consumer exchange waited for an executor thread
+     */
+    double getConsumerMaxDispatchLatency();
+
+    /**
+     * @return the longest time (in milliseconds) a provider exchange waited for an executor thread
+     */
+    double getProviderMaxDispatchLatency();
+
+    /**
+     * @return the number of exchanges currently being processed, keyed by endpoint
+     */
+    Map<String, Integer> getInFlightExchanges();
+
+    /**
+     * @param endpointKey the key of the endpoint
+     * @return the number of exchanges currently being processed by the given endpoint
+     */
+    int getInFlightExchangeCount(String endpointKey);
+
+    /**
+     * Reset the dispatch counters and latencies
+     */
+    void reset();
+
+}
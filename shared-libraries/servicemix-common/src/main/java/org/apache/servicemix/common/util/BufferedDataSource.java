@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.common.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.activation.DataSource;
+
+/**
+ * A {@link DataSource} whose content is held in a {@link ContentBuffer}, so that it can
+ * be read any number of times.  Copies created with {@link #copy()} share the same buffer
+ * until one of them is written to: the written data source then switches to a new buffer
+ * when its output stream is closed, leaving the other copies unchanged.
+ */
+public class BufferedDataSource implements DataSource {
+
+    private volatile ContentBuffer buffer;
+    private final String contentType;
+    private final String name;
+
+    public BufferedDataSource(ContentBuffer buffer, String contentType, String name) {
+        this.buffer = buffer;
+        this.contentType = contentType;
+        this.name = name;
+    }
+
+    /**
+     * @return a new data source sharing the content of this one
+     */
+    public BufferedDataSource copy() {
+        return new BufferedDataSource(buffer, contentType, name);
+    }
+
+    public ContentBuffer getBuffer() {
+        return buffer;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public InputStream getInputStream() throws IOException {
+        return buffer.getInputStream();
+    }
+
+    public OutputStream getOutputStream() throws IOException {
+        final ContentBuffer newBuffer = new ContentBuffer();
+        return new FilterOutputStream(newBuffer) {
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+            public void close() throws IOException {
+                super.close();
+                buffer = newBuffer;
+            }
+        };
+    }
+
+}
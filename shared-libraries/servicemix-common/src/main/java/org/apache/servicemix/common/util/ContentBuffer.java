@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.common.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * <p>
+ * A write-once byte buffer which can be read any number of times, possibly concurrently.
+ * The content is kept in memory until it grows over a threshold, in which case it is
+ * spilled to a temporary file.  The owner of the buffer deletes that file by calling
+ * {@link #release()} once the content is not needed anymore; as a fallback, the file is
+ * deleted when the buffer is garbage collected.
+ * </p>
+ * <p>
+ * The buffer is filled by writing to it as an {@link OutputStream}.  Once closed, it can
+ * not be modified anymore and each call to {@link #getInputStream()} returns a new stream
+ * reading the content from its beginning.
+ * </p>
+ */
+public class ContentBuffer extends OutputStream implements Serializable {
+
+    public static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+    private static final long serialVersionUID = 2475612583473474016L;
+
+    private final int threshold;
+    private transient byte[] data;
+    private transient long count;
+    private transient File file;
+    private transient OutputStream fileOut;
+    private transient boolean closed;
+    private transient boolean released;
+
+    public ContentBuffer() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold the number of bytes kept in memory before the content is spilled to disk
+     */
+    public ContentBuffer(int threshold) {
+        this.threshold = threshold;
+        this.data = new byte[Math.max(Math.min(threshold, 1024), 1)];
+    }
+
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Buffer is closed");
+        }
+        if (fileOut == null && count + len > threshold) {
+            spill();
+        }
+        if (fileOut != null) {
+            fileOut.write(b, off, len);
+        } else {
+            int size = (int) count;
+            if (size + len > data.length) {
+                byte[] newData = new byte[Math.min(Math.max(data.length << 1, size + len), threshold)];
+                System.arraycopy(data, 0, newData, 0, size);
+                data = newData;
+            }
+            System.arraycopy(b, off, data, size, len);
+        }
+        count += len;
+    }
+
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (fileOut != null) {
+                fileOut.close();
+                fileOut = null;
+            }
+        }
+    }
+
+    /**
+     * @return a new stream reading the whole content of this buffer
+     * @throws IOException if the buffer has not been closed or the spilled content can not be read
+     */
+    public synchronized InputStream getInputStream() throws IOException {
+        if (!closed) {
+            throw new IOException("Buffer must be closed before being read");
+        }
+        if (released) {
+            throw new IOException("Buffer has been released");
+        }
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+        return new ByteArrayInputStream(data, 0, (int) count);
+    }
+
+    /**
+     * @return the number of bytes written to this buffer
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * @return <code>true</code> if the content has not been spilled to disk
+     */
+    public synchronized boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * Releases the content of this buffer, deleting the file it has been spilled to, if any.
+     * The buffer can not be written nor read anymore afterwards, so it must only be called
+     * once no message refers to the buffer.  Streams already reading a spilled content may
+     * prevent the file from being deleted on some platforms: it is then deleted on exit.
+     */
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        closed = true;
+        data = null;
+        if (fileOut != null) {
+            try {
+                fileOut.close();
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+            fileOut = null;
+        }
+        if (file != null) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if {@link #release()} has been called
+     */
+    public synchronized boolean isReleased() {
+        return released;
+    }
+
+    synchronized File getFile() {
+        return file;
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("servicemix-content", ".tmp");
+        fileOut = new BufferedOutputStream(new FileOutputStream(file));
+        fileOut.write(data, 0, (int) count);
+        data = null;
+    }
+
+    protected void finalize() throws Throwable {
+        try {
+            if (fileOut != null) {
+                fileOut.close();
+            }
+            if (file != null) {
+                file.delete();
+            }
+        } finally {
+            super.finalize();
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        synchronized (this) {
+            if (!closed) {
+                throw new IOException("Buffer must be closed before being serialized");
+            }
+            out.writeLong(count);
+            InputStream is = getInputStream();
+            try {
+                byte[] buffer = new byte[8192];
+                int len = is.read(buffer);
+                while (len >= 0) {
+                    out.write(buffer, 0, len);
+                    len = is.read(buffer);
+                }
+            } finally {
+                is.close();
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        count = in.readLong();
+        data = new byte[(int) count];
+        in.readFully(data);
+        closed = true;
+    }
+
+}
@@ -16,7 +16,6 @@
  */
 package org.apache.servicemix.common.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.io.InputStream;
@@ -34,14 +33,13 @@ import javax.jbi.messaging.MessagingException;
 import javax.jbi.messaging.NormalizedMessage;
 import javax.mail.util.ByteArrayDataSource;
 import javax.security.auth.Subject;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
-import org.xml.sax.SAXException;
-
 import org.apache.servicemix.jbi.jaxp.SourceTransformer;
 import org.apache.servicemix.jbi.jaxp.StringSource;
 
@@ -58,7 +56,11 @@ public final class MessageUtil {
         }
         for (Iterator it = source.getAttachmentNames().iterator(); it.hasNext();) {
             String name = (String) it.next();
-            dest.addAttachment(name, source.getAttachment(name));
+            DataHandler dh = source.getAttachment(name);
+            if (dh.getDataSource() instanceof BufferedDataSource) {
+                dh = new DataHandler(((BufferedDataSource) dh.getDataSource()).copy());
+            }
+            dest.addAttachment(name, dh);
         }
         dest.setSecuritySubject(source.getSecuritySubject());
     }
@@ -137,23 +139,56 @@ public final class MessageUtil {
      * @param message the {@link NormalizedMessage} to convert the content for.
      */
     public static void enableContentRereadability(NormalizedMessage message) throws MessagingException {
-        if (message.getContent() instanceof StreamSource
-                || message.getContent() instanceof SAXSource) {
-            try {
-                String content = new SourceTransformer().contentToString(message);
-                if (content != null) {
-                    message.setContent(new StringSource(content));
+        Source content = message.getContent();
+        if ((content instanceof StreamSource || content instanceof SAXSource) && !isRereadable(content)) {
+            message.setContent(createRereadableSource(content));
+        }
+    }
+
+    /**
+     * Checks if the given source can be read several times and shared between messages.
+     *
+     * @param source the source to check
+     * @return <code>true</code> if the source is immutable and re-readable
+     */
+    public static boolean isRereadable(Source source) {
+        return source instanceof StringSource || source instanceof RereadableSource;
+    }
+
+    /**
+     * <p>
+     * Buffers the given source into a {@link RereadableSource}.  Streams are copied as is,
+     * other sources are serialized: in both cases, the content is kept as bytes, in memory
+     * or spilled to disk if it is too large, and never converted to a String.
+     * </p>
+     *
+     * @param source the source to buffer, which will be consumed
+     * @return a re-readable source holding the same content
+     */
+    public static RereadableSource createRereadableSource(Source source) throws MessagingException {
+        ContentBuffer buffer = new ContentBuffer();
+        boolean buffered = false;
+        try {
+            if (source instanceof StreamSource && ((StreamSource) source).getInputStream() != null) {
+                copyInputStream(((StreamSource) source).getInputStream(), buffer);
+            } else {
+                try {
+                    new SourceTransformer().toResult(source, new StreamResult(buffer));
+                } finally {
+                    buffer.close();
                 }
-            } catch (TransformerException e) {
-                throw new MessagingException("Unable to convert message content into StringSource", e);
-            } catch (ParserConfigurationException e) {
-                throw new MessagingException("Unable to convert message content into StringSource", e);
-            } catch (IOException e) {
-                throw new MessagingException("Unable to convert message content into StringSource", e);
-            } catch (SAXException e) {
-                throw new MessagingException("Unable to convert message content into StringSource", e);
+            }
+            buffered = true;
+        } catch (TransformerException e) {
+            throw new MessagingException("Unable to convert message content into RereadableSource", e);
+        } catch (IOException e) {
+            throw new MessagingException("Unable to convert message content into RereadableSource", e);
+        } finally {
+            if (!buffered) {
+                buffer.release();
             }
         }
+        return new RereadableSource(buffer);
     }
 
     public static class NormalizedMessageImpl implements NormalizedMessage, Serializable {
@@ -170,9 +205,16 @@ public final class MessageUtil {
 
         public NormalizedMessageImpl(NormalizedMessage message) throws MessagingException {
             try {
-                String str = new SourceTransformer().contentToString(message);
-                if (str != null) {
-                    this.content = new StringSource(str);
+                Source source = message.getContent();
+                if (source != null) {
+                    if (!isRereadable(source)) {
+                        source = createRereadableSource(source);
+                        // the original content has been consumed, so share the buffer with the copied message
+                        if (!(message.getContent() instanceof DOMSource)) {
+                            message.setContent(source);
+                        }
+                    }
+                    this.content = source;
                 }
                 for (Iterator it = message.getPropertyNames().iterator(); it.hasNext();) {
                     String name = (String) it.next();
@@ -182,12 +224,17 @@ public final class MessageUtil {
                     String name = (String) it.next();
                     DataHandler dh = message.getAttachment(name);
                     DataSource ds = dh.getDataSource();
-                    if (!(ds instanceof ByteArrayDataSource)) {
-                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                        copyInputStream(ds.getInputStream(), baos);
-                        ByteArrayDataSource bads = new ByteArrayDataSource(baos.toByteArray(), ds.getContentType());
-                        bads.setName(ds.getName());
-                        dh = new DataHandler(bads);
+                    if (ds instanceof BufferedDataSource) {
+                        dh = new DataHandler(((BufferedDataSource) ds).copy());
+                    } else if (!(ds instanceof ByteArrayDataSource)) {
+                        ContentBuffer buffer = new ContentBuffer();
+                        try {
+                            copyInputStream(ds.getInputStream(), buffer);
+                        } catch (IOException e) {
+                            buffer.release();
+                            throw e;
+                        }
+                        dh = new DataHandler(new BufferedDataSource(buffer, ds.getContentType(), ds.getName()));
                     }
                     this.attachments.put(name, dh);
                 }
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.common.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Serializable;
+
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * A {@link StreamSource} backed by a {@link ContentBuffer}, which can be read any number
+ * of times: each call to {@link #getInputStream()} returns a new stream.  The buffer is
+ * immutable, so the same source can safely be shared by several messages: it must only
+ * be released, with {@link ContentBuffer#release()}, once none of them refers to it.
+ */
+public class RereadableSource extends StreamSource implements Serializable {
+
+    private static final long serialVersionUID = -2352826612846373524L;
+
+    private final ContentBuffer buffer;
+
+    public RereadableSource(ContentBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public ContentBuffer getBuffer() {
+        return buffer;
+    }
+
+    public InputStream getInputStream() {
+        try {
+            return buffer.getInputStream();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read buffered content: " + e.getMessage(), e);
+        }
+    }
+
+    public Reader getReader() {
+        return null;
+    }
+
+    public void setInputStream(InputStream inputStream) {
+        throw new UnsupportedOperationException("RereadableSource content can not be changed");
+    }
+
+    public void setReader(Reader reader) {
+        throw new UnsupportedOperationException("RereadableSource content can not be changed");
+    }
+
+    public String toString() {
+        return "RereadableSource[" + buffer.size() + " bytes]";
+    }
+
+}
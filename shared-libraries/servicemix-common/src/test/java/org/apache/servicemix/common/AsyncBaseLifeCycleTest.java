@@ -16,21 +16,31 @@
  */
 package org.apache.servicemix.common;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.jbi.messaging.DeliveryChannel;
 import javax.jbi.messaging.MessageExchange;
+import javax.jbi.messaging.MessageExchangeFactory;
+import javax.jbi.messaging.MessagingException;
+import javax.jbi.servicedesc.ServiceEndpoint;
 import javax.xml.namespace.QName;
 
 import junit.framework.TestCase;
 import org.apache.servicemix.common.endpoints.SimpleEndpoint;
+import org.apache.servicemix.executors.Executor;
 import org.apache.servicemix.tck.mock.MockMessageExchange;
 
 /**
@@ -124,6 +134,187 @@ public class AsyncBaseLifeCycleTest extends TestCase {
                    shutdown >= TIMEOUT);
     }
 
+    public void testInFlightExchangeCount() {
+        Endpoint endpoint = new MockEndpoint();
+        MockMessageExchange exchange = createMockExchange();
+
+        // an exchange is only counted once, whatever the number of times it is seen
+        lifecycle.handleExchange(endpoint, exchange, true);
+        lifecycle.handleExchange(endpoint, exchange, true);
+        assertEquals(1, lifecycle.getStatistics().getInFlightExchangeCount(endpoint.getKey()));
+
+        lifecycle.handleExchange(endpoint, exchange, false);
+        lifecycle.handleExchange(endpoint, exchange, false);
+        assertEquals(0, lifecycle.getStatistics().getInFlightExchangeCount(endpoint.getKey()));
+        assertEquals(Integer.valueOf(0), lifecycle.getStatistics().getInFlightExchanges().get(endpoint.getKey()));
+    }
+
+    public void testMultiplePollers() throws Exception {
+        final CountDownLatch processed = new CountDownLatch(10);
+        final AsyncBaseLifeCycle polling = new AsyncBaseLifeCycle() {
+            @Override
+            protected void processExchange(MessageExchange exchange) {
+                processed.countDown();
+            }
+        };
+        polling.setComponent(new DefaultComponent());
+        polling.container = new Container.UnknownContainer(null);
+        QueueDeliveryChannel queue = new QueueDeliveryChannel();
+        polling.channel = queue;
+        // a single consumer thread: the pollers must not take it
+        polling.consumerExecutor = new ServiceExecutor(Executors.newSingleThreadExecutor());
+        polling.providerExecutor = new ServiceExecutor(Executors.newSingleThreadExecutor());
+        polling.setPollerCount(3);
+
+        Future<Object> start = executor.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                polling.start();
+                return null;
+            }
+        });
+        start.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(3, polling.pollers.size());
+
+        for (int i = 0; i < 10; i++) {
+            MockMessageExchange exchange = createMockExchange();
+            exchange.setRole(MessageExchange.Role.CONSUMER);
+            queue.exchanges.add(exchange);
+        }
+        assertTrue("All exchanges should have been processed by the consumer executor",
+                   processed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        polling.stop();
+        assertEquals(0, polling.pollers.size());
+        polling.consumerExecutor.shutdown();
+        polling.providerExecutor.shutdown();
+    }
+
+    public void testQueueDepth() throws Exception {
+        AsyncBaseLifeCycle counting = new AsyncBaseLifeCycle() {
+            @Override
+            protected void processExchange(MessageExchange exchange) {
+                // graciously do nothing
+            }
+        };
+        counting.setComponent(new DefaultComponent());
+        final List<Runnable> queued = new ArrayList<Runnable>();
+        counting.consumerExecutor = new ServiceExecutor(null) {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        };
+        counting.providerExecutor = new ServiceExecutor(null) {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException("full");
+            }
+        };
+
+        MockMessageExchange consumer = createMockExchange();
+        consumer.setRole(MessageExchange.Role.CONSUMER);
+        counting.dispatch(consumer);
+        assertEquals(1, counting.getStatistics().getConsumerQueueDepth());
+
+        MockMessageExchange provider = createMockExchange();
+        provider.setRole(MessageExchange.Role.PROVIDER);
+        try {
+            counting.dispatch(provider);
+            fail("The exchange should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        // a rejected exchange is not left in the queue depth
+        assertEquals(0, counting.getStatistics().getProviderQueueDepth());
+        assertEquals(0, counting.getStatistics().getProviderDispatchCount());
+
+        // the executor thread picks the exchange up
+        assertEquals(1, queued.size());
+        queued.get(0).run();
+        assertEquals(0, counting.getStatistics().getConsumerQueueDepth());
+        assertEquals(1, counting.getStatistics().getConsumerDispatchCount());
+    }
+
+    /**
+     * An {@link Executor} running the tasks on an {@link ExecutorService}
+     */
+    private static class ServiceExecutor implements Executor {
+
+        private final ExecutorService service;
+
+        public ServiceExecutor(ExecutorService service) {
+            this.service = service;
+        }
+
+        public void execute(Runnable command) {
+            service.execute(command);
+        }
+
+        public void shutdown() {
+            service.shutdown();
+        }
+
+        public int capacity() {
+            return 0;
+        }
+
+        public int size() {
+            return 0;
+        }
+    }
+
+    /**
+     * A {@link DeliveryChannel} handing out the exchanges added to its queue
+     */
+    private static class QueueDeliveryChannel implements DeliveryChannel {
+
+        private final BlockingQueue<MessageExchange> exchanges = new LinkedBlockingQueue<MessageExchange>();
+
+        public MessageExchange accept() throws MessagingException {
+            return accept(Long.MAX_VALUE);
+        }
+
+        public MessageExchange accept(long timeout) throws MessagingException {
+            try {
+                return exchanges.poll(timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new MessagingException(e);
+            }
+        }
+
+        public void close() {
+            // graciously do nothing
+        }
+
+        public MessageExchangeFactory createExchangeFactory() {
+            return null;
+        }
+
+        public MessageExchangeFactory createExchangeFactory(QName interfaceName) {
+            return null;
+        }
+
+        public MessageExchangeFactory createExchangeFactory(ServiceEndpoint endpoint) {
+            return null;
+        }
+
+        public MessageExchangeFactory createExchangeFactoryForService(QName serviceName) {
+            return null;
+        }
+
+        public void send(MessageExchange exchange) {
+            // graciously do nothing
+        }
+
+        public boolean sendSync(MessageExchange exchange) {
+            return true;
+        }
+
+        public boolean sendSync(MessageExchange exchange, long timeout) {
+            return true;
+        }
+    }
+
     public static class MockEndpoint extends SimpleEndpoint {
 
         public MockEndpoint() {
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.common;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link org.apache.servicemix.common.Registry}
+ */
+public class RegistryTest extends TestCase {
+
+    private Registry registry;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        registry = new Registry(new DefaultComponent());
+    }
+
+    public void testLookupByKeyAndName() {
+        Endpoint endpoint = new AsyncBaseLifeCycleTest.MockEndpoint();
+        registry.registerEndpoint(endpoint);
+
+        assertSame(endpoint, registry.getEndpoint(endpoint.getKey()));
+        assertSame(endpoint, registry.getEndpoint(new QName("urn:test", "service"), "endpoint"));
+        assertNull(registry.getEndpoint(new QName("urn:test", "service"), "other"));
+        assertNull(registry.getEndpoint(new QName("urn:test", "other"), "endpoint"));
+
+        registry.unregisterEndpoint(endpoint);
+        assertNull(registry.getEndpoint(endpoint.getKey()));
+        assertNull(registry.getEndpoint(new QName("urn:test", "service"), "endpoint"));
+    }
+
+    public void testDuplicateEndpoint() {
+        Endpoint endpoint = new AsyncBaseLifeCycleTest.MockEndpoint();
+        registry.registerEndpoint(endpoint);
+        try {
+            registry.registerEndpoint(new AsyncBaseLifeCycleTest.MockEndpoint());
+            fail("An endpoint is already registered with the same key");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // the first endpoint is still registered
+        assertSame(endpoint, registry.getEndpoint(new QName("urn:test", "service"), "endpoint"));
+    }
+
+}
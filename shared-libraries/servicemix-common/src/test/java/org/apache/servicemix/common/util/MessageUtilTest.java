@@ -16,6 +16,12 @@
  */
 package org.apache.servicemix.common.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.Set;
 
@@ -201,6 +207,75 @@ public class MessageUtilTest extends TestCase {
         assertEquals("StringSource[<fault>failure</fault>]", exchangeDest.getFault().getContent().toString());
 
     }
-    
+
+    public void testCopySharesRereadableContent() throws Exception {
+        MessageUtil.NormalizedMessageImpl src = new MessageUtil.NormalizedMessageImpl();
+        src.setContent(new StreamSource(new ByteArrayInputStream("<hello>world</hello>".getBytes("UTF-8"))));
+
+        NormalizedMessage copy1 = MessageUtil.copy(src);
+        NormalizedMessage copy2 = MessageUtil.copy(src);
+
+        assertTrue(src.getContent() instanceof RereadableSource);
+        assertSame(src.getContent(), copy1.getContent());
+        assertSame(src.getContent(), copy2.getContent());
+        SourceTransformer transformer = new SourceTransformer();
+        assertEquals("<hello>world</hello>", transformer.contentToString(copy1));
+        assertEquals("<hello>world</hello>", transformer.contentToString(copy1));
+        assertEquals("<hello>world</hello>", transformer.contentToString(src));
+    }
+
+    public void testContentBufferSpillsToDisk() throws Exception {
+        ContentBuffer buffer = new ContentBuffer(16);
+        buffer.write("<hello>".getBytes("UTF-8"));
+        assertTrue(buffer.isInMemory());
+        buffer.write("world</hello>".getBytes("UTF-8"));
+        assertFalse(buffer.isInMemory());
+        buffer.close();
+        RereadableSource source = new RereadableSource(buffer);
+        assertEquals("<hello>world</hello>", new SourceTransformer().toString(source));
+        assertEquals("<hello>world</hello>", new SourceTransformer().toString(source));
+    }
+
+    public void testContentBufferRelease() throws Exception {
+        ContentBuffer buffer = new ContentBuffer(16);
+        buffer.write("<hello>world</hello>".getBytes("UTF-8"));
+        buffer.close();
+        File file = buffer.getFile();
+        assertTrue(file.exists());
+        buffer.release();
+        assertTrue(buffer.isReleased());
+        assertFalse(file.exists());
+        try {
+            buffer.getInputStream();
+            fail("Released buffer should not be readable");
+        } catch (IOException e) {
+            // expected
+        }
+        buffer.release();
+    }
+
+    public void testAttachmentCopyOnWrite() throws Exception {
+        MessageUtil.NormalizedMessageImpl src = new MessageUtil.NormalizedMessageImpl();
+        ContentBuffer buffer = new ContentBuffer();
+        buffer.write("foo".getBytes());
+        buffer.close();
+        src.addAttachment("fooId", new DataHandler(new BufferedDataSource(buffer, "text/plain", "foo")));
+
+        NormalizedMessage copy = MessageUtil.copy(src);
+        BufferedDataSource copied = (BufferedDataSource) copy.getAttachment("fooId").getDataSource();
+        assertSame(buffer, copied.getBuffer());
+
+        OutputStream os = copied.getOutputStream();
+        os.write("bar".getBytes());
+        os.close();
+        assertEquals("bar", read(copy.getAttachment("fooId").getInputStream()));
+        assertEquals("foo", read(src.getAttachment("fooId").getInputStream()));
+    }
+
+    private String read(InputStream is) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        MessageUtil.copyInputStream(is, baos);
+        return baos.toString();
+    }
 
 }
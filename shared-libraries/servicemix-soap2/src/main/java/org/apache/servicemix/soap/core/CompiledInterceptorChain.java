@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.soap.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.servicemix.soap.api.Interceptor;
+import org.apache.servicemix.soap.api.InterceptorChain;
+import org.apache.servicemix.soap.api.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An immutable InterceptorChain whose interceptors have already been ordered,
+ * usually by a {@link PhaseInterceptorChain}.
+ *
+ * The same instance can be shared by any number of threads: each call to
+ * {@link #doIntercept(Message)} walks the interceptors with a new cursor,
+ * which is the chain seen by the interceptors through
+ * <code>message.get(InterceptorChain.class)</code>.
+ *
+ * @see PhaseInterceptorChain#compile()
+ */
+public class CompiledInterceptorChain implements InterceptorChain {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompiledInterceptorChain.class);
+
+    private final Interceptor[] interceptors;
+
+    private final List<Interceptor> view;
+
+    public CompiledInterceptorChain(Iterable<? extends Interceptor> ordered) {
+        List<Interceptor> list = new ArrayList<Interceptor>();
+        for (Interceptor interceptor : ordered) {
+            list.add(interceptor);
+        }
+        this.interceptors = list.toArray(new Interceptor[list.size()]);
+        this.view = Collections.unmodifiableList(Arrays.asList(interceptors));
+    }
+
+    public void add(Iterable<? extends Interceptor> i) {
+        throw new UnsupportedOperationException("A compiled interceptor chain can not be modified");
+    }
+
+    public Iterable<Interceptor> getInterceptors() {
+        return view;
+    }
+
+    public void doIntercept(Message message) {
+        Cursor cursor = new Cursor();
+        message.put(InterceptorChain.class, cursor);
+        cursor.doIntercept(message);
+    }
+
+    /**
+     * The per-message state of the chain: the position of the next interceptor to invoke.
+     * Interceptors which call <code>doIntercept</code> on it resume the walk where it stands.
+     */
+    private class Cursor implements InterceptorChain {
+
+        private int index;
+
+        public void add(Iterable<? extends Interceptor> i) {
+            throw new UnsupportedOperationException("A compiled interceptor chain can not be modified");
+        }
+
+        public Iterable<Interceptor> getInterceptors() {
+            return view;
+        }
+
+        public void doIntercept(Message message) {
+            try {
+                while (index < interceptors.length) {
+                    Interceptor currentInterceptor = interceptors[index++];
+                    LOGGER.debug("Invoking handleMessage on interceptor {}", currentInterceptor.getId());
+                    currentInterceptor.handleMessage(message);
+                }
+            } catch (RuntimeException ex) {
+                LOGGER.info("Interceptor has thrown exception, unwinding now", ex);
+                message.setContent(Exception.class, ex);
+                // Unwind
+                while (index > 0) {
+                    Interceptor currentInterceptor = interceptors[--index];
+                    LOGGER.debug("Invoking handleFault on interceptor {}", currentInterceptor.getId());
+                    currentInterceptor.handleFault(message);
+                }
+                throw ex;
+            }
+        }
+    }
+
+}
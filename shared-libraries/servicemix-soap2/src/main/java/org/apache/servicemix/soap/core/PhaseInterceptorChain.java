@@ -60,6 +60,17 @@ public class PhaseInterceptorChain implements InterceptorChain {
         insertInterceptor(i);
     }
 
+    /**
+     * Creates an immutable chain with the interceptors in their current order.
+     * The resulting chain can be cached and used concurrently for any number of
+     * messages without ordering the interceptors again.
+     *
+     * @return the compiled chain
+     */
+    public CompiledInterceptorChain compile() {
+        return new CompiledInterceptorChain(interceptors);
+    }
+
     /**
      * Invokes each phase's handler in turn.
      * 
@@ -43,8 +43,8 @@ public class StaxOutInterceptor extends AbstractInterceptor {
             throw new NullPointerException("OutputStream content not found");
         }
         try {
-            // TODO: handle encoding
-            XMLStreamWriter writer = StaxUtil.createWriter(os);
+            String encoding = (String) message.get(StaxInInterceptor.ENCODING);
+            XMLStreamWriter writer = StaxUtil.createWriter(os, encoding);
             message.setContent(XMLStreamWriter.class, writer);
             InterceptorChain chain = message.get(InterceptorChain.class);
             chain.doIntercept(message);
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.soap.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.servicemix.soap.api.InterceptorChain;
+import org.apache.servicemix.soap.api.Message;
+
+public class CompiledInterceptorChainTest extends TestCase {
+
+    private List<String> calls;
+
+    protected void setUp() throws Exception {
+        calls = new ArrayList<String>();
+    }
+
+    public void testOrderIsKept() {
+        PhaseInterceptorChain chain = new PhaseInterceptorChain();
+        RecordingInterceptor b = new RecordingInterceptor("b");
+        b.addAfter("a");
+        chain.add(b);
+        chain.add(new RecordingInterceptor("c"));
+        RecordingInterceptor a = new RecordingInterceptor("a");
+        a.addBefore("b");
+        chain.add(a);
+        CompiledInterceptorChain compiled = chain.compile();
+
+        compiled.doIntercept(new MessageImpl());
+        List<String> first = new ArrayList<String>(calls);
+        calls.clear();
+        compiled.doIntercept(new MessageImpl());
+
+        assertEquals(3, first.size());
+        assertTrue(first.indexOf("a") < first.indexOf("b"));
+        assertEquals(first, calls);
+    }
+
+    public void testReentrantInterceptor() {
+        PhaseInterceptorChain chain = new PhaseInterceptorChain();
+        chain.add(new RecordingInterceptor("a") {
+            public void handleMessage(Message message) {
+                super.handleMessage(message);
+                // resume the chain, as StaxOutInterceptor does, then record the unwinding
+                message.get(InterceptorChain.class).doIntercept(message);
+                calls.add("a-after");
+            }
+        });
+        RecordingInterceptor b = new RecordingInterceptor("b");
+        b.addAfter("a");
+        chain.add(b);
+        chain.compile().doIntercept(new MessageImpl());
+
+        assertEquals("[a, b, a-after]", calls.toString());
+    }
+
+    public void testFaultUnwinding() {
+        PhaseInterceptorChain chain = new PhaseInterceptorChain();
+        chain.add(new RecordingInterceptor("a"));
+        RecordingInterceptor b = new RecordingInterceptor("b") {
+            public void handleMessage(Message message) {
+                throw new IllegalStateException("b");
+            }
+        };
+        b.addAfter("a");
+        chain.add(b);
+        RecordingInterceptor c = new RecordingInterceptor("c");
+        c.addAfter("b");
+        chain.add(c);
+
+        Message message = new MessageImpl();
+        try {
+            chain.compile().doIntercept(message);
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertSame(e, message.getContent(Exception.class));
+        }
+        assertEquals("[a, fault-b, fault-a]", calls.toString());
+    }
+
+    public void testImmutable() {
+        PhaseInterceptorChain chain = new PhaseInterceptorChain();
+        chain.add(new RecordingInterceptor("a"));
+        CompiledInterceptorChain compiled = chain.compile();
+        chain.add(new RecordingInterceptor("b"));
+        try {
+            compiled.add(chain.getInterceptors());
+            fail("Compiled chains can not be modified");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        compiled.doIntercept(new MessageImpl());
+        assertEquals("[a]", calls.toString());
+    }
+
+    private class RecordingInterceptor extends AbstractInterceptor {
+
+        public RecordingInterceptor(String id) {
+            setId(id);
+        }
+
+        public void handleMessage(Message message) {
+            calls.add(getId());
+        }
+
+        public void handleFault(Message message) {
+            calls.add("fault-" + getId());
+        }
+    }
+
+}
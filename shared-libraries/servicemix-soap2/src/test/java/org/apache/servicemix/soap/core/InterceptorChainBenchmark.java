@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.servicemix.soap.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.servicemix.soap.api.Interceptor;
+import org.apache.servicemix.soap.api.Message;
+
+/**
+ * Compares the per-message cost of building and sorting a {@link PhaseInterceptorChain}
+ * with the cost of walking a cached {@link CompiledInterceptorChain}, for chains of
+ * 3, 10 and 25 no-op interceptors declaring before / after constraints.
+ * This is not run as part of the build: launch it with the test classpath.
+ */
+public final class InterceptorChainBenchmark {
+
+    private static final int[] SIZES = {3, 10, 25};
+
+    private static final int MESSAGES = 20000;
+
+    private static final int ROUNDS = 5;
+
+    private InterceptorChainBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        for (int size : SIZES) {
+            List<Interceptor> interceptors = interceptors(size);
+            CompiledInterceptorChain compiled = build(interceptors).compile();
+            // warm up
+            runPerMessage(interceptors);
+            runCompiled(compiled);
+            long perMessageTime = 0;
+            long compiledTime = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                perMessageTime += runPerMessage(interceptors);
+                compiledTime += runCompiled(compiled);
+            }
+            System.out.println(String.format("%3d interceptors: per message chain %9.1f ns/msg, compiled chain %7.1f ns/msg",
+                    size, (double) perMessageTime / (ROUNDS * MESSAGES), (double) compiledTime / (ROUNDS * MESSAGES)));
+        }
+    }
+
+    private static List<Interceptor> interceptors(int size) {
+        // added in reverse order so that each insertion has to honour the constraints
+        List<Interceptor> interceptors = new ArrayList<Interceptor>();
+        for (int i = size - 1; i >= 0; i--) {
+            NoopInterceptor interceptor = new NoopInterceptor("interceptor-" + i);
+            if (i > 0) {
+                interceptor.addAfter("interceptor-" + (i - 1));
+            }
+            interceptors.add(interceptor);
+        }
+        return interceptors;
+    }
+
+    private static PhaseInterceptorChain build(List<Interceptor> interceptors) {
+        PhaseInterceptorChain chain = new PhaseInterceptorChain();
+        chain.add(interceptors);
+        return chain;
+    }
+
+    private static long runPerMessage(List<Interceptor> interceptors) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            build(interceptors).doIntercept(new MessageImpl());
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runCompiled(CompiledInterceptorChain chain) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            chain.doIntercept(new MessageImpl());
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static class NoopInterceptor extends AbstractInterceptor {
+
+        public NoopInterceptor(String id) {
+            setId(id);
+        }
+
+        public void handleMessage(Message message) {
+        }
+    }
+
+}